@@ -24,11 +24,15 @@ import com.graphhopper.config.LMProfile;
 import com.graphhopper.config.Profile;
 import com.graphhopper.jackson.Jackson;
 import com.graphhopper.reader.dem.*;
+import com.graphhopper.reader.osm.OSMChange;
+import com.graphhopper.reader.osm.OSMChangeApplier;
+import com.graphhopper.reader.osm.OSMNodeStorage;
 import com.graphhopper.reader.osm.OSMReader;
 import com.graphhopper.reader.osm.RestrictionTagParser;
 import com.graphhopper.reader.osm.conditional.DateRangeParser;
 import com.graphhopper.routing.*;
 import com.graphhopper.routing.ch.CHPreparationHandler;
+import com.graphhopper.routing.ch.CustomizableCH;
 import com.graphhopper.routing.ch.PrepareContractionHierarchies;
 import com.graphhopper.routing.ev.*;
 import com.graphhopper.routing.lm.LMConfig;
@@ -51,6 +55,7 @@ import com.graphhopper.storage.*;
 import com.graphhopper.storage.index.LocationIndex;
 import com.graphhopper.storage.index.LocationIndexTree;
 import com.graphhopper.util.*;
+import com.graphhopper.util.Parameters.CH;
 import com.graphhopper.util.Parameters.Landmark;
 import com.graphhopper.util.Parameters.Routing;
 import com.graphhopper.util.details.PathDetailsBuilderFactory;
@@ -67,6 +72,7 @@ import java.text.DateFormat;
 import java.util.*;
 import java.util.function.BiFunction;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import static com.graphhopper.util.GHUtility.readCountries;
@@ -80,6 +86,10 @@ import static com.graphhopper.util.Parameters.Algorithms.RoundTrip;
  */
 public class GraphHopper {
     private static final Logger logger = LoggerFactory.getLogger(GraphHopper.class);
+    private static final String CHECKPOINT = "import.checkpoint";
+    private static final String CHECKPOINT_BASE_GRAPH = "base_graph";
+    private static final String CHECKPOINT_SUBNETWORKS = "subnetworks";
+    private static final String CHECKPOINT_DONE = "done";
     private MaxSpeedCalculator maxSpeedCalculator;
     private final Map<String, Profile> profilesByName = new LinkedHashMap<>();
     private final String fileLockName = "gh.lock";
@@ -96,10 +106,30 @@ public class GraphHopper {
     private StorableProperties properties;
     protected EncodingManager encodingManager;
     private OSMParsers osmParsers;
+    // creates additional tag parsers for the parallel import
+    private Supplier<OSMParsers> osmParsersFactory;
     private int defaultSegmentSize = -1;
+    private boolean hilbertSort = false;
+    private final ImportMetrics importMetrics = new ImportMetrics();
+    private boolean writeImportMetrics = false;
+    private boolean compressGeometry = false;
+    private boolean sortTurnCosts = false;
+    private int elevationInterpolationThreads = 1;
+    private boolean resumableImport = false;
+    private boolean verifyBundle = true;
+    private GraphBundleVerification bundleVerification;
+    private boolean upwardCHGraphs = false;
+    private boolean customizableCHEnabled = false;
+    private int customizableCHThreads = 1;
+    private int customizableCHCacheSize = 10;
+    private int customizableCHMaxConcurrent = 1;
     private String ghLocation = "";
     private DAType dataAccessDefaultType = DAType.RAM_STORE;
     private final LinkedHashMap<String, String> dataAccessConfig = new LinkedHashMap<>();
+    private List<String> warmupPatterns = Collections.emptyList();
+    private int warmupThreads = 1;
+    private double warmupMaxMBPerSecond = 0;
+    private DataAccessWarmup warmup;
     private boolean elevation = false;
     private LockFactory lockFactory = new NativeFSLockFactory();
     private boolean allowWrites = true;
@@ -120,12 +150,15 @@ public class GraphHopper {
     private double cityAreaRadius = 1500;
     private double cityAreaSensitivity = 1000;
     private int urbanDensityCalculationThreads = 0;
+    private boolean urbanDensityGrid = false;
 
     // preparation handlers
     private final LMPreparationHandler lmPreparationHandler = new LMPreparationHandler();
     private final CHPreparationHandler chPreparationHandler = new CHPreparationHandler();
     private Map<String, RoutingCHGraph> chGraphs = Collections.emptyMap();
     private Map<String, LandmarkStorage> landmarks = Collections.emptyMap();
+    private CustomizableCH customizableCH;
+    private OSMNodeStorage osmNodeStorage;
 
     // for data reader
     private String osmFile;
@@ -196,6 +229,162 @@ public class GraphHopper {
         return this;
     }
 
+    /**
+     * Renumbers the nodes along a Hilbert curve after the import to improve memory locality, see
+     * {@link HilbertCurveSorter}. This is most useful for memory mapped graphs that do not fit into RAM.
+     */
+    public GraphHopper setHilbertSort(boolean hilbertSort) {
+        ensureNotLoaded();
+        this.hilbertSort = hilbertSort;
+        return this;
+    }
+
+    /**
+     * @param writeReport    writes the resources used by the stages of the import to import_metrics.json in the
+     *                       graph folder, see {@link ImportMetrics}
+     * @param timeTagParsers measures the time and the allocations of every tag parser. This slows down the import a
+     *                       bit, so it should only be used to find slow tag parsers
+     */
+    public GraphHopper setImportMetrics(boolean writeReport, boolean timeTagParsers) {
+        ensureNotLoaded();
+        this.writeImportMetrics = writeReport;
+        importMetrics.setTagParserTiming(timeTagParsers);
+        return this;
+    }
+
+    /**
+     * @return the resources used by the stages of the import, or by loading the graph if it was not imported
+     */
+    public ImportMetrics getImportMetrics() {
+        return importMetrics;
+    }
+
+    /**
+     * Stores the pillar nodes delta encoded with variable length integers. This reduces the size of the geometry
+     * storage considerably for the price of a slightly slower decoding. The format is stored in the graph, so this is
+     * only relevant for the import.
+     */
+    public GraphHopper setCompressGeometry(boolean compressGeometry) {
+        ensureNotLoaded();
+        this.compressGeometry = compressGeometry;
+        return this;
+    }
+
+    /**
+     * Stores the turn costs of each node sorted after the import, so they can be found via binary search, see
+     * {@link TurnCostStorage#sortEntries()}. The layout is stored in the graph, so this is only relevant for the import.
+     */
+    public GraphHopper setSortTurnCosts(boolean sortTurnCosts) {
+        ensureNotLoaded();
+        this.sortTurnCosts = sortTurnCosts;
+        return this;
+    }
+
+    /**
+     * Sets the number of threads that interpolate the elevations of bridges, tunnels and ferries after the import, see
+     * {@link EdgeElevationInterpolator#setThreads(int)}. The result does not depend on the number of threads.
+     */
+    public GraphHopper setElevationInterpolationThreads(int elevationInterpolationThreads) {
+        ensureNotLoaded();
+        this.elevationInterpolationThreads = elevationInterpolationThreads;
+        return this;
+    }
+
+    /**
+     * Stores the graph and the properties after every stage of the import: after the base graph is created, after the
+     * subnetworks are removed and after the LM or CH preparation of every profile. If the import is interrupted, the
+     * next call of importOrLoad continues after the last finished stage instead of reading the OSM file again.
+     */
+    public GraphHopper setResumableImport(boolean resumableImport) {
+        ensureNotLoaded();
+        this.resumableImport = resumableImport;
+        return this;
+    }
+
+    /**
+     * Verifies the checksums of all sections when a graph bundle is loaded. This reads the whole file, so it is done in
+     * the background and {@link #load()} does not wait for it, see {@link #getBundleVerification()}. The table of
+     * contents is always checked. Enabled by default.
+     */
+    public GraphHopper setVerifyBundle(boolean verifyBundle) {
+        ensureNotLoaded();
+        this.verifyBundle = verifyBundle;
+        return this;
+    }
+
+    /**
+     * Reads the memory mapped storages whose names match the given patterns in the background after {@link #load()}
+     * so they are in the page cache before the first requests need them, see {@link DataAccessWarmup}.
+     *
+     * @param patterns       the name patterns in the order the storages shall be read
+     * @param maxMBPerSecond limits the read throughput, use 0 to read as fast as possible
+     */
+    public GraphHopper setWarmup(List<String> patterns, int threads, double maxMBPerSecond) {
+        ensureNotLoaded();
+        this.warmupPatterns = patterns;
+        this.warmupThreads = threads;
+        this.warmupMaxMBPerSecond = maxMBPerSecond;
+        return this;
+    }
+
+    /**
+     * @return the verification of the graph bundle that was started by {@link #load()} or null if there is none. The
+     * graph should not be used for requests before it is valid.
+     */
+    public GraphBundleVerification getBundleVerification() {
+        return bundleVerification;
+    }
+
+    /**
+     * @return the warmup that was started by {@link #load()} or null if there is none
+     */
+    public DataAccessWarmup getWarmup() {
+        return warmup;
+    }
+
+    /**
+     * Copies the upward edges of every CH graph into flat arrays sorted by CH level after the CH graph was prepared,
+     * see {@link UpwardRoutingCHGraph}. The arrays are stored in the graph folder and loaded together with the CH
+     * graph. This makes CH queries faster for the price of additional memory.
+     */
+    public GraphHopper setUpwardCHGraphs(boolean upwardCHGraphs) {
+        ensureNotLoaded();
+        this.upwardCHGraphs = upwardCHGraphs;
+        return this;
+    }
+
+    /**
+     * Creates a {@link CustomizableCH} after the graph was imported or loads it with the graph. Requests with a custom
+     * model then use a CH graph that is customized for this custom model instead of the flexible mode. This only works
+     * for profiles without turn costs.
+     *
+     * @param threads   the number of threads used to customize the CH graph for a custom model
+     * @param cacheSize the number of customized CH graphs that are kept in memory
+     */
+    public GraphHopper setCustomizableCH(boolean enabled, int threads, int cacheSize) {
+        return setCustomizableCH(enabled, threads, cacheSize, customizableCHMaxConcurrent);
+    }
+
+    /**
+     * @param maxConcurrent the number of custom models that are customized at the same time. Requests with other new
+     *                      custom models use the flexible mode until one of the customizations is finished.
+     */
+    public GraphHopper setCustomizableCH(boolean enabled, int threads, int cacheSize, int maxConcurrent) {
+        ensureNotLoaded();
+        this.customizableCHEnabled = enabled;
+        this.customizableCHThreads = threads;
+        this.customizableCHCacheSize = cacheSize;
+        this.customizableCHMaxConcurrent = maxConcurrent;
+        return this;
+    }
+
+    /**
+     * @return the customizable CH or null if it is not enabled
+     */
+    public CustomizableCH getCustomizableCH() {
+        return customizableCH;
+    }
+
     /**
      * Configures the urban density classification. Each edge will be classified as 'rural','residential' or 'city', {@link UrbanDensity}
      *
@@ -222,6 +411,18 @@ public class GraphHopper {
         return this;
     }
 
+    /**
+     * Calculates the road densities for the urban density classification with a grid instead of exploring the graph
+     * around every edge. This is much faster for big graphs, but the classification is less exact.
+     *
+     * @see #setUrbanDensityCalculation
+     */
+    public GraphHopper setUrbanDensityGrid(boolean urbanDensityGrid) {
+        ensureNotLoaded();
+        this.urbanDensityGrid = urbanDensityGrid;
+        return this;
+    }
+
     /**
      * Only valid option for in-memory graph and if you e.g. want to disable store on flush for unit
      * tests. Specify storeOnFlush to true if you want that existing data will be loaded FROM disc
@@ -484,6 +685,19 @@ public class GraphHopper {
         customAreasDirectory = ghConfig.getString("custom_areas.directory", customAreasDirectory);
 
         defaultSegmentSize = ghConfig.getInt("graph.dataaccess.segment_size", defaultSegmentSize);
+        hilbertSort = ghConfig.getBool("graph.hilbert_sort", hilbertSort);
+        writeImportMetrics = ghConfig.getBool("import.metrics.enabled", writeImportMetrics);
+        importMetrics.setTagParserTiming(ghConfig.getBool("import.metrics.tag_parsers", importMetrics.isTagParserTiming()));
+        compressGeometry = ghConfig.getBool("graph.compress_geometry", compressGeometry);
+        sortTurnCosts = ghConfig.getBool("graph.sort_turn_costs", sortTurnCosts);
+        elevationInterpolationThreads = ghConfig.getInt("graph.elevation.interpolation_threads", elevationInterpolationThreads);
+        resumableImport = ghConfig.getBool("graph.resumable_import", resumableImport);
+        verifyBundle = ghConfig.getBool("graph.bundle.verify", verifyBundle);
+        upwardCHGraphs = ghConfig.getBool("routing.ch.upward_graph", upwardCHGraphs);
+        customizableCHEnabled = ghConfig.getBool("routing.ch.customizable", customizableCHEnabled);
+        customizableCHThreads = ghConfig.getInt("routing.ch.customizable.threads", customizableCHThreads);
+        customizableCHCacheSize = ghConfig.getInt("routing.ch.customizable.cache_size", customizableCHCacheSize);
+        customizableCHMaxConcurrent = ghConfig.getInt("routing.ch.customizable.max_concurrent", customizableCHMaxConcurrent);
 
         String daTypeString = ghConfig.getString("graph.dataaccess.default_type", ghConfig.getString("graph.dataaccess", "RAM_STORE"));
         dataAccessDefaultType = DAType.fromString(daTypeString);
@@ -493,6 +707,11 @@ public class GraphHopper {
             if (entry.getKey().startsWith("graph.dataaccess.mmap.preload."))
                 dataAccessConfig.put(entry.getKey().substring("graph.dataaccess.mmap.".length()), entry.getValue().toString());
         }
+        String warmupString = ghConfig.getString("graph.dataaccess.mmap.warmup", "");
+        warmupPatterns = warmupString.isEmpty() ? Collections.emptyList()
+                : Arrays.stream(warmupString.split(",")).map(String::trim).collect(Collectors.toList());
+        warmupThreads = ghConfig.getInt("graph.dataaccess.mmap.warmup.threads", warmupThreads);
+        warmupMaxMBPerSecond = ghConfig.getDouble("graph.dataaccess.mmap.warmup.max_mb_per_second", warmupMaxMBPerSecond);
 
         if (ghConfig.getBool("max_speed_calculator.enabled", false))
             maxSpeedCalculator = new MaxSpeedCalculator(MaxSpeedCalculator.createLegalDefaultSpeeds());
@@ -533,6 +752,7 @@ public class GraphHopper {
         osmReaderConfig.setElevationSmoothingRamerMax(ghConfig.getInt("graph.elevation.edge_smoothing.ramer.max_elevation", osmReaderConfig.getElevationSmoothingRamerMax()));
         osmReaderConfig.setLongEdgeSamplingDistance(ghConfig.getDouble("graph.elevation.long_edge_sampling_distance", osmReaderConfig.getLongEdgeSamplingDistance()));
         osmReaderConfig.setElevationMaxWayPointDistance(ghConfig.getDouble("graph.elevation.way_point_max_distance", osmReaderConfig.getElevationMaxWayPointDistance()));
+        osmReaderConfig.setElevationLookupThreads(ghConfig.getInt("graph.elevation.lookup_threads", osmReaderConfig.getElevationLookupThreads()));
         routerConfig.setElevationWayPointMaxDistance(ghConfig.getDouble("graph.elevation.way_point_max_distance", routerConfig.getElevationWayPointMaxDistance()));
         ElevationProvider elevationProvider = createElevationProvider(ghConfig);
         setElevationProvider(elevationProvider);
@@ -565,6 +785,10 @@ public class GraphHopper {
         osmReaderConfig.setPreferredLanguage(ghConfig.getString("datareader.preferred_language", osmReaderConfig.getPreferredLanguage()));
         osmReaderConfig.setMaxWayPointDistance(ghConfig.getDouble(Routing.INIT_WAY_POINT_MAX_DISTANCE, osmReaderConfig.getMaxWayPointDistance()));
         osmReaderConfig.setWorkerThreads(ghConfig.getInt("datareader.worker_threads", osmReaderConfig.getWorkerThreads()));
+        osmReaderConfig.setTagParserThreads(ghConfig.getInt("datareader.tag_parser_threads", osmReaderConfig.getTagParserThreads()));
+        osmReaderConfig.setNodeIdMap(ghConfig.getString("datareader.node_id_map", osmReaderConfig.getNodeIdMap()));
+        osmReaderConfig.setPooledPbfDecoding(ghConfig.getBool("datareader.pooled_pbf_decoding", osmReaderConfig.isPooledPbfDecoding()));
+        osmReaderConfig.setStoreOSMNodes(ghConfig.getBool("datareader.store_osm_nodes", osmReaderConfig.isStoreOSMNodes()));
 
         // index
         preciseIndexResolution = ghConfig.getInt("index.high_resolution", preciseIndexResolution);
@@ -576,6 +800,7 @@ public class GraphHopper {
         cityAreaRadius = ghConfig.getDouble("graph.urban_density.city_radius", cityAreaRadius);
         cityAreaSensitivity = ghConfig.getDouble("graph.urban_density.city_sensitivity", cityAreaSensitivity);
         urbanDensityCalculationThreads = ghConfig.getInt("graph.urban_density.threads", urbanDensityCalculationThreads);
+        urbanDensityGrid = ghConfig.getBool("graph.urban_density.grid", urbanDensityGrid);
 
         // routing
         routerConfig.setMaxVisitedNodes(ghConfig.getInt(Routing.INIT_MAX_VISITED_NODES, routerConfig.getMaxVisitedNodes()));
@@ -731,6 +956,9 @@ public class GraphHopper {
                     .setDAType(elevationDAType);
             if (!baseURL.isEmpty())
                 provider.setBaseURL(baseURL);
+            int maxTileCacheMB = ghConfig.getInt("graph.elevation.max_tile_cache_mb", 0);
+            if (maxTileCacheMB > 0)
+                provider.setMaxTileCacheMB(maxTileCacheMB);
         }
         return elevationProvider;
     }
@@ -802,6 +1030,7 @@ public class GraphHopper {
                 .set3D(hasElevation())
                 .withTurnCosts(encodingManager.needsTurnCostsSupport())
                 .setSegmentSize(defaultSegmentSize)
+                .setCompressedGeometry(compressGeometry)
                 .build();
         properties = new StorableProperties(directory);
         checkProfilesConsistency();
@@ -816,21 +1045,107 @@ public class GraphHopper {
             }
             ensureWriteAccess();
 
-            importOSM();
-            postImportOSM();
-            cleanUp();
+            String checkpoint = resumableImport ? loadCheckpoint() : "";
+            if (checkpoint.isEmpty()) {
+                try (ImportMetrics.Stage stage = importMetrics.start("import_osm")) {
+                    importOSM();
+                    stage.setCount("nodes", baseGraph.getNodes()).setCount("edges", baseGraph.getEdges());
+                }
+                postImportOSM();
+                if (resumableImport)
+                    writeCheckpoint(CHECKPOINT_BASE_GRAPH);
+            }
+            if (!checkpoint.equals(CHECKPOINT_SUBNETWORKS)) {
+                try (ImportMetrics.Stage stage = importMetrics.start("subnetworks")) {
+                    cleanUp();
+                    stage.setCount("nodes", baseGraph.getNodes()).setCount("edges", baseGraph.getEdges());
+                }
+                if (resumableImport)
+                    writeCheckpoint(CHECKPOINT_SUBNETWORKS);
+            }
 
             properties.put("profiles", getProfilesString());
             writeEncodingManagerToProperties();
 
+            if (resumableImport) {
+                chPreparationHandler.setFlushProperties(true);
+                lmPreparationHandler.setFlushProperties(true);
+            }
             postProcessing(closeEarly);
+            if (resumableImport)
+                properties.put(CHECKPOINT, CHECKPOINT_DONE);
             flush();
+            if (writeImportMetrics) {
+                File file = new File(ghLocation, "import_metrics.json");
+                importMetrics.writeJson(file);
+                logger.info("wrote the import metrics to " + file);
+            }
         } finally {
             if (lock != null)
                 lock.release();
         }
     }
 
+    /**
+     * Flushes the graph and the properties and records the given stage as finished.
+     */
+    private void writeCheckpoint(String stage) {
+        properties.put("profiles", getProfilesString());
+        writeEncodingManagerToProperties();
+        properties.put(CHECKPOINT, stage);
+        StopWatch sw = StopWatch.started();
+        baseGraph.flush();
+        properties.flush();
+        logger.info("import checkpoint '" + stage + "' written, took: " + sw.stop().getSeconds() + "s");
+    }
+
+    /**
+     * Loads the graph of an interrupted import.
+     *
+     * @return the last finished stage or an empty string if there is no interrupted import
+     */
+    private String loadCheckpoint() {
+        if (!properties.loadExisting())
+            return "";
+        String checkpoint = properties.get(CHECKPOINT);
+        if (!checkpoint.equals(CHECKPOINT_BASE_GRAPH) && !checkpoint.equals(CHECKPOINT_SUBNETWORKS))
+            throw new IllegalStateException("Cannot import into " + ghLocation + ", it already contains a graph");
+        // the stored encoded values must be used, because they contain the maximum values that were found during the import
+        EncodingManager stored = EncodingManager.fromProperties(properties);
+        if (!properties.get("profiles").equals(getProfilesString())
+                || stored.getBytesForFlags() != encodingManager.getBytesForFlags()
+                || !getNames(stored.getEncodedValues()).equals(getNames(encodingManager.getEncodedValues())))
+            throw new IllegalStateException("Cannot resume the import in " + ghLocation + ", because the profiles or "
+                    + "encoded values have changed. Change the configuration to match the graph or delete the folder.");
+        encodingManager = stored;
+        if (!baseGraph.loadExisting())
+            throw new IllegalStateException("Cannot resume the import, the graph in " + ghLocation + " is incomplete");
+        logger.info("resuming the import in " + ghLocation + " after the stage '" + checkpoint + "'");
+
+        // the storage of a preparation that was not finished might have been written partially
+        for (CHProfile chProfile : chPreparationHandler.getCHProfiles()) {
+            if (properties.get(CH.PREPARE + "date." + chProfile.getProfile()).isEmpty())
+                removeFiles("nodes_ch_" + chProfile.getProfile(), "shortcuts_" + chProfile.getProfile(), "upward_ch_" + chProfile.getProfile());
+        }
+        for (LMProfile lmProfile : lmPreparationHandler.getLMProfiles()) {
+            if (properties.get(Landmark.PREPARE + "date." + lmProfile.getProfile()).isEmpty())
+                removeFiles("landmarks_" + lmProfile.getProfile(), "landmarks_subnetwork_" + lmProfile.getProfile());
+        }
+        return checkpoint;
+    }
+
+    private static List<String> getNames(List<EncodedValue> encodedValues) {
+        return encodedValues.stream().map(EncodedValue::getName).collect(Collectors.toList());
+    }
+
+    private void removeFiles(String... names) {
+        for (String name : names) {
+            File file = new File(baseGraph.getDirectory().getLocation(), name);
+            if (file.exists() && !file.delete())
+                throw new IllegalStateException("Cannot remove " + file);
+        }
+    }
+
     protected void prepareImport() {
         Map<String, PMap> encodedValuesWithProps = parseEncodedValueString(encodedValuesString);
         NameValidator nameValidator = s -> importRegistry.createImportUnit(s) != null;
@@ -877,6 +1192,7 @@ public class GraphHopper {
         }
         encodingManager = buildEncodingManager(encodedValuesWithProps, activeImportUnits, restrictionVehicleTypesByProfile);
         osmParsers = buildOSMParsers(encodedValuesWithProps, activeImportUnits, restrictionVehicleTypesByProfile, osmReaderConfig.getIgnoredHighways());
+        osmParsersFactory = () -> buildOSMParsers(encodedValuesWithProps, activeImportUnits, restrictionVehicleTypesByProfile, osmReaderConfig.getIgnoredHighways());
     }
 
     protected void postImportOSM() {
@@ -888,12 +1204,36 @@ public class GraphHopper {
         calculateUrbanDensity();
 
         if (maxSpeedCalculator != null) {
-            maxSpeedCalculator.fillMaxSpeed(getBaseGraph(), encodingManager);
-            maxSpeedCalculator.close();
+            try (ImportMetrics.Stage stage = importMetrics.start("max_speed")) {
+                maxSpeedCalculator.fillMaxSpeed(getBaseGraph(), encodingManager);
+                maxSpeedCalculator.close();
+            }
         }
 
         if (hasElevation())
-            interpolateBridgesTunnelsAndFerries();
+            try (ImportMetrics.Stage stage = importMetrics.start("elevation_interpolation")) {
+                interpolateBridgesTunnelsAndFerries();
+            }
+
+        // this must happen before the subnetwork removal and everything else that refers to node or edge ids
+        if (hilbertSort)
+            try (ImportMetrics.Stage stage = importMetrics.start("hilbert_sort")) {
+                int[] newEdgeIds = HilbertCurveSorter.sort(baseGraph);
+                if (osmNodeStorage != null)
+                    osmNodeStorage.renumberEdges(newEdgeIds);
+            }
+
+        if (sortTurnCosts && encodingManager.needsTurnCostsSupport())
+            baseGraph.getTurnCostStorage().sortEntries();
+
+        if (osmNodeStorage != null) {
+            // the OSM nodes are only needed to apply OSM changes
+            try (ImportMetrics.Stage stage = importMetrics.start("osm_nodes_index")) {
+                osmNodeStorage.buildIndex();
+            }
+            osmNodeStorage.flush();
+            osmNodeStorage.close();
+        }
     }
 
     protected void importOSM() {
@@ -901,6 +1241,34 @@ public class GraphHopper {
             throw new IllegalStateException("Couldn't load from existing folder: " + ghLocation
                     + " but also cannot use file for DataReader as it wasn't specified!");
 
+        AreaIndex<CustomArea> areaIndex = createAreaIndex();
+        logger.info("start creating graph from " + osmFile);
+        OSMReader reader = new OSMReader(baseGraph.getBaseGraph(), osmParsers, osmReaderConfig).setFile(_getOSMFile()).
+                setAreaIndex(areaIndex).
+                setElevationProvider(eleProvider).
+                setCountryRuleFactory(countryRuleFactory).
+                setOSMParsersFactory(osmParsersFactory).
+                setImportMetrics(importMetrics);
+        logger.info("using " + getBaseGraphString() + ", memory:" + getMemInfo());
+
+        createBaseGraphAndProperties();
+        if (osmReaderConfig.isStoreOSMNodes()) {
+            osmNodeStorage = new OSMNodeStorage(baseGraph.getDirectory()).create(1000);
+            reader.setOSMNodeStorage(osmNodeStorage);
+        }
+
+        try {
+            reader.readGraph();
+        } catch (IOException ex) {
+            throw new RuntimeException("Cannot read file " + getOSMFile(), ex);
+        }
+        DateFormat f = createFormatter();
+        properties.put("datareader.import.date", f.format(new Date()));
+        if (reader.getDataDate() != null)
+            properties.put("datareader.data.date", f.format(reader.getDataDate()));
+    }
+
+    private AreaIndex<CustomArea> createAreaIndex() {
         List<CustomArea> customAreas = readCountries();
         if (isEmpty(customAreasDirectory)) {
             logger.info("No custom areas are used, custom_areas.directory not given");
@@ -915,25 +1283,115 @@ public class GraphHopper {
         } else {
             logger.info("Applying rules for the following countries: {}", countryRuleFactory.getCountryToRuleMap().keySet());
         }
+        return areaIndex;
+    }
 
-        logger.info("start creating graph from " + osmFile);
-        OSMReader reader = new OSMReader(baseGraph.getBaseGraph(), osmParsers, osmReaderConfig).setFile(_getOSMFile()).
-                setAreaIndex(areaIndex).
-                setElevationProvider(eleProvider).
-                setCountryRuleFactory(countryRuleFactory);
-        logger.info("using " + getBaseGraphString() + ", memory:" + getMemInfo());
-
-        createBaseGraphAndProperties();
-
+    /**
+     * Applies an OSM change file (.osc or .osc.gz) to the graph in the graph folder, see {@link OSMChangeApplier}.
+     * This must be called instead of loading the graph and the graph is closed afterwards. The CH and LM preparations
+     * of the profiles whose weights changed, or that can use new edges, are removed, and they are prepared again when
+     * the graph is loaded the next time. The subnetworks are only checked again around the changed edges. The graph must have been imported with the encoded value osm_way_id, datareader.store_osm_nodes and the
+     * same configuration.
+     */
+    public OSMChangeApplier.Result applyOSMChanges(String changeFile) {
+        if (fullyLoaded)
+            throw new IllegalStateException("OSM changes must be applied before the graph is loaded");
+        ensureWriteAccess();
+        OSMChange change;
         try {
-            reader.readGraph();
+            change = OSMChange.read(new File(changeFile));
         } catch (IOException ex) {
-            throw new RuntimeException("Cannot read file " + getOSMFile(), ex);
+            throw new RuntimeException("Cannot read file " + changeFile, ex);
+        }
+        GHDirectory directory = new GHDirectory(ghLocation, dataAccessDefaultType);
+        directory.configure(dataAccessConfig);
+        GHLock lock = null;
+        try {
+            if (directory.getDefaultType().isStoring()) {
+                lockFactory.setLockDir(new File(ghLocation));
+                lock = lockFactory.create(fileLockName, true);
+                if (!lock.tryLock())
+                    throw new RuntimeException("To avoid multiple writers we need to obtain a write lock but it failed. In " + ghLocation, lock.getObtainFailedReason());
+            }
+            properties = new StorableProperties(directory);
+            if (!properties.loadExisting() || !properties.get(CHECKPOINT).isEmpty() && !properties.get(CHECKPOINT).equals(CHECKPOINT_DONE))
+                throw new IllegalStateException("Cannot apply OSM changes, there is no complete graph in " + ghLocation);
+            if (!properties.get("profiles").equals(getProfilesString()))
+                throw new IllegalStateException("Cannot apply OSM changes, the profiles do not match the graph in " + ghLocation);
+            // the stored encoded values must be used, because they contain the maximum values that were found during
+            // the import. the tag parsers are created for them as well.
+            EncodingManager stored = EncodingManager.fromProperties(properties);
+            prepareImport();
+            encodingManager = stored;
+            if (maxSpeedCalculator != null)
+                // the estimated max speeds are not updated, so the parser does not need to store anything
+                maxSpeedCalculator.createDataAccessForParser(new RAMDirectory());
+            OSMParsers parsers = osmParsersFactory.get();
+            baseGraph = new BaseGraph.Builder(encodingManager)
+                    .setDir(directory)
+                    .set3D(hasElevation())
+                    .withTurnCosts(encodingManager.needsTurnCostsSupport())
+                    .setSegmentSize(defaultSegmentSize)
+                    .build();
+            if (!baseGraph.loadExisting())
+                throw new IllegalStateException("Cannot apply OSM changes, the graph in " + ghLocation + " is incomplete");
+            checkProfilesConsistency();
+
+            Map<String, Weighting> weightings = new LinkedHashMap<>();
+            profilesByName.values().forEach(profile -> weightings.put(profile.getName(), createWeighting(profile, new PMap())));
+            OSMReader reader = new OSMReader(baseGraph, parsers, osmReaderConfig).
+                    setAreaIndex(createAreaIndex()).
+                    setElevationProvider(eleProvider).
+                    setCountryRuleFactory(countryRuleFactory);
+            osmNodeStorage = new OSMNodeStorage(directory);
+            if (!osmNodeStorage.loadExisting())
+                throw new IllegalStateException("Cannot apply OSM changes, the graph in " + ghLocation + " was imported without datareader.store_osm_nodes");
+            StopWatch sw = StopWatch.started();
+            OSMChangeApplier.Result result = new OSMChangeApplier(reader, baseGraph, parsers, encodingManager, osmNodeStorage, weightings).apply(change);
+            logger.info("applied OSM changes from " + changeFile + ", " + result + ", took: " + sw.stop().getSeconds() + "s");
+
+            // the preparations of the other profiles stay valid, because they cannot use the new edges and nodes
+            Set<String> outdated = result.getChangedWeightings();
+            if (!result.getChangedEdges().isEmpty()) {
+                // the new edges might not be connected to the rest of the graph and removed edges might disconnect others
+                PrepareRoutingSubnetworks preparation = new PrepareRoutingSubnetworks(baseGraph, buildSubnetworkRemovalJobs());
+                preparation.setMinNetworkSize(minNetworkSize);
+                preparation.updateSubnetworks(result.getChangedEdges());
+            }
+            if (result.isTopologyChanged())
+                removeFiles("cch");
+            if (result.isLocationIndexOutdated())
+                removeFiles("location_index");
+            for (CHProfile chProfile : chPreparationHandler.getCHProfiles()) {
+                String name = chProfile.getProfile();
+                if (outdated.contains(name)) {
+                    properties.remove(CH.PREPARE + "date." + name);
+                    properties.remove("graph.profiles.ch." + name + ".version");
+                    removeFiles("nodes_ch_" + name, "shortcuts_" + name, "upward_ch_" + name);
+                }
+            }
+            for (LMProfile lmProfile : lmPreparationHandler.getLMProfiles()) {
+                String name = lmProfile.getProfile();
+                if (!lmProfile.usesOtherPreparation() && outdated.contains(name)) {
+                    properties.remove(Landmark.PREPARE + "date." + name);
+                    properties.remove("graph.profiles.lm." + name + ".version");
+                    removeFiles("landmarks_" + name, "landmarks_subnetwork_" + name);
+                }
+            }
+            if (!outdated.isEmpty())
+                logger.info("the preparations of the following profiles are outdated and will be prepared again: " + outdated);
+
+            writeEncodingManagerToProperties();
+            properties.put("datareader.update.date", createFormatter().format(new Date()));
+            baseGraph.flush();
+            osmNodeStorage.flush();
+            properties.flush();
+            return result;
+        } finally {
+            if (lock != null)
+                lock.release();
+            close();
         }
-        DateFormat f = createFormatter();
-        properties.put("datareader.import.date", f.format(new Date()));
-        if (reader.getDataDate() != null)
-            properties.put("datareader.data.date", f.format(reader.getDataDate()));
     }
 
     protected void createBaseGraphAndProperties() {
@@ -953,8 +1411,11 @@ public class GraphHopper {
                 throw new IllegalArgumentException("Urban density calculation requires " + RoadClassLink.KEY);
             EnumEncodedValue<RoadClass> roadClassEnc = encodingManager.getEnumEncodedValue(RoadClass.KEY, RoadClass.class);
             BooleanEncodedValue roadClassLinkEnc = encodingManager.getBooleanEncodedValue(RoadClassLink.KEY);
-            UrbanDensityCalculator.calcUrbanDensity(baseGraph, urbanDensityEnc, roadClassEnc,
-                    roadClassLinkEnc, residentialAreaRadius, residentialAreaSensitivity, cityAreaRadius, cityAreaSensitivity, urbanDensityCalculationThreads);
+            try (ImportMetrics.Stage stage = importMetrics.start("urban_density")) {
+                UrbanDensityCalculator.calcUrbanDensity(baseGraph, urbanDensityEnc, roadClassEnc,
+                        roadClassLinkEnc, residentialAreaRadius, residentialAreaSensitivity, cityAreaRadius, cityAreaSensitivity, urbanDensityCalculationThreads,
+                        urbanDensityGrid);
+            }
         }
     }
 
@@ -990,7 +1451,7 @@ public class GraphHopper {
     }
 
     /**
-     * Load from existing graph folder.
+     * Load from existing graph folder or from a graph bundle, i.e. a file ending with .ghb, see {@link GraphBundle}.
      */
     public boolean load() {
         if (isEmpty(ghLocation))
@@ -1000,7 +1461,11 @@ public class GraphHopper {
             throw new IllegalStateException("graph is already successfully loaded");
 
         File tmpFileOrFolder = new File(ghLocation);
-        if (!tmpFileOrFolder.isDirectory() && tmpFileOrFolder.exists()) {
+        boolean bundle = ghLocation.endsWith(".ghb");
+        if (bundle) {
+            if (!tmpFileOrFolder.isFile())
+                throw new IllegalArgumentException("GraphHopperLocation ends with .ghb but the graph bundle does not exist: " + ghLocation);
+        } else if (!tmpFileOrFolder.isDirectory() && tmpFileOrFolder.exists()) {
             throw new IllegalArgumentException("GraphHopperLocation cannot be an existing file. Has to be either non-existing or a folder.");
         } else {
             File compressed = new File(ghLocation + ".ghz");
@@ -1016,19 +1481,27 @@ public class GraphHopper {
 
         // todo: this does not really belong here, we abuse the load method to derive the dataAccessDefaultType setting from others
         if (!allowWrites && dataAccessDefaultType.isMMap())
-            dataAccessDefaultType = DAType.MMAP_RO;
+            dataAccessDefaultType = dataAccessDefaultType.isLarge() ? DAType.MMAP_LARGE_RO : DAType.MMAP_RO;
 
         if (!new File(ghLocation).exists())
             // there is just nothing to load
             return false;
 
-        GHDirectory directory = new GHDirectory(ghLocation, dataAccessDefaultType);
-        directory.configure(dataAccessConfig);
+        Directory directory;
+        if (bundle) {
+            directory = new BundleDirectory(ghLocation);
+            if (verifyBundle)
+                bundleVerification = new GraphBundleVerification(ghLocation).start();
+        } else {
+            GHDirectory ghDirectory = new GHDirectory(ghLocation, dataAccessDefaultType);
+            ghDirectory.configure(dataAccessConfig);
+            directory = ghDirectory;
+        }
         GHLock lock = null;
         try {
             // create locks only if writes are allowed, if they are not allowed a lock cannot be created
-            // (e.g. on a read only filesystem locks would fail)
-            if (directory.getDefaultType().isStoring() && isAllowWrites()) {
+            // (e.g. on a read only filesystem locks would fail). a bundle is never modified, so it needs no lock
+            if (!bundle && directory.getDefaultType().isStoring() && isAllowWrites()) {
                 lockFactory.setLockDir(new File(ghLocation));
                 lock = lockFactory.create(fileLockName, false);
                 if (!lock.tryLock())
@@ -1039,6 +1512,15 @@ public class GraphHopper {
                 // the -gh folder exists, but there is no properties file. it might be just empty, so let's act as if
                 // the import did not run yet or is not complete for some reason
                 return false;
+            String checkpoint = properties.get(CHECKPOINT);
+            if (!checkpoint.isEmpty() && !checkpoint.equals(CHECKPOINT_DONE)) {
+                properties.close();
+                if (resumableImport)
+                    // the import will be resumed in process
+                    return false;
+                throw new IllegalStateException("The import into " + ghLocation + " was interrupted after the stage '"
+                        + checkpoint + "'. Enable graph.resumable_import to resume it or delete the folder.");
+            }
             encodingManager = EncodingManager.fromProperties(properties);
             baseGraph = new BaseGraph.Builder(encodingManager)
                     .setDir(directory)
@@ -1057,7 +1539,11 @@ public class GraphHopper {
             checkProfilesConsistency();
 
             postProcessing(false);
-            directory.loadMMap();
+            if (directory instanceof GHDirectory)
+                ((GHDirectory) directory).loadMMap();
+            if (!warmupPatterns.isEmpty())
+                warmup = new DataAccessWarmup(DataAccessWarmup.select(directory.getDAs().values(), warmupPatterns),
+                        warmupThreads, warmupMaxMBPerSecond).start();
             setFullyLoaded();
             return true;
         } finally {
@@ -1099,6 +1585,16 @@ public class GraphHopper {
                 throw new IllegalArgumentException("CH profile references unknown profile '" + chProfile.getProfile() + "'");
             }
         }
+        Map<String, CHProfile> chProfileMap = new LinkedHashMap<>();
+        chPreparationHandler.getCHProfiles().forEach(p -> chProfileMap.put(p.getProfile(), p));
+        for (CHProfile chProfile : chPreparationHandler.getCHProfiles()) {
+            if (chProfile.usesOtherNodeOrdering() && !chProfileMap.containsKey(chProfile.getNodeOrderingProfile())) {
+                throw new IllegalArgumentException("Unknown CH profile '" + chProfile.getNodeOrderingProfile() + "' in CH profile '" + chProfile.getProfile() + "' cannot be used as node_ordering_profile");
+            }
+            if (chProfile.usesOtherNodeOrdering() && chProfileMap.get(chProfile.getNodeOrderingProfile()).usesOtherNodeOrdering()) {
+                throw new IllegalArgumentException("Cannot use '" + chProfile.getNodeOrderingProfile() + "' as node_ordering_profile for CH profile '" + chProfile.getProfile() + "', because it uses the node ordering of another profile itself.");
+            }
+        }
         Map<String, LMProfile> lmProfileMap = new LinkedHashMap<>(lmPreparationHandler.getLMProfiles().size());
         for (LMProfile lmProfile : lmPreparationHandler.getLMProfiles()) {
             LMProfile previous = lmProfileMap.put(lmProfile.getProfile(), lmProfile);
@@ -1130,11 +1626,7 @@ public class GraphHopper {
         List<CHConfig> chConfigs = new ArrayList<>();
         for (CHProfile chProfile : chProfiles) {
             Profile profile = profilesByName.get(chProfile.getProfile());
-            if (profile.hasTurnCosts()) {
-                chConfigs.add(CHConfig.edgeBased(profile.getName(), createWeighting(profile, new PMap())));
-            } else {
-                chConfigs.add(CHConfig.nodeBased(profile.getName(), createWeighting(profile, new PMap())));
-            }
+            chConfigs.add(new CHConfig(profile.getName(), createWeighting(profile, new PMap()), profile.hasTurnCosts(), chProfile.isCompactShortcuts()));
         }
         return chConfigs;
     }
@@ -1167,7 +1659,9 @@ public class GraphHopper {
      */
     protected void postProcessing(boolean closeEarly) {
         calcChecksums();
-        initLocationIndex();
+        try (ImportMetrics.Stage stage = importMetrics.start("location_index")) {
+            initLocationIndex();
+        }
         importPublicTransit();
 
         if (closeEarly) {
@@ -1179,14 +1673,50 @@ public class GraphHopper {
         }
 
         if (lmPreparationHandler.isEnabled())
-            loadOrPrepareLM(closeEarly);
+            try (ImportMetrics.Stage stage = importMetrics.start("lm")) {
+                loadOrPrepareLM(closeEarly);
+                stage.setCount("profiles", landmarks.size());
+            }
 
         if (closeEarly)
             // we needed the location index for the LM preparation, but we don't need it for CH
             locationIndex.close();
 
         if (chPreparationHandler.isEnabled())
-            loadOrPrepareCH(closeEarly);
+            try (ImportMetrics.Stage stage = importMetrics.start("ch")) {
+                loadOrPrepareCH(closeEarly);
+                stage.setCount("profiles", chGraphs.size());
+            }
+
+        if (customizableCHEnabled && !closeEarly)
+            try (ImportMetrics.Stage stage = importMetrics.start("customizable_ch")) {
+                if (!baseGraph.isFrozen())
+                    baseGraph.freeze();
+                customizableCH = loadOrCreateCustomizableCH()
+                        .setCacheSize(customizableCHCacheSize)
+                        .setMaxConcurrentCustomizations(customizableCHMaxConcurrent);
+                stage.setCount("arcs", customizableCH.getArcs());
+            }
+    }
+
+    private CustomizableCH loadOrCreateCustomizableCH() {
+        Directory dir = baseGraph.getDirectory();
+        CustomizableCH cch = CustomizableCH.load(baseGraph.getBaseGraph(), dir.create("cch"), customizableCHThreads);
+        if (cch == null) {
+            cch = CustomizableCH.fromGraph(baseGraph.getBaseGraph(), customizableCHThreads);
+            if (allowWrites) {
+                // the file might exist for a different graph
+                dir.remove("cch");
+                cch.store(dir.create("cch"));
+            } else {
+                logger.warn("the customizable CH does not exist and the graph folder is read-only, it was only created in memory");
+            }
+        } else {
+            logger.info("loaded customizable CH, arcs: " + Helper.nf(cch.getArcs()));
+        }
+        // the arrays were copied to the heap
+        dir.close("cch");
+        return cch;
     }
 
     protected void importPublicTransit() {
@@ -1196,15 +1726,18 @@ public class GraphHopper {
         if (encodingManager.hasEncodedValue(RoadEnvironment.KEY)) {
             EnumEncodedValue<RoadEnvironment> roadEnvEnc = encodingManager.getEnumEncodedValue(RoadEnvironment.KEY, RoadEnvironment.class);
             StopWatch sw = new StopWatch().start();
-            new EdgeElevationInterpolator(baseGraph.getBaseGraph(), roadEnvEnc, RoadEnvironment.TUNNEL).execute();
+            new EdgeElevationInterpolator(baseGraph.getBaseGraph(), roadEnvEnc, RoadEnvironment.TUNNEL)
+                    .setThreads(elevationInterpolationThreads).execute();
             float tunnel = sw.stop().getSeconds();
             sw = new StopWatch().start();
-            new EdgeElevationInterpolator(baseGraph.getBaseGraph(), roadEnvEnc, RoadEnvironment.BRIDGE).execute();
+            new EdgeElevationInterpolator(baseGraph.getBaseGraph(), roadEnvEnc, RoadEnvironment.BRIDGE)
+                    .setThreads(elevationInterpolationThreads).execute();
             float bridge = sw.stop().getSeconds();
             // The SkadiProvider contains bathymetric data. For ferries this can result in bigger elevation changes
             // See #2098 for mor information
             sw = new StopWatch().start();
-            new EdgeElevationInterpolator(baseGraph.getBaseGraph(), roadEnvEnc, RoadEnvironment.FERRY).execute();
+            new EdgeElevationInterpolator(baseGraph.getBaseGraph(), roadEnvEnc, RoadEnvironment.FERRY)
+                    .setThreads(elevationInterpolationThreads).execute();
             logger.info("Bridge interpolation " + (int) bridge + "s, " + "tunnel interpolation " + (int) tunnel + "s, ferry interpolation " + (int) sw.stop().getSeconds() + "s");
         }
     }
@@ -1234,14 +1767,15 @@ public class GraphHopper {
             throw new IllegalStateException("Location index not initialized");
 
         return doCreateRouter(baseGraph, encodingManager, locationIndex, profilesByName, pathBuilderFactory,
-                trMap, routerConfig, createWeightingFactory(), chGraphs, landmarks);
+                trMap, routerConfig, createWeightingFactory(), chGraphs, landmarks, customizableCH);
     }
 
     protected Router doCreateRouter(BaseGraph baseGraph, EncodingManager encodingManager, LocationIndex locationIndex, Map<String, Profile> profilesByName,
                                     PathDetailsBuilderFactory pathBuilderFactory, TranslationMap trMap, RouterConfig routerConfig,
-                                    WeightingFactory weightingFactory, Map<String, RoutingCHGraph> chGraphs, Map<String, LandmarkStorage> landmarks) {
+                                    WeightingFactory weightingFactory, Map<String, RoutingCHGraph> chGraphs, Map<String, LandmarkStorage> landmarks,
+                                    CustomizableCH customizableCH) {
         return new Router(baseGraph, encodingManager, locationIndex, profilesByName, pathBuilderFactory,
-                trMap, routerConfig, weightingFactory, chGraphs, landmarks
+                trMap, routerConfig, weightingFactory, chGraphs, landmarks, customizableCH
         );
     }
 
@@ -1336,10 +1870,37 @@ public class GraphHopper {
                 PrepareContractionHierarchies.Result res = prepared.get(profile.getProfile());
                 chGraphs.put(profile.getProfile(), RoutingCHGraphImpl.fromGraph(baseGraph.getBaseGraph(), res.getCHStorage(), res.getCHConfig()));
             } else if (loaded.containsKey(profile.getProfile())) {
+                // the version is still missing if the preparation was done before an import was resumed
+                if (resumableImport && getCHProfileVersion(profile.getProfile()).isEmpty())
+                    setCHProfileVersion(profile.getProfile(), profilesByName.get(profile.getProfile()).getVersion());
                 chGraphs.put(profile.getProfile(), loaded.get(profile.getProfile()));
             } else
                 throw new IllegalStateException("CH graph should be either loaded or prepared: " + profile.getProfile());
         }
+        if (upwardCHGraphs) {
+            if (closeEarly)
+                // the new preparations are closed already, so their upward edges are built when the graph is loaded
+                prepared.keySet().forEach(profile -> removeFiles("upward_ch_" + profile));
+            else
+                chGraphs.replaceAll((profile, chGraph) -> loadOrCreateUpwardCHGraph(profile, chGraph, prepared.containsKey(profile)));
+        }
+    }
+
+    private RoutingCHGraph loadOrCreateUpwardCHGraph(String profile, RoutingCHGraph chGraph, boolean prepared) {
+        UpwardCHStorage storage = new UpwardCHStorage(baseGraph.getDirectory(), profile, baseGraph.getSegmentSize());
+        // the upward edges of a new preparation must be built again, even if there are some from an earlier one
+        if (prepared || !storage.loadExisting()) {
+            if (!allowWrites) {
+                logger.warn("the upward CH graph of " + profile + " does not exist and the graph folder is read-only, building it in memory");
+                storage = new UpwardCHStorage(new RAMDirectory(), profile, baseGraph.getSegmentSize());
+            }
+            StopWatch sw = StopWatch.started();
+            storage.build(chGraph);
+            if (allowWrites)
+                storage.flush();
+            logger.info("built upward CH graph of " + profile + ", " + storage.toDetailsString() + ", took: " + sw.stop().getSeconds() + "s");
+        }
+        return new UpwardRoutingCHGraph(chGraph, storage);
     }
 
     protected Map<String, PrepareContractionHierarchies.Result> prepareCH(boolean closeEarly, List<CHConfig> configsToPrepare) {
@@ -1378,8 +1939,12 @@ public class GraphHopper {
             else if (preparedLMS.isPresent()) {
                 setLMProfileVersion(lmp.getProfile(), profilesByName.get(lmp.getProfile()).getVersion());
                 landmarks.put(lmp.getProfile(), preparedLMS.get().getLandmarkStorage());
-            } else
-                loadedLMS.ifPresent(landmarkStorage -> landmarks.put(lmp.getProfile(), landmarkStorage));
+            } else if (loadedLMS.isPresent()) {
+                // the version is still missing if the preparation was done before an import was resumed
+                if (resumableImport && getLMProfileVersion(lmp.getProfile()).isEmpty())
+                    setLMProfileVersion(lmp.getProfile(), profilesByName.get(lmp.getProfile()).getVersion());
+                landmarks.put(lmp.getProfile(), loadedLMS.get());
+            }
         }
     }
 
@@ -1426,6 +1991,8 @@ public class GraphHopper {
      * remove the files created in graphhopperLocation you have to call clean().
      */
     public void close() {
+        if (warmup != null)
+            warmup.stop();
         if (baseGraph != null)
             baseGraph.close();
         if (properties != null)
@@ -1433,6 +2000,10 @@ public class GraphHopper {
 
         chGraphs.values().forEach(RoutingCHGraph::close);
         landmarks.values().forEach(LandmarkStorage::close);
+        if (customizableCH != null)
+            customizableCH.close();
+        if (osmNodeStorage != null && !osmNodeStorage.isClosed())
+            osmNodeStorage.close();
 
         if (locationIndex != null)
             locationIndex.close();
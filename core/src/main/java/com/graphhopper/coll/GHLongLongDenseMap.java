@@ -0,0 +1,165 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.coll;
+
+import com.graphhopper.storage.DAType;
+import com.graphhopper.storage.DataAccess;
+import com.graphhopper.storage.Directory;
+import com.graphhopper.util.Helper;
+
+import java.util.Arrays;
+
+/**
+ * A LongLongMap for keys that are mostly dense, like OSM node IDs. The key space is split into pages of
+ * {@link #PAGE_SIZE} keys and a page is allocated in a DataAccess as soon as one of its keys is used. The values are
+ * stored with 5 bytes at the position of the key within its page, so there is no per-entry overhead, but empty slots
+ * of allocated pages are wasted. When the DataAccess is memory mapped the values are stored off-heap and the operating
+ * system can spill them to disk, only the page directory (4 bytes per page) remains on the heap.
+ * <p>
+ * Negative keys and keys that are too large for the page directory are stored in a {@link GHLongLongBTree}.
+ */
+public class GHLongLongDenseMap implements LongLongMap {
+    static final int PAGE_BITS = 16;
+    static final int PAGE_SIZE = 1 << PAGE_BITS;
+    // every page stores the lower 4 bytes of all values followed by the highest byte of all values
+    private static final int PAGE_BYTES = 5 * PAGE_SIZE;
+    private static final long MAX_DENSE_KEY = 1L << 40;
+    private static final int NO_PAGE = -1;
+    private final Directory dir;
+    private final DataAccess da;
+    private final long emptyValue;
+    private final long maxValue = (1L << 39) - 1;
+    private final GHLongLongBTree sparse;
+    private int[] pages = new int[0];
+    private int pageCount;
+    private long size;
+
+    /**
+     * @param emptyValue the value that is returned for keys that were not set. It cannot be stored.
+     */
+    public GHLongLongDenseMap(Directory dir, String name, DAType type, long emptyValue) {
+        this.dir = dir;
+        this.emptyValue = emptyValue;
+        // the pages are a multiple of 4 bytes, so the ints never cross a segment
+        da = dir.create(name, type).create(PAGE_BYTES);
+        sparse = new GHLongLongBTree(200, 5, emptyValue);
+    }
+
+    @Override
+    public long put(long key, long value) {
+        if (key < 0 || key >= MAX_DENSE_KEY)
+            return sparse.put(key, value);
+        if (value == emptyValue)
+            throw new IllegalArgumentException("Value cannot be the 'empty value' " + emptyValue);
+
+        int page = getOrCreatePage(key);
+        long old = get(page, key);
+        set(page, key, value);
+        if (old == emptyValue)
+            size++;
+        return old;
+    }
+
+    @Override
+    public long get(long key) {
+        if (key < 0 || key >= MAX_DENSE_KEY)
+            return sparse.get(key);
+        int pageIndex = (int) (key >>> PAGE_BITS);
+        if (pageIndex >= pages.length || pages[pageIndex] == NO_PAGE)
+            return emptyValue;
+        return get(pages[pageIndex], key);
+    }
+
+    private long get(int page, long key) {
+        long pointer = (long) page * PAGE_BYTES;
+        int offset = (int) (key & (PAGE_SIZE - 1));
+        int low = da.getInt(pointer + 4L * offset);
+        byte high = da.getByte(pointer + 4L * PAGE_SIZE + offset);
+        // zero means empty, so the values are stored relative to the empty value. the high byte keeps the sign
+        long stored = ((long) high << 32) | (low & 0xFFFF_FFFFL);
+        return stored + emptyValue;
+    }
+
+    private void set(int page, long key, long value) {
+        long pointer = (long) page * PAGE_BYTES;
+        int offset = (int) (key & (PAGE_SIZE - 1));
+        long stored = value - emptyValue;
+        if (stored > maxValue || stored < -maxValue - 1)
+            throw new IllegalArgumentException("Value " + value + " exceeded max value: " + (maxValue + emptyValue)
+                    + " or min value: " + (-maxValue - 1 + emptyValue));
+        da.setInt(pointer + 4L * offset, (int) stored);
+        da.setByte(pointer + 4L * PAGE_SIZE + offset, (byte) (stored >> 32));
+    }
+
+    private int getOrCreatePage(long key) {
+        int pageIndex = (int) (key >>> PAGE_BITS);
+        if (pageIndex >= pages.length) {
+            int oldLength = pages.length;
+            pages = Arrays.copyOf(pages, Math.max(pageIndex + 1, oldLength + (oldLength >> 1)));
+            Arrays.fill(pages, oldLength, pages.length, NO_PAGE);
+        }
+        if (pages[pageIndex] == NO_PAGE) {
+            // new pages are filled with zeros, i.e. they are empty
+            da.ensureCapacity((long) (pageCount + 1) * PAGE_BYTES);
+            pages[pageIndex] = pageCount++;
+        }
+        return pages[pageIndex];
+    }
+
+    @Override
+    public long getSize() {
+        return size + sparse.getSize();
+    }
+
+    @Override
+    public long getMaxValue() {
+        // the values are stored relative to the empty value
+        return maxValue + Math.min(0, emptyValue);
+    }
+
+    @Override
+    public void optimize() {
+        sparse.optimize();
+    }
+
+    /**
+     * @return the heap memory usage in MB. This includes the values only if they are not memory mapped.
+     */
+    @Override
+    public int getMemoryUsage() {
+        long bytes = 4L * pages.length + (da.getType().isMMap() ? 0 : da.getCapacity());
+        return Math.round(bytes / Helper.MB) + sparse.getMemoryUsage();
+    }
+
+    /**
+     * Removes all entries and the underlying DataAccess. The map cannot be used afterwards.
+     */
+    @Override
+    public void clear() {
+        dir.remove(da.getName());
+        pages = new int[0];
+        pageCount = 0;
+        size = 0;
+        sparse.clear();
+    }
+
+    @Override
+    public String toString() {
+        return "pages: " + pageCount + ", entries: " + getSize();
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.coll;
+
+import com.carrotsearch.hppc.LongLongHashMap;
+import com.graphhopper.storage.DAType;
+import com.graphhopper.storage.DataAccess;
+import com.graphhopper.storage.Directory;
+import com.graphhopper.util.Helper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A LongLongMap whose size depends on the number of entries and not on the key range, and which stores almost all
+ * entries in DataAccess objects, i.e. off-heap and spillable to disk if they are memory mapped. New entries are
+ * collected in a hash map on the heap. When it holds the configured number of entries they are sorted and written as a
+ * run of sorted keys and their values (13 bytes per entry). A new run is merged with the previous run as long as that
+ * one is not larger, so there are only O(log(entries / buffer size)) runs and every entry is copied O(log) times.
+ * <p>
+ * A lookup checks the buffer and then the runs from the newest to the oldest. Only every {@link #INDEX_INTERVAL}-th
+ * key of a run is kept on the heap, so a lookup in a run only reads a small block of its DataAccess.
+ */
+public class GHLongLongSortedRunMap implements LongLongMap {
+    static final int INDEX_INTERVAL = 1024;
+    private final Directory dir;
+    private final String name;
+    private final DAType type;
+    private final long emptyValue;
+    private final long maxValue = (1L << 39) - 1;
+    private final int maxBufferEntries;
+    private final LongLongHashMap buffer;
+    // the oldest and largest run comes first
+    private final List<Run> runs = new ArrayList<>();
+    private int runCounter;
+    private long size;
+
+    /**
+     * @param maxBufferEntries the number of entries that are collected on the heap before they are written as a run
+     * @param emptyValue       the value that is returned for keys that were not set. It cannot be stored.
+     */
+    public GHLongLongSortedRunMap(Directory dir, String name, DAType type, int maxBufferEntries, long emptyValue) {
+        if (maxBufferEntries < 1)
+            throw new IllegalArgumentException("maxBufferEntries must be positive, but was: " + maxBufferEntries);
+        this.dir = dir;
+        this.name = name;
+        this.type = type;
+        this.maxBufferEntries = maxBufferEntries;
+        this.emptyValue = emptyValue;
+        buffer = new LongLongHashMap();
+    }
+
+    @Override
+    public long put(long key, long value) {
+        if (value == emptyValue)
+            throw new IllegalArgumentException("Value cannot be the 'empty value' " + emptyValue);
+        if (value > maxValue || value < -maxValue - 1)
+            throw new IllegalArgumentException("Value " + value + " exceeded max value: " + maxValue
+                    + " or min value: " + (-maxValue - 1));
+        long old = get(key);
+        buffer.put(key, value);
+        if (old == emptyValue)
+            size++;
+        if (buffer.size() >= maxBufferEntries)
+            spill();
+        return old;
+    }
+
+    @Override
+    public long get(long key) {
+        int index = buffer.indexOf(key);
+        if (buffer.indexExists(index))
+            return buffer.indexGet(index);
+        for (int i = runs.size() - 1; i >= 0; i--) {
+            long value = runs.get(i).get(key);
+            if (value != emptyValue)
+                return value;
+        }
+        return emptyValue;
+    }
+
+    private void spill() {
+        long[] keys = buffer.keys().toArray();
+        Arrays.sort(keys);
+        Run run = new Run(keys.length);
+        for (long key : keys)
+            run.add(key, buffer.get(key));
+        run.finish();
+        buffer.clear();
+        runs.add(run);
+        while (runs.size() > 1 && runs.get(runs.size() - 2).size <= runs.get(runs.size() - 1).size) {
+            Run newer = runs.remove(runs.size() - 1);
+            Run older = runs.remove(runs.size() - 1);
+            runs.add(merge(older, newer));
+        }
+    }
+
+    private Run merge(Run older, Run newer) {
+        Run merged = new Run(older.size + newer.size);
+        long i = 0, j = 0;
+        while (i < older.size && j < newer.size) {
+            long olderKey = older.getKey(i), newerKey = newer.getKey(j);
+            if (olderKey < newerKey) {
+                merged.add(olderKey, older.getValue(i++));
+            } else {
+                // the newer run wins if both contain the key
+                merged.add(newerKey, newer.getValue(j++));
+                if (olderKey == newerKey)
+                    i++;
+            }
+        }
+        for (; i < older.size; i++)
+            merged.add(older.getKey(i), older.getValue(i));
+        for (; j < newer.size; j++)
+            merged.add(newer.getKey(j), newer.getValue(j));
+        merged.finish();
+        dir.remove(older.da.getName());
+        dir.remove(newer.da.getName());
+        return merged;
+    }
+
+    @Override
+    public long getSize() {
+        return size;
+    }
+
+    @Override
+    public long getMaxValue() {
+        return maxValue;
+    }
+
+    @Override
+    public void optimize() {
+    }
+
+    /**
+     * @return the heap memory usage in MB. This includes the runs only if they are not memory mapped.
+     */
+    @Override
+    public int getMemoryUsage() {
+        long bytes = 16L * buffer.keys.length;
+        for (Run run : runs)
+            bytes += 8L * run.indexKeys.length + (run.da.getType().isMMap() ? 0 : run.da.getCapacity());
+        return Math.round(bytes / Helper.MB);
+    }
+
+    /**
+     * Removes all entries and the underlying DataAccess objects.
+     */
+    @Override
+    public void clear() {
+        for (Run run : runs)
+            dir.remove(run.da.getName());
+        runs.clear();
+        buffer.release();
+        size = 0;
+    }
+
+    @Override
+    public String toString() {
+        return "runs: " + runs.size() + ", entries: " + getSize();
+    }
+
+    /**
+     * The keys of a run are stored with 8 bytes, followed by the lower 4 bytes of all values and the highest byte of
+     * all values, so the ints never cross a segment.
+     */
+    private class Run {
+        private final DataAccess da;
+        private final long capacity;
+        private long size;
+        private long[] indexKeys;
+
+        Run(long capacity) {
+            this.capacity = capacity;
+            da = dir.create(name + "_" + runCounter++, type).create(13 * capacity);
+        }
+
+        void add(long key, long value) {
+            da.setInt(8 * size, (int) key);
+            da.setInt(8 * size + 4, (int) (key >>> 32));
+            da.setInt(8 * capacity + 4 * size, (int) value);
+            da.setByte(12 * capacity + size, (byte) (value >> 32));
+            size++;
+        }
+
+        void finish() {
+            indexKeys = new long[(int) ((size + INDEX_INTERVAL - 1) / INDEX_INTERVAL)];
+            for (int i = 0; i < indexKeys.length; i++)
+                indexKeys[i] = getKey((long) i * INDEX_INTERVAL);
+        }
+
+        long getKey(long index) {
+            return (da.getInt(8 * index) & 0xFFFF_FFFFL) | ((long) da.getInt(8 * index + 4) << 32);
+        }
+
+        long getValue(long index) {
+            return ((long) da.getByte(12 * capacity + index) << 32) | (da.getInt(8 * capacity + 4 * index) & 0xFFFF_FFFFL);
+        }
+
+        long get(long key) {
+            int block = Arrays.binarySearch(indexKeys, key);
+            if (block >= 0)
+                return getValue((long) block * INDEX_INTERVAL);
+            // the block whose first key is smaller than the key
+            block = -block - 2;
+            if (block < 0)
+                return emptyValue;
+            long low = (long) block * INDEX_INTERVAL + 1, high = Math.min(size, low - 1 + INDEX_INTERVAL) - 1;
+            while (low <= high) {
+                long mid = (low + high) >>> 1;
+                long midKey = getKey(mid);
+                if (midKey < key)
+                    low = mid + 1;
+                else if (midKey > key)
+                    high = mid - 1;
+                else
+                    return getValue(mid);
+            }
+            return emptyValue;
+        }
+    }
+}
@@ -18,6 +18,8 @@
 
 package com.graphhopper.config;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
+
 import java.util.Objects;
 
 import static com.graphhopper.config.Profile.validateProfileName;
@@ -30,6 +32,8 @@ import static com.graphhopper.config.Profile.validateProfileName;
  */
 public class CHProfile {
     private String profile = "";
+    private boolean compactShortcuts = false;
+    private String nodeOrderingProfile = "this";
 
     private CHProfile() {
         // default constructor needed for jackson
@@ -37,6 +41,8 @@ public class CHProfile {
 
     public CHProfile(CHProfile profile) {
         this.profile = profile.profile;
+        this.compactShortcuts = profile.compactShortcuts;
+        this.nodeOrderingProfile = profile.nodeOrderingProfile;
     }
 
     public CHProfile(String profile) {
@@ -52,6 +58,39 @@ public class CHProfile {
         this.profile = profile;
     }
 
+    public boolean isCompactShortcuts() {
+        return compactShortcuts;
+    }
+
+    /**
+     * Stores the shortcuts in a compact, bit-packed layout. This uses less memory and yields the same routes.
+     */
+    @JsonProperty("compact_shortcuts")
+    public CHProfile setCompactShortcuts(boolean compactShortcuts) {
+        this.compactShortcuts = compactShortcuts;
+        return this;
+    }
+
+    public boolean usesOtherNodeOrdering() {
+        return !nodeOrderingProfile.equals("this");
+    }
+
+    public String getNodeOrderingProfile() {
+        return nodeOrderingProfile;
+    }
+
+    /**
+     * Contracts the nodes in the order that was determined for the given CH profile instead of calculating an own
+     * node ordering. This is much faster, but yields more shortcuts and slower queries the more the weightings of
+     * the two profiles differ.
+     */
+    @JsonProperty("node_ordering_profile")
+    public CHProfile setNodeOrderingProfile(String nodeOrderingProfile) {
+        validateProfileName(nodeOrderingProfile);
+        this.nodeOrderingProfile = nodeOrderingProfile;
+        return this;
+    }
+
     @Override
     public String toString() {
         return profile;
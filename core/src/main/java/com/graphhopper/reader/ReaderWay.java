@@ -19,6 +19,8 @@ package com.graphhopper.reader;
 
 import com.carrotsearch.hppc.LongArrayList;
 
+import java.util.Map;
+
 /**
  * Represents a way received from the reader.
  * <p>
@@ -32,6 +34,10 @@ public class ReaderWay extends ReaderElement {
         super(id, Type.WAY);
     }
 
+    public ReaderWay(long id, Map<String, Object> tags) {
+        super(id, Type.WAY, tags);
+    }
+
     public LongArrayList getNodes() {
         return nodes;
     }
@@ -0,0 +1,116 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.reader.dem;
+
+import com.graphhopper.util.GHUtility;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Determines the elevations of many points at once. Looking up the points in their original order jumps between the
+ * elevation tiles. Instead, the points are sorted by their one degree cell and within a cell by row, so the tiles are
+ * read one after another and mostly sequentially. If the ElevationProvider is thread-safe the sorted points are
+ * split into blocks that are looked up by several threads, which also loads different tiles concurrently.
+ * <p>
+ * The points are processed in chunks to limit the memory for sorting them.
+ */
+public class BatchElevationLookup {
+    private static final int INDEX_BITS = 31;
+    private static final int ROW_BITS = 12;
+    private static final int CELL_LON_BITS = 9;
+    private static final int BLOCK_SIZE = 1 << 14;
+
+    public interface Points {
+        long size();
+
+        double getLat(long index);
+
+        double getLon(long index);
+
+        void setEle(long index, double ele);
+    }
+
+    private final ElevationProvider provider;
+    private final int threads;
+    private int chunkSize = 1 << 22;
+
+    public BatchElevationLookup(ElevationProvider provider, int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("threads must be positive, but was: " + threads);
+        this.provider = provider;
+        this.threads = provider.isThreadSafe() ? threads : 1;
+    }
+
+    BatchElevationLookup setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    /**
+     * Sets the elevation of all points.
+     *
+     * @param defaultEle the elevation of points for which the ElevationProvider returns NaN
+     */
+    public void lookup(Points points, double defaultEle) {
+        long size = points.size();
+        for (long start = 0; start < size; start += chunkSize) {
+            int count = (int) Math.min(chunkSize, size - start);
+            long[] keys = new long[count];
+            for (int i = 0; i < count; i++)
+                keys[i] = createSortKey(points.getLat(start + i), points.getLon(start + i)) | i;
+            if (threads > 1)
+                Arrays.parallelSort(keys);
+            else
+                Arrays.sort(keys);
+
+            final long chunkStart = start;
+            double[] eles = new double[count];
+            if (threads > 1) {
+                int blocks = (count + BLOCK_SIZE - 1) / BLOCK_SIZE;
+                GHUtility.runConcurrently(IntStream.range(0, blocks).mapToObj(block -> () ->
+                        lookup(points, chunkStart, keys, eles, block * BLOCK_SIZE, Math.min(count, (block + 1) * BLOCK_SIZE))), threads);
+            } else {
+                lookup(points, chunkStart, keys, eles, 0, count);
+            }
+
+            // write the elevations in the original order, which is the order of the storage
+            for (int i = 0; i < count; i++)
+                points.setEle(start + i, Double.isNaN(eles[i]) ? defaultEle : eles[i]);
+        }
+    }
+
+    private void lookup(Points points, long chunkStart, long[] keys, double[] eles, int from, int to) {
+        for (int k = from; k < to; k++) {
+            int index = (int) (keys[k] & ((1L << INDEX_BITS) - 1));
+            eles[index] = provider.getEle(points.getLat(chunkStart + index), points.getLon(chunkStart + index));
+        }
+    }
+
+    /**
+     * Creates a key that orders the points by their one degree cell and within a cell from north to south, which is
+     * the order of the rows in the tiles. The lowest bits are left empty for the index of the point.
+     */
+    static long createSortKey(double lat, double lon) {
+        int cellLat = Math.max(0, Math.min(179, (int) Math.floor(lat) + 90));
+        int cellLon = Math.max(0, Math.min(359, (int) Math.floor(lon) + 180));
+        int row = (int) ((cellLat - 90 + 1 - lat) * (1 << ROW_BITS));
+        row = Math.max(0, Math.min((1 << ROW_BITS) - 1, row));
+        return ((((long) cellLat << CELL_LON_BITS) | cellLon) << ROW_BITS | row) << INDEX_BITS;
+    }
+}
@@ -29,6 +29,11 @@ import com.graphhopper.storage.BaseGraph;
 import com.graphhopper.storage.NodeAccess;
 import com.graphhopper.util.*;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
 /**
  * Abstract base class for tunnel/bridge edge elevation interpolators. This
  * class estimates elevation of inner nodes of a tunnel/bridge based on
@@ -49,6 +54,10 @@ import com.graphhopper.util.*;
  * Earth surface. Elevations of inner nodes are then interpolated from the outer
  * nodes using {@link NodeElevationInterpolator}. Elevations of pillar nodes are
  * calculated using linear interpolation on distances from tower nodes.
+ * <p>
+ * The elevations of the connected components and of the pillar nodes can be calculated by several threads, see
+ * {@link #setThreads(int)}. The threads only calculate the elevations and the graph is changed afterwards in the order
+ * of a single thread, so the result does not depend on the number of threads.
  *
  * @author Alexey Valikov
  */
@@ -59,6 +68,8 @@ public class EdgeElevationInterpolator {
     private final NodeElevationInterpolator nodeElevationInterpolator;
     private final RoadEnvironment interpolateKey;
     private final ElevationInterpolator elevationInterpolator = new ElevationInterpolator();
+    private int threads = 1;
+    private int batchSize = 10_000;
 
     public EdgeElevationInterpolator(BaseGraph graph, EnumEncodedValue<RoadEnvironment> roadEnvironmentEnc, RoadEnvironment interpolateKey) {
         this.graph = graph;
@@ -75,6 +86,24 @@ public class EdgeElevationInterpolator {
         return graph;
     }
 
+    /**
+     * Sets the number of threads that calculate the elevations. Default is 1.
+     */
+    public EdgeElevationInterpolator setThreads(int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("threads must be positive, but was: " + threads);
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * Sets the number of components or edges that are calculated together before the graph is changed.
+     */
+    EdgeElevationInterpolator setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+        return this;
+    }
+
     public void execute() {
         interpolateElevationsOfTowerNodes();
         interpolateElevationsOfPillarNodes();
@@ -84,24 +113,43 @@ public class EdgeElevationInterpolator {
         final AllEdgesIterator edge = graph.getAllEdges();
         final GHBitSet visitedEdgeIds = new GHBitSetImpl(edge.length());
         final EdgeExplorer edgeExplorer = graph.createEdgeExplorer();
+        final List<int[]> outerNodeIds = new ArrayList<>();
+        final List<int[]> innerNodeIds = new ArrayList<>();
 
         while (edge.next()) {
             final int edgeId = edge.getEdge();
             if (isInterpolatableEdge(edge)) {
                 if (!visitedEdgeIds.contains(edgeId)) {
-                    interpolateEdge(edge, visitedEdgeIds, edgeExplorer);
+                    // the inner nodes of different components are disjoint and the outer nodes are never changed, so
+                    // the components can be interpolated together
+                    gatherComponent(edge, visitedEdgeIds, edgeExplorer, outerNodeIds, innerNodeIds);
+                    if (outerNodeIds.size() == batchSize)
+                        interpolateComponents(outerNodeIds, innerNodeIds);
                 }
             }
             visitedEdgeIds.add(edgeId);
         }
+        interpolateComponents(outerNodeIds, innerNodeIds);
     }
 
-    private void interpolateEdge(final EdgeIteratorState interpolatableEdge,
-                                 final GHBitSet visitedEdgeIds, final EdgeExplorer edgeExplorer) {
+    private void gatherComponent(final EdgeIteratorState interpolatableEdge, final GHBitSet visitedEdgeIds,
+                                 final EdgeExplorer edgeExplorer, List<int[]> outerNodeIdsList, List<int[]> innerNodeIdsList) {
         final IntSet outerNodeIds = new GHIntHashSet();
         final GHIntHashSet innerNodeIds = new GHIntHashSet();
         gatherOuterAndInnerNodeIds(edgeExplorer, interpolatableEdge, visitedEdgeIds, outerNodeIds, innerNodeIds);
-        nodeElevationInterpolator.interpolateElevationsOfInnerNodes(outerNodeIds.toArray(), innerNodeIds.toArray());
+        outerNodeIdsList.add(outerNodeIds.toArray());
+        innerNodeIdsList.add(innerNodeIds.toArray());
+    }
+
+    private void interpolateComponents(List<int[]> outerNodeIds, List<int[]> innerNodeIds) {
+        final double[][] elevations = new double[outerNodeIds.size()][];
+        forEach(elevations.length, i -> elevations[i] =
+                nodeElevationInterpolator.calculateElevationsOfInnerNodes(outerNodeIds.get(i), innerNodeIds.get(i)));
+        for (int i = 0; i < elevations.length; i++)
+            if (elevations[i] != null)
+                nodeElevationInterpolator.setElevations(innerNodeIds.get(i), elevations[i]);
+        outerNodeIds.clear();
+        innerNodeIds.clear();
     }
 
     public void gatherOuterAndInnerNodeIds(final EdgeExplorer edgeExplorer,
@@ -131,34 +179,72 @@ public class EdgeElevationInterpolator {
     }
 
     private void interpolateElevationsOfPillarNodes() {
-        final EdgeIterator edge = graph.getAllEdges();
-        final NodeAccess nodeAccess = graph.getNodeAccess();
-        while (edge.next()) {
-            if (isInterpolatableEdge(edge)) {
-                int firstNodeId = edge.getBaseNode();
-                int secondNodeId = edge.getAdjNode();
-
-                double lat0 = nodeAccess.getLat(firstNodeId);
-                double lon0 = nodeAccess.getLon(firstNodeId);
-                double ele0 = nodeAccess.getEle(firstNodeId);
-
-                double lat1 = nodeAccess.getLat(secondNodeId);
-                double lon1 = nodeAccess.getLon(secondNodeId);
-                double ele1 = nodeAccess.getEle(secondNodeId);
-
-                final PointList pointList = edge.fetchWayGeometry(FetchMode.ALL);
-                final int count = pointList.size();
-                for (int index = 1; index < count - 1; index++) {
-                    double lat = pointList.getLat(index);
-                    double lon = pointList.getLon(index);
-                    double ele = elevationInterpolator.calculateElevationBasedOnTwoPoints(lat, lon,
-                            lat0, lon0, ele0, lat1, lon1, ele1);
-                    pointList.set(index, lat, lon, ele);
-                }
-                if (count > 2)
-                    edge.setWayGeometry(pointList.shallowCopy(1, count - 1, false));
+        final int edges = graph.getEdges();
+        final PointList[] pointLists = new PointList[Math.min(batchSize, edges)];
+        for (int from = 0; from < edges; from += batchSize) {
+            final int batchStart = from;
+            final int count = Math.min(batchSize, edges - from);
+            forEach(count, i -> pointLists[i] = calculatePointList(batchStart + i));
+            for (int i = 0; i < count; i++) {
+                PointList pointList = pointLists[i];
+                if (pointList == null)
+                    continue;
+                pointLists[i] = null;
+                EdgeIteratorState edge = graph.getEdgeIteratorState(batchStart + i, Integer.MIN_VALUE);
+                final int size = pointList.size();
+                if (size > 2)
+                    edge.setWayGeometry(pointList.shallowCopy(1, size - 1, false));
                 edge.setDistance(DistanceCalcEarth.DIST_EARTH.calcDistance(pointList));
             }
         }
     }
+
+    /**
+     * @return the points of the edge with interpolated elevations for the pillar nodes or null if the edge is not
+     * interpolatable
+     */
+    private PointList calculatePointList(int edgeId) {
+        final EdgeIteratorState edge = graph.getEdgeIteratorState(edgeId, Integer.MIN_VALUE);
+        if (!isInterpolatableEdge(edge))
+            return null;
+        final NodeAccess nodeAccess = graph.getNodeAccess();
+        int firstNodeId = edge.getBaseNode();
+        int secondNodeId = edge.getAdjNode();
+
+        double lat0 = nodeAccess.getLat(firstNodeId);
+        double lon0 = nodeAccess.getLon(firstNodeId);
+        double ele0 = nodeAccess.getEle(firstNodeId);
+
+        double lat1 = nodeAccess.getLat(secondNodeId);
+        double lon1 = nodeAccess.getLon(secondNodeId);
+        double ele1 = nodeAccess.getEle(secondNodeId);
+
+        final PointList pointList = edge.fetchWayGeometry(FetchMode.ALL);
+        final int count = pointList.size();
+        for (int index = 1; index < count - 1; index++) {
+            double lat = pointList.getLat(index);
+            double lon = pointList.getLon(index);
+            double ele = elevationInterpolator.calculateElevationBasedOnTwoPoints(lat, lon,
+                    lat0, lon0, ele0, lat1, lon1, ele1);
+            pointList.set(index, lat, lon, ele);
+        }
+        return pointList;
+    }
+
+    /**
+     * Runs the action for all indices from 0 to count (exclusive), in blocks on several threads if enabled
+     */
+    private void forEach(int count, IntConsumer action) {
+        if (threads == 1 || count < 2) {
+            for (int i = 0; i < count; i++)
+                action.accept(i);
+            return;
+        }
+        final int blockSize = Math.max(1, count / (4 * threads));
+        final int blocks = (count + blockSize - 1) / blockSize;
+        GHUtility.runConcurrently(IntStream.range(0, blocks).mapToObj(block -> () -> {
+            for (int i = block * blockSize; i < Math.min(count, (block + 1) * blockSize); i++)
+                action.accept(i);
+        }), threads);
+    }
 }
@@ -37,6 +37,11 @@ public interface ElevationProvider {
         public boolean canInterpolate() {
             return false;
         }
+
+        @Override
+        public boolean isThreadSafe() {
+            return true;
+        }
     };
 
     /**
@@ -57,6 +62,13 @@ public interface ElevationProvider {
      */
     boolean canInterpolate();
 
+    /**
+     * Returns true if getEle can be called from several threads at the same time.
+     */
+    default boolean isThreadSafe() {
+        return false;
+    }
+
     /**
      * Release resources.
      */
@@ -0,0 +1,197 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.reader.dem;
+
+import com.graphhopper.storage.DataAccess;
+import com.graphhopper.storage.Directory;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+import static com.graphhopper.util.Helper.removeDir;
+
+/**
+ * The height tiles that are currently open. Every tile is stored in a DataAccess of the given Directory. When the
+ * open tiles use more than the maximum number of bytes, the least recently used tiles are closed, but their files are
+ * kept. Such a tile is loaded again from its file without decoding the original elevation data, and with a memory
+ * mapped DAType the file is only mapped.
+ * <p>
+ * The heights can be read from several threads at the same time. Different tiles are loaded concurrently, but every
+ * tile is only loaded by one thread. Tiles are only closed while no thread reads from them.
+ */
+class HeightTileCache<K> {
+    interface TileLoader {
+        /**
+         * Creates or loads the tile that contains the specified point. It is not called concurrently for the same tile,
+         * but for different tiles it is.
+         *
+         * @return the tile with its heights or null if there is no elevation data for this point
+         */
+        HeightTile load(double lat, double lon);
+    }
+
+    private final Supplier<Directory> dir;
+    private final TileLoader loader;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<K, Object> loadLocks = new ConcurrentHashMap<>();
+    // guarded by lock
+    private final Map<K, Entry> tiles = new HashMap<>();
+    // the files of the tiles that were closed
+    private final Set<String> closedNames = new HashSet<>();
+    private long bytes;
+
+    private static class Entry {
+        final HeightTile tile;
+        final long bytes;
+        volatile long lastUsed = System.nanoTime();
+
+        Entry(HeightTile tile) {
+            this.tile = tile;
+            this.bytes = tile.getHeights().getCapacity();
+        }
+    }
+
+    HeightTileCache(Supplier<Directory> dir, TileLoader loader) {
+        this.dir = dir;
+        this.loader = loader;
+    }
+
+    /**
+     * @param key      the key of the tile that contains the specified point
+     * @param maxBytes the maximum number of bytes of the open tiles
+     * @return the elevation of the point or 0 if there is no elevation data or the tile is at sea level
+     */
+    double getHeight(K key, double lat, double lon, long maxBytes) {
+        while (true) {
+            lock.readLock().lock();
+            try {
+                Entry entry = tiles.get(key);
+                if (entry != null) {
+                    entry.lastUsed = System.nanoTime();
+                    return entry.tile.isSeaLevel() ? 0 : entry.tile.getHeight(lat, lon);
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+
+            synchronized (loadLocks.computeIfAbsent(key, k -> new Object())) {
+                // another thread might have loaded the tile in the meantime
+                if (get(key) == null) {
+                    HeightTile tile = loader.load(lat, lon);
+                    if (tile == null)
+                        return 0;
+                    put(key, tile, maxBytes);
+                }
+            }
+        }
+    }
+
+    HeightTile get(K key) {
+        lock.readLock().lock();
+        try {
+            Entry entry = tiles.get(key);
+            return entry == null ? null : entry.tile;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds a tile and closes the least recently used tiles if necessary. The last added tile is always kept open.
+     *
+     * @param tile     its heights must be created or loaded already
+     * @param maxBytes the maximum number of bytes of the open tiles
+     */
+    void put(K key, HeightTile tile, long maxBytes) {
+        lock.writeLock().lock();
+        try {
+            Entry entry = new Entry(tile);
+            Entry old = tiles.put(key, entry);
+            if (old != null)
+                bytes -= old.bytes;
+            bytes += entry.bytes;
+            closedNames.remove(tile.getHeights().getName());
+
+            while (bytes > maxBytes && tiles.size() > 1) {
+                K eldestKey = null;
+                Entry eldest = null;
+                for (Map.Entry<K, Entry> e : tiles.entrySet()) {
+                    if (e.getValue() != entry && (eldest == null || e.getValue().lastUsed < eldest.lastUsed)) {
+                        eldestKey = e.getKey();
+                        eldest = e.getValue();
+                    }
+                }
+                tiles.remove(eldestKey);
+                bytes -= eldest.bytes;
+                String name = eldest.tile.getHeights().getName();
+                Directory directory = dir.get();
+                // other tiles might be created at the same time
+                synchronized (directory) {
+                    directory.close(name);
+                }
+                closedNames.add(name);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    int size() {
+        lock.readLock().lock();
+        try {
+            return tiles.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    long getBytes() {
+        lock.readLock().lock();
+        try {
+            return bytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Forgets all tiles. The open tiles must be closed or removed via the Directory.
+     *
+     * @param removeFiles true if the files of the closed tiles should be removed
+     */
+    void clear(boolean removeFiles) {
+        lock.writeLock().lock();
+        try {
+            if (removeFiles)
+                for (String name : closedNames)
+                    removeDir(new File(dir.get().getLocation(), name));
+            closedNames.clear();
+            tiles.clear();
+            bytes = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
@@ -89,6 +89,11 @@ public class MultiSourceElevationProvider extends TileBasedElevationProvider {
         return srtmProvider.canInterpolate() && globalProvider.canInterpolate();
     }
 
+    @Override
+    public boolean isThreadSafe() {
+        return srtmProvider.isThreadSafe() && globalProvider.isThreadSafe();
+    }
+
     @Override
     public void release() {
         srtmProvider.release();
@@ -102,6 +107,13 @@ public class MultiSourceElevationProvider extends TileBasedElevationProvider {
         return this;
     }
 
+    @Override
+    public MultiSourceElevationProvider setMaxTileCacheMB(int maxTileCacheMB) {
+        srtmProvider.setMaxTileCacheMB(maxTileCacheMB);
+        globalProvider.setMaxTileCacheMB(maxTileCacheMB);
+        return this;
+    }
+
     @Override
     public String toString() {
         return "multi";
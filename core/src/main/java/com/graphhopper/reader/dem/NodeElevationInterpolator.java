@@ -21,6 +21,8 @@ import com.graphhopper.storage.BaseGraph;
 import com.graphhopper.storage.NodeAccess;
 import com.graphhopper.util.PointList;
 
+import java.util.Arrays;
+
 /**
  * Interpolates elevations of pillar nodes based on elevations of tower nodes.
  *
@@ -36,32 +38,49 @@ public class NodeElevationInterpolator {
     }
 
     public void interpolateElevationsOfInnerNodes(int[] outerNodeIds, int[] innerNodeIds) {
+        double[] elevations = calculateElevationsOfInnerNodes(outerNodeIds, innerNodeIds);
+        if (elevations != null)
+            setElevations(innerNodeIds, elevations);
+    }
+
+    /**
+     * Calculates the elevations of the inner nodes without changing the graph, so this can be called from several
+     * threads at the same time.
+     *
+     * @return the elevations of the inner nodes in the same order or null if there are no outer nodes
+     */
+    public double[] calculateElevationsOfInnerNodes(int[] outerNodeIds, int[] innerNodeIds) {
         final int numberOfOuterNodes = outerNodeIds.length;
         if (numberOfOuterNodes == 0) {
-            // do nothing
+            return null;
         } else if (numberOfOuterNodes == 1) {
-            interpolateElevationsOfInnerNodesForOneOuterNode(outerNodeIds[0], innerNodeIds);
+            return calculateElevationsOfInnerNodesForOneOuterNode(outerNodeIds[0], innerNodeIds);
         } else if (numberOfOuterNodes == 2) {
-            interpolateElevationsOfInnerNodesForTwoOuterNodes(outerNodeIds[0], outerNodeIds[1], innerNodeIds);
+            return calculateElevationsOfInnerNodesForTwoOuterNodes(outerNodeIds[0], outerNodeIds[1], innerNodeIds);
         } else if (numberOfOuterNodes == 3) {
-            interpolateElevationsOfInnerNodesForThreeOuterNodes(outerNodeIds[0], outerNodeIds[1], outerNodeIds[2], innerNodeIds);
-        } else if (numberOfOuterNodes > 3) {
-            interpolateElevationsOfInnerNodesForNOuterNodes(outerNodeIds, innerNodeIds);
+            return calculateElevationsOfInnerNodesForThreeOuterNodes(outerNodeIds[0], outerNodeIds[1], outerNodeIds[2], innerNodeIds);
+        } else {
+            return calculateElevationsOfInnerNodesForNOuterNodes(outerNodeIds, innerNodeIds);
         }
     }
 
-    private void interpolateElevationsOfInnerNodesForOneOuterNode(int outerNodeId, int[] innerNodeIds) {
+    public void setElevations(int[] nodeIds, double[] elevations) {
         NodeAccess nodeAccess = graph.getNodeAccess();
-        double ele = nodeAccess.getEle(outerNodeId);
-        for (int innerNodeId : innerNodeIds) {
-            double lat = nodeAccess.getLat(innerNodeId);
-            double lon = nodeAccess.getLon(innerNodeId);
-            nodeAccess.setNode(innerNodeId, lat, lon, ele);
+        for (int i = 0; i < nodeIds.length; i++) {
+            int nodeId = nodeIds[i];
+            nodeAccess.setNode(nodeId, nodeAccess.getLat(nodeId), nodeAccess.getLon(nodeId), elevations[i]);
         }
     }
 
-    private void interpolateElevationsOfInnerNodesForTwoOuterNodes(int firstOuterNodeId,
-                                                                   int secondOuterNodeId, int[] innerNodeIds) {
+    private double[] calculateElevationsOfInnerNodesForOneOuterNode(int outerNodeId, int[] innerNodeIds) {
+        NodeAccess nodeAccess = graph.getNodeAccess();
+        double[] elevations = new double[innerNodeIds.length];
+        Arrays.fill(elevations, nodeAccess.getEle(outerNodeId));
+        return elevations;
+    }
+
+    private double[] calculateElevationsOfInnerNodesForTwoOuterNodes(int firstOuterNodeId,
+                                                                     int secondOuterNodeId, int[] innerNodeIds) {
         final NodeAccess nodeAccess = graph.getNodeAccess();
         double lat0 = nodeAccess.getLat(firstOuterNodeId);
         double lon0 = nodeAccess.getLon(firstOuterNodeId);
@@ -71,17 +90,18 @@ public class NodeElevationInterpolator {
         double lon1 = nodeAccess.getLon(secondOuterNodeId);
         double ele1 = nodeAccess.getEle(secondOuterNodeId);
 
-        for (int innerNodeId : innerNodeIds) {
-            double lat = nodeAccess.getLat(innerNodeId);
-            double lon = nodeAccess.getLon(innerNodeId);
-            double ele = elevationInterpolator.calculateElevationBasedOnTwoPoints(lat, lon, lat0, lon0, ele0,
+        double[] elevations = new double[innerNodeIds.length];
+        for (int i = 0; i < innerNodeIds.length; i++) {
+            double lat = nodeAccess.getLat(innerNodeIds[i]);
+            double lon = nodeAccess.getLon(innerNodeIds[i]);
+            elevations[i] = elevationInterpolator.calculateElevationBasedOnTwoPoints(lat, lon, lat0, lon0, ele0,
                     lat1, lon1, ele1);
-            nodeAccess.setNode(innerNodeId, lat, lon, ele);
         }
+        return elevations;
     }
 
-    private void interpolateElevationsOfInnerNodesForThreeOuterNodes(int firstOuterNodeId, int secondOuterNodeId,
-                                                                     int thirdOuterNodeId, int[] innerNodeIds) {
+    private double[] calculateElevationsOfInnerNodesForThreeOuterNodes(int firstOuterNodeId, int secondOuterNodeId,
+                                                                       int thirdOuterNodeId, int[] innerNodeIds) {
         NodeAccess nodeAccess = graph.getNodeAccess();
         double lat0 = nodeAccess.getLat(firstOuterNodeId);
         double lon0 = nodeAccess.getLon(firstOuterNodeId);
@@ -95,28 +115,30 @@ public class NodeElevationInterpolator {
         double lon2 = nodeAccess.getLon(thirdOuterNodeId);
         double ele2 = nodeAccess.getEle(thirdOuterNodeId);
 
-        for (int innerNodeId : innerNodeIds) {
-            double lat = nodeAccess.getLat(innerNodeId);
-            double lon = nodeAccess.getLon(innerNodeId);
-            double ele = elevationInterpolator.calculateElevationBasedOnThreePoints(lat, lon, lat0,
+        double[] elevations = new double[innerNodeIds.length];
+        for (int i = 0; i < innerNodeIds.length; i++) {
+            double lat = nodeAccess.getLat(innerNodeIds[i]);
+            double lon = nodeAccess.getLon(innerNodeIds[i]);
+            elevations[i] = elevationInterpolator.calculateElevationBasedOnThreePoints(lat, lon, lat0,
                     lon0, ele0, lat1, lon1, ele1, lat2, lon2, ele2);
-            nodeAccess.setNode(innerNodeId, lat, lon, ele);
         }
+        return elevations;
     }
 
-    private void interpolateElevationsOfInnerNodesForNOuterNodes(int[] outerNodeIds,
-                                                                 int[] innerNodeIds) {
+    private double[] calculateElevationsOfInnerNodesForNOuterNodes(int[] outerNodeIds,
+                                                                   int[] innerNodeIds) {
         NodeAccess nodeAccess = graph.getNodeAccess();
         PointList pointList = new PointList(outerNodeIds.length, true);
         for (int outerNodeId : outerNodeIds) {
             pointList.add(nodeAccess.getLat(outerNodeId), nodeAccess.getLon(outerNodeId),
                     nodeAccess.getEle(outerNodeId));
         }
-        for (int innerNodeId : innerNodeIds) {
-            double lat = nodeAccess.getLat(innerNodeId);
-            double lon = nodeAccess.getLon(innerNodeId);
-            double ele = elevationInterpolator.calculateElevationBasedOnPointList(lat, lon, pointList);
-            nodeAccess.setNode(innerNodeId, lat, lon, ele);
+        double[] elevations = new double[innerNodeIds.length];
+        for (int i = 0; i < innerNodeIds.length; i++) {
+            double lat = nodeAccess.getLat(innerNodeIds[i]);
+            double lon = nodeAccess.getLon(innerNodeIds[i]);
+            elevations[i] = elevationInterpolator.calculateElevationBasedOnPointList(lat, lon, pointList);
         }
+        return elevations;
     }
 }
@@ -18,6 +18,7 @@
 package com.graphhopper.reader.dem;
 
 import com.graphhopper.storage.DAType;
+import com.graphhopper.storage.DataAccess;
 import com.graphhopper.storage.Directory;
 import com.graphhopper.storage.GHDirectory;
 import com.graphhopper.util.Downloader;
@@ -41,6 +42,7 @@ public abstract class TileBasedElevationProvider implements ElevationProvider {
     DAType daType = DAType.MMAP;
     boolean interpolate = false;
     boolean autoRemoveTemporary = true;
+    long maxTileCacheBytes = Long.MAX_VALUE;
     long sleep = 2000;
 
     protected TileBasedElevationProvider(String cacheDirString) {
@@ -69,6 +71,14 @@ public abstract class TileBasedElevationProvider implements ElevationProvider {
         return this.interpolate;
     }
 
+    /**
+     * The tiles are loaded and read via a HeightTileCache, which allows concurrent lookups.
+     */
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
+
     void setSleep(long sleep) {
         this.sleep = sleep;
     }
@@ -103,6 +113,18 @@ public abstract class TileBasedElevationProvider implements ElevationProvider {
         return this;
     }
 
+    /**
+     * Limits the memory used by the open tiles. If they use more, the least recently used tiles are closed. Their
+     * decoded data is kept in the cache directory, so opening them again is cheap, especially with DAType.MMAP.
+     * By default all tiles are kept open.
+     */
+    public TileBasedElevationProvider setMaxTileCacheMB(int maxTileCacheMB) {
+        if (maxTileCacheMB <= 0)
+            throw new IllegalArgumentException("The maximum size of the tile cache must be positive, but was: " + maxTileCacheMB);
+        this.maxTileCacheBytes = maxTileCacheMB * (1L << 20);
+        return this;
+    }
+
     public TileBasedElevationProvider setDownloader(Downloader downloader) {
         this.downloader = downloader;
         return this;
@@ -112,7 +134,7 @@ public abstract class TileBasedElevationProvider implements ElevationProvider {
         return cacheDir;
     }
 
-    protected Directory getDirectory() {
+    protected synchronized Directory getDirectory() {
         if (dir != null)
             return dir;
 
@@ -121,4 +143,15 @@ public abstract class TileBasedElevationProvider implements ElevationProvider {
         return dir = new GHDirectory(cacheDir.getAbsolutePath(), daType);
     }
 
+    /**
+     * Creates the storage of a tile. Different tiles can be loaded at the same time, so the access to the Directory
+     * is synchronized.
+     */
+    DataAccess createHeights(String name) {
+        Directory directory = getDirectory();
+        synchronized (directory) {
+            return directory.create(name);
+        }
+    }
+
 }
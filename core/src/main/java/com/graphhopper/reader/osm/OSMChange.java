@@ -0,0 +1,136 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.reader.osm;
+
+import com.carrotsearch.hppc.LongHashSet;
+import com.carrotsearch.hppc.LongObjectHashMap;
+import com.graphhopper.reader.ReaderNode;
+import com.graphhopper.reader.ReaderWay;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.*;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * The nodes and ways of an OSM change file (.osc or .osc.gz). If an element occurs more than once the last occurrence
+ * wins, like it does when the changes are applied one after another. Relations are ignored.
+ */
+public class OSMChange {
+    private final LongObjectHashMap<ReaderNode> nodes = new LongObjectHashMap<>();
+    private final LongHashSet deletedNodes = new LongHashSet();
+    private final Map<Long, ReaderWay> ways = new LinkedHashMap<>();
+    private final LongHashSet deletedWays = new LongHashSet();
+
+    public static OSMChange read(File file) throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            return read(file.getName().endsWith(".gz") ? new GZIPInputStream(in) : in);
+        }
+    }
+
+    public static OSMChange read(InputStream in) throws IOException {
+        OSMChange change = new OSMChange();
+        try {
+            XMLStreamReader parser = XMLInputFactory.newInstance().createXMLStreamReader(in, "UTF-8");
+            try {
+                boolean delete = false;
+                while (parser.hasNext()) {
+                    int event = parser.next();
+                    if (event == XMLStreamConstants.END_ELEMENT && parser.getLocalName().equals("delete")) {
+                        delete = false;
+                    } else if (event == XMLStreamConstants.START_ELEMENT) {
+                        String name = parser.getLocalName();
+                        if (name.equals("delete"))
+                            delete = true;
+                        else if (name.equals("node"))
+                            change.readNode(parser, delete);
+                        else if (name.equals("way"))
+                            change.readWay(parser, delete);
+                    }
+                }
+            } finally {
+                parser.close();
+            }
+        } catch (XMLStreamException ex) {
+            throw new IOException("Cannot read OSM change file", ex);
+        }
+        return change;
+    }
+
+    private void readNode(XMLStreamReader parser, boolean delete) throws XMLStreamException {
+        long id = Long.parseLong(parser.getAttributeValue(null, "id"));
+        if (delete) {
+            // deleted nodes do not need to have coordinates
+            nodes.remove(id);
+            deletedNodes.add(id);
+        } else {
+            nodes.put(id, OSMXMLHelper.createNode(id, parser));
+            deletedNodes.remove(id);
+        }
+    }
+
+    private void readWay(XMLStreamReader parser, boolean delete) throws XMLStreamException {
+        long id = Long.parseLong(parser.getAttributeValue(null, "id"));
+        ReaderWay way = OSMXMLHelper.createWay(id, parser);
+        // keep the order in which the ways were changed last
+        ways.remove(id);
+        if (delete) {
+            deletedWays.add(id);
+        } else {
+            ways.put(id, way);
+            deletedWays.remove(id);
+        }
+    }
+
+    /**
+     * @return the created or modified node or null if the node was not changed or deleted
+     */
+    public ReaderNode getNode(long id) {
+        return nodes.get(id);
+    }
+
+    /**
+     * @return the created and modified nodes by their ID
+     */
+    public LongObjectHashMap<ReaderNode> getNodes() {
+        return nodes;
+    }
+
+    public boolean isNodeChanged(long id) {
+        return nodes.containsKey(id) || deletedNodes.contains(id);
+    }
+
+    public int getChangedNodes() {
+        return nodes.size() + deletedNodes.size();
+    }
+
+    /**
+     * @return the created and modified ways in the order of the change file
+     */
+    public Iterable<ReaderWay> getWays() {
+        return ways.values();
+    }
+
+    public LongHashSet getDeletedWays() {
+        return deletedWays;
+    }
+}
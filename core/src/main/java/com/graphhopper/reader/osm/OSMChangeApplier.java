@@ -0,0 +1,811 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.reader.osm;
+
+import com.carrotsearch.hppc.*;
+import com.carrotsearch.hppc.cursors.IntCursor;
+import com.carrotsearch.hppc.cursors.IntObjectCursor;
+import com.carrotsearch.hppc.cursors.LongCursor;
+import com.carrotsearch.hppc.cursors.LongObjectCursor;
+import com.graphhopper.reader.ReaderNode;
+import com.graphhopper.reader.ReaderWay;
+import com.graphhopper.routing.ev.*;
+import com.graphhopper.routing.util.OSMParsers;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.search.KVStorage;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.IntsRef;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.FetchMode;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.PointList;
+import com.graphhopper.util.shapes.GHPoint3D;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+/**
+ * Applies an {@link OSMChange} to a graph that was imported with {@link OSMReader}. The edges of an OSM way and the
+ * OSM nodes they were created from are found via the index of the {@link OSMNodeStorage} that was filled during the
+ * import, so only the entries of the changed ways and nodes are read. The node storage also provides the coordinates
+ * of the unchanged nodes that the changed ways refer to, because change files only contain the nodes that changed.
+ * <ul>
+ * <li>If only the tags of a way changed, the tag parsers are run again for its edges.</li>
+ * <li>If a way was deleted, or its sequence of nodes changed, its edges are made inaccessible: their flags are cleared
+ * and they are marked as subnetwork edges, so nothing snaps to them. The new geometry of a changed way is appended to
+ * the graph as new edges. Its end nodes and the nodes it shares with existing edges or other changed ways become tower
+ * nodes. An existing edge that is joined at one of its pillar nodes is split there.</li>
+ * <li>If a node moved, the geometry and distance of all edges that contain it are derived again, no matter if their
+ * ways are part of the change file or not.</li>
+ * </ul>
+ * Some information cannot be derived from a change file: relations are not read, so the relation flags (like
+ * bike networks) of updated edges are kept and new edges get none. Barrier edges keep their flags, and no barrier edges
+ * are created for new ways, because the tags of unchanged nodes are unknown. Split edges keep the flags of the
+ * original edge, but turn restrictions of edges that are replaced get lost. A way is skipped if one of its nodes is
+ * neither part of the change file nor of the graph, e.g. because it was only used by ways that were not imported.
+ * <p>
+ * The caller has to re-create the data that depends on the changed edges: the weights of the changed edges are
+ * compared for the given weightings and new edges count as a change for the weightings that can use them. If edges
+ * were added the location index is outdated and the subnetworks around the changed edges need to be checked again.
+ */
+public class OSMChangeApplier {
+    private static final Logger LOGGER = LoggerFactory.getLogger(OSMChangeApplier.class);
+    // these are not set by the tag parsers, but calculated after the import or derived from relations
+    private static final List<String> KEPT_ENCODED_VALUES = Arrays.asList(UrbanDensity.KEY, MaxSpeedEstimated.KEY,
+            BikeNetwork.KEY, MtbNetwork.KEY, FootNetwork.KEY);
+
+    private final OSMReader reader;
+    private final BaseGraph baseGraph;
+    private final OSMParsers osmParsers;
+    private final OSMNodeStorage osmNodeStorage;
+    private final Map<String, Weighting> weightings;
+    private final EdgeIntAccess edgeIntAccess;
+    private final NodeAccess nodeAccess;
+    private final int intsPerEdge;
+    private final IntEncodedValue osmWayIdEnc;
+    private final List<IntEncodedValue> keptEncodedValues = new ArrayList<>();
+    private final List<BooleanEncodedValue> subnetworkEncs = new ArrayList<>();
+    // the weights of the changed edges before they were changed, forward and backward for every weighting
+    private final IntObjectHashMap<double[]> previousWeights = new IntObjectHashMap<>();
+    // the OSM nodes of the edges that are affected by the change, read from the node storage
+    private final IntObjectHashMap<Segment> segments = new IntObjectHashMap<>();
+    private final LongObjectHashMap<List<Segment>> segmentsByNode = new LongObjectHashMap<>();
+    private final IntHashSet removedEdges = new IntHashSet();
+    // the edges whose geometry did not fit into the old one anymore, so they were replaced by a new edge
+    private final IntIntHashMap replacedEdges = new IntIntHashMap();
+    // the tower nodes that were created for the change, by OSM node ID
+    private final LongIntHashMap towerNodes = new LongIntHashMap();
+    private int edgesBefore;
+    private int updatedWays, removedWays, addedWays, addedEdges, skippedWays, movedNodes, splitEdges;
+
+    /**
+     * @param reader         the reader that is used for new edges. It must be configured like the one of the import.
+     * @param osmParsers     the parsers that the reader was created with
+     * @param osmNodeStorage the OSM nodes of the edges that were stored during the import. The entries are updated for
+     *                       the changed edges.
+     * @param weightings     the weightings for which changed weights are reported, by profile name
+     */
+    public OSMChangeApplier(OSMReader reader, BaseGraph baseGraph, OSMParsers osmParsers, EncodedValueLookup lookup,
+                            OSMNodeStorage osmNodeStorage, Map<String, Weighting> weightings) {
+        if (!lookup.hasEncodedValue(OSMWayID.KEY))
+            throw new IllegalArgumentException("Applying OSM changes requires the encoded value " + OSMWayID.KEY);
+        this.reader = reader;
+        this.baseGraph = baseGraph;
+        this.osmParsers = osmParsers;
+        this.osmNodeStorage = osmNodeStorage;
+        this.weightings = weightings;
+        edgeIntAccess = baseGraph.getEdgeAccess();
+        nodeAccess = baseGraph.getNodeAccess();
+        intsPerEdge = (baseGraph.getBytesForFlags() + 3) / 4;
+        osmWayIdEnc = lookup.getIntEncodedValue(OSMWayID.KEY);
+        for (String key : KEPT_ENCODED_VALUES)
+            if (lookup.hasEncodedValue(key))
+                keptEncodedValues.add(lookup.getEncodedValue(key, IntEncodedValue.class));
+        for (EncodedValue ev : lookup.getEncodedValues())
+            if (ev.getName().endsWith("_subnetwork") && ev instanceof BooleanEncodedValue) {
+                subnetworkEncs.add((BooleanEncodedValue) ev);
+                keptEncodedValues.add((IntEncodedValue) ev);
+            }
+    }
+
+    public Result apply(OSMChange change) {
+        edgesBefore = baseGraph.getEdges();
+        LongObjectHashMap<IntArrayList> edgesByWay = readSegments(change);
+        Map<ReaderWay, IntArrayList> updatedEdges = new LinkedHashMap<>();
+        List<ReaderWay> newWays = new ArrayList<>();
+        for (ReaderWay way : change.getWays()) {
+            IntArrayList edges = edgesByWay.getOrDefault(way.getId(), new IntArrayList());
+            if (!reader.acceptWay(way)) {
+                // the way was changed such that it is not part of the road network anymore
+                if (!edges.isEmpty()) {
+                    removeEdges(edges);
+                    removedWays++;
+                }
+            } else if (!edges.isEmpty() && !isGeometryChanged(way, edges, change)) {
+                updatedEdges.put(way, edges);
+            } else if (hasAllCoordinates(way, change)) {
+                removeEdges(edges);
+                newWays.add(way);
+            } else {
+                LOGGER.debug("Skipping OSM way {}, because some of its nodes are neither in the change file nor in the graph", way.getId());
+                skippedWays++;
+            }
+        }
+        for (LongCursor wayId : change.getDeletedWays()) {
+            IntArrayList edges = edgesByWay.get(wayId.value);
+            if (edges != null) {
+                removeEdges(edges);
+                removedWays++;
+            }
+        }
+        // the tag parsers might use the geometry, so the nodes need to be moved first
+        moveNodes(change);
+        for (Map.Entry<ReaderWay, IntArrayList> entry : updatedEdges.entrySet()) {
+            IntArrayList edges = entry.getValue();
+            for (int i = 0; i < edges.size(); i++)
+                edges.set(i, replacedEdges.getOrDefault(edges.get(i), edges.get(i)));
+            updateEdges(entry.getKey(), edges);
+            updatedWays++;
+        }
+        addWays(newWays, change);
+        addedEdges = baseGraph.getEdges() - edgesBefore;
+        return new Result(updatedWays, removedWays, addedWays, addedEdges, skippedWays, movedNodes, splitEdges,
+                findChangedWeightings(), findChangedEdges());
+    }
+
+    /**
+     * Reads the OSM nodes of the edges of the changed ways and of all edges that contain a node of the change or a
+     * node that a changed way refers to.
+     *
+     * @return the edges of the changed ways by OSM way ID, sorted by edge
+     */
+    private LongObjectHashMap<IntArrayList> readSegments(OSMChange change) {
+        LongHashSet wayIds = new LongHashSet();
+        for (ReaderWay way : change.getWays())
+            wayIds.add(way.getId());
+        wayIds.addAll(change.getDeletedWays());
+        LongHashSet nodes = new LongHashSet();
+        for (ReaderWay way : change.getWays())
+            nodes.addAll(way.getNodes());
+        nodes.addAll(change.getNodes().keys());
+        OSMNodeStorage.Cursor cursor = osmNodeStorage.cursor();
+        LongObjectHashMap<IntArrayList> edgesByWay = new LongObjectHashMap<>();
+        for (LongCursor wayId : wayIds) {
+            LongArrayList pointers = osmNodeStorage.findByWay(wayId.value);
+            if (pointers.isEmpty())
+                continue;
+            int[] edges = new int[pointers.size()];
+            for (int i = 0; i < pointers.size(); i++) {
+                readSegment(cursor.moveTo(pointers.get(i)), nodes);
+                edges[i] = cursor.getEdge();
+            }
+            Arrays.sort(edges);
+            edgesByWay.put(wayId.value, IntArrayList.from(edges));
+        }
+        for (LongCursor node : nodes)
+            for (LongCursor pointer : osmNodeStorage.findByNode(node.value))
+                readSegment(cursor.moveTo(pointer.value), nodes);
+        return edgesByWay;
+    }
+
+    private void readSegment(OSMNodeStorage.Cursor cursor, LongHashSet nodes) {
+        if (segments.containsKey(cursor.getEdge()))
+            return;
+        Segment segment = new Segment(cursor.getEdge(), cursor.getPointer(), cursor.size());
+        for (int i = 0; i < segment.size(); i++) {
+            segment.osmNodeIds[i] = cursor.getOSMNodeId(i);
+            segment.lats[i] = cursor.getLat(i);
+            segment.lons[i] = cursor.getLon(i);
+        }
+        putSegment(segment, nodes);
+    }
+
+    private void putSegment(Segment segment, LongHashSet nodes) {
+        segments.put(segment.edge, segment);
+        for (long osmNodeId : segment.osmNodeIds) {
+            if (!nodes.contains(osmNodeId))
+                continue;
+            List<Segment> list = segmentsByNode.get(osmNodeId);
+            if (list == null)
+                segmentsByNode.put(osmNodeId, list = new ArrayList<>(2));
+            if (!list.contains(segment))
+                list.add(segment);
+        }
+    }
+
+    /**
+     * @return true if the way does not consist of the same pairs of consecutive nodes as its edges anymore, e.g.
+     * because it was split, shortened or rerouted. Pairs with nodes that are unknown, because they were not imported,
+     * are ignored.
+     */
+    private boolean isGeometryChanged(ReaderWay way, IntArrayList edges, OSMChange change) {
+        LongObjectHashMap<LongHashSet> storedPairs = new LongObjectHashMap<>();
+        for (IntCursor edge : edges) {
+            Segment segment = segments.get(edge.value);
+            if (segment == null)
+                return true;
+            for (int i = 1; i < segment.size(); i++)
+                addPair(storedPairs, segment.osmNodeIds[i - 1], segment.osmNodeIds[i]);
+        }
+        LongObjectHashMap<LongHashSet> pairs = new LongObjectHashMap<>();
+        LongArrayList nodes = way.getNodes();
+        for (int i = 1; i < nodes.size(); i++)
+            if (isKnown(nodes.get(i - 1), change) && isKnown(nodes.get(i), change))
+                addPair(pairs, nodes.get(i - 1), nodes.get(i));
+        return !pairs.equals(storedPairs);
+    }
+
+    private static void addPair(LongObjectHashMap<LongHashSet> pairs, long from, long to) {
+        // duplicate nodes and barrier edges do not matter
+        if (from == to)
+            return;
+        LongHashSet successors = pairs.get(from);
+        if (successors == null)
+            pairs.put(from, successors = new LongHashSet());
+        successors.add(to);
+    }
+
+    private boolean hasAllCoordinates(ReaderWay way, OSMChange change) {
+        for (LongCursor node : way.getNodes())
+            if (!isKnown(node.value, change))
+                return false;
+        return true;
+    }
+
+    private boolean isKnown(long osmNodeId, OSMChange change) {
+        return change.getNode(osmNodeId) != null || !change.isNodeChanged(osmNodeId) && segmentsByNode.containsKey(osmNodeId);
+    }
+
+    /**
+     * Runs the tag parsers again for the given edges of the given way
+     */
+    private void updateEdges(ReaderWay way, IntArrayList edges) {
+        double wayDistance = 0;
+        for (IntCursor edge : edges)
+            wayDistance += baseGraph.getEdgeIteratorState(edge.value, Integer.MIN_VALUE).getDistance();
+        final double distance = wayDistance;
+        reader.preprocessWay(way, id -> Collections.emptyMap(), () -> distance);
+        IntsRef relationFlags = osmParsers.createRelationFlags();
+        int[] keptValues = new int[keptEncodedValues.size() * 2];
+        for (IntCursor edge : edges) {
+            EdgeIteratorState edgeState = baseGraph.getEdgeIteratorState(edge.value, Integer.MIN_VALUE);
+            PointList pointList = edgeState.fetchWayGeometry(FetchMode.ALL);
+            if (pointList.size() == 2 && pointList.getLat(0) == pointList.getLat(1) && pointList.getLon(0) == pointList.getLon(1))
+                // this is a barrier edge, but we do not know the tags of the barrier node anymore
+                continue;
+            reader.setArtificialWayTags(pointList, way, edgeState.getDistance(), Collections.nCopies(pointList.size(), Collections.emptyMap()));
+            recordWeights(edge.value);
+            for (int i = 0; i < keptEncodedValues.size(); i++) {
+                keptValues[2 * i] = keptEncodedValues.get(i).getInt(false, edge.value, edgeIntAccess);
+                keptValues[2 * i + 1] = keptEncodedValues.get(i).getInt(true, edge.value, edgeIntAccess);
+            }
+            clearFlags(edge.value);
+            osmParsers.handleWayTags(edge.value, edgeIntAccess, way, relationFlags);
+            for (int i = 0; i < keptEncodedValues.size(); i++) {
+                IntEncodedValue enc = keptEncodedValues.get(i);
+                enc.setInt(false, edge.value, edgeIntAccess, keptValues[2 * i]);
+                if (enc.isStoreTwoDirections())
+                    enc.setInt(true, edge.value, edgeIntAccess, keptValues[2 * i + 1]);
+            }
+            edgeState.setKeyValues(way.getTag("key_values", Collections.<String, KVStorage.KValue>emptyMap()));
+        }
+    }
+
+    private void removeEdges(IntArrayList edges) {
+        for (IntCursor edge : edges)
+            removeEdge(edge.value);
+    }
+
+    /**
+     * Makes the given edge inaccessible. It is kept in the graph, because removing edges would change the ids of the
+     * remaining ones.
+     */
+    private void removeEdge(int edge) {
+        recordWeights(edge);
+        clearFlags(edge);
+        for (BooleanEncodedValue subnetworkEnc : subnetworkEncs)
+            subnetworkEnc.setBool(false, edge, edgeIntAccess, true);
+        removedEdges.add(edge);
+        Segment segment = segments.get(edge);
+        if (segment != null)
+            osmNodeStorage.remove(segment.pointer);
+    }
+
+    private void clearFlags(int edge) {
+        for (int i = 0; i < intsPerEdge; i++)
+            edgeIntAccess.setInt(edge, i, 0);
+    }
+
+    /**
+     * Sets the new coordinates of the moved nodes and derives the geometry and distance of their edges again
+     */
+    private void moveNodes(OSMChange change) {
+        Set<Segment> movedSegments = new LinkedHashSet<>();
+        IntHashSet movedTowerNodes = new IntHashSet();
+        for (LongObjectCursor<ReaderNode> node : change.getNodes()) {
+            List<Segment> list = segmentsByNode.get(node.key);
+            if (list == null)
+                continue;
+            int lat = Helper.degreeToInt(node.value.getLat());
+            int lon = Helper.degreeToInt(node.value.getLon());
+            boolean moved = false;
+            for (Segment segment : list) {
+                if (removedEdges.contains(segment.edge))
+                    continue;
+                for (int i = 0; i < segment.size(); i++) {
+                    if (segment.osmNodeIds[i] != node.key
+                            || Helper.degreeToInt(segment.lats[i]) == lat && Helper.degreeToInt(segment.lons[i]) == lon)
+                        continue;
+                    segment.lats[i] = node.value.getLat();
+                    segment.lons[i] = node.value.getLon();
+                    osmNodeStorage.setCoordinates(segment.pointer, i, segment.lats[i], segment.lons[i]);
+                    if (i == 0 || i == segment.size() - 1) {
+                        EdgeIteratorState edgeState = baseGraph.getEdgeIteratorState(segment.edge, Integer.MIN_VALUE);
+                        int towerNode = i == 0 ? edgeState.getBaseNode() : edgeState.getAdjNode();
+                        if (movedTowerNodes.add(towerNode))
+                            setNode(towerNode, node.value);
+                    }
+                    movedSegments.add(segment);
+                    moved = true;
+                }
+            }
+            if (moved)
+                movedNodes++;
+        }
+        for (Segment segment : movedSegments) {
+            recordWeights(segment.edge);
+            EdgeIteratorState edgeState = baseGraph.getEdgeIteratorState(segment.edge, Integer.MIN_VALUE);
+            long wayId = osmWayIdEnc.getInt(false, segment.edge, edgeIntAccess);
+            PointList pointList = reader.processEdgePoints(createPointList(segment, 0, segment.size() - 1,
+                    edgeState.getBaseNode(), edgeState.getAdjNode()));
+            PointList pillarNodes = pointList.size() > 2 ? pointList.shallowCopy(1, pointList.size() - 1, false) : PointList.EMPTY;
+            if (pillarNodes.size() <= edgeState.fetchWayGeometry(FetchMode.PILLAR_ONLY).size()) {
+                edgeState.setWayGeometry(pillarNodes).setDistance(reader.calcEdgeDistance(pointList, wayId));
+            } else {
+                // the way geometry storage cannot grow in place
+                List<Segment> newSegments = replaceEdge(segment, new IntArrayList());
+                replacedEdges.put(segment.edge, newSegments.get(0).edge);
+            }
+        }
+    }
+
+    private void setNode(int node, ReaderNode osmNode) {
+        if (nodeAccess.is3D())
+            nodeAccess.setNode(node, osmNode.getLat(), osmNode.getLon(), reader.getElevation(osmNode));
+        else
+            nodeAccess.setNode(node, osmNode.getLat(), osmNode.getLon());
+    }
+
+    /**
+     * Replaces the edge of the given segment with new edges that are split at the given indices of the segment. The
+     * new edges keep the flags and key values of the replaced edge.
+     *
+     * @return the segments of the new edges
+     */
+    private List<Segment> replaceEdge(Segment segment, IntArrayList splitIndices) {
+        if (baseGraph.isFrozen())
+            baseGraph.unfreeze();
+        EdgeIteratorState edgeState = baseGraph.getEdgeIteratorState(segment.edge, Integer.MIN_VALUE);
+        long wayId = osmWayIdEnc.getInt(false, segment.edge, edgeIntAccess);
+        Map<String, KVStorage.KValue> keyValues = edgeState.getKeyValues();
+        List<Segment> newSegments = new ArrayList<>(splitIndices.size() + 1);
+        int start = 0;
+        int from = edgeState.getBaseNode();
+        for (int i = 0; i <= splitIndices.size(); i++) {
+            int end = i < splitIndices.size() ? splitIndices.get(i) : segment.size() - 1;
+            int to = end == segment.size() - 1 ? edgeState.getAdjNode()
+                    : getTowerNode(segment.osmNodeIds[end], segment.lats[end], segment.lons[end]);
+            PointList pointList = createPointList(segment, start, end, from, to);
+            Segment newSegment = new Segment(baseGraph.getEdges(), 0, end - start + 1);
+            LongArrayList osmNodeIds = new LongArrayList(newSegment.size());
+            for (int j = start; j <= end; j++) {
+                osmNodeIds.add(segment.osmNodeIds[j]);
+                newSegment.osmNodeIds[j - start] = segment.osmNodeIds[j];
+                newSegment.lats[j - start] = pointList.getLat(j - start);
+                newSegment.lons[j - start] = pointList.getLon(j - start);
+            }
+            newSegment.pointer = osmNodeStorage.addEdge(newSegment.edge, wayId, osmNodeIds, pointList);
+            pointList = reader.processEdgePoints(pointList);
+            EdgeIteratorState newEdge = baseGraph.edge(from, to).setDistance(reader.calcEdgeDistance(pointList, wayId));
+            for (int j = 0; j < intsPerEdge; j++)
+                edgeIntAccess.setInt(newEdge.getEdge(), j, edgeIntAccess.getInt(segment.edge, j));
+            if (!keyValues.isEmpty())
+                newEdge.setKeyValues(keyValues);
+            if (pointList.size() > 2)
+                newEdge.setWayGeometry(pointList.shallowCopy(1, pointList.size() - 1, false));
+            newSegments.add(newSegment);
+            start = end;
+            from = to;
+        }
+        removeEdge(segment.edge);
+        for (Segment newSegment : newSegments) {
+            segments.put(newSegment.edge, newSegment);
+            for (long osmNodeId : newSegment.osmNodeIds) {
+                List<Segment> list = segmentsByNode.get(osmNodeId);
+                if (list != null && !list.contains(newSegment))
+                    list.add(newSegment);
+            }
+        }
+        return newSegments;
+    }
+
+    private void addWays(List<ReaderWay> ways, OSMChange change) {
+        if (ways.isEmpty())
+            return;
+        if (baseGraph.isFrozen())
+            baseGraph.unfreeze();
+        // nodes that are used more than once become tower nodes, like in WaySegmentParser
+        LongIntHashMap nodeCounts = new LongIntHashMap();
+        for (ReaderWay way : ways)
+            for (LongCursor node : way.getNodes())
+                nodeCounts.addTo(node.value, 1);
+        splitEdgesAtJunctions(nodeCounts.keys());
+        for (ReaderWay way : ways) {
+            reader.preprocessWay(way, id -> toPoint(id, change), id -> getTags(id, change));
+            LongArrayList nodes = way.getNodes();
+            int segmentStart = 0;
+            for (int i = 1; i < nodes.size(); i++) {
+                long node = nodes.get(i);
+                if (i == nodes.size() - 1 || nodeCounts.get(node) > 1 || towerNodes.containsKey(node) || findTowerNode(node) >= 0) {
+                    addSegment(way, nodes, segmentStart, i, change);
+                    segmentStart = i;
+                }
+            }
+            addedWays++;
+        }
+    }
+
+    /**
+     * Splits the existing edges at the given OSM nodes if they are pillar nodes of these edges, such that new ways
+     * can be connected to them
+     */
+    private void splitEdgesAtJunctions(LongContainer osmNodeIds) {
+        IntObjectHashMap<IntArrayList> splitIndices = new IntObjectHashMap<>();
+        for (LongCursor node : osmNodeIds) {
+            List<Segment> list = segmentsByNode.get(node.value);
+            if (list == null || findTowerNode(node.value) >= 0)
+                continue;
+            for (Segment segment : list) {
+                if (removedEdges.contains(segment.edge))
+                    continue;
+                for (int i = 1; i < segment.size() - 1; i++)
+                    if (segment.osmNodeIds[i] == node.value) {
+                        IntArrayList indices = splitIndices.get(segment.edge);
+                        if (indices == null)
+                            splitIndices.put(segment.edge, indices = new IntArrayList());
+                        indices.add(i);
+                    }
+            }
+        }
+        for (IntObjectCursor<IntArrayList> cursor : splitIndices) {
+            int[] indices = cursor.value.toArray();
+            Arrays.sort(indices);
+            replaceEdge(segments.get(cursor.key), IntArrayList.from(indices));
+            splitEdges++;
+        }
+    }
+
+    private void addSegment(ReaderWay way, LongArrayList nodes, int start, int end, OSMChange change) {
+        int from = getTowerNode(nodes.get(start), change);
+        int to = getTowerNode(nodes.get(end), change);
+        if (from == to) {
+            if (end - start < 2)
+                // ignore duplicate nodes
+                return;
+            // split loops, just like WaySegmentParser does
+            int middle = (start + end) / 2;
+            addSegment(way, nodes, start, middle, change);
+            addSegment(way, nodes, middle, end, change);
+            return;
+        }
+        PointList pointList = new PointList(end - start + 1, nodeAccess.is3D());
+        List<Map<String, Object>> nodeTags = new ArrayList<>(end - start + 1);
+        LongArrayList osmNodeIds = new LongArrayList(end - start + 1);
+        for (int i = start; i <= end; i++) {
+            long node = nodes.get(i);
+            // the tower nodes might be existing junctions, so we use their coordinates from the graph
+            int towerNode = i == start ? from : i == end ? to : -1;
+            if (towerNode >= 0)
+                addTowerNode(pointList, towerNode);
+            else
+                pointList.add(toPoint(node, change));
+            nodeTags.add(getTags(node, change));
+            osmNodeIds.add(node);
+        }
+        osmNodeStorage.addEdge(baseGraph.getEdges(), way.getId(), osmNodeIds, pointList);
+        reader.addEdge(from, to, pointList, way, nodeTags);
+    }
+
+    private PointList createPointList(Segment segment, int start, int end, int from, int to) {
+        PointList pointList = new PointList(end - start + 1, nodeAccess.is3D());
+        addTowerNode(pointList, from);
+        for (int i = start + 1; i < end; i++)
+            pointList.add(toPoint(segment.osmNodeIds[i], segment.lats[i], segment.lons[i]));
+        addTowerNode(pointList, to);
+        return pointList;
+    }
+
+    private void addTowerNode(PointList pointList, int towerNode) {
+        if (nodeAccess.is3D())
+            pointList.add(nodeAccess.getLat(towerNode), nodeAccess.getLon(towerNode), nodeAccess.getEle(towerNode));
+        else
+            pointList.add(nodeAccess.getLat(towerNode), nodeAccess.getLon(towerNode));
+    }
+
+    private int getTowerNode(long osmNodeId, OSMChange change) {
+        ReaderNode node = change.getNode(osmNodeId);
+        if (node != null)
+            return getTowerNode(osmNodeId, node.getLat(), node.getLon());
+        Segment segment = segmentsByNode.get(osmNodeId).get(0);
+        int index = segment.indexOf(osmNodeId);
+        return getTowerNode(osmNodeId, segment.lats[index], segment.lons[index]);
+    }
+
+    /**
+     * @return the tower node of the given OSM node. If there is none it is created at the given coordinates.
+     */
+    private int getTowerNode(long osmNodeId, double lat, double lon) {
+        int towerNode = towerNodes.getOrDefault(osmNodeId, -1);
+        if (towerNode >= 0)
+            return towerNode;
+        towerNode = findTowerNode(osmNodeId);
+        if (towerNode < 0) {
+            towerNode = baseGraph.getNodes();
+            setNode(towerNode, new ReaderNode(osmNodeId, lat, lon));
+        }
+        towerNodes.put(osmNodeId, towerNode);
+        return towerNode;
+    }
+
+    /**
+     * @return the existing tower node of an edge that was not removed for the given OSM node or -1
+     */
+    private int findTowerNode(long osmNodeId) {
+        List<Segment> list = segmentsByNode.get(osmNodeId);
+        if (list == null)
+            return -1;
+        for (Segment segment : list) {
+            if (removedEdges.contains(segment.edge))
+                continue;
+            if (segment.osmNodeIds[0] == osmNodeId)
+                return baseGraph.getEdgeIteratorState(segment.edge, Integer.MIN_VALUE).getBaseNode();
+            if (segment.osmNodeIds[segment.size() - 1] == osmNodeId)
+                return baseGraph.getEdgeIteratorState(segment.edge, Integer.MIN_VALUE).getAdjNode();
+        }
+        return -1;
+    }
+
+    /**
+     * @return the coordinates of the given OSM node from the change file or, if it did not change, from the graph
+     */
+    private GHPoint3D toPoint(long osmNodeId, OSMChange change) {
+        ReaderNode node = change.getNode(osmNodeId);
+        if (node != null)
+            return toPoint(osmNodeId, node.getLat(), node.getLon());
+        List<Segment> list = segmentsByNode.get(osmNodeId);
+        if (list == null)
+            return null;
+        Segment segment = list.get(0);
+        int index = segment.indexOf(osmNodeId);
+        return toPoint(osmNodeId, segment.lats[index], segment.lons[index]);
+    }
+
+    private GHPoint3D toPoint(long osmNodeId, double lat, double lon) {
+        return new GHPoint3D(lat, lon, nodeAccess.is3D() ? reader.getElevation(new ReaderNode(osmNodeId, lat, lon)) : Double.NaN);
+    }
+
+    /**
+     * @return the tags of the given OSM node. The tags of nodes that did not change are not known.
+     */
+    private static Map<String, Object> getTags(long osmNodeId, OSMChange change) {
+        ReaderNode node = change.getNode(osmNodeId);
+        return node == null ? Collections.emptyMap() : node.getTags();
+    }
+
+    private void recordWeights(int edge) {
+        // edges that were added for this change had no weights before
+        if (edge < edgesBefore && !previousWeights.containsKey(edge))
+            previousWeights.put(edge, calcWeights(edge));
+    }
+
+    private double[] calcWeights(int edge) {
+        EdgeIteratorState edgeState = baseGraph.getEdgeIteratorState(edge, Integer.MIN_VALUE);
+        double[] weights = new double[weightings.size() * 2];
+        int i = 0;
+        for (Weighting weighting : weightings.values()) {
+            weights[i++] = weighting.calcEdgeWeight(edgeState, false);
+            weights[i++] = weighting.calcEdgeWeight(edgeState, true);
+        }
+        return weights;
+    }
+
+    /**
+     * @return the names of the weightings for which the weight of at least one changed edge is different now or which
+     * can use at least one of the new edges
+     */
+    private Set<String> findChangedWeightings() {
+        List<String> names = new ArrayList<>(weightings.keySet());
+        Set<String> changed = new LinkedHashSet<>();
+        for (IntObjectCursor<double[]> cursor : previousWeights) {
+            double[] weights = calcWeights(cursor.key);
+            for (int i = 0; i < weights.length; i++)
+                if (Double.compare(weights[i], cursor.value[i]) != 0)
+                    changed.add(names.get(i / 2));
+        }
+        for (int edge = edgesBefore; edge < baseGraph.getEdges(); edge++) {
+            if (removedEdges.contains(edge))
+                continue;
+            double[] weights = calcWeights(edge);
+            for (int i = 0; i < weights.length; i++)
+                if (Double.isFinite(weights[i]))
+                    changed.add(names.get(i / 2));
+        }
+        return changed;
+    }
+
+    /**
+     * @return the edges that were changed or removed and the new edges that were not removed again, sorted by edge
+     */
+    private IntArrayList findChangedEdges() {
+        IntArrayList changed = new IntArrayList(previousWeights.size() + baseGraph.getEdges() - edgesBefore);
+        int[] edges = previousWeights.keys().toArray();
+        Arrays.sort(edges);
+        changed.add(edges);
+        for (int edge = edgesBefore; edge < baseGraph.getEdges(); edge++)
+            if (!removedEdges.contains(edge))
+                changed.add(edge);
+        return changed;
+    }
+
+    /**
+     * The OSM nodes of an edge as they are stored in the {@link OSMNodeStorage}
+     */
+    private static class Segment {
+        final int edge;
+        long pointer;
+        final long[] osmNodeIds;
+        final double[] lats;
+        final double[] lons;
+
+        Segment(int edge, long pointer, int size) {
+            this.edge = edge;
+            this.pointer = pointer;
+            osmNodeIds = new long[size];
+            lats = new double[size];
+            lons = new double[size];
+        }
+
+        int size() {
+            return osmNodeIds.length;
+        }
+
+        int indexOf(long osmNodeId) {
+            for (int i = 0; i < osmNodeIds.length; i++)
+                if (osmNodeIds[i] == osmNodeId)
+                    return i;
+            throw new IllegalArgumentException("OSM node " + osmNodeId + " is not part of edge " + edge);
+        }
+    }
+
+    public static class Result {
+        private final int updatedWays, removedWays, addedWays, addedEdges, skippedWays, movedNodes, splitEdges;
+        private final Set<String> changedWeightings;
+        private final IntArrayList changedEdges;
+
+        Result(int updatedWays, int removedWays, int addedWays, int addedEdges, int skippedWays, int movedNodes,
+               int splitEdges, Set<String> changedWeightings, IntArrayList changedEdges) {
+            this.updatedWays = updatedWays;
+            this.removedWays = removedWays;
+            this.addedWays = addedWays;
+            this.addedEdges = addedEdges;
+            this.skippedWays = skippedWays;
+            this.movedNodes = movedNodes;
+            this.splitEdges = splitEdges;
+            this.changedWeightings = changedWeightings;
+            this.changedEdges = changedEdges;
+        }
+
+        /**
+         * @return the number of ways for which only the tags changed
+         */
+        public int getUpdatedWays() {
+            return updatedWays;
+        }
+
+        /**
+         * @return the number of ways whose edges were made inaccessible without adding new ones
+         */
+        public int getRemovedWays() {
+            return removedWays;
+        }
+
+        /**
+         * @return the number of created ways and ways with a changed geometry that were added as new edges
+         */
+        public int getAddedWays() {
+            return addedWays;
+        }
+
+        /**
+         * @return the number of new edges, including the ones that replace split edges
+         */
+        public int getAddedEdges() {
+            return addedEdges;
+        }
+
+        /**
+         * @return the number of ways that could not be applied, because the coordinates of some nodes were missing
+         */
+        public int getSkippedWays() {
+            return skippedWays;
+        }
+
+        /**
+         * @return the number of nodes of the graph whose coordinates changed
+         */
+        public int getMovedNodes() {
+            return movedNodes;
+        }
+
+        /**
+         * @return the number of existing edges that were split, because a new way joins them at a pillar node
+         */
+        public int getSplitEdges() {
+            return splitEdges;
+        }
+
+        /**
+         * @return true if edges were added, i.e. everything that depends on the graph structure and not only on the
+         * weights is outdated, like the node ordering of the customizable CH
+         */
+        public boolean isTopologyChanged() {
+            return addedEdges > 0;
+        }
+
+        /**
+         * @return true if edges were added or nodes moved, i.e. the location index needs to be created again
+         */
+        public boolean isLocationIndexOutdated() {
+            return addedEdges > 0 || movedNodes > 0;
+        }
+
+        /**
+         * @return the names of the weightings for which the weight of at least one edge changed or which can use one
+         * of the new edges
+         */
+        public Set<String> getChangedWeightings() {
+            return changedWeightings;
+        }
+
+        /**
+         * @return the edges that were changed, removed or added. The subnetworks around them might have changed.
+         */
+        public IntArrayList getChangedEdges() {
+            return changedEdges;
+        }
+
+        @Override
+        public String toString() {
+            return "updated ways: " + updatedWays + ", removed ways: " + removedWays + ", added ways: " + addedWays
+                    + ", added edges: " + addedEdges + ", skipped ways: " + skippedWays + ", moved nodes: " + movedNodes
+                    + ", split edges: " + splitEdges + ", changed weightings: " + changedWeightings;
+        }
+    }
+}
@@ -56,6 +56,7 @@ public class OSMInputFile implements Sink, OSMInput {
     private boolean hasIncomingData;
     private int workerThreads = -1;
     private SkipOptions skipOptions = SkipOptions.none();
+    private boolean pooledDecoding = false;
     private OSMFileHeader fileheader;
 
     public OSMInputFile(File file) throws IOException {
@@ -90,6 +91,15 @@ public class OSMInputFile implements Sink, OSMInput {
         return this;
     }
 
+    /**
+     * If true the pbf decoding threads reuse their inflaters and buffers and the tags of nodes and ways are kept as
+     * string table indices until they are modified. This reduces the garbage created while reading pbf files.
+     */
+    public OSMInputFile setPooledDecoding(boolean pooledDecoding) {
+        this.pooledDecoding = pooledDecoding;
+        return this;
+    }
+
     @SuppressWarnings("unchecked")
     private InputStream decode(File file) throws IOException {
         final String name = file.getName();
@@ -257,7 +267,7 @@ public class OSMInputFile implements Sink, OSMInput {
         if (workerThreads <= 0)
             workerThreads = 1;
 
-        pbfReader = new PbfReader(stream, this, workerThreads, skipOptions);
+        pbfReader = new PbfReader(stream, this, workerThreads, skipOptions, pooledDecoding);
         pbfReaderThread = new Thread(pbfReader, "PBF Reader");
         pbfReaderThread.start();
     }
@@ -21,9 +21,13 @@ package com.graphhopper.reader.osm;
 import com.carrotsearch.hppc.LongScatterSet;
 import com.carrotsearch.hppc.LongSet;
 import com.graphhopper.coll.GHLongLongBTree;
+import com.graphhopper.coll.GHLongLongDenseMap;
+import com.graphhopper.coll.GHLongLongSortedRunMap;
 import com.graphhopper.coll.LongLongMap;
 import com.graphhopper.reader.ReaderNode;
+import com.graphhopper.reader.dem.BatchElevationLookup;
 import com.graphhopper.search.KVStorage;
+import com.graphhopper.storage.DAType;
 import com.graphhopper.storage.Directory;
 import com.graphhopper.util.PointAccess;
 import com.graphhopper.util.PointList;
@@ -80,10 +84,14 @@ class OSMNodeData {
     private long nextArtificialOSMNodeId = -Long.MAX_VALUE;
 
     public OSMNodeData(PointAccess nodeAccess, Directory directory) {
-        // We use a b-tree that can store as many entries as there are longs. A tree is also more
-        // memory efficient, because there is no waste for empty entries, and it also avoids
-        // allocating big arrays when growing the size.
-        idsByOsmNodeIds = new GHLongLongBTree(200, 5, EMPTY_NODE);
+        this(nodeAccess, directory, "btree");
+    }
+
+    /**
+     * @param nodeIdMap the map used to store the internal node ids, see {@link #createIdMap}
+     */
+    public OSMNodeData(PointAccess nodeAccess, Directory directory, String nodeIdMap) {
+        idsByOsmNodeIds = createIdMap(nodeIdMap, directory);
         towerNodes = nodeAccess;
         pillarNodes = new PillarInfo(towerNodes.is3D(), directory);
 
@@ -92,6 +100,35 @@ class OSMNodeData {
         nodeKVStorage = new KVStorage(directory, false).create(100);
     }
 
+    /**
+     * btree: We use a b-tree that can store as many entries as there are longs. A tree is also more memory efficient,
+     * because there is no waste for empty entries, and it also avoids allocating big arrays when growing the size.
+     * However, it is stored on the heap.
+     * <p>
+     * dense, dense_mmap: The OSM node IDs are mostly dense, so we can also store the ids in pages of an array, see
+     * {@link GHLongLongDenseMap}. This is faster, but the memory depends on the largest OSM node id and not on the
+     * number of nodes: 5 bytes per id, so about 60GB for the planet, which is more than the btree needs. With
+     * dense_mmap the pages are memory mapped, so the ids are stored off-heap and can be spilled to disk.
+     * <p>
+     * sorted_runs: The ids are collected on the heap and written to memory mapped runs of sorted keys, see
+     * {@link GHLongLongSortedRunMap}. It needs 13 bytes per node off-heap and only a small buffer on the heap, but the
+     * lookups are slower.
+     */
+    static LongLongMap createIdMap(String nodeIdMap, Directory directory) {
+        switch (nodeIdMap) {
+            case "btree":
+                return new GHLongLongBTree(200, 5, EMPTY_NODE);
+            case "dense":
+                return new GHLongLongDenseMap(directory, "tmp_node_ids", DAType.RAM, EMPTY_NODE);
+            case "dense_mmap":
+                return new GHLongLongDenseMap(directory, "tmp_node_ids", DAType.MMAP, EMPTY_NODE);
+            case "sorted_runs":
+                return new GHLongLongSortedRunMap(directory, "tmp_node_ids", DAType.MMAP, 1 << 22, EMPTY_NODE);
+            default:
+                throw new IllegalArgumentException("Unknown node id map: " + nodeIdMap + ", use btree, dense, dense_mmap or sorted_runs");
+        }
+    }
+
     public boolean is3D() {
         return towerNodes.is3D();
     }
@@ -184,6 +221,39 @@ class OSMNodeData {
         return id;
     }
 
+    /**
+     * @return the tower nodes followed by the pillar nodes that were added so far, which allows setting their
+     * elevations after their coordinates were added
+     */
+    BatchElevationLookup.Points getPoints() {
+        final int towers = nextTowerId;
+        final long pillars = nextPillarId;
+        return new BatchElevationLookup.Points() {
+            @Override
+            public long size() {
+                return towers + pillars;
+            }
+
+            @Override
+            public double getLat(long index) {
+                return index < towers ? towerNodes.getLat((int) index) : pillarNodes.getLat(index - towers);
+            }
+
+            @Override
+            public double getLon(long index) {
+                return index < towers ? towerNodes.getLon((int) index) : pillarNodes.getLon(index - towers);
+            }
+
+            @Override
+            public void setEle(long index, double ele) {
+                if (index < towers)
+                    towerNodes.setNode((int) index, towerNodes.getLat((int) index), towerNodes.getLon((int) index), ele);
+                else
+                    pillarNodes.setEle(index - towers, ele);
+            }
+        };
+    }
+
     /**
      * Creates a copy of the coordinates stored for the given node ID
      *
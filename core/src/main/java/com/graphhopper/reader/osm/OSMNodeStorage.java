@@ -0,0 +1,373 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.reader.osm;
+
+import com.carrotsearch.hppc.BitMixer;
+import com.carrotsearch.hppc.LongArrayList;
+import com.graphhopper.storage.DataAccess;
+import com.graphhopper.storage.Directory;
+import com.graphhopper.util.Constants;
+import com.graphhopper.util.GHUtility;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.PointList;
+
+/**
+ * Stores the OSM node IDs and the coordinates of the OSM nodes an edge was created from. The points are stored before
+ * they are simplified, so there is one entry for every node of the OSM way segment, the first and last being the tower
+ * nodes of the edge. This is needed to apply OSM changes, see {@link OSMChangeApplier}, because change files only
+ * contain the nodes that changed and not the unchanged nodes that changed ways refer to.
+ * <p>
+ * The entries are appended in the format |edge|count|osm_way_id|count x (|osm_node_id|lat|lon|)|. The entries of
+ * removed edges are kept, but their edge is set to -1. All entries can be read sequentially with a {@link Cursor}, and
+ * the entries of an OSM way or of an OSM node can be found with {@link #findByWay(long)} and
+ * {@link #findByNode(long)}, so applying a change does not need to read the whole storage. These lookups use two hash
+ * tables that map the IDs to the pointers of the entries. They are built by {@link #buildIndex()} after the import
+ * and are kept up to date by {@link #addEdge}.
+ */
+public class OSMNodeStorage {
+    private static final int ENTRY_EDGE = 0;
+    private static final int ENTRY_COUNT = 4;
+    private static final int ENTRY_WAY = 8;
+    private static final int ENTRY_HEADER_BYTES = 16;
+    private static final int NODE_BYTES = 16;
+
+    private final DataAccess da;
+    private final PointerIndex wayIndex;
+    private final PointerIndex nodeIndex;
+    private long bytes;
+
+    public OSMNodeStorage(Directory dir) {
+        da = dir.create("osm_nodes");
+        wayIndex = new PointerIndex(dir.create("osm_nodes_way_index"));
+        nodeIndex = new PointerIndex(dir.create("osm_nodes_node_index"));
+    }
+
+    public OSMNodeStorage create(long initBytes) {
+        da.create(initBytes);
+        return this;
+    }
+
+    /**
+     * Loads the storage and its index. The index is built if it was not stored.
+     */
+    public boolean loadExisting() {
+        if (!da.loadExisting())
+            return false;
+        GHUtility.checkDAVersion(da.getName(), Constants.VERSION_OSM_NODES, da.getHeader(0));
+        bytes = bitsToLong(da.getHeader(4), da.getHeader(8));
+        if (!wayIndex.loadExisting() || !nodeIndex.loadExisting())
+            buildIndex();
+        return true;
+    }
+
+    /**
+     * Creates the hash tables that are used by {@link #findByWay(long)} and {@link #findByNode(long)} for all entries
+     * that were added so far. Their capacity is twice the current number of keys, so they only need to be built again
+     * when the entries grow by half, see {@link #addEdge}.
+     */
+    public void buildIndex() {
+        long entries = 0, nodes = 0;
+        Cursor cursor = cursor();
+        while (cursor.next()) {
+            entries++;
+            nodes += cursor.size();
+        }
+        fill(wayIndex, 2 * entries, false);
+        fill(nodeIndex, 2 * nodes, true);
+    }
+
+    private void fill(PointerIndex index, long capacity, boolean byNode) {
+        index.clear(Math.max(16, capacity));
+        Cursor cursor = cursor();
+        while (cursor.next())
+            index(index, cursor.getPointer(), byNode);
+    }
+
+    private void index(PointerIndex index, long pointer, boolean byNode) {
+        if (!byNode) {
+            index.put(getLong(pointer + ENTRY_WAY), pointer);
+            return;
+        }
+        int count = da.getInt(pointer + ENTRY_COUNT);
+        for (int i = 0; i < count; i++)
+            index.put(getLong(pointer + ENTRY_HEADER_BYTES + (long) i * NODE_BYTES), pointer);
+    }
+
+    public void flush() {
+        da.setHeader(0, Constants.VERSION_OSM_NODES);
+        da.setHeader(4, (int) (bytes >>> 32));
+        da.setHeader(8, (int) bytes);
+        da.flush();
+        if (wayIndex.isCreated()) {
+            wayIndex.flush();
+            nodeIndex.flush();
+        }
+    }
+
+    public void close() {
+        da.close();
+        wayIndex.da.close();
+        nodeIndex.da.close();
+    }
+
+    public boolean isClosed() {
+        return da.isClosed();
+    }
+
+    public long getCapacity() {
+        return da.getCapacity() + wayIndex.da.getCapacity() + nodeIndex.da.getCapacity();
+    }
+
+    /**
+     * Appends the OSM node IDs and coordinates of the given edge. Both lists must contain all nodes of the OSM way
+     * segment of the edge, including its tower nodes. If the index was built the new entry is added to it.
+     *
+     * @return the pointer of the new entry
+     */
+    public long addEdge(int edge, long osmWayId, LongArrayList osmNodeIds, PointList pointList) {
+        if (osmNodeIds.size() != pointList.size())
+            throw new IllegalArgumentException("There must be one OSM node ID per point, edge: " + edge
+                    + ", OSM node IDs: " + osmNodeIds.size() + ", points: " + pointList.size());
+        long pointer = bytes;
+        bytes += ENTRY_HEADER_BYTES + (long) osmNodeIds.size() * NODE_BYTES;
+        da.ensureCapacity(bytes);
+        da.setInt(pointer + ENTRY_EDGE, edge);
+        da.setInt(pointer + ENTRY_COUNT, osmNodeIds.size());
+        setLong(pointer + ENTRY_WAY, osmWayId);
+        for (int i = 0; i < osmNodeIds.size(); i++) {
+            long nodePointer = pointer + ENTRY_HEADER_BYTES + (long) i * NODE_BYTES;
+            setLong(nodePointer, osmNodeIds.get(i));
+            da.setInt(nodePointer + 8, Helper.degreeToInt(pointList.getLat(i)));
+            da.setInt(nodePointer + 12, Helper.degreeToInt(pointList.getLon(i)));
+        }
+        if (wayIndex.isCreated()) {
+            addToIndex(wayIndex, pointer, 1, false);
+            addToIndex(nodeIndex, pointer, osmNodeIds.size(), true);
+        }
+        return pointer;
+    }
+
+    private void addToIndex(PointerIndex index, long pointer, int keys, boolean byNode) {
+        // we keep the load factor below 3/4, otherwise the probe sequences get long
+        if (4 * (index.size + keys) > 3 * index.capacity)
+            // the new entry was already appended, so it is indexed as well
+            fill(index, 2 * (index.size + keys), byNode);
+        else
+            index(index, pointer, byNode);
+    }
+
+    /**
+     * @return the pointers of the entries of the given OSM way that were not removed
+     */
+    public LongArrayList findByWay(long osmWayId) {
+        return wayIndex.find(osmWayId);
+    }
+
+    /**
+     * @return the pointers of the entries that were not removed and that contain the given OSM node
+     */
+    public LongArrayList findByNode(long osmNodeId) {
+        return nodeIndex.find(osmNodeId);
+    }
+
+    /**
+     * Marks the entry at the given pointer as removed, so it is skipped by {@link Cursor#next()}
+     */
+    public void remove(long pointer) {
+        da.setInt(pointer + ENTRY_EDGE, -1);
+    }
+
+    /**
+     * Changes the coordinates of the node with the given index of the entry at the given pointer
+     */
+    public void setCoordinates(long pointer, int index, double lat, double lon) {
+        long nodePointer = pointer + ENTRY_HEADER_BYTES + (long) index * NODE_BYTES;
+        da.setInt(nodePointer + 8, Helper.degreeToInt(lat));
+        da.setInt(nodePointer + 12, Helper.degreeToInt(lon));
+    }
+
+    /**
+     * Needs to be called when the edges of the graph are renumbered, e.g. by the {@link com.graphhopper.routing.util.HilbertCurveSorter}
+     */
+    public void renumberEdges(int[] newEdgeIds) {
+        for (long pointer = 0; pointer < bytes; pointer += ENTRY_HEADER_BYTES + (long) da.getInt(pointer + ENTRY_COUNT) * NODE_BYTES) {
+            int edge = da.getInt(pointer + ENTRY_EDGE);
+            if (edge >= 0)
+                da.setInt(pointer + ENTRY_EDGE, newEdgeIds[edge]);
+        }
+    }
+
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    private long getLong(long pointer) {
+        return bitsToLong(da.getInt(pointer), da.getInt(pointer + 4));
+    }
+
+    private void setLong(long pointer, long value) {
+        da.setInt(pointer, (int) (value >>> 32));
+        da.setInt(pointer + 4, (int) value);
+    }
+
+    private static long bitsToLong(int high, int low) {
+        return ((long) high << 32) | (low & 0xFFFFFFFFL);
+    }
+
+    /**
+     * A hash table with open addressing that maps OSM IDs to the pointers of the entries that contain them. A key can
+     * occur in several slots. Every slot stores the key and the pointer divided by 16 plus one, so zero marks an
+     * empty slot and a storage of up to 64GB can be indexed.
+     */
+    private class PointerIndex {
+        private static final int SLOT_BYTES = 12;
+        private final DataAccess da;
+        private long capacity;
+        private long size;
+
+        PointerIndex(DataAccess da) {
+            this.da = da;
+        }
+
+        boolean isCreated() {
+            return capacity > 0;
+        }
+
+        boolean loadExisting() {
+            if (!da.loadExisting())
+                return false;
+            capacity = bitsToLong(da.getHeader(0), da.getHeader(4));
+            size = bitsToLong(da.getHeader(8), da.getHeader(12));
+            return true;
+        }
+
+        void flush() {
+            da.setHeader(0, (int) (capacity >>> 32));
+            da.setHeader(4, (int) capacity);
+            da.setHeader(8, (int) (size >>> 32));
+            da.setHeader(12, (int) size);
+            da.flush();
+        }
+
+        void clear(long capacity) {
+            if (this.capacity == 0 && da.getCapacity() == 0)
+                da.create(capacity * SLOT_BYTES);
+            else
+                da.ensureCapacity(capacity * SLOT_BYTES);
+            for (long slot = 0; slot < capacity; slot++)
+                da.setInt(slot * SLOT_BYTES + 8, 0);
+            this.capacity = capacity;
+            size = 0;
+        }
+
+        void put(long key, long entryPointer) {
+            if ((entryPointer & 15) != 0 || (entryPointer >>> 4) >= 0xFFFF_FFFFL)
+                throw new IllegalStateException("Cannot index entry pointer " + entryPointer);
+            long slot = firstSlot(key);
+            while (da.getInt(slot * SLOT_BYTES + 8) != 0)
+                slot = slot + 1 == capacity ? 0 : slot + 1;
+            da.setInt(slot * SLOT_BYTES, (int) (key >>> 32));
+            da.setInt(slot * SLOT_BYTES + 4, (int) key);
+            da.setInt(slot * SLOT_BYTES + 8, (int) ((entryPointer >>> 4) + 1));
+            size++;
+        }
+
+        LongArrayList find(long key) {
+            if (!isCreated())
+                throw new IllegalStateException("The index of the OSM node storage was not built");
+            LongArrayList pointers = new LongArrayList(2);
+            for (long slot = firstSlot(key); ; slot = slot + 1 == capacity ? 0 : slot + 1) {
+                int value = da.getInt(slot * SLOT_BYTES + 8);
+                if (value == 0)
+                    return pointers;
+                if (bitsToLong(da.getInt(slot * SLOT_BYTES), da.getInt(slot * SLOT_BYTES + 4)) != key)
+                    continue;
+                long entryPointer = ((value & 0xFFFF_FFFFL) - 1) << 4;
+                // a node can occur twice in the same entry, e.g. for loops
+                if (OSMNodeStorage.this.da.getInt(entryPointer + ENTRY_EDGE) >= 0 && !pointers.contains(entryPointer))
+                    pointers.add(entryPointer);
+            }
+        }
+
+        private long firstSlot(long key) {
+            return (BitMixer.mix64(key) & Long.MAX_VALUE) % capacity;
+        }
+    }
+
+    /**
+     * Iterates over the entries of all edges that were not removed
+     */
+    public class Cursor {
+        private long pointer = -1;
+        private long nextPointer = 0;
+
+        public boolean next() {
+            while (nextPointer < bytes) {
+                pointer = nextPointer;
+                nextPointer += ENTRY_HEADER_BYTES + (long) size() * NODE_BYTES;
+                if (getEdge() >= 0)
+                    return true;
+            }
+            return false;
+        }
+
+        /**
+         * @return the pointer of the current entry, see {@link #remove(long)} and {@link #setCoordinates(long, int, double, double)}
+         */
+        public long getPointer() {
+            return pointer;
+        }
+
+        /**
+         * Moves the cursor to the entry at the given pointer, e.g. one that was returned by {@link #findByWay(long)}.
+         * {@link #next()} continues with the entry after it.
+         */
+        public Cursor moveTo(long pointer) {
+            this.pointer = pointer;
+            nextPointer = pointer + ENTRY_HEADER_BYTES + (long) size() * NODE_BYTES;
+            return this;
+        }
+
+        public int getEdge() {
+            return da.getInt(pointer + ENTRY_EDGE);
+        }
+
+        public long getOSMWayId() {
+            return getLong(pointer + ENTRY_WAY);
+        }
+
+        /**
+         * @return the number of OSM nodes of the current edge
+         */
+        public int size() {
+            return da.getInt(pointer + ENTRY_COUNT);
+        }
+
+        public long getOSMNodeId(int index) {
+            return getLong(pointer + ENTRY_HEADER_BYTES + (long) index * NODE_BYTES);
+        }
+
+        public double getLat(int index) {
+            return Helper.intToDegree(da.getInt(pointer + ENTRY_HEADER_BYTES + (long) index * NODE_BYTES + 8));
+        }
+
+        public double getLon(int index) {
+            return Helper.intToDegree(da.getInt(pointer + ENTRY_HEADER_BYTES + (long) index * NODE_BYTES + 12));
+        }
+    }
+}
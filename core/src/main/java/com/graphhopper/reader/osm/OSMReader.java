@@ -24,6 +24,7 @@ import com.graphhopper.reader.ReaderElement;
 import com.graphhopper.reader.ReaderNode;
 import com.graphhopper.reader.ReaderRelation;
 import com.graphhopper.reader.ReaderWay;
+import com.graphhopper.reader.dem.BatchElevationLookup;
 import com.graphhopper.reader.dem.EdgeElevationSmoothingMovingAverage;
 import com.graphhopper.reader.dem.EdgeElevationSmoothingRamer;
 import com.graphhopper.reader.dem.EdgeSampling;
@@ -53,7 +54,9 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.function.DoubleSupplier;
 import java.util.function.LongToIntFunction;
+import java.util.function.Supplier;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
@@ -88,6 +91,10 @@ public class OSMReader {
     private ElevationProvider eleProvider = ElevationProvider.NOOP;
     private AreaIndex<CustomArea> areaIndex;
     private CountryRuleFactory countryRuleFactory = null;
+    private Supplier<OSMParsers> osmParsersFactory;
+    private ParallelWayTagParser parallelWayTagParser;
+    private ImportMetrics importMetrics = new ImportMetrics();
+    private OSMNodeStorage osmNodeStorage;
     private File osmFile;
     private final RamerDouglasPeucker simplifyAlgo = new RamerDouglasPeucker();
     private int bugCounter = 0;
@@ -144,11 +151,38 @@ public class OSMReader {
         return this;
     }
 
+    /**
+     * Records the resources used by the passes of the {@link WaySegmentParser} and, if enabled, by the tag parsers.
+     */
+    public OSMReader setImportMetrics(ImportMetrics importMetrics) {
+        this.importMetrics = importMetrics;
+        return this;
+    }
+
+    /**
+     * Stores the OSM node IDs and coordinates of every edge in the given storage, so that OSM changes can be applied
+     * to the graph later, see {@link OSMChangeApplier}
+     */
+    public OSMReader setOSMNodeStorage(OSMNodeStorage osmNodeStorage) {
+        this.osmNodeStorage = osmNodeStorage;
+        return this;
+    }
+
     public OSMReader setCountryRuleFactory(CountryRuleFactory countryRuleFactory) {
         this.countryRuleFactory = countryRuleFactory;
         return this;
     }
 
+    /**
+     * Sets the factory that creates the additional tag parsers which are needed to parse the ways on multiple threads,
+     * see {@link OSMReaderConfig#setTagParserThreads(int)}. The created parsers must use the same encoded values and
+     * configuration as the ones given in the constructor.
+     */
+    public OSMReader setOSMParsersFactory(Supplier<OSMParsers> osmParsersFactory) {
+        this.osmParsersFactory = osmParsersFactory;
+        return this;
+    }
+
     public void readGraph() throws IOException {
         if (osmParsers == null)
             throw new IllegalStateException("Tag parsers were not set.");
@@ -162,17 +196,57 @@ public class OSMReader {
         if (!baseGraph.isInitialized())
             throw new IllegalStateException("BaseGraph must be initialize before we can read OSM");
 
-        WaySegmentParser waySegmentParser = new WaySegmentParser.Builder(baseGraph.getNodeAccess(), baseGraph.getDirectory())
+        WaySegmentParser.Builder waySegmentParserBuilder = new WaySegmentParser.Builder(baseGraph.getNodeAccess(), baseGraph.getDirectory(), config.getNodeIdMap())
                 .setElevationProvider(this::getElevation)
                 .setWayFilter(this::acceptWay)
                 .setSplitNodeFilter(this::isBarrierNode)
                 .setWayPreprocessor(this::preprocessWay)
                 .setRelationPreprocessor(this::preprocessRelations)
                 .setRelationProcessor(this::processRelation)
-                .setEdgeHandler(this::addEdge)
+                .setEdgeHandler(new WaySegmentParser.EdgeHandler() {
+                    @Override
+                    public void handleEdge(int from, int to, PointList pointList, ReaderWay way, List<Map<String, Object>> nodeTags) {
+                        addEdge(from, to, pointList, way, nodeTags);
+                    }
+
+                    @Override
+                    public void handleEdge(int from, int to, PointList pointList, LongArrayList osmNodeIds, ReaderWay way, List<Map<String, Object>> nodeTags) {
+                        // the points are simplified when the edge is added, but we need to store all of them
+                        if (osmNodeStorage != null)
+                            osmNodeStorage.addEdge(baseGraph.getEdges(), way.getId(), osmNodeIds, pointList);
+                        addEdge(from, to, pointList, way, nodeTags);
+                    }
+                })
                 .setWorkerThreads(config.getWorkerThreads())
-                .build();
-        waySegmentParser.readOSM(osmFile);
+                .setPooledPbfDecoding(config.isPooledPbfDecoding())
+                .setImportMetrics(importMetrics);
+        if (config.getElevationLookupThreads() > 0 && eleProvider != ElevationProvider.NOOP)
+            waySegmentParserBuilder.setElevationLookup(this::lookupElevations);
+        WaySegmentParser waySegmentParser = waySegmentParserBuilder.build();
+        List<OSMParsers> parsers = new ArrayList<>();
+        if (config.getTagParserThreads() > 1) {
+            if (osmParsersFactory == null)
+                throw new IllegalStateException("Parsing the ways with " + config.getTagParserThreads() + " threads requires an OSMParsers factory");
+            for (int i = 0; i < config.getTagParserThreads(); i++)
+                parsers.add(osmParsersFactory.get());
+            int intsPerEdge = (baseGraph.getBytesForFlags() + 3) / 4;
+            parallelWayTagParser = new ParallelWayTagParser(edgeIntAccess, intsPerEdge, parsers, 10_000);
+        } else {
+            parsers.add(osmParsers);
+        }
+        if (importMetrics.isTagParserTiming())
+            parsers.forEach(OSMParsers::enableTiming);
+        try {
+            waySegmentParser.readOSM(osmFile);
+            if (parallelWayTagParser != null)
+                parallelWayTagParser.finish();
+            if (importMetrics.isTagParserTiming())
+                parsers.forEach(importMetrics::addTagParserTimes);
+        } finally {
+            if (parallelWayTagParser != null)
+                parallelWayTagParser.close();
+            parallelWayTagParser = null;
+        }
         osmDataDate = waySegmentParser.getTimestamp();
         if (baseGraph.getNodes() == 0)
             throw new RuntimeException("Graph after reading OSM must not be empty");
@@ -195,6 +269,14 @@ public class OSMReader {
         return Double.isNaN(ele) ? config.getDefaultElevation() : ele;
     }
 
+    /**
+     * Sets the elevations of all nodes at once instead of calling {@link #getElevation(ReaderNode)} for every node,
+     * see {@link OSMReaderConfig#setElevationLookupThreads(int)}
+     */
+    protected void lookupElevations(BatchElevationLookup.Points points) {
+        new BatchElevationLookup(eleProvider, config.getElevationLookupThreads()).lookup(points, config.getDefaultElevation());
+    }
+
     /**
      * This method is called for each way during the first and second pass of the {@link WaySegmentParser}. All OSM
      * ways that are not accepted here and all nodes that are not referenced by any such way will be ignored.
@@ -324,6 +406,39 @@ public class OSMReader {
         if (pointList.size() != nodeTags.size())
             throw new AssertionError("there should be as many maps of node tags as there are points. node tags: " + nodeTags.size() + ", points: " + pointList.size());
 
+        pointList = processEdgePoints(pointList);
+        double distance = calcEdgeDistance(pointList, way.getId());
+
+        setArtificialWayTags(pointList, way, distance, nodeTags);
+        IntsRef relationFlags = getRelFlagsMap(way.getId());
+        EdgeIteratorState edge = baseGraph.edge(fromIndex, toIndex).setDistance(distance);
+        if (parallelWayTagParser == null)
+            osmParsers.handleWayTags(edge.getEdge(), edgeIntAccess, way, relationFlags);
+        else
+            // the way and the relation flags are changed for the next edge, so we need to copy them
+            parallelWayTagParser.add(edge.getEdge(), copyWay(way), IntsRef.deepCopyOf(relationFlags));
+        Map<String, KValue> map = way.getTag("key_values", Collections.emptyMap());
+        if (!map.isEmpty())
+            edge.setKeyValues(map);
+
+        // If the entire way is just the first and last point, do not waste space storing an empty way geometry
+        if (pointList.size() > 2) {
+            // the geometry consists only of pillar nodes, but we check that the first and last points of the pointList
+            // are equal to the tower node coordinates
+            checkCoordinates(fromIndex, pointList.get(0));
+            checkCoordinates(toIndex, pointList.get(pointList.size() - 1));
+            edge.setWayGeometry(pointList.shallowCopy(1, pointList.size() - 1, false));
+        }
+
+        checkDistance(edge);
+        restrictedWaysToEdgesMap.putIfReserved(way.getId(), edge.getEdge());
+    }
+
+    /**
+     * Samples and smooths the elevation of the given points and removes the points that are not needed to represent
+     * the geometry of an edge. The given point list might be changed.
+     */
+    PointList processEdgePoints(PointList pointList) {
         // todo: in principle it should be possible to delay elevation calculation so we do not need to store
         // elevations during import (saves memory in pillar info during import). also note that we already need to
         // to do some kind of elevation processing (bridge+tunnel interpolation in GraphHopper class, maybe this can
@@ -345,7 +460,13 @@ public class OSMReader {
 
         if (config.getMaxWayPointDistance() > 0 && pointList.size() > 2)
             simplifyAlgo.simplify(pointList);
+        return pointList;
+    }
 
+    /**
+     * @return the distance of an edge with the given points, which is limited to the range that can be stored
+     */
+    double calcEdgeDistance(PointList pointList, long wayId) {
         double distance = distCalc.calcDistance(pointList);
 
         if (distance < 0.001) {
@@ -357,7 +478,7 @@ public class OSMReader {
 
         double maxDistance = (Integer.MAX_VALUE - 1) / 1000d;
         if (Double.isNaN(distance)) {
-            LOGGER.warn("Bug in OSM or GraphHopper (" + bugCounter++ + "). Illegal tower node distance " + distance + " reset to 1m, osm way " + way.getId());
+            LOGGER.warn("Bug in OSM or GraphHopper (" + bugCounter++ + "). Illegal tower node distance " + distance + " reset to 1m, osm way " + wayId);
             distance = 1;
         }
 
@@ -365,32 +486,20 @@ public class OSMReader {
             // Too large is very rare and often the wrong tagging. See #435
             // so we can avoid the complexity of splitting the way for now (new towernodes would be required, splitting up geometry etc)
             // For example this happens here: https://www.openstreetmap.org/way/672506453 (Cape Town - Tristan da Cunha ferry)
-            LOGGER.warn("Bug in OSM or GraphHopper (" + bugCounter++ + "). Too big tower node distance " + distance + " reset to large value, osm way " + way.getId());
+            LOGGER.warn("Bug in OSM or GraphHopper (" + bugCounter++ + "). Too big tower node distance " + distance + " reset to large value, osm way " + wayId);
             distance = maxDistance;
         }
 
         if (bugCounter > 30)
             throw new IllegalStateException("Too many bugs in OSM or GraphHopper encountered " + bugCounter);
+        return distance;
+    }
 
-        setArtificialWayTags(pointList, way, distance, nodeTags);
-        IntsRef relationFlags = getRelFlagsMap(way.getId());
-        EdgeIteratorState edge = baseGraph.edge(fromIndex, toIndex).setDistance(distance);
-        osmParsers.handleWayTags(edge.getEdge(), edgeIntAccess, way, relationFlags);
-        Map<String, KValue> map = way.getTag("key_values", Collections.emptyMap());
-        if (!map.isEmpty())
-            edge.setKeyValues(map);
-
-        // If the entire way is just the first and last point, do not waste space storing an empty way geometry
-        if (pointList.size() > 2) {
-            // the geometry consists only of pillar nodes, but we check that the first and last points of the pointList
-            // are equal to the tower node coordinates
-            checkCoordinates(fromIndex, pointList.get(0));
-            checkCoordinates(toIndex, pointList.get(pointList.size() - 1));
-            edge.setWayGeometry(pointList.shallowCopy(1, pointList.size() - 1, false));
-        }
-
-        checkDistance(edge);
-        restrictedWaysToEdgesMap.putIfReserved(way.getId(), edge.getEdge());
+    private static ReaderWay copyWay(ReaderWay way) {
+        ReaderWay copy = new ReaderWay(way.getId());
+        copy.getNodes().addAll(way.getNodes());
+        copy.setTags(way.getTags());
+        return copy;
     }
 
     private void checkCoordinates(int nodeIndex, GHPoint point) {
@@ -420,6 +529,14 @@ public class OSMReader {
      */
     protected void preprocessWay(ReaderWay way, WaySegmentParser.CoordinateSupplier coordinateSupplier,
                                  WaySegmentParser.NodeTagSupplier nodeTagSupplier) {
+        preprocessWay(way, nodeTagSupplier, () -> calcDistance(way, coordinateSupplier));
+    }
+
+    /**
+     * @param wayDistance the distance of the entire way or NaN if it cannot be determined. it is only calculated for
+     *                    the ways for which {@link #isCalculateWayDistance} returns true.
+     */
+    void preprocessWay(ReaderWay way, WaySegmentParser.NodeTagSupplier nodeTagSupplier, DoubleSupplier wayDistance) {
         Map<String, KValue> map = new LinkedHashMap<>();
         if (config.isParseWayNames()) {
             // http://wiki.openstreetmap.org/wiki/Key:name
@@ -489,7 +606,7 @@ public class OSMReader {
         if (!isCalculateWayDistance(way))
             return;
 
-        double distance = calcDistance(way, coordinateSupplier);
+        double distance = wayDistance.getAsDouble();
         if (Double.isNaN(distance)) {
             // Some nodes were missing, and we cannot determine the distance. This can happen when ways are only
             // included partially in an OSM extract. In this case we cannot calculate the speed either, so we return.
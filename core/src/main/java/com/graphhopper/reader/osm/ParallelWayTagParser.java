@@ -0,0 +1,170 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.reader.osm;
+
+import com.graphhopper.reader.ReaderWay;
+import com.graphhopper.routing.ev.EdgeIntAccess;
+import com.graphhopper.routing.util.OSMParsers;
+import com.graphhopper.storage.IntsRef;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Runs the tag parsers for the edges created by {@link OSMReader} on multiple threads. The edges are collected in
+ * batches and every batch is split into one slice per thread. Every thread uses its own {@link OSMParsers}, because
+ * the tag parsers are not thread-safe. The parsers write the edge flags into a buffer of the batch and these are
+ * copied into the graph on the calling thread in the order of the edges, so the result is the same as if the tag
+ * parsers were run sequentially. While one batch is parsed the next one is collected.
+ */
+class ParallelWayTagParser {
+    private final EdgeIntAccess edgeIntAccess;
+    private final List<OSMParsers> parsers;
+    private final int intsPerEdge;
+    private final ExecutorService executor;
+    private Batch collecting;
+    private Batch parsing;
+    private final List<Future<?>> futures = new ArrayList<>();
+
+    /**
+     * @param edgeIntAccess the edge flags of the graph
+     * @param intsPerEdge   the number of ints of the edge flags
+     * @param parsers       one OSMParsers per thread, they must all be created with the same configuration
+     * @param batchSize     the number of edges that are parsed together
+     */
+    ParallelWayTagParser(EdgeIntAccess edgeIntAccess, int intsPerEdge, List<OSMParsers> parsers, int batchSize) {
+        if (parsers.size() < 2)
+            throw new IllegalArgumentException("At least two OSMParsers are required, but was: " + parsers.size());
+        this.edgeIntAccess = edgeIntAccess;
+        this.intsPerEdge = intsPerEdge;
+        this.parsers = parsers;
+        collecting = new Batch(batchSize);
+        parsing = new Batch(batchSize);
+        executor = Executors.newFixedThreadPool(parsers.size(), r -> {
+            Thread thread = new Thread(r, "way-tag-parser");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Adds an edge that should be parsed. The way and the relation flags must not be changed afterwards. The current
+     * flags of the edge are the starting point for the tag parsers.
+     */
+    void add(int edgeId, ReaderWay way, IntsRef relationFlags) {
+        // the buffer can only be used for consecutive edges
+        if (collecting.size == collecting.ways.length || collecting.size > 0 && edgeId != collecting.firstEdge + collecting.size)
+            submit();
+        if (collecting.size == 0)
+            collecting.firstEdge = edgeId;
+        int i = collecting.size++;
+        collecting.ways[i] = way;
+        collecting.relationFlags[i] = relationFlags;
+        for (int index = 0; index < intsPerEdge; index++)
+            collecting.flags[i * intsPerEdge + index] = edgeIntAccess.getInt(edgeId, index);
+    }
+
+    private void submit() {
+        commit();
+        Batch batch = collecting;
+        collecting = parsing;
+        parsing = batch;
+        int sliceSize = (batch.size + parsers.size() - 1) / parsers.size();
+        for (int t = 0; t < parsers.size(); t++) {
+            OSMParsers osmParsers = parsers.get(t);
+            int from = t * sliceSize, to = Math.min(batch.size, from + sliceSize);
+            futures.add(executor.submit(() -> {
+                for (int i = from; i < to; i++)
+                    osmParsers.handleWayTags(batch.firstEdge + i, batch, batch.ways[i], batch.relationFlags[i]);
+            }));
+        }
+    }
+
+    /**
+     * Waits until the batch that is being parsed is done and copies its flags into the graph
+     */
+    private void commit() {
+        try {
+            for (Future<?> future : futures)
+                future.get();
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException)
+                throw (RuntimeException) ex.getCause();
+            throw new RuntimeException(ex.getCause());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ex);
+        } finally {
+            futures.clear();
+        }
+        for (int i = 0; i < parsing.size; i++)
+            for (int index = 0; index < intsPerEdge; index++)
+                edgeIntAccess.setInt(parsing.firstEdge + i, index, parsing.flags[i * intsPerEdge + index]);
+        parsing.clear();
+    }
+
+    /**
+     * Parses and commits all remaining edges
+     */
+    void finish() {
+        if (collecting.size > 0)
+            submit();
+        commit();
+    }
+
+    /**
+     * Stops the threads, the edges that were not committed yet are discarded
+     */
+    void close() {
+        executor.shutdownNow();
+    }
+
+    private class Batch implements EdgeIntAccess {
+        final ReaderWay[] ways;
+        final IntsRef[] relationFlags;
+        final int[] flags;
+        int firstEdge;
+        int size;
+
+        Batch(int batchSize) {
+            ways = new ReaderWay[batchSize];
+            relationFlags = new IntsRef[batchSize];
+            flags = new int[batchSize * intsPerEdge];
+        }
+
+        @Override
+        public int getInt(int edgeId, int index) {
+            return flags[(edgeId - firstEdge) * intsPerEdge + index];
+        }
+
+        @Override
+        public void setInt(int edgeId, int index, int value) {
+            flags[(edgeId - firstEdge) * intsPerEdge + index] = value;
+        }
+
+        void clear() {
+            // release the ways
+            for (int i = 0; i < size; i++) {
+                ways[i] = null;
+                relationFlags[i] = null;
+            }
+            size = 0;
+        }
+    }
+}
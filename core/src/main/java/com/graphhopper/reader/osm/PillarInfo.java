@@ -65,6 +65,11 @@ public class PillarInfo {
             da.setInt(tmp + ELE, Helper.eleToUInt(ele));
     }
 
+    public void setEle(long nodeId, double ele) {
+        if (is3D())
+            da.setInt(nodeId * rowSizeInBytes + ELE, Helper.eleToUInt(ele));
+    }
+
     public double getLat(long id) {
         int intVal = da.getInt(id * rowSizeInBytes + LAT);
         return Helper.intToDegree(intVal);
@@ -18,15 +18,18 @@
 
 package com.graphhopper.reader.osm;
 
+import com.carrotsearch.hppc.LongArrayList;
 import com.carrotsearch.hppc.cursors.LongCursor;
 import com.graphhopper.reader.ReaderElement;
 import com.graphhopper.reader.ReaderNode;
 import com.graphhopper.reader.ReaderRelation;
 import com.graphhopper.reader.ReaderWay;
+import com.graphhopper.reader.dem.BatchElevationLookup;
 import com.graphhopper.storage.Directory;
 import com.graphhopper.util.Helper;
 import com.graphhopper.util.PointAccess;
 import com.graphhopper.util.PointList;
+import com.graphhopper.util.ImportMetrics;
 import com.graphhopper.util.StopWatch;
 import com.graphhopper.util.shapes.GHPoint3D;
 import org.slf4j.Logger;
@@ -63,6 +66,7 @@ public class WaySegmentParser {
     private static final Set<String> INCLUDE_IF_NODE_TAGS = new HashSet<>(Arrays.asList("barrier", "highway", "railway", "crossing", "ford"));
 
     private ToDoubleFunction<ReaderNode> elevationProvider = node -> 0d;
+    private Consumer<BatchElevationLookup.Points> elevationLookup;
     private Predicate<ReaderWay> wayFilter = way -> true;
     private Predicate<ReaderNode> splitNodeFilter = node -> false;
     private WayPreprocessor wayPreprocessor = (way, coordinateSupplier, nodeTagSupplier) -> {
@@ -74,6 +78,8 @@ public class WaySegmentParser {
     private EdgeHandler edgeHandler = (from, to, pointList, way, nodeTags) ->
             System.out.println("edge " + from + "->" + to + " (" + pointList.size() + " points)");
     private int workerThreads = 2;
+    private boolean pooledPbfDecoding = false;
+    private ImportMetrics importMetrics = new ImportMetrics();
 
     private final OSMNodeData nodeData;
     private Date timestamp;
@@ -92,7 +98,12 @@ public class WaySegmentParser {
         LOGGER.info("Start reading OSM file: '" + osmFile + "'");
         LOGGER.info("pass1 - start");
         StopWatch sw1 = StopWatch.started();
-        readOSM(osmFile, new Pass1Handler(), new SkipOptions(true, false, false));
+        Pass1Handler pass1Handler = new Pass1Handler();
+        try (ImportMetrics.Stage stage = importMetrics.start("osm_pass1")) {
+            readOSM(osmFile, pass1Handler, new SkipOptions(true, false, false));
+            stage.setCount("ways", pass1Handler.wayCounter).setCount("accepted_ways", pass1Handler.acceptedWays)
+                    .setCount("way_nodes", nodeData.getNodeCount()).setCount("relations", pass1Handler.relationsCounter);
+        }
         LOGGER.info("pass1 - finished, took: {}", sw1.stop().getTimeString());
 
         long nodes = nodeData.getNodeCount();
@@ -101,7 +112,12 @@ public class WaySegmentParser {
 
         LOGGER.info("pass2 - start");
         StopWatch sw2 = new StopWatch().start();
-        readOSM(osmFile, new Pass2Handler(), SkipOptions.none());
+        Pass2Handler pass2Handler = new Pass2Handler();
+        try (ImportMetrics.Stage stage = importMetrics.start("osm_pass2")) {
+            readOSM(osmFile, pass2Handler, SkipOptions.none());
+            stage.setCount("nodes", pass2Handler.nodeCounter).setCount("accepted_nodes", pass2Handler.acceptedNodes)
+                    .setCount("ways", pass2Handler.wayCounter);
+        }
         LOGGER.info("pass2 - finished, took: {}", sw2.stop().getTimeString());
 
         nodeData.release();
@@ -203,7 +219,9 @@ public class WaySegmentParser {
                 LOGGER.info("pass2 - processed nodes: " + nf(nodeCounter) + ", accepted nodes: " + nf(acceptedNodes) +
                         ", " + Helper.getMemInfo());
 
-            long nodeType = nodeData.addCoordinatesIfMapped(node.getId(), node.getLat(), node.getLon(), () -> elevationProvider.applyAsDouble(node));
+            // with a batch lookup the elevation is set later, once all nodes are known
+            long nodeType = nodeData.addCoordinatesIfMapped(node.getId(), node.getLat(), node.getLon(),
+                    () -> elevationLookup == null ? elevationProvider.applyAsDouble(node) : 0);
             if (nodeType == EMPTY_NODE)
                 return;
 
@@ -232,9 +250,21 @@ public class WaySegmentParser {
             }
         }
 
+        private void lookupElevations() {
+            StopWatch sw = new StopWatch().start();
+            BatchElevationLookup.Points points = nodeData.getPoints();
+            try (ImportMetrics.Stage stage = importMetrics.start("elevation_lookup")) {
+                elevationLookup.accept(points);
+                stage.setCount("nodes", points.size());
+            }
+            LOGGER.info("pass2 - looked up the elevations of " + nf(points.size()) + " nodes, took: " + sw.stop().getSeconds() + "s");
+        }
+
         @Override
         public void handleWay(ReaderWay way) {
             if (!handledWays) {
+                if (elevationLookup != null)
+                    lookupElevations();
                 LOGGER.info("pass2 - start reading OSM ways");
                 handledWays = true;
             }
@@ -341,6 +371,7 @@ public class WaySegmentParser {
         void handleSegment(List<SegmentNode> segment, ReaderWay way) {
             final PointList pointList = new PointList(segment.size(), nodeData.is3D());
             final List<Map<String, Object>> nodeTags = new ArrayList<>(segment.size());
+            final LongArrayList osmNodeIds = new LongArrayList(segment.size());
             int from = -1;
             int to = -1;
             for (int i = 0; i < segment.size(); i++) {
@@ -361,10 +392,11 @@ public class WaySegmentParser {
                     throw new IllegalStateException("Tower nodes should only appear at the end of segments, way: " + way.getId());
                 nodeData.addCoordinatesToPointList(id, pointList);
                 nodeTags.add(node.tags);
+                osmNodeIds.add(node.osmNodeId);
             }
             if (from < 0 || to < 0)
                 throw new IllegalStateException("The first and last nodes of a segment must be tower nodes, way: " + way.getId());
-            edgeHandler.handleEdge(from, to, pointList, way, nodeTags);
+            edgeHandler.handleEdge(from, to, pointList, osmNodeIds, way, nodeTags);
         }
 
         @Override
@@ -405,7 +437,8 @@ public class WaySegmentParser {
     }
 
     protected OSMInput openOsmInputFile(File osmFile, SkipOptions skipOptions) throws XMLStreamException, IOException {
-        return new OSMInputFile(osmFile).setWorkerThreads(workerThreads).setSkipOptions(skipOptions).open();
+        return new OSMInputFile(osmFile).setWorkerThreads(workerThreads).setPooledDecoding(pooledPbfDecoding)
+                .setSkipOptions(skipOptions).open();
     }
 
     public static class Builder {
@@ -416,7 +449,15 @@ public class WaySegmentParser {
          * @param directory   the directory to be used to store temporary data
          */
         public Builder(PointAccess pointAccess, Directory directory) {
-            waySegmentParser = new WaySegmentParser(new OSMNodeData(pointAccess, directory));
+            this(pointAccess, directory, "btree");
+        }
+
+        /**
+         * @param nodeIdMap the map that is used to store the internal ids of the OSM nodes: btree, dense,
+         *                  dense_mmap or sorted_runs
+         */
+        public Builder(PointAccess pointAccess, Directory directory, String nodeIdMap) {
+            waySegmentParser = new WaySegmentParser(new OSMNodeData(pointAccess, directory, nodeIdMap));
         }
 
         /**
@@ -427,6 +468,24 @@ public class WaySegmentParser {
             return this;
         }
 
+        /**
+         * @param elevationLookup when set, the elevation provider is not used. The nodes are stored without elevation
+         *                        instead and this function sets the elevations of all nodes at once, after all nodes
+         *                        were read and before the first way is handled
+         */
+        public Builder setElevationLookup(Consumer<BatchElevationLookup.Points> elevationLookup) {
+            waySegmentParser.elevationLookup = elevationLookup;
+            return this;
+        }
+
+        /**
+         * @param importMetrics records the resources used by both passes
+         */
+        public Builder setImportMetrics(ImportMetrics importMetrics) {
+            waySegmentParser.importMetrics = importMetrics;
+            return this;
+        }
+
         /**
          * @param wayFilter return true for OSM ways that should be considered and false otherwise
          */
@@ -483,6 +542,15 @@ public class WaySegmentParser {
             return this;
         }
 
+        /**
+         * @param pooledPbfDecoding true if the pbf decoding should reuse buffers and avoid creating tag maps, see
+         *                          {@link OSMInputFile#setPooledDecoding(boolean)}
+         */
+        public Builder setPooledPbfDecoding(boolean pooledPbfDecoding) {
+            waySegmentParser.pooledPbfDecoding = pooledPbfDecoding;
+            return this;
+        }
+
         public WaySegmentParser build() {
             return waySegmentParser;
         }
@@ -526,6 +594,13 @@ public class WaySegmentParser {
 
     public interface EdgeHandler {
         void handleEdge(int from, int to, PointList pointList, ReaderWay way, List<Map<String, Object>> nodeTags);
+
+        /**
+         * This is called instead of the method above and additionally receives the OSM node ID of every point
+         */
+        default void handleEdge(int from, int to, PointList pointList, LongArrayList osmNodeIds, ReaderWay way, List<Map<String, Object>> nodeTags) {
+            handleEdge(from, to, pointList, way, nodeTags);
+        }
     }
 
     public interface RelationProcessor {
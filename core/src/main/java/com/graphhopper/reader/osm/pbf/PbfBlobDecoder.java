@@ -1,8 +1,9 @@
 // This software is released into the Public Domain.  See copying.txt for details.
 package com.graphhopper.reader.osm.pbf;
 
+import com.carrotsearch.hppc.LongArrayList;
 import com.carrotsearch.hppc.LongIndexedContainer;
-import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.CodedInputStream;
 import com.graphhopper.reader.ReaderElement;
 import com.graphhopper.reader.ReaderNode;
 import com.graphhopper.reader.ReaderRelation;
@@ -35,6 +36,7 @@ public class PbfBlobDecoder implements Runnable {
     private final PbfBlobDecoderListener listener;
     private List<ReaderElement> decodedEntities;
     private final SkipOptions skipOptions;
+    private final Queue<PbfInflater> inflaters;
 
     /**
      * Creates a new instance.
@@ -45,19 +47,34 @@ public class PbfBlobDecoder implements Runnable {
      * @param listener The listener for receiving decoding results.
      */
     public PbfBlobDecoder(String blobType, byte[] rawBlob, PbfBlobDecoderListener listener, SkipOptions skipOptions) {
+        this(blobType, rawBlob, listener, skipOptions, null);
+    }
+
+    /**
+     * @param inflaters The inflaters shared by all workers of a PbfDecoder. If this is not null an inflater is taken
+     *                  from the queue and put back after the blob is decoded, and the tags of nodes and ways are not
+     *                  copied into maps, see {@link PbfTagMap}.
+     */
+    PbfBlobDecoder(String blobType, byte[] rawBlob, PbfBlobDecoderListener listener, SkipOptions skipOptions,
+                   Queue<PbfInflater> inflaters) {
         this.blobType = blobType;
         this.rawBlob = rawBlob;
         this.listener = listener;
         this.skipOptions = skipOptions;
+        this.inflaters = inflaters;
     }
 
-    private byte[] readBlobContent() throws IOException {
+    private CodedInputStream readBlobContent(PbfInflater pbfInflater) throws IOException {
         Fileformat.Blob blob = Fileformat.Blob.parseFrom(rawBlob);
         byte[] blobData;
 
         if (blob.hasRaw()) {
+            if (pbfInflater != null)
+                return blob.getRaw().newCodedInput();
             blobData = blob.getRaw().toByteArray();
         } else if (blob.hasZlibData()) {
+            if (pbfInflater != null)
+                return pbfInflater.inflate(blob.getZlibData(), blob.getRawSize());
             Inflater inflater = new Inflater();
             inflater.setInput(blob.getZlibData().toByteArray());
             blobData = new byte[blob.getRawSize()];
@@ -74,10 +91,10 @@ public class PbfBlobDecoder implements Runnable {
             throw new RuntimeException("PBF blob uses unsupported compression, only raw or zlib may be used.");
         }
 
-        return blobData;
+        return CodedInputStream.newInstance(blobData);
     }
 
-    private void processOsmHeader(byte[] data) throws InvalidProtocolBufferException {
+    private void processOsmHeader(CodedInputStream data) throws IOException {
         Osmformat.HeaderBlock header = Osmformat.HeaderBlock.parseFrom(data);
 
         // Build the list of active and unsupported features in the file.
@@ -268,6 +285,65 @@ public class PbfBlobDecoder implements Runnable {
         }
     }
 
+    /**
+     * Like {@link #processNodes(Osmformat.DenseNodes, PbfFieldDecoder)}, but avoids boxing the ids and coordinates and
+     * keeps the tags as string indices.
+     */
+    private void processNodesWithTagMaps(Osmformat.DenseNodes nodes, PbfFieldDecoder fieldDecoder) {
+        int keysValsCount = nodes.getKeysValsCount();
+        int keysValsIndex = 0;
+        long nodeId = 0;
+        long latitude = 0;
+        long longitude = 0;
+        for (int i = 0; i < nodes.getIdCount(); i++) {
+            nodeId += nodes.getId(i);
+            latitude += nodes.getLat(i);
+            longitude += nodes.getLon(i);
+
+            // the tags of every node are delimited by a key index of 0
+            int start = keysValsIndex;
+            while (keysValsIndex < keysValsCount && nodes.getKeysVals(keysValsIndex) != 0) {
+                keysValsIndex += 2;
+            }
+            int[] keysValues = PbfTagMap.NO_TAGS;
+            if (keysValsIndex > start) {
+                keysValues = new int[keysValsIndex - start];
+                for (int j = 0; j < keysValues.length; j++) {
+                    keysValues[j] = nodes.getKeysVals(start + j);
+                }
+            }
+            keysValsIndex++;
+
+            decodedEntities.add(new ReaderNode(nodeId, fieldDecoder.decodeLatitude(latitude),
+                    fieldDecoder.decodeLongitude(longitude), new PbfTagMap(fieldDecoder, keysValues)));
+        }
+    }
+
+    /**
+     * Like {@link #processWays(List, PbfFieldDecoder)}, but avoids boxing the node ids and keeps the tags as string
+     * indices.
+     */
+    private void processWaysWithTagMaps(List<Osmformat.Way> ways, PbfFieldDecoder fieldDecoder) {
+        for (Osmformat.Way way : ways) {
+            int[] keysValues = way.getKeysCount() == 0 ? PbfTagMap.NO_TAGS : new int[2 * way.getKeysCount()];
+            for (int i = 0; i < way.getKeysCount(); i++) {
+                keysValues[2 * i] = way.getKeys(i);
+                keysValues[2 * i + 1] = way.getVals(i);
+            }
+            ReaderWay osmWay = new ReaderWay(way.getId(), new PbfTagMap(fieldDecoder, keysValues));
+
+            long nodeId = 0;
+            LongArrayList wayNodes = osmWay.getNodes();
+            wayNodes.ensureCapacity(way.getRefsCount());
+            for (int i = 0; i < way.getRefsCount(); i++) {
+                nodeId += way.getRefs(i);
+                wayNodes.add(nodeId);
+            }
+
+            decodedEntities.add(osmWay);
+        }
+    }
+
     private void buildRelationMembers(ReaderRelation relation,
                                       List<Long> memberIds, List<Integer> memberRoles, List<Osmformat.Relation.MemberType> memberTypes,
                                       PbfFieldDecoder fieldDecoder) {
@@ -324,35 +400,52 @@ public class PbfBlobDecoder implements Runnable {
         }
     }
 
-    private void processOsmPrimitives(byte[] data) throws InvalidProtocolBufferException {
+    private void processOsmPrimitives(CodedInputStream data) throws IOException {
         Osmformat.PrimitiveBlock block = Osmformat.PrimitiveBlock.parseFrom(data);
         PbfFieldDecoder fieldDecoder = new PbfFieldDecoder(block);
 
         for (Osmformat.PrimitiveGroup primitiveGroup : block.getPrimitivegroupList()) {
             if (!skipOptions.isSkipNodes()) {
-                processNodes(primitiveGroup.getDense(), fieldDecoder);
+                if (inflaters != null)
+                    processNodesWithTagMaps(primitiveGroup.getDense(), fieldDecoder);
+                else
+                    processNodes(primitiveGroup.getDense(), fieldDecoder);
                 processNodes(primitiveGroup.getNodesList(), fieldDecoder);
             }
-            if (!skipOptions.isSkipWays())
-                processWays(primitiveGroup.getWaysList(), fieldDecoder);
+            if (!skipOptions.isSkipWays()) {
+                if (inflaters != null)
+                    processWaysWithTagMaps(primitiveGroup.getWaysList(), fieldDecoder);
+                else
+                    processWays(primitiveGroup.getWaysList(), fieldDecoder);
+            }
             if (!skipOptions.isSkipRelations())
                 processRelations(primitiveGroup.getRelationsList(), fieldDecoder);
         }
     }
 
     private void runAndTrapExceptions() {
+        PbfInflater pbfInflater = null;
+        if (inflaters != null) {
+            pbfInflater = inflaters.poll();
+            if (pbfInflater == null)
+                pbfInflater = new PbfInflater();
+        }
         try {
             decodedEntities = new ArrayList<>();
             if ("OSMHeader".equals(blobType)) {
-                processOsmHeader(readBlobContent());
+                processOsmHeader(readBlobContent(pbfInflater));
 
             } else if ("OSMData".equals(blobType)) {
-                processOsmPrimitives(readBlobContent());
+                processOsmPrimitives(readBlobContent(pbfInflater));
 
             } else if (log.isDebugEnabled())
                 log.debug("Skipping unrecognised blob type " + blobType);
         } catch (IOException e) {
             throw new RuntimeException("Unable to process PBF blob", e);
+        } finally {
+            // the entities do not reference the buffer of the inflater, so it can be used for the next blob
+            if (pbfInflater != null)
+                inflaters.add(pbfInflater);
         }
     }
 
@@ -7,6 +7,7 @@ import com.graphhopper.reader.osm.SkipOptions;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
@@ -28,6 +29,7 @@ public class PbfDecoder {
     private final Condition dataWaitCondition;
     private final Queue<PbfBlobResult> blobResults;
     private final SkipOptions skipOptions;
+    private final Queue<PbfInflater> inflaters;
 
     /**
      * Creates a new instance.
@@ -40,11 +42,21 @@ public class PbfDecoder {
      */
     public PbfDecoder(PbfStreamSplitter streamSplitter, ExecutorService executorService, int maxPendingBlobs,
                       Sink sink, SkipOptions skipOptions) {
+        this(streamSplitter, executorService, maxPendingBlobs, sink, skipOptions, false);
+    }
+
+    /**
+     * @param pooled if true the workers reuse their inflaters and buffers and the tags of nodes and ways are kept as
+     *               indices into the string table of their block instead of being copied into maps
+     */
+    public PbfDecoder(PbfStreamSplitter streamSplitter, ExecutorService executorService, int maxPendingBlobs,
+                      Sink sink, SkipOptions skipOptions, boolean pooled) {
         this.streamSplitter = streamSplitter;
         this.executorService = executorService;
         this.maxPendingBlobs = maxPendingBlobs;
         this.sink = sink;
         this.skipOptions = skipOptions;
+        this.inflaters = pooled ? new ConcurrentLinkedQueue<>() : null;
 
         // Create the thread synchronisation primitives.
         lock = new ReentrantLock();
@@ -143,7 +155,7 @@ public class PbfDecoder {
             };
 
             // Create the blob decoder itself and execute it on a worker thread.
-            PbfBlobDecoder blobDecoder = new PbfBlobDecoder(rawBlob.getType(), rawBlob.getData(), decoderListener, skipOptions);
+            PbfBlobDecoder blobDecoder = new PbfBlobDecoder(rawBlob.getType(), rawBlob.getData(), decoderListener, skipOptions, inflaters);
             executorService.execute(blobDecoder);
 
             // If the number of pending blobs has reached capacity we must begin
@@ -163,6 +175,11 @@ public class PbfDecoder {
 
         } finally {
             lock.unlock();
+            // release the native memory of the inflaters right away instead of when they are garbage collected
+            if (inflaters != null) {
+                for (PbfInflater inflater = inflaters.poll(); inflater != null; inflater = inflaters.poll())
+                    inflater.end();
+            }
         }
     }
 }
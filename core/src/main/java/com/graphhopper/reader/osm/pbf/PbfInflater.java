@@ -0,0 +1,56 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.reader.osm.pbf;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * An Inflater together with its output buffer that is reused for many blobs. The buffer only grows, so after a few
+ * blobs decompressing does not allocate anymore. An instance must only be used by one thread at a time.
+ */
+class PbfInflater {
+    private final Inflater inflater = new Inflater();
+    private byte[] buffer = new byte[0];
+
+    /**
+     * @return the decompressed data. It is only valid until the next call of this method.
+     */
+    CodedInputStream inflate(ByteString zlibData, int rawSize) {
+        if (buffer.length < rawSize)
+            buffer = new byte[rawSize];
+        inflater.reset();
+        // avoids copying the compressed data into a new array
+        inflater.setInput(zlibData.asReadOnlyByteBuffer());
+        try {
+            inflater.inflate(buffer, 0, rawSize);
+        } catch (DataFormatException e) {
+            throw new RuntimeException("Unable to decompress PBF blob.", e);
+        }
+        if (!inflater.finished())
+            throw new RuntimeException("PBF blob contains incomplete compressed data.");
+        return CodedInputStream.newInstance(buffer, 0, rawSize);
+    }
+
+    void end() {
+        inflater.end();
+    }
+}
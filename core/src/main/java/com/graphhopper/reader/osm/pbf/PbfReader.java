@@ -20,6 +20,7 @@ public class PbfReader implements Runnable {
     private final Sink sink;
     private final int workers;
     private final SkipOptions skipOptions;
+    private final boolean pooled;
 
     /**
      * Creates a new instance.
@@ -29,10 +30,19 @@ public class PbfReader implements Runnable {
      * @param workers The number of worker threads for decoding PBF blocks.
      */
     public PbfReader(InputStream in, Sink sink, int workers, SkipOptions skipOptions) {
+        this(in, sink, workers, skipOptions, false);
+    }
+
+    /**
+     * @param pooled if true the decoding workers reuse their buffers and keep the tags in flyweight maps, see
+     *               {@link PbfDecoder}
+     */
+    public PbfReader(InputStream in, Sink sink, int workers, SkipOptions skipOptions, boolean pooled) {
         this.inputStream = in;
         this.sink = sink;
         this.workers = workers;
         this.skipOptions = skipOptions;
+        this.pooled = pooled;
     }
 
     @Override
@@ -48,7 +58,7 @@ public class PbfReader implements Runnable {
             // immediately ready for processing when a worker thread completes.
             // The main thread is responsible for splitting blobs from the
             // request stream, and sending decoded entities to the sink.
-            PbfDecoder pbfDecoder = new PbfDecoder(streamSplitter, executorService, workers + 1, sink, skipOptions);
+            PbfDecoder pbfDecoder = new PbfDecoder(streamSplitter, executorService, workers + 1, sink, skipOptions, pooled);
             pbfDecoder.run();
 
         } catch (Throwable t) {
@@ -0,0 +1,166 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.reader.osm.pbf;
+
+import java.util.*;
+
+/**
+ * The tags of an entity from a PBF block. Instead of creating a HashMap for every entity the tags are kept as indices
+ * into the string table of the block, which is shared by all its entities. Lookups scan the indices, which is fast for
+ * the few tags an entity usually has. The tags are copied into a LinkedHashMap only when they are modified.
+ * <p>
+ * Like in a HashMap the last value wins if a key occurs more than once.
+ */
+class PbfTagMap extends AbstractMap<String, Object> {
+    static final int[] NO_TAGS = new int[0];
+    private final PbfFieldDecoder fieldDecoder;
+    // the string indices of the keys and values in alternating order
+    private final int[] keysValues;
+    private Map<String, Object> map;
+
+    PbfTagMap(PbfFieldDecoder fieldDecoder, int[] keysValues) {
+        this.fieldDecoder = fieldDecoder;
+        this.keysValues = keysValues;
+    }
+
+    private String key(int i) {
+        return fieldDecoder.decodeString(keysValues[i]);
+    }
+
+    private String value(int i) {
+        return fieldDecoder.decodeString(keysValues[i + 1]);
+    }
+
+    /**
+     * @return the position of the last occurrence of the given key or -1
+     */
+    private int lastIndexOf(Object key) {
+        for (int i = keysValues.length - 2; i >= 0; i -= 2) {
+            if (key(i).equals(key))
+                return i;
+        }
+        return -1;
+    }
+
+    private boolean isLastOccurrence(int i) {
+        String key = key(i);
+        for (int j = i + 2; j < keysValues.length; j += 2) {
+            if (key(j).equals(key))
+                return false;
+        }
+        return true;
+    }
+
+    private Map<String, Object> materialize() {
+        if (map == null) {
+            map = new LinkedHashMap<>(Math.max(4, keysValues.length));
+            for (int i = 0; i < keysValues.length; i += 2) {
+                map.put(key(i), value(i));
+            }
+        }
+        return map;
+    }
+
+    @Override
+    public Object get(Object key) {
+        if (map != null)
+            return map.get(key);
+        int i = lastIndexOf(key);
+        return i < 0 ? null : value(i);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        if (map != null)
+            return map.containsKey(key);
+        return lastIndexOf(key) >= 0;
+    }
+
+    @Override
+    public int size() {
+        if (map != null)
+            return map.size();
+        int size = 0;
+        for (int i = 0; i < keysValues.length; i += 2) {
+            if (isLastOccurrence(i))
+                size++;
+        }
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return map == null ? keysValues.length == 0 : map.isEmpty();
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        return materialize().put(key, value);
+    }
+
+    @Override
+    public Object remove(Object key) {
+        return materialize().remove(key);
+    }
+
+    @Override
+    public void clear() {
+        materialize().clear();
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        if (map != null)
+            return map.entrySet();
+        // a read-only view, so iterating over the tags does not copy them
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<String, Object>> iterator() {
+                return new Iterator<>() {
+                    private int next = advance(0);
+
+                    private int advance(int i) {
+                        while (i < keysValues.length && !isLastOccurrence(i)) {
+                            i += 2;
+                        }
+                        return i;
+                    }
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < keysValues.length;
+                    }
+
+                    @Override
+                    public Entry<String, Object> next() {
+                        if (!hasNext())
+                            throw new NoSuchElementException();
+                        Entry<String, Object> entry = new SimpleImmutableEntry<>(key(next), value(next));
+                        next = advance(next + 2);
+                        return entry;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return PbfTagMap.this.size();
+            }
+        };
+    }
+}
@@ -33,7 +33,12 @@ public class OSMReaderConfig {
     private int ramerElevationSmoothingMax = 5;
     private double longEdgeSamplingDistance = Double.MAX_VALUE;
     private int workerThreads = 2;
+    private boolean pooledPbfDecoding = false;
+    private int tagParserThreads = 1;
     private double defaultElevation = 0;
+    private int elevationLookupThreads = 0;
+    private String nodeIdMap = "btree";
+    private boolean storeOSMNodes = false;
 
     public List<String> getIgnoredHighways() {
         return ignoredHighways;
@@ -157,6 +162,34 @@ public class OSMReaderConfig {
         return this;
     }
 
+    public boolean isPooledPbfDecoding() {
+        return pooledPbfDecoding;
+    }
+
+    /**
+     * Reuses the inflaters and buffers of the pbf decoding threads and keeps the tags of nodes and ways as indices into
+     * the string tables of the pbf file until they are modified. This reduces the garbage created during the import.
+     */
+    public OSMReaderConfig setPooledPbfDecoding(boolean pooledPbfDecoding) {
+        this.pooledPbfDecoding = pooledPbfDecoding;
+        return this;
+    }
+
+    public int getTagParserThreads() {
+        return tagParserThreads;
+    }
+
+    /**
+     * Sets the number of threads used to run the tag parsers for the ways. The edges are still added in the same order,
+     * so the resulting graph does not depend on this number.
+     */
+    public OSMReaderConfig setTagParserThreads(int tagParserThreads) {
+        if (tagParserThreads < 1)
+            throw new IllegalArgumentException("tagParserThreads must be positive, but was: " + tagParserThreads);
+        this.tagParserThreads = tagParserThreads;
+        return this;
+    }
+
     public double getDefaultElevation() {
         return defaultElevation;
     }
@@ -168,4 +201,51 @@ public class OSMReaderConfig {
         this.defaultElevation = defaultElevation;
         return this;
     }
+
+    public int getElevationLookupThreads() {
+        return elevationLookupThreads;
+    }
+
+    /**
+     * Looks up the elevations of all nodes at once with the specified number of threads, after all nodes were read.
+     * The nodes are sorted by their elevation tile for this, so the tiles are read one after another instead of in the
+     * order of the OSM file. 0 looks up the elevation of every node while it is read.
+     */
+    public OSMReaderConfig setElevationLookupThreads(int elevationLookupThreads) {
+        if (elevationLookupThreads < 0)
+            throw new IllegalArgumentException("elevationLookupThreads must not be negative, but was: " + elevationLookupThreads);
+        this.elevationLookupThreads = elevationLookupThreads;
+        return this;
+    }
+
+    public String getNodeIdMap() {
+        return nodeIdMap;
+    }
+
+    /**
+     * Sets the map that stores the internal ids of the OSM nodes during the import, which is the biggest data
+     * structure of the import. The default 'btree' is stored on the heap and works well for any OSM file. 'dense'
+     * stores the ids in pages of an array, which is faster, but its size is determined by the largest node id (5 bytes
+     * per id, about 60GB for the planet) instead of the number of nodes. 'dense_mmap' stores these pages off-heap in
+     * a memory mapped file, so they can be spilled to disk and the import requires a much smaller heap.
+     * 'sorted_runs' writes the ids to memory mapped runs of sorted keys, which needs 13 bytes per node that is used
+     * by a way and only a small buffer on the heap, but it is slower than the other maps.
+     */
+    public OSMReaderConfig setNodeIdMap(String nodeIdMap) {
+        this.nodeIdMap = nodeIdMap;
+        return this;
+    }
+
+    public boolean isStoreOSMNodes() {
+        return storeOSMNodes;
+    }
+
+    /**
+     * Stores the IDs and coordinates of the OSM nodes of every edge in the graph folder, which is required to apply
+     * OSM change files to the graph later. This needs 16 bytes for every OSM node of the imported ways.
+     */
+    public OSMReaderConfig setStoreOSMNodes(boolean storeOSMNodes) {
+        this.storeOSMNodes = storeOSMNodes;
+        return this;
+    }
 }
@@ -24,6 +24,7 @@ import com.graphhopper.GHResponse;
 import com.graphhopper.ResponsePath;
 import com.graphhopper.config.Profile;
 import com.graphhopper.routing.ch.CHRoutingAlgorithmFactory;
+import com.graphhopper.routing.ch.CustomizableCH;
 import com.graphhopper.routing.ev.BooleanEncodedValue;
 import com.graphhopper.routing.ev.EncodedValueLookup;
 import com.graphhopper.routing.ev.Subnetwork;
@@ -66,6 +67,7 @@ public class Router {
     protected final WeightingFactory weightingFactory;
     protected final Map<String, RoutingCHGraph> chGraphs;
     protected final Map<String, LandmarkStorage> landmarks;
+    protected final CustomizableCH customizableCH;
     protected final boolean chEnabled;
     protected final boolean lmEnabled;
 
@@ -73,6 +75,17 @@ public class Router {
                   Map<String, Profile> profilesByName, PathDetailsBuilderFactory pathDetailsBuilderFactory,
                   TranslationMap translationMap, RouterConfig routerConfig, WeightingFactory weightingFactory,
                   Map<String, RoutingCHGraph> chGraphs, Map<String, LandmarkStorage> landmarks) {
+        this(graph, encodingManager, locationIndex, profilesByName, pathDetailsBuilderFactory, translationMap, routerConfig,
+                weightingFactory, chGraphs, landmarks, null);
+    }
+
+    /**
+     * @param customizableCH used for requests with a custom model if it is not null, see {@link CustomizableCH}
+     */
+    public Router(BaseGraph graph, EncodingManager encodingManager, LocationIndex locationIndex,
+                  Map<String, Profile> profilesByName, PathDetailsBuilderFactory pathDetailsBuilderFactory,
+                  TranslationMap translationMap, RouterConfig routerConfig, WeightingFactory weightingFactory,
+                  Map<String, RoutingCHGraph> chGraphs, Map<String, LandmarkStorage> landmarks, CustomizableCH customizableCH) {
         this.graph = graph;
         this.encodingManager = encodingManager;
         this.locationIndex = locationIndex;
@@ -83,6 +96,7 @@ public class Router {
         this.weightingFactory = weightingFactory;
         this.chGraphs = chGraphs;
         this.landmarks = landmarks;
+        this.customizableCH = customizableCH;
         // note that his is not the same as !ghStorage.getCHConfigs().isEmpty(), because the GHStorage might have some
         // CHGraphs that were not built yet (and possibly no CH profiles were configured).
         this.chEnabled = !chGraphs.isEmpty();
@@ -189,7 +203,16 @@ public class Router {
     protected Solver createSolver(GHRequest request) {
         final boolean disableCH = getDisableCH(request.getHints());
         final boolean disableLM = getDisableLM(request.getHints());
-        if (chEnabled && !disableCH) {
+        Profile profile = profilesByName.get(request.getProfile());
+        // the customizable CH only supports node-based routing so far
+        boolean customizable = customizableCH != null && !disableCH && request.getCustomModel() != null && profile != null && !profile.hasTurnCosts();
+        if (customizable) {
+            RoutingCHGraph chGraph = getCustomizedCHGraph(request, profile);
+            if (chGraph != null)
+                return createCustomizableCHSolver(request, profilesByName, routerConfig, encodingManager, chGraph);
+            // too many custom models are customized right now, so we use the flexible mode instead of waiting
+        }
+        if (chEnabled && !disableCH && !customizable) {
             return createCHSolver(request, profilesByName, routerConfig, encodingManager, chGraphs);
         } else if (lmEnabled && !disableLM) {
             return createLMSolver(request, profilesByName, routerConfig, encodingManager, weightingFactory, graph, locationIndex, landmarks);
@@ -203,6 +226,25 @@ public class Router {
         return new CHSolver(request, profilesByName, routerConfig, encodingManager, chGraphs);
     }
 
+    /**
+     * @return the CH graph that is customized for the custom model of the request or null if it cannot be customized
+     * right now, see {@link CustomizableCH#getCHGraph}
+     */
+    private RoutingCHGraph getCustomizedCHGraph(GHRequest request, Profile profile) {
+        PMap requestHints = new PMap(request.getHints());
+        requestHints.putObject(CustomModel.KEY, request.getCustomModel());
+        Weighting weighting = weightingFactory.createWeighting(profile, requestHints, true);
+        // the custom model of the profile cannot change, so the graph is identified by the profile and the custom
+        // model of the request, just like CustomModelParser identifies the compiled custom models
+        String key = profile.getName() + "|" + requestHints.getString("cm_version", "") + "|" + request.getCustomModel();
+        return customizableCH.getCHGraph(key, weighting);
+    }
+
+    protected Solver createCustomizableCHSolver(GHRequest request, Map<String, Profile> profilesByName, RouterConfig routerConfig,
+                                                EncodingManager encodingManager, RoutingCHGraph chGraph) {
+        return new CustomizableCHSolver(request, profilesByName, routerConfig, encodingManager, chGraph);
+    }
+
     protected Solver createLMSolver(GHRequest request, Map<String, Profile> profilesByName, RouterConfig routerConfig,
                                     EncodingManager encodingManager, WeightingFactory weightingFactory, BaseGraph baseGraph,
                                     LocationIndex locationIndex, Map<String, LandmarkStorage> landmarks) {
@@ -461,7 +503,7 @@ public class Router {
             if (getPassThrough(request.getHints()))
                 throw new IllegalArgumentException("The '" + Parameters.Routing.PASS_THROUGH + "' parameter is currently not supported for speed mode, you need to disable speed mode with `ch.disable=true`. See issue #1765");
 
-            if (request.getCustomModel() != null)
+            if (request.getCustomModel() != null && !supportsCustomModel())
                 throw new IllegalArgumentException("The 'custom_model' parameter is currently not supported for speed mode, you need to disable speed mode with `ch.disable=true`.");
 
             if (ROUND_TRIP.equalsIgnoreCase(request.getAlgorithm()))
@@ -488,7 +530,11 @@ public class Router {
             return new CHPathCalculator(new CHRoutingAlgorithmFactory(getRoutingCHGraph(profile.getName()), queryGraph), opts);
         }
 
-        private RoutingCHGraph getRoutingCHGraph(String profileName) {
+        protected boolean supportsCustomModel() {
+            return false;
+        }
+
+        protected RoutingCHGraph getRoutingCHGraph(String profileName) {
             RoutingCHGraph chGraph = chGraphs.get(profileName);
             if (chGraph == null)
                 throw new IllegalArgumentException("Cannot find CH preparation for the requested profile: '" + profileName + "'" +
@@ -498,6 +544,31 @@ public class Router {
         }
     }
 
+    private static class CustomizableCHSolver extends CHSolver {
+        private final RoutingCHGraph chGraph;
+
+        CustomizableCHSolver(GHRequest request, Map<String, Profile> profilesByName, RouterConfig routerConfig,
+                             EncodedValueLookup lookup, RoutingCHGraph chGraph) {
+            super(request, profilesByName, routerConfig, lookup, Collections.emptyMap());
+            this.chGraph = chGraph;
+        }
+
+        @Override
+        protected boolean supportsCustomModel() {
+            return true;
+        }
+
+        @Override
+        protected Weighting createWeighting() {
+            return chGraph.getWeighting();
+        }
+
+        @Override
+        protected RoutingCHGraph getRoutingCHGraph(String profileName) {
+            return chGraph;
+        }
+    }
+
     public static class FlexSolver extends Solver {
         protected final RouterConfig routerConfig;
         private final WeightingFactory weightingFactory;
@@ -25,24 +25,70 @@ import com.graphhopper.routing.util.AllEdgesIterator;
 import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.storage.Graph;
 import com.graphhopper.util.GHUtility;
+import com.graphhopper.util.Helper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Locale;
 
 import static com.graphhopper.util.ArrayUtil.zero;
 
 /**
  * Graph data structure used for CH preparation. It allows caching weights, and edges that are not needed anymore
  * (those adjacent to contracted nodes) can be removed (see {@link #disconnect}.
+ * <p>
+ * The edges and shortcuts are stored in primitive arrays. For every node we store the first edge of a linked list of
+ * its outgoing edges and the first edge of a linked list of its incoming edges, and the edges store the next edges of
+ * these lists. The edges that are removed when a node is disconnected are only marked as removed. Once there are more
+ * removed edges than remaining ones the arrays are compacted, such that the memory used for the edges and shortcuts
+ * of the contracted nodes is released (see {@link #compact}).
  *
  * @author easbar
  */
 public class CHPreparationGraph {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CHPreparationGraph.class);
+    private static final int NO_EDGE = -1;
+    private static final int REMOVED = -1;
     private final int nodes;
     private final int edges;
     private final boolean edgeBased;
     private final TurnCostFunction turnCostFunction;
-    // each edge/shortcut between nodes a/b is represented as a single object and we maintain two linked lists of such
-    // objects for every node (one for outgoing edges and one for incoming edges).
-    private PrepareEdge[] prepareEdgesOut;
-    private PrepareEdge[] prepareEdgesIn;
+    // the edge lists are linked using 'edge pointers': the base edge at index i of the base edge arrays below is
+    // referenced by i and the shortcut at index i of the shortcut arrays is referenced by edges + i. these indices
+    // change when the arrays are compacted, so they are not the same as the prepare edge ids.
+    private int[] firstOutEdges;
+    private int[] firstInEdges;
+    // every base edge between nodes a/b is part of the edge lists of a and b, so we need the next edges for both nodes
+    private int baseEdgeCount;
+    private int[] basePrepareEdges;
+    private int[] baseNodesA;
+    private int[] baseNodesB;
+    private float[] baseWeightsAB;
+    private float[] baseWeightsBA;
+    private int[] baseNextOutA;
+    private int[] baseNextOutB;
+    private int[] baseNextInA;
+    private int[] baseNextInB;
+    // shortcuts are directed, so they are only part of the out-list of one node and the in-list of another one
+    private int shortcutCount;
+    private int[] scPrepareEdges;
+    private int[] scFromNodes;
+    private int[] scToNodes;
+    private double[] scWeights;
+    private int[] scSkipped1;
+    private int[] scSkipped2;
+    private int[] scOrigEdgeCounts;
+    private int[] scNextOut;
+    private int[] scNextIn;
+    // only used for edge-based
+    private int[] scOrigEdgeKeysFirst;
+    private int[] scOrigEdgeKeysLast;
+    private int removedBaseEdges;
+    private int removedShortcuts;
+    private int minRemovedEdgesForCompaction = 1 << 16;
+    private int compactions;
+    private long maxBytes;
     // todo: it should be possible to store the 'skipped node' for each shortcut instead of storing the shortcut for
     //       each prepare edge. but this is a bit tricky for edge-based, because of our bidir shortcuts for node-based,
     //       and because basegraph has multi-edges. the advantage of storing the skipped node is that we could just write
@@ -75,8 +121,30 @@ public class CHPreparationGraph {
         this.nodes = nodes;
         this.edges = edges;
         this.edgeBased = edgeBased;
-        prepareEdgesOut = new PrepareEdge[nodes];
-        prepareEdgesIn = new PrepareEdge[nodes];
+        firstOutEdges = new int[nodes];
+        firstInEdges = new int[nodes];
+        Arrays.fill(firstOutEdges, NO_EDGE);
+        Arrays.fill(firstInEdges, NO_EDGE);
+        basePrepareEdges = new int[edges];
+        baseNodesA = new int[edges];
+        baseNodesB = new int[edges];
+        baseWeightsAB = new float[edges];
+        baseWeightsBA = new float[edges];
+        baseNextOutA = new int[edges];
+        baseNextOutB = new int[edges];
+        baseNextInA = new int[edges];
+        baseNextInB = new int[edges];
+        scPrepareEdges = new int[0];
+        scFromNodes = new int[0];
+        scToNodes = new int[0];
+        scWeights = new double[0];
+        scSkipped1 = new int[0];
+        scSkipped2 = new int[0];
+        scOrigEdgeCounts = new int[0];
+        scNextOut = new int[0];
+        scNextIn = new int[0];
+        scOrigEdgeKeysFirst = new int[0];
+        scOrigEdgeKeysLast = new int[0];
         shortcutsByPrepareEdges = new IntArrayList();
         degrees = new int[nodes];
         origGraphBuilder = edgeBased ? new OrigGraph.Builder() : null;
@@ -127,14 +195,23 @@ public class CHPreparationGraph {
         boolean bwd = Double.isFinite(weightBwd);
         if (!fwd && !bwd)
             return;
-        PrepareBaseEdge prepareEdge = new PrepareBaseEdge(edge, from, to, (float) weightFwd, (float) weightBwd);
+        int index = baseEdgeCount++;
+        basePrepareEdges[index] = edge;
+        baseNodesA[index] = from;
+        baseNodesB[index] = to;
+        baseWeightsAB[index] = (float) weightFwd;
+        baseWeightsBA[index] = (float) weightBwd;
+        baseNextOutA[index] = NO_EDGE;
+        baseNextOutB[index] = NO_EDGE;
+        baseNextInA[index] = NO_EDGE;
+        baseNextInB[index] = NO_EDGE;
         if (fwd) {
-            addOutEdge(from, prepareEdge);
-            addInEdge(to, prepareEdge);
+            addOutEdge(from, index);
+            addInEdge(to, index);
         }
-        if (bwd && from != to) {
-            addOutEdge(to, prepareEdge);
-            addInEdge(from, prepareEdge);
+        if (bwd) {
+            addOutEdge(to, index);
+            addInEdge(from, index);
         }
         if (edgeBased)
             origGraphBuilder.addEdge(from, to, edge, fwd, bwd);
@@ -143,12 +220,26 @@ public class CHPreparationGraph {
     public int addShortcut(int from, int to, int origEdgeKeyFirst, int origEdgeKeyLast, int skipped1,
                            int skipped2, double weight, int origEdgeCount) {
         checkReady();
-        PrepareEdge prepareEdge = edgeBased
-                ? new EdgeBasedPrepareShortcut(nextShortcutId, from, to, origEdgeKeyFirst, origEdgeKeyLast, weight, skipped1, skipped2, origEdgeCount)
-                : new PrepareShortcut(nextShortcutId, from, to, weight, skipped1, skipped2, origEdgeCount);
-        addOutEdge(from, prepareEdge);
+        assert Double.isFinite(weight);
+        if (shortcutCount == scPrepareEdges.length)
+            growShortcuts();
+        int index = shortcutCount++;
+        scPrepareEdges[index] = nextShortcutId;
+        scFromNodes[index] = from;
+        scToNodes[index] = to;
+        scWeights[index] = weight;
+        scSkipped1[index] = skipped1;
+        scSkipped2[index] = skipped2;
+        scOrigEdgeCounts[index] = origEdgeCount;
+        scNextOut[index] = NO_EDGE;
+        scNextIn[index] = NO_EDGE;
+        if (edgeBased) {
+            scOrigEdgeKeysFirst[index] = origEdgeKeyFirst;
+            scOrigEdgeKeysLast[index] = origEdgeKeyLast;
+        }
+        addOutEdge(from, edges + index);
         if (from != to)
-            addInEdge(to, prepareEdge);
+            addInEdge(to, edges + index);
         return nextShortcutId++;
     }
 
@@ -156,6 +247,9 @@ public class CHPreparationGraph {
         checkNotReady();
         origGraph = edgeBased ? origGraphBuilder.build() : null;
         origGraphBuilder = null;
+        // edges without access were not added
+        trimBaseEdges();
+        maxBytes = getMemoryUsage();
         ready = true;
     }
 
@@ -175,12 +269,12 @@ public class CHPreparationGraph {
 
     public PrepareGraphEdgeExplorer createOutEdgeExplorer() {
         checkReady();
-        return new PrepareGraphEdgeExplorerImpl(prepareEdgesOut, false);
+        return new PrepareGraphEdgeExplorerImpl(false);
     }
 
     public PrepareGraphEdgeExplorer createInEdgeExplorer() {
         checkReady();
-        return new PrepareGraphEdgeExplorerImpl(prepareEdgesIn, true);
+        return new PrepareGraphEdgeExplorerImpl(true);
     }
 
     public PrepareGraphOrigEdgeExplorer createOutOrigEdgeExplorer() {
@@ -201,85 +295,287 @@ public class CHPreparationGraph {
         return turnCostFunction.getTurnWeight(GHUtility.getEdgeFromEdgeKey(inEdgeKey), viaNode, GHUtility.getEdgeFromEdgeKey(outEdgeKey));
     }
 
+    /**
+     * Removes all edges adjacent to the given node. This may compact the arrays, which is why there must be no edge
+     * iteration in progress when this is called.
+     */
     public IntContainer disconnect(int node) {
         checkReady();
         // we use this neighbor set to guarantee a deterministic order of the returned
         // node ids
         neighborSet.clear();
-        PrepareEdge currOut = prepareEdgesOut[node];
-        while (currOut != null) {
-            int adjNode = currOut.getNodeB();
-            if (adjNode == node)
-                adjNode = currOut.getNodeA();
-            if (adjNode == node) {
-                // this is a loop
-                currOut = currOut.getNextOut(node);
-                continue;
+        int currOut = firstOutEdges[node];
+        while (currOut != NO_EDGE) {
+            int nextOut = getNextOut(currOut, node);
+            int adjNode = getOtherNode(currOut, node);
+            // we skip loops
+            if (adjNode != node) {
+                removeInEdge(adjNode, currOut);
+                neighborSet.add(adjNode);
             }
-            removeInEdge(adjNode, currOut);
-            neighborSet.add(adjNode);
-            currOut = currOut.getNextOut(node);
-        }
-        PrepareEdge currIn = prepareEdgesIn[node];
-        while (currIn != null) {
-            int adjNode = currIn.getNodeB();
-            if (adjNode == node)
-                adjNode = currIn.getNodeA();
-            if (adjNode == node) {
-                // this is a loop
-                currIn = currIn.getNextIn(node);
-                continue;
+            markRemoved(currOut);
+            currOut = nextOut;
+        }
+        int currIn = firstInEdges[node];
+        while (currIn != NO_EDGE) {
+            int nextIn = getNextIn(currIn, node);
+            int adjNode = getOtherNode(currIn, node);
+            if (adjNode != node) {
+                removeOutEdge(adjNode, currIn);
+                neighborSet.add(adjNode);
             }
-            removeOutEdge(adjNode, currIn);
-            neighborSet.add(adjNode);
-            currIn = currIn.getNextIn(node);
+            markRemoved(currIn);
+            currIn = nextIn;
         }
-        prepareEdgesOut[node] = null;
-        prepareEdgesIn[node] = null;
+        firstOutEdges[node] = NO_EDGE;
+        firstInEdges[node] = NO_EDGE;
         degrees[node] = 0;
+        if (removedBaseEdges + removedShortcuts >= Math.max(minRemovedEdgesForCompaction,
+                baseEdgeCount + shortcutCount - removedBaseEdges - removedShortcuts))
+            compact();
         return neighborSet;
     }
 
-    private void removeOutEdge(int node, PrepareEdge prepareEdge) {
-        PrepareEdge prevOut = null;
-        PrepareEdge currOut = prepareEdgesOut[node];
-        while (currOut != null) {
-            if (currOut == prepareEdge) {
-                if (prevOut == null) {
-                    prepareEdgesOut[node] = currOut.getNextOut(node);
+    private void markRemoved(int edge) {
+        // edges can be visited twice, e.g. bidirectional base edges are in the in- and out-lists of both nodes
+        if (edge < edges) {
+            if (basePrepareEdges[edge] != REMOVED) {
+                basePrepareEdges[edge] = REMOVED;
+                removedBaseEdges++;
+            }
+        } else if (scPrepareEdges[edge - edges] != REMOVED) {
+            scPrepareEdges[edge - edges] = REMOVED;
+            removedShortcuts++;
+        }
+    }
+
+    private void removeOutEdge(int node, int edge) {
+        int prevOut = NO_EDGE;
+        int currOut = firstOutEdges[node];
+        while (currOut != NO_EDGE) {
+            int nextOut = getNextOut(currOut, node);
+            if (currOut == edge) {
+                if (prevOut == NO_EDGE) {
+                    firstOutEdges[node] = nextOut;
                 } else {
-                    prevOut.setNextOut(node, currOut.getNextOut(node));
+                    setNextOut(prevOut, node, nextOut);
                 }
                 degrees[node]--;
             } else {
                 prevOut = currOut;
             }
-            currOut = currOut.getNextOut(node);
+            currOut = nextOut;
         }
     }
 
-    private void removeInEdge(int node, PrepareEdge prepareEdge) {
-        PrepareEdge prevIn = null;
-        PrepareEdge currIn = prepareEdgesIn[node];
-        while (currIn != null) {
-            if (currIn == prepareEdge) {
-                if (prevIn == null) {
-                    prepareEdgesIn[node] = currIn.getNextIn(node);
+    private void removeInEdge(int node, int edge) {
+        int prevIn = NO_EDGE;
+        int currIn = firstInEdges[node];
+        while (currIn != NO_EDGE) {
+            int nextIn = getNextIn(currIn, node);
+            if (currIn == edge) {
+                if (prevIn == NO_EDGE) {
+                    firstInEdges[node] = nextIn;
                 } else {
-                    prevIn.setNextIn(node, currIn.getNextIn(node));
+                    setNextIn(prevIn, node, nextIn);
                 }
                 degrees[node]--;
             } else {
                 prevIn = currIn;
             }
-            currIn = currIn.getNextIn(node);
+            currIn = nextIn;
+        }
+    }
+
+    /**
+     * Releases the memory of the edges and shortcuts that were removed by {@link #disconnect}. This is done
+     * automatically once there are more removed edges than remaining ones. The prepare edge ids do not change.
+     */
+    public void compact() {
+        checkReady();
+        if (removedBaseEdges == 0 && removedShortcuts == 0)
+            return;
+        long bytesBefore = getMemoryUsage();
+        // the remaining edges are moved to the front of the arrays, without changing their order
+        int[] newBaseIndices = new int[baseEdgeCount];
+        int newBaseEdgeCount = 0;
+        for (int i = 0; i < baseEdgeCount; i++) {
+            if (basePrepareEdges[i] == REMOVED) {
+                newBaseIndices[i] = NO_EDGE;
+                continue;
+            }
+            int j = newBaseEdgeCount++;
+            newBaseIndices[i] = j;
+            basePrepareEdges[j] = basePrepareEdges[i];
+            baseNodesA[j] = baseNodesA[i];
+            baseNodesB[j] = baseNodesB[i];
+            baseWeightsAB[j] = baseWeightsAB[i];
+            baseWeightsBA[j] = baseWeightsBA[i];
+            baseNextOutA[j] = baseNextOutA[i];
+            baseNextOutB[j] = baseNextOutB[i];
+            baseNextInA[j] = baseNextInA[i];
+            baseNextInB[j] = baseNextInB[i];
+        }
+        int[] newShortcutIndices = new int[shortcutCount];
+        int newShortcutCount = 0;
+        for (int i = 0; i < shortcutCount; i++) {
+            if (scPrepareEdges[i] == REMOVED) {
+                newShortcutIndices[i] = NO_EDGE;
+                continue;
+            }
+            int j = newShortcutCount++;
+            newShortcutIndices[i] = j;
+            scPrepareEdges[j] = scPrepareEdges[i];
+            scFromNodes[j] = scFromNodes[i];
+            scToNodes[j] = scToNodes[i];
+            scWeights[j] = scWeights[i];
+            scSkipped1[j] = scSkipped1[i];
+            scSkipped2[j] = scSkipped2[i];
+            scOrigEdgeCounts[j] = scOrigEdgeCounts[i];
+            scNextOut[j] = scNextOut[i];
+            scNextIn[j] = scNextIn[i];
+            if (edgeBased) {
+                scOrigEdgeKeysFirst[j] = scOrigEdgeKeysFirst[i];
+                scOrigEdgeKeysLast[j] = scOrigEdgeKeysLast[i];
+            }
         }
+        baseEdgeCount = newBaseEdgeCount;
+        shortcutCount = newShortcutCount;
+        removedBaseEdges = 0;
+        removedShortcuts = 0;
+        // now we can update the edge pointers
+        remapEdges(firstOutEdges, nodes, newBaseIndices, newShortcutIndices);
+        remapEdges(firstInEdges, nodes, newBaseIndices, newShortcutIndices);
+        remapEdges(baseNextOutA, baseEdgeCount, newBaseIndices, newShortcutIndices);
+        remapEdges(baseNextOutB, baseEdgeCount, newBaseIndices, newShortcutIndices);
+        remapEdges(baseNextInA, baseEdgeCount, newBaseIndices, newShortcutIndices);
+        remapEdges(baseNextInB, baseEdgeCount, newBaseIndices, newShortcutIndices);
+        remapEdges(scNextOut, shortcutCount, newBaseIndices, newShortcutIndices);
+        remapEdges(scNextIn, shortcutCount, newBaseIndices, newShortcutIndices);
+        trimBaseEdges();
+        // we keep some space for new shortcuts, so we do not need to grow the arrays right away
+        setShortcutCapacity(Math.max(shortcutCount + (shortcutCount >> 2), 16));
+        compactions++;
+        LOGGER.debug("Compacted CH prepare graph, base edges: {}, shortcuts: {}, memory: {}MB -> {}MB", baseEdgeCount,
+                shortcutCount, bytesBefore / Helper.MB, getMemoryUsage() / Helper.MB);
+    }
+
+    private void remapEdges(int[] edgePointers, int count, int[] newBaseIndices, int[] newShortcutIndices) {
+        for (int i = 0; i < count; i++) {
+            int edge = edgePointers[i];
+            if (edge == NO_EDGE)
+                continue;
+            int newEdge = edge < edges ? newBaseIndices[edge] : edges + newShortcutIndices[edge - edges];
+            assert newEdge != NO_EDGE && newEdge != edges + NO_EDGE : "edge list contains a removed edge";
+            edgePointers[i] = newEdge;
+        }
+    }
+
+    private void trimBaseEdges() {
+        if (basePrepareEdges.length == baseEdgeCount)
+            return;
+        basePrepareEdges = Arrays.copyOf(basePrepareEdges, baseEdgeCount);
+        baseNodesA = Arrays.copyOf(baseNodesA, baseEdgeCount);
+        baseNodesB = Arrays.copyOf(baseNodesB, baseEdgeCount);
+        baseWeightsAB = Arrays.copyOf(baseWeightsAB, baseEdgeCount);
+        baseWeightsBA = Arrays.copyOf(baseWeightsBA, baseEdgeCount);
+        baseNextOutA = Arrays.copyOf(baseNextOutA, baseEdgeCount);
+        baseNextOutB = Arrays.copyOf(baseNextOutB, baseEdgeCount);
+        baseNextInA = Arrays.copyOf(baseNextInA, baseEdgeCount);
+        baseNextInB = Arrays.copyOf(baseNextInB, baseEdgeCount);
+    }
+
+    private void growShortcuts() {
+        int capacity = scPrepareEdges.length;
+        setShortcutCapacity(Math.max(16, capacity + (capacity >> 1)));
+        maxBytes = Math.max(maxBytes, getMemoryUsage());
+    }
+
+    private void setShortcutCapacity(int capacity) {
+        if (capacity == scPrepareEdges.length)
+            return;
+        scPrepareEdges = Arrays.copyOf(scPrepareEdges, capacity);
+        scFromNodes = Arrays.copyOf(scFromNodes, capacity);
+        scToNodes = Arrays.copyOf(scToNodes, capacity);
+        scWeights = Arrays.copyOf(scWeights, capacity);
+        scSkipped1 = Arrays.copyOf(scSkipped1, capacity);
+        scSkipped2 = Arrays.copyOf(scSkipped2, capacity);
+        scOrigEdgeCounts = Arrays.copyOf(scOrigEdgeCounts, capacity);
+        scNextOut = Arrays.copyOf(scNextOut, capacity);
+        scNextIn = Arrays.copyOf(scNextIn, capacity);
+        if (edgeBased) {
+            scOrigEdgeKeysFirst = Arrays.copyOf(scOrigEdgeKeysFirst, capacity);
+            scOrigEdgeKeysLast = Arrays.copyOf(scOrigEdgeKeysLast, capacity);
+        }
+    }
+
+    /**
+     * Sets the minimum number of removed edges and shortcuts before the arrays are compacted automatically.
+     */
+    void setMinRemovedEdgesForCompaction(int minRemovedEdgesForCompaction) {
+        this.minRemovedEdgesForCompaction = minRemovedEdgesForCompaction;
+    }
+
+    public int getCompactions() {
+        return compactions;
+    }
+
+    /**
+     * @return the (approximate) number of bytes used by this graph
+     */
+    public long getMemoryUsage() {
+        if (firstOutEdges == null)
+            return 0;
+        long bytes = 4L * (firstOutEdges.length + firstInEdges.length + degrees.length);
+        // per base edge: the prepare edge, two nodes, two weights and four next edges
+        bytes += 4L * 9 * basePrepareEdges.length;
+        // per shortcut: the prepare edge, two nodes, the weight (double), two skipped edges, the number of original
+        // edges, two next edges and two original edge keys for edge-based
+        bytes += (edgeBased ? 4L * 12 : 4L * 10) * scPrepareEdges.length;
+        bytes += 4L * shortcutsByPrepareEdges.buffer.length;
+        if (origGraph != null)
+            bytes += 4L * (origGraph.firstEdgesByNode.buffer.length + origGraph.adjNodesAndFwdFlags.buffer.length
+                    + origGraph.keysAndBwdFlags.buffer.length);
+        return bytes;
+    }
+
+    /**
+     * @return the maximum number of bytes this graph used so far
+     */
+    public long getMaxMemoryUsage() {
+        return maxBytes;
+    }
+
+    public String getMemoryUsageAsString() {
+        return String.format(Locale.ROOT, "prepare graph: %dMB (max: %dMB), edges: %d, shortcuts: %d, removed: %d, compactions: %d",
+                getMemoryUsage() / Helper.MB, maxBytes / Helper.MB, baseEdgeCount - removedBaseEdges,
+                shortcutCount - removedShortcuts, removedBaseEdges + removedShortcuts, compactions);
     }
 
     public void close() {
         checkReady();
-        prepareEdgesOut = null;
-        prepareEdgesIn = null;
+        firstOutEdges = null;
+        firstInEdges = null;
+        basePrepareEdges = null;
+        baseNodesA = null;
+        baseNodesB = null;
+        baseWeightsAB = null;
+        baseWeightsBA = null;
+        baseNextOutA = null;
+        baseNextOutB = null;
+        baseNextInA = null;
+        baseNextInB = null;
+        scPrepareEdges = null;
+        scFromNodes = null;
+        scToNodes = null;
+        scWeights = null;
+        scSkipped1 = null;
+        scSkipped2 = null;
+        scOrigEdgeCounts = null;
+        scNextOut = null;
+        scNextIn = null;
+        scOrigEdgeKeysFirst = null;
+        scOrigEdgeKeysLast = null;
         shortcutsByPrepareEdges = null;
         degrees = null;
         neighborSet = null;
@@ -287,18 +583,68 @@ public class CHPreparationGraph {
             origGraph = null;
     }
 
-    private void addOutEdge(int node, PrepareEdge prepareEdge) {
-        prepareEdge.setNextOut(node, prepareEdgesOut[node]);
-        prepareEdgesOut[node] = prepareEdge;
+    private void addOutEdge(int node, int edge) {
+        setNextOut(edge, node, firstOutEdges[node]);
+        firstOutEdges[node] = edge;
         degrees[node]++;
     }
 
-    private void addInEdge(int node, PrepareEdge prepareEdge) {
-        prepareEdge.setNextIn(node, prepareEdgesIn[node]);
-        prepareEdgesIn[node] = prepareEdge;
+    private void addInEdge(int node, int edge) {
+        setNextIn(edge, node, firstInEdges[node]);
+        firstInEdges[node] = edge;
         degrees[node]++;
     }
 
+    private int getOtherNode(int edge, int node) {
+        if (edge < edges)
+            return baseNodesA[edge] == node ? baseNodesB[edge] : baseNodesA[edge];
+        int index = edge - edges;
+        return scFromNodes[index] == node ? scToNodes[index] : scFromNodes[index];
+    }
+
+    private int getNextOut(int edge, int base) {
+        if (edge >= edges)
+            return scNextOut[edge - edges];
+        checkAdjacent(edge, base);
+        return base == baseNodesA[edge] ? baseNextOutA[edge] : baseNextOutB[edge];
+    }
+
+    private void setNextOut(int edge, int base, int nextEdge) {
+        if (edge >= edges) {
+            scNextOut[edge - edges] = nextEdge;
+            return;
+        }
+        checkAdjacent(edge, base);
+        if (base == baseNodesA[edge])
+            baseNextOutA[edge] = nextEdge;
+        else
+            baseNextOutB[edge] = nextEdge;
+    }
+
+    private int getNextIn(int edge, int base) {
+        if (edge >= edges)
+            return scNextIn[edge - edges];
+        checkAdjacent(edge, base);
+        return base == baseNodesA[edge] ? baseNextInA[edge] : baseNextInB[edge];
+    }
+
+    private void setNextIn(int edge, int base, int nextEdge) {
+        if (edge >= edges) {
+            scNextIn[edge - edges] = nextEdge;
+            return;
+        }
+        checkAdjacent(edge, base);
+        if (base == baseNodesA[edge])
+            baseNextInA[edge] = nextEdge;
+        else
+            baseNextInB[edge] = nextEdge;
+    }
+
+    private void checkAdjacent(int edge, int base) {
+        if (base != baseNodesA[edge] && base != baseNodesB[edge])
+            throw new IllegalStateException("The given base " + base + " is not adjacent to the edge " + baseNodesA[edge] + "-" + baseNodesB[edge]);
+    }
+
     private void checkReady() {
         if (!ready)
             throw new IllegalStateException("You need to call prepareForContraction() before calling this method");
@@ -314,32 +660,30 @@ public class CHPreparationGraph {
         double getTurnWeight(int inEdge, int viaNode, int outEdge);
     }
 
-    private static class PrepareGraphEdgeExplorerImpl implements PrepareGraphEdgeExplorer, PrepareGraphEdgeIterator {
-        private final PrepareEdge[] prepareEdges;
+    private class PrepareGraphEdgeExplorerImpl implements PrepareGraphEdgeExplorer, PrepareGraphEdgeIterator {
         private final boolean reverse;
         private int node = -1;
-        private PrepareEdge currEdge;
-        private PrepareEdge nextEdge;
+        private int currEdge = NO_EDGE;
+        private int nextEdge = NO_EDGE;
 
-        PrepareGraphEdgeExplorerImpl(PrepareEdge[] prepareEdges, boolean reverse) {
-            this.prepareEdges = prepareEdges;
+        PrepareGraphEdgeExplorerImpl(boolean reverse) {
             this.reverse = reverse;
         }
 
         @Override
         public PrepareGraphEdgeIterator setBaseNode(int node) {
             this.node = node;
-            currEdge = null;
-            nextEdge = prepareEdges[node];
+            currEdge = NO_EDGE;
+            nextEdge = reverse ? firstInEdges[node] : firstOutEdges[node];
             return this;
         }
 
         @Override
         public boolean next() {
             currEdge = nextEdge;
-            if (currEdge == null)
+            if (currEdge == NO_EDGE)
                 return false;
-            nextEdge = reverse ? currEdge.getNextIn(node) : currEdge.getNextOut(node);
+            nextEdge = reverse ? getNextIn(currEdge, node) : getNextOut(currEdge, node);
             return true;
         }
 
@@ -350,444 +694,107 @@ public class CHPreparationGraph {
 
         @Override
         public int getAdjNode() {
-            return nodeAisBase() ? currEdge.getNodeB() : currEdge.getNodeA();
+            return getOtherNode(currEdge, node);
         }
 
         @Override
         public int getPrepareEdge() {
-            return currEdge.getPrepareEdge();
+            return isShortcut() ? scPrepareEdges[currEdge - edges] : basePrepareEdges[currEdge];
         }
 
         @Override
         public boolean isShortcut() {
-            return currEdge.isShortcut();
+            return currEdge >= edges;
         }
 
         @Override
         public int getOrigEdgeKeyFirst() {
-            return nodeAisBase() ? currEdge.getOrigEdgeKeyFirstAB() : currEdge.getOrigEdgeKeyFirstBA();
+            if (!isShortcut())
+                return GHUtility.createEdgeKey(basePrepareEdges[currEdge], !nodeAisBase());
+            if (!edgeBased)
+                throw new IllegalStateException("Not supported for node-based shortcuts");
+            return scOrigEdgeKeysFirst[currEdge - edges];
         }
 
         @Override
         public int getOrigEdgeKeyLast() {
-            return nodeAisBase() ? currEdge.getOrigEdgeKeyLastAB() : currEdge.getOrigEdgeKeyLastBA();
+            if (!isShortcut())
+                return getOrigEdgeKeyFirst();
+            if (!edgeBased)
+                throw new IllegalStateException("Not supported for node-based shortcuts");
+            return scOrigEdgeKeysLast[currEdge - edges];
         }
 
         @Override
         public int getSkipped1() {
-            return currEdge.getSkipped1();
+            if (!isShortcut())
+                throw new UnsupportedOperationException();
+            return scSkipped1[currEdge - edges];
         }
 
         @Override
         public int getSkipped2() {
-            return currEdge.getSkipped2();
+            if (!isShortcut())
+                throw new UnsupportedOperationException();
+            return scSkipped2[currEdge - edges];
         }
 
         @Override
         public double getWeight() {
+            if (isShortcut())
+                return scWeights[currEdge - edges];
+            // in some cases we need to determine which direction of the (bidirectional) edge we want
             if (nodeAisBase()) {
-                return reverse ? currEdge.getWeightBA() : currEdge.getWeightAB();
+                return reverse ? baseWeightsBA[currEdge] : baseWeightsAB[currEdge];
             } else {
-                return reverse ? currEdge.getWeightAB() : currEdge.getWeightBA();
+                return reverse ? baseWeightsAB[currEdge] : baseWeightsBA[currEdge];
             }
         }
 
         @Override
         public int getOrigEdgeCount() {
-            return currEdge.getOrigEdgeCount();
+            return isShortcut() ? scOrigEdgeCounts[currEdge - edges] : 1;
         }
 
         @Override
         public void setSkippedEdges(int skipped1, int skipped2) {
-            currEdge.setSkipped1(skipped1);
-            currEdge.setSkipped2(skipped2);
+            if (!isShortcut())
+                throw new UnsupportedOperationException();
+            scSkipped1[currEdge - edges] = skipped1;
+            scSkipped2[currEdge - edges] = skipped2;
         }
 
         @Override
         public void setWeight(double weight) {
             assert Double.isFinite(weight);
-            currEdge.setWeight(weight);
+            if (!isShortcut())
+                throw new UnsupportedOperationException();
+            scWeights[currEdge - edges] = weight;
         }
 
         @Override
         public void setOrigEdgeCount(int origEdgeCount) {
-            currEdge.setOrigEdgeCount(origEdgeCount);
+            if (!isShortcut())
+                throw new UnsupportedOperationException();
+            scOrigEdgeCounts[currEdge - edges] = origEdgeCount;
         }
 
         @Override
         public String toString() {
-            return currEdge == null ? "not_started" : currEdge.toString();
+            if (currEdge == NO_EDGE)
+                return "not_started";
+            if (!isShortcut())
+                return baseNodesA[currEdge] + "-" + baseNodesB[currEdge] + " (" + basePrepareEdges[currEdge] + ") "
+                        + baseWeightsAB[currEdge] + " " + baseWeightsBA[currEdge];
+            int index = currEdge - edges;
+            if (edgeBased)
+                return scFromNodes[index] + "-" + scToNodes[index] + " (" + scOrigEdgeKeysFirst[index] + ", "
+                        + scOrigEdgeKeysLast[index] + ") " + scWeights[index];
+            return scFromNodes[index] + "-" + scToNodes[index] + " " + scWeights[index];
         }
 
         private boolean nodeAisBase() {
-            // in some cases we need to determine which direction of the (bidirectional) edge we want
-            return currEdge.getNodeA() == node;
-        }
-    }
-
-    interface PrepareEdge {
-        boolean isShortcut();
-
-        int getPrepareEdge();
-
-        int getNodeA();
-
-        int getNodeB();
-
-        double getWeightAB();
-
-        double getWeightBA();
-
-        int getOrigEdgeKeyFirstAB();
-
-        int getOrigEdgeKeyFirstBA();
-
-        int getOrigEdgeKeyLastAB();
-
-        int getOrigEdgeKeyLastBA();
-
-        int getSkipped1();
-
-        int getSkipped2();
-
-        int getOrigEdgeCount();
-
-        void setSkipped1(int skipped1);
-
-        void setSkipped2(int skipped2);
-
-        void setWeight(double weight);
-
-        void setOrigEdgeCount(int origEdgeCount);
-
-        PrepareEdge getNextOut(int base);
-
-        void setNextOut(int base, PrepareEdge prepareEdge);
-
-        PrepareEdge getNextIn(int base);
-
-        void setNextIn(int base, PrepareEdge prepareEdge);
-
-    }
-
-    public static class PrepareBaseEdge implements PrepareEdge {
-        private final int prepareEdge;
-        private final int nodeA;
-        private final int nodeB;
-        private final float weightAB;
-        private final float weightBA;
-        private PrepareEdge nextOutA;
-        private PrepareEdge nextOutB;
-        private PrepareEdge nextInA;
-        private PrepareEdge nextInB;
-
-        public PrepareBaseEdge(int prepareEdge, int nodeA, int nodeB, float weightAB, float weightBA) {
-            this.prepareEdge = prepareEdge;
-            this.nodeA = nodeA;
-            this.nodeB = nodeB;
-            this.weightAB = weightAB;
-            this.weightBA = weightBA;
-        }
-
-        @Override
-        public boolean isShortcut() {
-            return false;
-        }
-
-        @Override
-        public int getPrepareEdge() {
-            return prepareEdge;
-        }
-
-        @Override
-        public int getNodeA() {
-            return nodeA;
-        }
-
-        @Override
-        public int getNodeB() {
-            return nodeB;
-        }
-
-        @Override
-        public double getWeightAB() {
-            return weightAB;
-        }
-
-        @Override
-        public double getWeightBA() {
-            return weightBA;
-        }
-
-        @Override
-        public int getOrigEdgeKeyFirstAB() {
-            return GHUtility.createEdgeKey(prepareEdge, false);
-        }
-
-        @Override
-        public int getOrigEdgeKeyFirstBA() {
-            return GHUtility.createEdgeKey(prepareEdge, true);
-        }
-
-        @Override
-        public int getOrigEdgeKeyLastAB() {
-            return getOrigEdgeKeyFirstAB();
-        }
-
-        @Override
-        public int getOrigEdgeKeyLastBA() {
-            return getOrigEdgeKeyFirstBA();
-        }
-
-        @Override
-        public int getSkipped1() {
-            throw new UnsupportedOperationException();
-        }
-
-        @Override
-        public int getSkipped2() {
-            throw new UnsupportedOperationException();
-        }
-
-        @Override
-        public int getOrigEdgeCount() {
-            return 1;
-        }
-
-        @Override
-        public void setSkipped1(int skipped1) {
-            throw new UnsupportedOperationException();
-        }
-
-        @Override
-        public void setSkipped2(int skipped2) {
-            throw new UnsupportedOperationException();
-        }
-
-        @Override
-        public void setWeight(double weight) {
-            throw new UnsupportedOperationException();
-        }
-
-        @Override
-        public void setOrigEdgeCount(int origEdgeCount) {
-            throw new UnsupportedOperationException();
-        }
-
-        @Override
-        public PrepareEdge getNextOut(int base) {
-            if (base == nodeA)
-                return nextOutA;
-            else if (base == nodeB)
-                return nextOutB;
-            else
-                throw new IllegalStateException("Cannot get next out edge as the given base " + base + " is not adjacent to the current edge");
-        }
-
-        @Override
-        public void setNextOut(int base, PrepareEdge prepareEdge) {
-            if (base == nodeA)
-                nextOutA = prepareEdge;
-            else if (base == nodeB)
-                nextOutB = prepareEdge;
-            else
-                throw new IllegalStateException("Cannot set next out edge as the given base " + base + " is not adjacent to the current edge");
-        }
-
-        @Override
-        public PrepareEdge getNextIn(int base) {
-            if (base == nodeA)
-                return nextInA;
-            else if (base == nodeB)
-                return nextInB;
-            else
-                throw new IllegalStateException("Cannot get next in edge as the given base " + base + " is not adjacent to the current edge");
-        }
-
-        @Override
-        public void setNextIn(int base, PrepareEdge prepareEdge) {
-            if (base == nodeA)
-                nextInA = prepareEdge;
-            else if (base == nodeB)
-                nextInB = prepareEdge;
-            else
-                throw new IllegalStateException("Cannot set next in edge as the given base " + base + " is not adjacent to the current edge");
-        }
-
-        @Override
-        public String toString() {
-            return nodeA + "-" + nodeB + " (" + prepareEdge + ") " + weightAB + " " + weightBA;
-        }
-    }
-
-    private static class PrepareShortcut implements PrepareEdge {
-        private final int prepareEdge;
-        private final int from;
-        private final int to;
-        private double weight;
-        private int skipped1;
-        private int skipped2;
-        private int origEdgeCount;
-        private PrepareEdge nextOut;
-        private PrepareEdge nextIn;
-
-        private PrepareShortcut(int prepareEdge, int from, int to, double weight, int skipped1, int skipped2, int origEdgeCount) {
-            this.prepareEdge = prepareEdge;
-            this.from = from;
-            this.to = to;
-            assert Double.isFinite(weight);
-            this.weight = weight;
-            this.skipped1 = skipped1;
-            this.skipped2 = skipped2;
-            this.origEdgeCount = origEdgeCount;
-        }
-
-        @Override
-        public boolean isShortcut() {
-            return true;
-        }
-
-        @Override
-        public int getPrepareEdge() {
-            return prepareEdge;
-        }
-
-        @Override
-        public int getNodeA() {
-            return from;
-        }
-
-        @Override
-        public int getNodeB() {
-            return to;
-        }
-
-        @Override
-        public double getWeightAB() {
-            return weight;
-        }
-
-        @Override
-        public double getWeightBA() {
-            return weight;
-        }
-
-        @Override
-        public int getOrigEdgeKeyFirstAB() {
-            throw new IllegalStateException("Not supported for node-based shortcuts");
-        }
-
-        @Override
-        public int getOrigEdgeKeyFirstBA() {
-            throw new IllegalStateException("Not supported for node-based shortcuts");
-        }
-
-        @Override
-        public int getOrigEdgeKeyLastAB() {
-            throw new IllegalStateException("Not supported for node-based shortcuts");
-        }
-
-        @Override
-        public int getOrigEdgeKeyLastBA() {
-            throw new IllegalStateException("Not supported for node-based shortcuts");
-        }
-
-        @Override
-        public int getSkipped1() {
-            return skipped1;
-        }
-
-        @Override
-        public int getSkipped2() {
-            return skipped2;
-        }
-
-        @Override
-        public int getOrigEdgeCount() {
-            return origEdgeCount;
-        }
-
-        @Override
-        public void setSkipped1(int skipped1) {
-            this.skipped1 = skipped1;
-        }
-
-        @Override
-        public void setSkipped2(int skipped2) {
-            this.skipped2 = skipped2;
-        }
-
-        @Override
-        public void setWeight(double weight) {
-            this.weight = weight;
-        }
-
-        @Override
-        public void setOrigEdgeCount(int origEdgeCount) {
-            this.origEdgeCount = origEdgeCount;
-        }
-
-        @Override
-        public PrepareEdge getNextOut(int base) {
-            return nextOut;
-        }
-
-        @Override
-        public void setNextOut(int base, PrepareEdge prepareEdge) {
-            this.nextOut = prepareEdge;
-        }
-
-        @Override
-        public PrepareEdge getNextIn(int base) {
-            return nextIn;
-        }
-
-        @Override
-        public void setNextIn(int base, PrepareEdge prepareEdge) {
-            this.nextIn = prepareEdge;
-        }
-
-        @Override
-        public String toString() {
-            return from + "-" + to + " " + weight;
-        }
-    }
-
-    private static class EdgeBasedPrepareShortcut extends PrepareShortcut {
-        // we use this subclass to save some memory for node-based where these are not needed
-        private final int origEdgeKeyFirst;
-        private final int origEdgeKeyLast;
-
-        public EdgeBasedPrepareShortcut(int prepareEdge, int from, int to, int origEdgeKeyFirst, int origEdgeKeyLast,
-                                        double weight, int skipped1, int skipped2, int origEdgeCount) {
-            super(prepareEdge, from, to, weight, skipped1, skipped2, origEdgeCount);
-            this.origEdgeKeyFirst = origEdgeKeyFirst;
-            this.origEdgeKeyLast = origEdgeKeyLast;
-        }
-
-        @Override
-        public int getOrigEdgeKeyFirstAB() {
-            return origEdgeKeyFirst;
-        }
-
-        @Override
-        public int getOrigEdgeKeyFirstBA() {
-            return origEdgeKeyFirst;
-        }
-
-        @Override
-        public int getOrigEdgeKeyLastAB() {
-            return origEdgeKeyLast;
-        }
-
-        @Override
-        public int getOrigEdgeKeyLastBA() {
-            return origEdgeKeyLast;
-        }
-
-        @Override
-        public String toString() {
-            return getNodeA() + "-" + getNodeB() + " (" + origEdgeKeyFirst + ", " + origEdgeKeyLast + ") " + getWeightAB();
+            return baseNodesA[currEdge] == node;
         }
     }
 
@@ -44,7 +44,10 @@ public class CHPreparationHandler {
     // the actual Weightings)
     private final List<CHProfile> chProfiles = new ArrayList<>();
     private int preparationThreads;
+    private boolean flushProperties = false;
     private PMap pMap = new PMap();
+    // the loaded CH graphs whose node ordering is used by other profiles
+    private final Map<String, CHStorage> loadedNodeOrderings = Collections.synchronizedMap(new HashMap<>());
 
     public CHPreparationHandler() {
         setPreparationThreads(1);
@@ -95,14 +98,25 @@ public class CHPreparationHandler {
         this.preparationThreads = preparationThreads;
     }
 
+    /**
+     * Flushes the properties whenever the preparation of a profile is finished, so the finished preparations are
+     * recorded even if the import is interrupted later.
+     */
+    public void setFlushProperties(boolean flushProperties) {
+        this.flushProperties = flushProperties;
+    }
+
     public Map<String, RoutingCHGraph> load(BaseGraph graph, List<CHConfig> chConfigs) {
         Map<String, RoutingCHGraph> loaded = Collections.synchronizedMap(new LinkedHashMap<>());
         Stream<Runnable> runnables = chConfigs.stream()
                 .map(c -> () -> {
                     CHStorage chStorage = new CHStorage(graph.getDirectory(), c.getName(), graph.getSegmentSize(), c.isEdgeBased());
-                    if (chStorage.loadExisting())
+                    if (chStorage.loadExisting()) {
                         loaded.put(c.getName(), RoutingCHGraphImpl.fromGraph(graph, chStorage, c));
-                    else {
+                        // the node ordering is read from the levels only if another profile needs to be prepared
+                        if (isNodeOrderingProfile(c.getName()))
+                            loadedNodeOrderings.put(c.getName(), chStorage);
+                    } else {
                         // todo: this is ugly, see comments in LMPreparationHandler
                         graph.getDirectory().remove("nodes_ch_" + c.getName());
                         graph.getDirectory().remove("shortcuts_" + c.getName());
@@ -112,6 +126,11 @@ public class CHPreparationHandler {
         return loaded;
     }
 
+    /**
+     * Prepares the given CH configs. The profiles that use the node ordering of another profile are prepared after
+     * all others, and their node ordering is taken from the preparation of this profile or from the CH graph that was
+     * loaded for it.
+     */
     public Map<String, PrepareContractionHierarchies.Result> prepare(BaseGraph baseGraph, StorableProperties properties, List<CHConfig> chConfigs, final boolean closeEarly) {
         if (chConfigs.isEmpty()) {
             LOGGER.info("There are no CHs to prepare");
@@ -119,30 +138,95 @@ public class CHPreparationHandler {
         }
         LOGGER.info("Creating CH preparations, {}", getMemInfo());
         Map<String, PrepareContractionHierarchies.Result> results = Collections.synchronizedMap(new LinkedHashMap<>());
+        // the node orderings and shortcut counts of the profiles whose node ordering is used by other profiles
+        Map<String, NodeOrderingProvider> nodeOrderings = Collections.synchronizedMap(new HashMap<>());
+        Map<String, Long> nodeOrderingShortcuts = Collections.synchronizedMap(new HashMap<>());
+        loadedNodeOrderings.forEach((name, chStorage) -> nodeOrderingShortcuts.put(name, (long) chStorage.getShortcuts()));
         List<Runnable> runnables = new ArrayList<>(chConfigs.size());
+        List<Runnable> runnablesWithOtherNodeOrdering = new ArrayList<>();
         for (int i = 0; i < chConfigs.size(); ++i) {
             CHConfig chConfig = chConfigs.get(i);
+            String nodeOrderingProfile = getNodeOrderingProfile(chConfig.getName());
             LOGGER.info((i + 1) + "/" + chConfigs.size() + " Setting up CH preparation for profile " +
-                    "'" + chConfig.getName() + "' " + chConfig.getTraversalMode() + " ... (" + getMemInfo() + ")");
-            runnables.add(() -> {
+                    "'" + chConfig.getName() + "' " + chConfig.getTraversalMode()
+                    + (nodeOrderingProfile == null ? "" : " using the node ordering of '" + nodeOrderingProfile + "'")
+                    + " ... (" + getMemInfo() + ")");
+            (nodeOrderingProfile == null ? runnables : runnablesWithOtherNodeOrdering).add(() -> {
                 final String name = chConfig.getName();
                 // toString is not taken into account so we need to cheat, see http://stackoverflow.com/q/6113746/194609 for other options
                 Thread.currentThread().setName(name);
                 PrepareContractionHierarchies prepare = PrepareContractionHierarchies.fromGraph(baseGraph, chConfig);
                 prepare.setParams(pMap);
+                if (nodeOrderingProfile != null)
+                    prepare.useFixedNodeOrdering(getNodeOrdering(nodeOrderingProfile, nodeOrderings));
                 PrepareContractionHierarchies.Result result = prepare.doWork();
                 results.put(name, result);
+                if (isNodeOrderingProfile(name)) {
+                    // we need to keep the node ordering, because the CH storage might be closed below
+                    nodeOrderings.put(name, result.getCHStorage().getNodeOrderingProvider());
+                    nodeOrderingShortcuts.put(name, result.getShortcuts());
+                }
+                if (nodeOrderingProfile != null)
+                    logNodeOrderingStats(result, nodeOrderingProfile, nodeOrderingShortcuts.get(nodeOrderingProfile), results.get(nodeOrderingProfile));
                 prepare.flush();
                 if (closeEarly)
                     prepare.close();
                 properties.put(CH.PREPARE + "date." + name, createFormatter().format(new Date()));
+                if (flushProperties)
+                    properties.flush();
             });
         }
         GHUtility.runConcurrently(runnables.stream(), preparationThreads);
+        GHUtility.runConcurrently(runnablesWithOtherNodeOrdering.stream(), preparationThreads);
         LOGGER.info("Finished CH preparation, {}", getMemInfo());
         return results;
     }
 
+    private NodeOrderingProvider getNodeOrdering(String profile, Map<String, NodeOrderingProvider> nodeOrderings) {
+        NodeOrderingProvider nodeOrdering = nodeOrderings.get(profile);
+        if (nodeOrdering != null)
+            return nodeOrdering;
+        CHStorage chStorage = loadedNodeOrderings.get(profile);
+        if (chStorage == null)
+            throw new IllegalStateException("The CH profile '" + profile + "' must be loaded or prepared before its node ordering can be used");
+        return chStorage.getNodeOrderingProvider();
+    }
+
+    /**
+     * Logs the number of shortcuts relative to the profile that provided the node ordering. This is not the overhead
+     * compared to a dedicated node ordering of the same profile, because the two profiles use different weightings.
+     * Measuring that overhead requires preparing the profile without node_ordering_profile once.
+     */
+    private static void logNodeOrderingStats(PrepareContractionHierarchies.Result result, String nodeOrderingProfile,
+                                             Long nodeOrderingShortcuts, PrepareContractionHierarchies.Result nodeOrderingResult) {
+        String shortcuts = "shortcuts: " + result.getShortcuts();
+        if (nodeOrderingShortcuts != null && nodeOrderingShortcuts > 0)
+            shortcuts += String.format(Locale.ROOT, " (%+.1f%% relative to the %d shortcuts of '%s')",
+                    100.0 * (result.getShortcuts() - nodeOrderingShortcuts) / nodeOrderingShortcuts, nodeOrderingShortcuts, nodeOrderingProfile);
+        String time = "took: " + result.getTotalPrepareTime() / 1000 + "s";
+        if (nodeOrderingResult != null)
+            time += " (" + nodeOrderingResult.getTotalPrepareTime() / 1000 + "s for '" + nodeOrderingProfile + "')";
+        LOGGER.info("Prepared CH for '" + result.getCHConfig().getName() + "' using the node ordering of '"
+                + nodeOrderingProfile + "', " + shortcuts + ", " + time);
+    }
+
+    /**
+     * @return the CH profile whose node ordering shall be used for the given profile or null if it needs its own
+     */
+    private String getNodeOrderingProfile(String profile) {
+        for (CHProfile chProfile : chProfiles)
+            if (chProfile.getProfile().equals(profile) && chProfile.usesOtherNodeOrdering())
+                return chProfile.getNodeOrderingProfile();
+        return null;
+    }
+
+    private boolean isNodeOrderingProfile(String profile) {
+        for (CHProfile chProfile : chProfiles)
+            if (chProfile.usesOtherNodeOrdering() && chProfile.getNodeOrderingProfile().equals(profile))
+                return true;
+        return false;
+    }
+
     private PrepareContractionHierarchies createCHPreparation(BaseGraph graph, CHConfig chConfig) {
         PrepareContractionHierarchies pch = PrepareContractionHierarchies.fromGraph(graph, chConfig);
         pch.setParams(pMap);
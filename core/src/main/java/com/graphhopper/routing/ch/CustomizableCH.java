@@ -0,0 +1,629 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.graphhopper.routing.util.AllEdgesIterator;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.*;
+import com.graphhopper.util.Constants;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.GHUtility;
+import com.graphhopper.util.StopWatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.IntStream;
+
+import static com.graphhopper.util.Helper.nf;
+
+/**
+ * Customizable contraction hierarchies (CCH), see Dibbelt, Strasser and Wagner: "Customizable Contraction
+ * Hierarchies". Unlike {@link PrepareContractionHierarchies} the node ordering does not depend on the weighting: the
+ * nodes are ordered by a nested dissection of the graph and all shortcuts that could ever be needed are determined
+ * once for the base graph. Applying a weighting, i.e. a metric, to these shortcuts (the customization) then only
+ * takes a few seconds, so this can be done for the custom model of a request.
+ * <p>
+ * The nested dissection splits the nodes of a cell at the median of their coordinates along the longer side of the
+ * cell. The nodes of one half that are adjacent to the other half form the separator and get the highest ranks of
+ * the cell. The shortcuts are the arcs of the chordal supergraph that results from contracting the nodes in the order
+ * of their ranks. Every base edge is included no matter whether a weighting can use it.
+ * <p>
+ * The customization starts with the weights of the base edges and then improves the weight of every arc x-y using the
+ * lower triangles x-v-y. The arcs of a node only depend on the arcs of its descendants in the elimination tree, so the
+ * nodes of the same height in this tree are customized in parallel. Only the arcs that are shorter than the base edges
+ * are written to a {@link CHStorage} in memory, so the customized graph can be used with the usual CH algorithms.
+ * Only node-based routing is supported so far.
+ * <p>
+ * The node ordering and the arcs can be stored with the graph, see {@link #store} and {@link #load}. The number of
+ * concurrent customizations is limited, because every one of them needs arrays with an entry for every arc.
+ */
+public class CustomizableCH {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CustomizableCH.class);
+    // cells with at most this many nodes are not split any further by the nested dissection
+    private static final int LEAF_SIZE = 8;
+    // the nodes of an elimination tree level are only customized in parallel if there are at least this many
+    private static final int MIN_PARALLEL_NODES = 256;
+    private final BaseGraph graph;
+    private final int threads;
+    // the customization runs in this pool, it is created once and shut down by close()
+    private final ForkJoinPool pool;
+    // the rank (i.e. the CH level) of every node and the node of every rank
+    private final int[] ranks;
+    private final int[] nodesByRank;
+    // the upward arcs of every rank, sorted by the rank of their upper node. the index of an arc is its position here
+    private final int[] upFirst;
+    private final int[] upRanks;
+    // the arcs that reach every rank from below
+    private final int[] downFirst;
+    private final int[] downArcs;
+    // the ranks grouped by their height in the elimination tree
+    private final int[] heightFirst;
+    private final int[] ranksByHeight;
+    private int cacheSize = 10;
+    private Map<String, RoutingCHGraph> cache = createCache(cacheSize);
+    // the customizations that are running, so a graph that is requested concurrently is only customized once
+    private final Map<String, CompletableFuture<RoutingCHGraph>> running = new ConcurrentHashMap<>();
+    private int maxConcurrentCustomizations = 1;
+    private Semaphore customizations = new Semaphore(maxConcurrentCustomizations);
+    // the arrays of the finished customizations, which are reused by the next ones
+    private final Deque<Scratch> scratches = new ConcurrentLinkedDeque<>();
+
+    private CustomizableCH(BaseGraph graph, int threads, int[] ranks, int[] nodesByRank, int[] upFirst, int[] upRanks,
+                           int[] heights) {
+        this.graph = graph;
+        this.threads = threads;
+        this.pool = new ForkJoinPool(threads);
+        this.ranks = ranks;
+        this.nodesByRank = nodesByRank;
+        this.upFirst = upFirst;
+        this.upRanks = upRanks;
+        int nodes = nodesByRank.length;
+
+        downFirst = new int[nodes + 1];
+        for (int upRank : upRanks)
+            downFirst[upRank + 1]++;
+        for (int rank = 0; rank < nodes; rank++)
+            downFirst[rank + 1] += downFirst[rank];
+        downArcs = new int[upRanks.length];
+        int[] next = Arrays.copyOf(downFirst, nodes);
+        for (int rank = 0; rank < nodes; rank++)
+            for (int arc = upFirst[rank]; arc < upFirst[rank + 1]; arc++)
+                downArcs[next[upRanks[arc]]++] = arc;
+
+        int maxHeight = 0;
+        for (int height : heights)
+            maxHeight = Math.max(maxHeight, height);
+        heightFirst = new int[maxHeight + 2];
+        for (int height : heights)
+            heightFirst[height + 1]++;
+        for (int height = 0; height <= maxHeight; height++)
+            heightFirst[height + 1] += heightFirst[height];
+        ranksByHeight = new int[nodes];
+        next = Arrays.copyOf(heightFirst, maxHeight + 1);
+        for (int rank = 0; rank < nodes; rank++)
+            ranksByHeight[next[heights[rank]]++] = rank;
+    }
+
+    /**
+     * Calculates the metric-independent node ordering and shortcuts for the given graph.
+     *
+     * @param threads the number of threads used for the customization
+     */
+    public static CustomizableCH fromGraph(BaseGraph graph, int threads) {
+        if (!graph.isFrozen())
+            throw new IllegalStateException("graph must be frozen before we can create a customizable CH");
+        if (threads < 1)
+            throw new IllegalArgumentException("threads must be at least 1, but was: " + threads);
+        StopWatch sw = new StopWatch().start();
+        int nodes = graph.getNodes();
+        int[] adjFirst = new int[nodes + 1];
+        AllEdgesIterator iter = graph.getAllEdges();
+        while (iter.next())
+            if (iter.getBaseNode() != iter.getAdjNode()) {
+                adjFirst[iter.getBaseNode() + 1]++;
+                adjFirst[iter.getAdjNode() + 1]++;
+            }
+        for (int node = 0; node < nodes; node++)
+            adjFirst[node + 1] += adjFirst[node];
+        int[] adjNodes = new int[adjFirst[nodes]];
+        int[] next = Arrays.copyOf(adjFirst, nodes);
+        iter = graph.getAllEdges();
+        while (iter.next())
+            if (iter.getBaseNode() != iter.getAdjNode()) {
+                adjNodes[next[iter.getBaseNode()]++] = iter.getAdjNode();
+                adjNodes[next[iter.getAdjNode()]++] = iter.getBaseNode();
+            }
+
+        int[] nodesByRank = calcNestedDissectionOrder(graph.getNodeAccess(), nodes, adjFirst, adjNodes);
+        int[] ranks = new int[nodes];
+        for (int rank = 0; rank < nodes; rank++)
+            ranks[nodesByRank[rank]] = rank;
+        float orderingTime = sw.stop().getSeconds();
+
+        // we contract the nodes in the order of their ranks: the upper neighbors of a node form a clique, which we
+        // represent by adding them to the lowest upper neighbor, i.e. the parent in the elimination tree
+        sw = new StopWatch().start();
+        IntArrayList[] upperNeighbors = new IntArrayList[nodes];
+        for (int node = 0; node < nodes; node++) {
+            IntArrayList list = new IntArrayList(adjFirst[node + 1] - adjFirst[node]);
+            for (int i = adjFirst[node]; i < adjFirst[node + 1]; i++)
+                if (ranks[adjNodes[i]] > ranks[node])
+                    list.add(ranks[adjNodes[i]]);
+            upperNeighbors[ranks[node]] = list;
+        }
+        int[] upFirst = new int[nodes + 1];
+        IntArrayList upRanks = new IntArrayList(adjNodes.length);
+        int[] heights = new int[nodes];
+        for (int rank = 0; rank < nodes; rank++) {
+            int[] upper = upperNeighbors[rank].toArray();
+            upperNeighbors[rank] = null;
+            Arrays.sort(upper);
+            upFirst[rank] = upRanks.size();
+            for (int i = 0; i < upper.length; i++)
+                if (i == 0 || upper[i] != upper[i - 1])
+                    upRanks.add(upper[i]);
+            if (upRanks.size() == upFirst[rank])
+                continue;
+            int parent = upRanks.get(upFirst[rank]);
+            for (int arc = upFirst[rank] + 1; arc < upRanks.size(); arc++)
+                upperNeighbors[parent].add(upRanks.get(arc));
+            heights[parent] = Math.max(heights[parent], heights[rank] + 1);
+        }
+        upFirst[nodes] = upRanks.size();
+        CustomizableCH cch = new CustomizableCH(graph, threads, ranks, nodesByRank, upFirst, upRanks.toArray(), heights);
+        LOGGER.info("Created customizable CH, nodes: " + nf(nodes) + ", edges: " + nf(graph.getEdges()) + ", arcs: "
+                + nf(cch.getArcs()) + ", elimination tree height: " + (cch.heightFirst.length - 1) + ", ordering: "
+                + orderingTime + "s, contraction: " + sw.stop().getSeconds() + "s");
+        return cch;
+    }
+
+    /**
+     * Stores the node ordering and the arcs in the given DataAccess, so they do not need to be calculated again when
+     * the graph is loaded, see {@link #load}.
+     */
+    public void store(DataAccess da) {
+        int nodes = nodesByRank.length;
+        int[] heights = new int[nodes];
+        for (int height = 0; height < heightFirst.length - 1; height++)
+            for (int i = heightFirst[height]; i < heightFirst[height + 1]; i++)
+                heights[ranksByHeight[i]] = height;
+        da.create(4L * (3L * nodes + 1 + upRanks.length));
+        long pointer = 0;
+        pointer = setInts(da, pointer, nodesByRank);
+        pointer = setInts(da, pointer, upFirst);
+        pointer = setInts(da, pointer, upRanks);
+        setInts(da, pointer, heights);
+        da.setHeader(0, Constants.VERSION_CCH);
+        da.setHeader(4, nodes);
+        da.setHeader(8, graph.getEdges());
+        da.setHeader(12, upRanks.length);
+        da.flush();
+    }
+
+    /**
+     * Loads the node ordering and the arcs that were stored by {@link #store}.
+     *
+     * @return the customizable CH or null if the DataAccess does not exist or if it was stored for a different graph
+     */
+    public static CustomizableCH load(BaseGraph graph, DataAccess da, int threads) {
+        if (!graph.isFrozen())
+            throw new IllegalStateException("graph must be frozen before we can load a customizable CH");
+        if (threads < 1)
+            throw new IllegalArgumentException("threads must be at least 1, but was: " + threads);
+        if (!da.loadExisting())
+            return null;
+        GHUtility.checkDAVersion(da.getName(), Constants.VERSION_CCH, da.getHeader(0));
+        int nodes = da.getHeader(4);
+        if (nodes != graph.getNodes() || da.getHeader(8) != graph.getEdges()) {
+            LOGGER.info("The customizable CH was stored for a different graph, nodes: " + nodes + ", edges: "
+                    + da.getHeader(8) + ", but the graph has " + graph.getNodes() + " nodes and " + graph.getEdges() + " edges");
+            return null;
+        }
+        int[] nodesByRank = new int[nodes];
+        int[] upFirst = new int[nodes + 1];
+        int[] upRanks = new int[da.getHeader(12)];
+        int[] heights = new int[nodes];
+        long pointer = 0;
+        pointer = getInts(da, pointer, nodesByRank);
+        pointer = getInts(da, pointer, upFirst);
+        pointer = getInts(da, pointer, upRanks);
+        getInts(da, pointer, heights);
+        int[] ranks = new int[nodes];
+        for (int rank = 0; rank < nodes; rank++)
+            ranks[nodesByRank[rank]] = rank;
+        return new CustomizableCH(graph, threads, ranks, nodesByRank, upFirst, upRanks, heights);
+    }
+
+    private static long setInts(DataAccess da, long pointer, int[] values) {
+        for (int value : values) {
+            da.setInt(pointer, value);
+            pointer += 4;
+        }
+        return pointer;
+    }
+
+    private static long getInts(DataAccess da, long pointer, int[] values) {
+        for (int i = 0; i < values.length; i++) {
+            values[i] = da.getInt(pointer);
+            pointer += 4;
+        }
+        return pointer;
+    }
+
+    /**
+     * Orders the nodes by a nested dissection that splits every cell at the median coordinate. The nodes of a cell
+     * are sorted by a key that contains the fixed-point coordinate in the upper and the node in the lower 32 bits.
+     */
+    private static int[] calcNestedDissectionOrder(NodeAccess na, int nodes, int[] adjFirst, int[] adjNodes) {
+        int[] nodesByRank = new int[nodes];
+        int[] marks = new int[nodes];
+        int mark = 0;
+        Deque<int[]> cells = new ArrayDeque<>();
+        Deque<Integer> firstRanks = new ArrayDeque<>();
+        cells.push(IntStream.range(0, nodes).toArray());
+        firstRanks.push(0);
+        while (!cells.isEmpty()) {
+            int[] cell = cells.pop();
+            int firstRank = firstRanks.pop();
+            if (cell.length <= LEAF_SIZE) {
+                System.arraycopy(cell, 0, nodesByRank, firstRank, cell.length);
+                continue;
+            }
+            double minLat = Double.MAX_VALUE, maxLat = -Double.MAX_VALUE, minLon = Double.MAX_VALUE, maxLon = -Double.MAX_VALUE;
+            for (int node : cell) {
+                minLat = Math.min(minLat, na.getLat(node));
+                maxLat = Math.max(maxLat, na.getLat(node));
+                minLon = Math.min(minLon, na.getLon(node));
+                maxLon = Math.max(maxLon, na.getLon(node));
+            }
+            boolean splitLat = maxLat - minLat >= (maxLon - minLon) * Math.cos(Math.toRadians((minLat + maxLat) / 2));
+            long[] keys = new long[cell.length];
+            for (int i = 0; i < cell.length; i++) {
+                double coordinate = splitLat ? na.getLat(cell[i]) + 90 : na.getLon(cell[i]) + 180;
+                keys[i] = (long) (coordinate * 1e6) << 32 | cell[i];
+            }
+            Arrays.sort(keys);
+            int half = keys.length / 2;
+            int markA = ++mark, markB = ++mark;
+            for (int i = 0; i < keys.length; i++)
+                marks[(int) keys[i]] = i < half ? markA : markB;
+
+            // the separator consists of the nodes of one half that are adjacent to the other half, we use the half
+            // that gives the smaller separator
+            IntArrayList boundaryA = new IntArrayList(), boundaryB = new IntArrayList();
+            for (int i = 0; i < keys.length; i++) {
+                int node = (int) keys[i];
+                int otherMark = i < half ? markB : markA;
+                for (int j = adjFirst[node]; j < adjFirst[node + 1]; j++)
+                    if (marks[adjNodes[j]] == otherMark) {
+                        (i < half ? boundaryA : boundaryB).add(node);
+                        break;
+                    }
+            }
+            IntArrayList separator = boundaryA.size() <= boundaryB.size() ? boundaryA : boundaryB;
+            int separatorMark = ++mark;
+            for (int i = 0; i < separator.size(); i++)
+                marks[separator.get(i)] = separatorMark;
+            IntArrayList cellA = new IntArrayList(half), cellB = new IntArrayList(keys.length - half);
+            for (long key : keys) {
+                int node = (int) key;
+                if (marks[node] == markA)
+                    cellA.add(node);
+                else if (marks[node] == markB)
+                    cellB.add(node);
+            }
+            System.arraycopy(separator.buffer, 0, nodesByRank, firstRank + cell.length - separator.size(), separator.size());
+            cells.push(cellA.toArray());
+            firstRanks.push(firstRank);
+            cells.push(cellB.toArray());
+            firstRanks.push(firstRank + cellA.size());
+        }
+        return nodesByRank;
+    }
+
+    /**
+     * @param cacheSize the number of customized graphs that are kept by {@link #getCHGraph}
+     */
+    public CustomizableCH setCacheSize(int cacheSize) {
+        if (cacheSize < 0)
+            throw new IllegalArgumentException("cache size must not be negative, but was: " + cacheSize);
+        this.cacheSize = cacheSize;
+        cache = createCache(cacheSize);
+        return this;
+    }
+
+    /**
+     * @param maxConcurrentCustomizations the number of graphs that {@link #getCHGraph} customizes at the same time
+     */
+    public CustomizableCH setMaxConcurrentCustomizations(int maxConcurrentCustomizations) {
+        if (maxConcurrentCustomizations < 1)
+            throw new IllegalArgumentException("maxConcurrentCustomizations must be at least 1, but was: " + maxConcurrentCustomizations);
+        this.maxConcurrentCustomizations = maxConcurrentCustomizations;
+        customizations = new Semaphore(maxConcurrentCustomizations);
+        return this;
+    }
+
+    /**
+     * Returns the graph that was customized with the given weighting, or customizes it if it is not in the cache. The
+     * key must identify the weighting, e.g. by the profile and the custom model it was created from. If the graph for
+     * this key is already being customized we wait for it.
+     *
+     * @return the customized graph or null if the maximum number of concurrent customizations is reached. The caller
+     * should use a different routing algorithm then instead of waiting for a customization.
+     */
+    public RoutingCHGraph getCHGraph(String key, Weighting weighting) {
+        RoutingCHGraph chGraph = cache.get(key);
+        if (chGraph != null)
+            return chGraph;
+        if (pool.isShutdown())
+            throw new IllegalStateException("CustomizableCH is already closed");
+        CompletableFuture<RoutingCHGraph> future = new CompletableFuture<>();
+        CompletableFuture<RoutingCHGraph> other = running.putIfAbsent(key, future);
+        if (other != null)
+            return await(other);
+        try {
+            // the other customization might have finished before we registered ours
+            chGraph = cache.get(key);
+            if (chGraph == null && customizations.tryAcquire()) {
+                try {
+                    chGraph = RoutingCHGraphImpl.fromGraph(graph, customize(weighting), CHConfig.nodeBased("cch", weighting));
+                } finally {
+                    customizations.release();
+                }
+                if (cacheSize > 0)
+                    cache.put(key, chGraph);
+            } else if (chGraph == null) {
+                LOGGER.debug("Rejected the customization for " + weighting + ", " + maxConcurrentCustomizations
+                        + " customizations are already running");
+            }
+            future.complete(chGraph);
+            return chGraph;
+        } catch (RuntimeException ex) {
+            future.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            running.remove(key);
+        }
+    }
+
+    private static RoutingCHGraph await(CompletableFuture<RoutingCHGraph> future) {
+        try {
+            return future.join();
+        } catch (CompletionException ex) {
+            throw ex.getCause() instanceof RuntimeException ? (RuntimeException) ex.getCause() : ex;
+        }
+    }
+
+    /**
+     * Applies the given weighting to the shortcuts and returns the shortcuts that are needed for this weighting. The
+     * levels of the nodes are their ranks.
+     */
+    public CHStorage customize(Weighting weighting) {
+        if (pool.isShutdown())
+            throw new IllegalStateException("CustomizableCH is already closed");
+        Scratch scratch = scratches.poll();
+        if (scratch == null)
+            scratch = new Scratch(getArcs());
+        try {
+            return customize(weighting, scratch);
+        } finally {
+            // the customizations that do not go through getCHGraph might exceed the limit, their arrays are dropped
+            if (scratches.size() < maxConcurrentCustomizations)
+                scratches.push(scratch);
+        }
+    }
+
+    private CHStorage customize(Weighting weighting, Scratch scratch) {
+        StopWatch sw = new StopWatch().start();
+        int arcs = getArcs();
+        double[] upWeights = scratch.upWeights;
+        double[] downWeights = scratch.downWeights;
+        int[] upEdges = scratch.upEdges;
+        int[] downEdges = scratch.downEdges;
+        int[] upMiddles = scratch.upMiddles;
+        int[] downMiddles = scratch.downMiddles;
+        Arrays.fill(upWeights, Double.POSITIVE_INFINITY);
+        Arrays.fill(downWeights, Double.POSITIVE_INFINITY);
+        Arrays.fill(upEdges, EdgeIterator.NO_EDGE);
+        Arrays.fill(downEdges, EdgeIterator.NO_EDGE);
+        Arrays.fill(upMiddles, -1);
+        Arrays.fill(downMiddles, -1);
+
+        int nodes = nodesByRank.length;
+        try {
+            pool.submit(() -> {
+                // the arcs of a rank are only written by the thread that handles this rank
+                int chunks = Math.max(1, Math.min(nodes / 1024, 16 * threads));
+                IntStream.range(0, chunks).parallel().forEach(chunk -> {
+                    EdgeExplorer explorer = graph.createEdgeExplorer();
+                    for (int rank = (int) ((long) nodes * chunk / chunks); rank < (long) nodes * (chunk + 1) / chunks; rank++) {
+                        EdgeIterator iter = explorer.setBaseNode(nodesByRank[rank]);
+                        while (iter.next()) {
+                            int adjRank = ranks[iter.getAdjNode()];
+                            if (adjRank <= rank)
+                                continue;
+                            int arc = findArc(rank, adjRank);
+                            double upWeight = weighting.calcEdgeWeight(iter, false);
+                            if (upWeight < upWeights[arc]) {
+                                upWeights[arc] = upWeight;
+                                upEdges[arc] = iter.getEdge();
+                            }
+                            double downWeight = weighting.calcEdgeWeight(iter, true);
+                            if (downWeight < downWeights[arc]) {
+                                downWeights[arc] = downWeight;
+                                downEdges[arc] = iter.getEdge();
+                            }
+                        }
+                    }
+                });
+                for (int height = 0; height < heightFirst.length - 1; height++) {
+                    IntStream stream = IntStream.range(heightFirst[height], heightFirst[height + 1]);
+                    if (heightFirst[height + 1] - heightFirst[height] >= MIN_PARALLEL_NODES)
+                        stream = stream.parallel();
+                    stream.forEach(i -> customizeRank(ranksByHeight[i], upWeights, downWeights, upMiddles, downMiddles));
+                }
+            }).get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException(e);
+        }
+        float customizationTime = sw.stop().getSeconds();
+
+        sw = new StopWatch().start();
+        CHStorage chStorage = new CHStorage(new RAMDirectory(), "cch", -1, false);
+        chStorage.create(nodes, arcs / 4);
+        CHStorageBuilder builder = new CHStorageBuilder(chStorage);
+        for (int rank = 0; rank < nodes; rank++)
+            builder.setLevel(nodesByRank[rank], rank);
+        // the shortcuts get the edge ids that follow the base edges
+        int firstShortcut = graph.getEdges();
+        for (int rank = 0; rank < nodes; rank++) {
+            for (int arc = upFirst[rank]; arc < upFirst[rank + 1]; arc++) {
+                int upMiddle = upMiddles[arc], downMiddle = downMiddles[arc];
+                if (upMiddle < 0 && downMiddle < 0)
+                    continue;
+                int nodeA = nodesByRank[rank], nodeB = nodesByRank[upRanks[arc]];
+                int upLower = upMiddle < 0 ? -1 : findArc(upMiddle, rank);
+                int upUpper = upMiddle < 0 ? -1 : findArc(upMiddle, upRanks[arc]);
+                int downLower = downMiddle < 0 ? -1 : findArc(downMiddle, rank);
+                int downUpper = downMiddle < 0 ? -1 : findArc(downMiddle, upRanks[arc]);
+                if (upMiddle == downMiddle && upWeights[arc] == downWeights[arc]
+                        && upEdges[upLower] == downEdges[upLower] && upEdges[upUpper] == downEdges[upUpper]) {
+                    int shortcut = builder.addShortcutNodeBased(nodeA, nodeB, PrepareEncoder.getScDirMask(),
+                            upWeights[arc], upEdges[upLower], upEdges[upUpper]);
+                    upEdges[arc] = downEdges[arc] = firstShortcut + shortcut;
+                    continue;
+                }
+                if (upMiddle >= 0) {
+                    // a -> middle -> b
+                    int shortcut = builder.addShortcutNodeBased(nodeA, nodeB, PrepareEncoder.getScFwdDir(),
+                            upWeights[arc], downEdges[upLower], upEdges[upUpper]);
+                    upEdges[arc] = firstShortcut + shortcut;
+                }
+                if (downMiddle >= 0) {
+                    // b -> middle -> a
+                    int shortcut = builder.addShortcutNodeBased(nodeA, nodeB, PrepareEncoder.getScBwdDir(),
+                            downWeights[arc], downEdges[downUpper], upEdges[downLower]);
+                    downEdges[arc] = firstShortcut + shortcut;
+                }
+            }
+        }
+        LOGGER.info("Customized CH for " + weighting + ", shortcuts: " + nf(chStorage.getShortcuts()) + ", arcs: "
+                + nf(arcs) + ", customization: " + customizationTime + "s, storage: " + sw.stop().getSeconds() + "s");
+        return chStorage;
+    }
+
+    /**
+     * Improves the weights of the upward arcs of the given rank using the lower triangles. Only these arcs are
+     * written, and the arcs that are read belong to descendants of the rank in the elimination tree.
+     */
+    private void customizeRank(int rank, double[] upWeights, double[] downWeights, int[] upMiddles, int[] downMiddles) {
+        for (int i = downFirst[rank]; i < downFirst[rank + 1]; i++) {
+            // the arc middle-rank, the upper neighbors of middle that are above rank are upper neighbors of rank, too
+            int lowerArc = downArcs[i];
+            int middle = findLowerRank(lowerArc);
+            int arc = upFirst[rank];
+            for (int upperArc = lowerArc + 1; upperArc < upFirst[middle + 1]; upperArc++) {
+                int upper = upRanks[upperArc];
+                while (upRanks[arc] != upper)
+                    arc++;
+                double upWeight = downWeights[lowerArc] + upWeights[upperArc];
+                if (upWeight < upWeights[arc]) {
+                    upWeights[arc] = upWeight;
+                    upMiddles[arc] = middle;
+                }
+                double downWeight = downWeights[upperArc] + upWeights[lowerArc];
+                if (downWeight < downWeights[arc]) {
+                    downWeights[arc] = downWeight;
+                    downMiddles[arc] = middle;
+                }
+            }
+        }
+    }
+
+    private int findArc(int lowerRank, int upperRank) {
+        int arc = Arrays.binarySearch(upRanks, upFirst[lowerRank], upFirst[lowerRank + 1], upperRank);
+        if (arc < 0)
+            throw new IllegalStateException("There is no arc between the ranks " + lowerRank + " and " + upperRank);
+        return arc;
+    }
+
+    private int findLowerRank(int arc) {
+        int index = Arrays.binarySearch(upFirst, arc);
+        if (index < 0)
+            return -index - 2;
+        // ranks without upward arcs have the same first arc as the next rank
+        while (upFirst[index + 1] == arc)
+            index++;
+        return index;
+    }
+
+    public int getRank(int node) {
+        return ranks[node];
+    }
+
+    /**
+     * @return the number of arcs, i.e. the number of pairs of nodes that can be connected by a shortcut or an edge
+     */
+    public int getArcs() {
+        return upRanks.length;
+    }
+
+    /**
+     * Shuts down the thread pool used for the customization and removes all customized graphs from the cache.
+     */
+    public void close() {
+        pool.shutdown();
+        cache.clear();
+        scratches.clear();
+    }
+
+    /**
+     * The arrays of a customization: the weight, the edge for every arc and direction, and the rank of the middle node
+     * for the arcs that are shortcuts.
+     */
+    private static class Scratch {
+        private final double[] upWeights;
+        private final double[] downWeights;
+        private final int[] upEdges;
+        private final int[] downEdges;
+        private final int[] upMiddles;
+        private final int[] downMiddles;
+
+        Scratch(int arcs) {
+            upWeights = new double[arcs];
+            downWeights = new double[arcs];
+            upEdges = new int[arcs];
+            downEdges = new int[arcs];
+            upMiddles = new int[arcs];
+            downMiddles = new int[arcs];
+        }
+    }
+
+    private static Map<String, RoutingCHGraph> createCache(int cacheSize) {
+        return Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, RoutingCHGraph> eldest) {
+                return size() > cacheSize;
+            }
+        });
+    }
+}
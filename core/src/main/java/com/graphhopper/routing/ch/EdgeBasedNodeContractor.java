@@ -28,7 +28,10 @@ import com.graphhopper.util.StopWatch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
+import java.util.function.IntPredicate;
 
 import static com.graphhopper.routing.ch.CHParameters.*;
 import static com.graphhopper.util.GHUtility.reverseEdgeKey;
@@ -54,7 +57,9 @@ class EdgeBasedNodeContractor implements NodeContractor {
     private PrepareGraphEdgeExplorer existingShortcutExplorer;
     private PrepareGraphOrigEdgeExplorer sourceNodeOrigInEdgeExplorer;
     private CHStorageBuilder chBuilder;
-    private final Params params = new Params();
+    private final Params params;
+    // the contractor whose mean degree and hierarchy depths are used, this one unless this is a worker
+    private final EdgeBasedNodeContractor mainContractor;
     private final StopWatch dijkstraSW = new StopWatch();
     // temporary data used during node contraction
     private final IntSet sourceNodes = new IntHashSet(10);
@@ -85,7 +90,17 @@ class EdgeBasedNodeContractor implements NodeContractor {
     public EdgeBasedNodeContractor(CHPreparationGraph prepareGraph, CHStorageBuilder chBuilder, PMap pMap) {
         this.prepareGraph = prepareGraph;
         this.chBuilder = chBuilder;
+        params = new Params();
         extractParams(pMap);
+        mainContractor = this;
+    }
+
+    private EdgeBasedNodeContractor(EdgeBasedNodeContractor mainContractor) {
+        prepareGraph = mainContractor.prepareGraph;
+        params = mainContractor.params;
+        this.mainContractor = mainContractor;
+        initExplorersAndSearchers();
+        hierarchyDepths = mainContractor.hierarchyDepths;
     }
 
     private void extractParams(PMap pMap) {
@@ -98,14 +113,18 @@ class EdgeBasedNodeContractor implements NodeContractor {
 
     @Override
     public void initFromGraph() {
+        initExplorersAndSearchers();
+        hierarchyDepths = new int[prepareGraph.getNodes()];
+        meanDegree = prepareGraph.getOriginalEdges() * 1.0 / prepareGraph.getNodes();
+    }
+
+    private void initExplorersAndSearchers() {
         inEdgeExplorer = prepareGraph.createInEdgeExplorer();
         outEdgeExplorer = prepareGraph.createOutEdgeExplorer();
         existingShortcutExplorer = prepareGraph.createOutEdgeExplorer();
         sourceNodeOrigInEdgeExplorer = prepareGraph.createInOrigEdgeExplorer();
-        hierarchyDepths = new int[prepareGraph.getNodes()];
         witnessPathSearcher = new EdgeBasedWitnessPathSearcher(prepareGraph);
         bridgePathFinder = new BridgePathFinder(prepareGraph);
-        meanDegree = prepareGraph.getOriginalEdges() * 1.0 / prepareGraph.getNodes();
     }
 
     @Override
@@ -118,7 +137,7 @@ class EdgeBasedNodeContractor implements NodeContractor {
             // no shortcuts will be introduced
             return Float.NEGATIVE_INFINITY;
         stats().stopWatch.start();
-        findAndHandlePrepareShortcuts(node, this::countShortcuts, (int) (meanDegree * params.maxPollFactorHeuristic), wpsStatsHeur);
+        findAndHandlePrepareShortcuts(node, this::countShortcuts, (int) (mainContractor.meanDegree * params.maxPollFactorHeuristic), wpsStatsHeur);
         stats().stopWatch.stop();
         // the higher the priority the later (!) this node will be contracted
         float edgeQuotient = numShortcuts / (float) (prepareGraph.getDegree(node));
@@ -141,13 +160,47 @@ class EdgeBasedNodeContractor implements NodeContractor {
         activeStats = addingStats;
         stats().stopWatch.start();
         findAndHandlePrepareShortcuts(node, this::addShortcutsToPrepareGraph, (int) (meanDegree * params.maxPollFactorContraction), wpsStatsContr);
+        IntContainer neighbors = disconnectNode(node);
+        stats().stopWatch.stop();
+        return neighbors;
+    }
+
+    @Override
+    public NodeContractor createWorker() {
+        return new EdgeBasedNodeContractor(this);
+    }
+
+    @Override
+    public FoundShortcuts findShortcuts(int node, IntPredicate ignoredNodes) {
+        activeStats = addingStats;
+        stats().stopWatch.start();
+        EdgeBasedFoundShortcuts shortcuts = new EdgeBasedFoundShortcuts();
+        witnessPathSearcher.setIgnoredNodes(ignoredNodes);
+        findAndHandlePrepareShortcuts(node, shortcuts::add, (int) (mainContractor.meanDegree * params.maxPollFactorContraction), wpsStatsContr);
+        witnessPathSearcher.setIgnoredNodes(null);
+        stats().stopWatch.stop();
+        return shortcuts;
+    }
+
+    @Override
+    public IntContainer contractNode(int node, FoundShortcuts foundShortcuts) {
+        EdgeBasedFoundShortcuts shortcuts = (EdgeBasedFoundShortcuts) foundShortcuts;
+        activeStats = addingStats;
+        stats().stopWatch.start();
+        for (int i = 0; i < shortcuts.edgesTo.size(); i++)
+            addShortcutsToPrepareGraph(shortcuts.edgesFrom.get(i), shortcuts.edgesTo.get(i), shortcuts.origEdgeCounts.get(i));
+        IntContainer neighbors = disconnectNode(node);
+        stats().stopWatch.stop();
+        return neighbors;
+    }
+
+    private IntContainer disconnectNode(int node) {
         insertShortcuts(node);
         IntContainer neighbors = prepareGraph.disconnect(node);
         // We maintain an approximation of the mean degree which we update after every contracted node.
         // We do it the same way as for node-based CH for now.
         meanDegree = (meanDegree * 2 + neighbors.size()) / 3;
         updateHierarchyDepthsOfNeighbors(node, neighbors);
-        stats().stopWatch.stop();
         return neighbors;
     }
 
@@ -427,6 +480,22 @@ class EdgeBasedNodeContractor implements NodeContractor {
         private double maxPollFactorContraction = 200;
     }
 
+    /**
+     * The bridge paths that need shortcuts. Their entries are created by the {@link BridgePathFinder} for each search,
+     * so they can be kept until the shortcuts are added.
+     */
+    private static class EdgeBasedFoundShortcuts implements FoundShortcuts {
+        final List<PrepareCHEntry> edgesFrom = new ArrayList<>();
+        final List<PrepareCHEntry> edgesTo = new ArrayList<>();
+        final IntArrayList origEdgeCounts = new IntArrayList();
+
+        void add(PrepareCHEntry edgeFrom, PrepareCHEntry edgeTo, int origEdgeCount) {
+            edgesFrom.add(edgeFrom);
+            edgesTo.add(edgeTo);
+            origEdgeCounts.add(origEdgeCount);
+        }
+    }
+
     private static class Stats {
         int nodes;
         StopWatch stopWatch = new StopWatch();
@@ -0,0 +1,400 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.carrotsearch.hppc.DoubleArrayList;
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntIntHashMap;
+import com.carrotsearch.hppc.IntObjectMap;
+import com.carrotsearch.hppc.LongArrayList;
+import com.carrotsearch.hppc.LongIntHashMap;
+import com.graphhopper.coll.GHIntObjectHashMap;
+import com.graphhopper.routing.AbstractBidirCHAlgo;
+import com.graphhopper.routing.BidirPathExtractor;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.SPTEntry;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.CHEdgeFilter;
+import com.graphhopper.storage.RoutingCHEdgeExplorer;
+import com.graphhopper.storage.RoutingCHEdgeIterator;
+import com.graphhopper.storage.RoutingCHGraph;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.GHUtility;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Calculates the shortest path weights (and optionally the paths) between all pairs of a list of sources and a list of
+ * targets using the bucket based many-to-many algorithm for contraction hierarchies, see 'Computing Many-to-Many
+ * Shortest Paths Using Highway Hierarchies' by Knopp et al. First we run an upward (backward) search from every
+ * target and store the settled entries in a 'bucket' at their node. Then we run an upward (forward) search from every
+ * source and scan the buckets of all the nodes it settles. Every shortest path in a contraction hierarchy consists of an
+ * upward and a downward part, so each pair of source and target meets at the highest node of their shortest path. This
+ * way we only need |sources| + |targets| CH searches instead of |sources| * |targets|.
+ * <p>
+ * The travel times and distances are calculated without unpacking the full paths by default: every shortcut that is
+ * part of the search spaces is only unpacked once. Use {@link #setUnpackPaths(boolean)} to obtain the full paths.
+ */
+public class ManyToManyCH {
+    private final RoutingCHGraph graph;
+    // its important to use the wrapped weighting here, otherwise turn costs involving virtual edges will be wrong
+    private final Weighting weighting;
+    private final TraversalMode traversalMode;
+    private final RoutingCHEdgeExplorer outEdgeExplorer;
+    private final RoutingCHEdgeExplorer inEdgeExplorer;
+    private final CHEdgeFilter levelEdgeFilter;
+    private final ShortcutUnpacker shortcutUnpacker;
+    // the times and distances of the unpacked CH edges, the keys are the edge and the adjacent node
+    private final LongIntHashMap fwdEdgeIndices = new LongIntHashMap();
+    private final LongIntHashMap bwdEdgeIndices = new LongIntHashMap();
+    private final LongArrayList edgeTimes = new LongArrayList();
+    private final DoubleArrayList edgeDistances = new DoubleArrayList();
+    private long unpackedTime;
+    private double unpackedDistance;
+    private boolean unpackPaths;
+    private int visitedNodes;
+
+    public ManyToManyCH(RoutingCHGraph graph) {
+        this.graph = graph;
+        weighting = graph.getBaseGraph().wrapWeighting(graph.getWeighting());
+        traversalMode = graph.isEdgeBased() ? TraversalMode.EDGE_BASED : TraversalMode.NODE_BASED;
+        outEdgeExplorer = graph.createOutEdgeExplorer();
+        inEdgeExplorer = graph.createInEdgeExplorer();
+        levelEdgeFilter = new AbstractBidirCHAlgo.CHLevelEdgeFilter(graph);
+        shortcutUnpacker = new ShortcutUnpacker(graph, (edge, reverse, prevOrNextEdgeId) -> {
+            unpackedDistance += edge.getDistance();
+            unpackedTime += GHUtility.calcMillisWithTurnMillis(weighting, edge, reverse, prevOrNextEdgeId);
+        }, graph.isEdgeBased());
+    }
+
+    /**
+     * If true the full paths are extracted for all pairs of sources and targets, which is much slower than only
+     * calculating the weights, times and distances.
+     */
+    public ManyToManyCH setUnpackPaths(boolean unpackPaths) {
+        this.unpackPaths = unpackPaths;
+        return this;
+    }
+
+    public Result calcMatrix(int[] sources, int[] targets) {
+        for (int node : sources)
+            checkNode(node);
+        for (int node : targets)
+            checkNode(node);
+        visitedNodes = 0;
+        fwdEdgeIndices.clear();
+        bwdEdgeIndices.clear();
+        edgeTimes.clear();
+        edgeDistances.clear();
+
+        // the entries of the backward searches are grouped by node, such that they can be scanned quickly
+        List<List<Entry>> bwdSearchSpaces = new ArrayList<>(targets.length);
+        IntIntHashMap bucketIndices = new IntIntHashMap();
+        IntArrayList bucketSizes = new IntArrayList();
+        int bucketEntryCount = 0;
+        for (int target : targets) {
+            List<Entry> settled = search(target, true);
+            for (Entry entry : settled) {
+                int b = bucketIndices.getOrDefault(entry.adjNode, -1);
+                if (b < 0) {
+                    b = bucketSizes.size();
+                    bucketIndices.put(entry.adjNode, b);
+                    bucketSizes.add(0);
+                }
+                bucketSizes.buffer[b]++;
+            }
+            bucketEntryCount += settled.size();
+            bwdSearchSpaces.add(settled);
+        }
+        int[] bucketOffsets = new int[bucketSizes.size() + 1];
+        for (int b = 0; b < bucketSizes.size(); b++) {
+            bucketOffsets[b + 1] = bucketOffsets[b] + bucketSizes.get(b);
+            bucketSizes.set(b, 0);
+        }
+        int[] bucketTargets = new int[bucketEntryCount];
+        double[] bucketWeights = new double[bucketEntryCount];
+        Entry[] bucketEntries = new Entry[bucketEntryCount];
+        for (int j = 0; j < targets.length; j++) {
+            for (Entry entry : bwdSearchSpaces.get(j)) {
+                int b = bucketIndices.get(entry.adjNode);
+                int index = bucketOffsets[b] + bucketSizes.buffer[b]++;
+                bucketTargets[index] = j;
+                bucketWeights[index] = entry.weight;
+                bucketEntries[index] = entry;
+            }
+        }
+
+        Result result = new Result(sources.length, targets.length, unpackPaths);
+        double[] bestWeights = new double[targets.length];
+        Entry[] bestFwdEntries = new Entry[targets.length];
+        Entry[] bestBwdEntries = new Entry[targets.length];
+        for (int i = 0; i < sources.length; i++) {
+            Arrays.fill(bestWeights, Double.POSITIVE_INFINITY);
+            Arrays.fill(bestFwdEntries, null);
+            Arrays.fill(bestBwdEntries, null);
+            for (Entry fwdEntry : search(sources[i], false)) {
+                int b = bucketIndices.getOrDefault(fwdEntry.adjNode, -1);
+                if (b < 0)
+                    continue;
+                for (int k = bucketOffsets[b]; k < bucketOffsets[b + 1]; k++) {
+                    double weight = fwdEntry.weight + bucketWeights[k];
+                    if (traversalMode.isEdgeBased())
+                        weight += graph.getTurnWeight(fwdEntry.incEdge, fwdEntry.adjNode, bucketEntries[k].incEdge);
+                    int j = bucketTargets[k];
+                    if (weight < bestWeights[j]) {
+                        bestWeights[j] = weight;
+                        bestFwdEntries[j] = fwdEntry;
+                        bestBwdEntries[j] = bucketEntries[k];
+                    }
+                }
+            }
+            for (int j = 0; j < targets.length; j++)
+                setResult(result, i * targets.length + j, bestFwdEntries[j], bestBwdEntries[j], bestWeights[j]);
+        }
+        result.visitedNodes = visitedNodes;
+        return result;
+    }
+
+    private void checkNode(int node) {
+        if (node < 0 || node >= graph.getNodes())
+            throw new IllegalArgumentException("Node " + node + " does not exist, the graph has " + graph.getNodes() + " nodes");
+    }
+
+    private void setResult(Result result, int index, Entry fwdEntry, Entry bwdEntry, double weight) {
+        result.weights[index] = weight;
+        if (unpackPaths) {
+            BidirPathExtractor pathExtractor = traversalMode.isEdgeBased()
+                    ? new EdgeBasedCHBidirPathExtractor(graph)
+                    : new NodeBasedCHBidirPathExtractor(graph);
+            Path path = pathExtractor.extract(fwdEntry, bwdEntry, weight);
+            result.paths[index] = path;
+            result.times[index] = path.getTime();
+            result.distances[index] = path.getDistance();
+            return;
+        }
+        if (fwdEntry == null)
+            return;
+        calcTimeAndDistance(fwdEntry, false);
+        calcTimeAndDistance(bwdEntry, true);
+        long time = fwdEntry.time + bwdEntry.time;
+        if (traversalMode.isEdgeBased() && EdgeIterator.Edge.isValid(fwdEntry.incEdge) && EdgeIterator.Edge.isValid(bwdEntry.incEdge))
+            time += weighting.calcTurnMillis(fwdEntry.incEdge, fwdEntry.adjNode, bwdEntry.incEdge);
+        result.times[index] = time;
+        result.distances[index] = fwdEntry.distance + bwdEntry.distance;
+    }
+
+    /**
+     * Runs an upward search from the given node until the queue is empty and returns all settled entries.
+     */
+    private List<Entry> search(int node, boolean reverse) {
+        RoutingCHEdgeExplorer explorer = reverse ? inEdgeExplorer : outEdgeExplorer;
+        IntObjectMap<Entry> bestEntries = new GHIntObjectHashMap<>();
+        PriorityQueue<Entry> queue = new PriorityQueue<>();
+        List<Entry> settled = new ArrayList<>();
+        queue.add(new Entry(node));
+        while (!queue.isEmpty()) {
+            Entry curr = queue.poll();
+            if (curr.isDeleted())
+                continue;
+            // stalled entries cannot be part of a shortest path, so we neither expand them nor put them into the buckets
+            if (!traversalMode.isEdgeBased() && curr.parent != null && isStallable(curr, bestEntries, reverse))
+                continue;
+            settled.add(curr);
+            // for edge-based CH we need all edges for the first step, see AbstractBidirectionEdgeCHNoSOD
+            CHEdgeFilter edgeFilter = traversalMode.isEdgeBased() && curr.parent == null ? CHEdgeFilter.ALL_EDGES : levelEdgeFilter;
+            RoutingCHEdgeIterator iter = explorer.setBaseNode(curr.adjNode);
+            while (iter.next()) {
+                if (!edgeFilter.accept(iter))
+                    continue;
+                // for node-based traversal we exclude u-turns, for edge-based traversal the turn weight decides
+                if (!traversalMode.isEdgeBased() && iter.getEdge() == curr.edge)
+                    continue;
+                int firstEdge = GHUtility.getEdgeFromEdgeKey(reverse ? iter.getOrigEdgeKeyLast() : iter.getOrigEdgeKeyFirst());
+                double weight = curr.weight + iter.getWeight(reverse);
+                if (traversalMode.isEdgeBased())
+                    weight += reverse
+                            ? graph.getTurnWeight(firstEdge, curr.adjNode, curr.incEdge)
+                            : graph.getTurnWeight(curr.incEdge, curr.adjNode, firstEdge);
+                if (Double.isInfinite(weight))
+                    continue;
+                int traversalId = traversalMode.createTraversalId(iter, reverse);
+                Entry entry = bestEntries.get(traversalId);
+                if (entry != null) {
+                    if (entry.weight <= weight)
+                        continue;
+                    // flagging this entry, so it will be ignored when it is polled
+                    entry.setDeleted();
+                }
+                int incEdge = GHUtility.getEdgeFromEdgeKey(reverse ? iter.getOrigEdgeKeyFirst() : iter.getOrigEdgeKeyLast());
+                entry = new Entry(iter.getEdge(), incEdge, firstEdge, iter.getAdjNode(), weight, curr);
+                bestEntries.put(traversalId, entry);
+                queue.add(entry);
+            }
+        }
+        visitedNodes += settled.size();
+        return settled;
+    }
+
+    /**
+     * Uses the same simple stall-on-demand as {@link com.graphhopper.routing.DijkstraBidirectionCH}: an entry can be
+     * stalled if one of its neighbors was reached with a smaller weight than the entry itself minus the weight of the
+     * edge in between.
+     */
+    private boolean isStallable(Entry entry, IntObjectMap<Entry> bestEntries, boolean reverse) {
+        RoutingCHEdgeIterator iter = (reverse ? outEdgeExplorer : inEdgeExplorer).setBaseNode(entry.adjNode);
+        while (iter.next()) {
+            if (iter.getEdge() == entry.edge)
+                continue;
+            Entry adjEntry = bestEntries.get(iter.getAdjNode());
+            // we have to be careful because of rounded shortcut weights in combination with virtual via nodes, see #1574
+            final double precision = 0.001;
+            if (adjEntry != null && adjEntry.weight + iter.getWeight(!reverse) - entry.weight < -precision)
+                return true;
+        }
+        return false;
+    }
+
+    private void calcTimeAndDistance(Entry entry, boolean reverse) {
+        if (entry.time >= 0)
+            return;
+        Entry parent = (Entry) entry.parent;
+        calcTimeAndDistance(parent, reverse);
+        int index = getEdgeIndex(entry.edge, entry.adjNode, reverse);
+        long time = parent.time + edgeTimes.get(index);
+        if (traversalMode.isEdgeBased() && EdgeIterator.Edge.isValid(parent.incEdge))
+            time += reverse
+                    ? weighting.calcTurnMillis(entry.firstEdge, parent.adjNode, parent.incEdge)
+                    : weighting.calcTurnMillis(parent.incEdge, parent.adjNode, entry.firstEdge);
+        entry.time = time;
+        entry.distance = parent.distance + edgeDistances.get(index);
+    }
+
+    private int getEdgeIndex(int edge, int adjNode, boolean reverse) {
+        LongIntHashMap edgeIndices = reverse ? bwdEdgeIndices : fwdEdgeIndices;
+        long key = ((long) edge << 32) | adjNode;
+        int index = edgeIndices.getOrDefault(key, -1);
+        if (index >= 0)
+            return index;
+        // the turn costs at the start of the edge are added separately, because they depend on the parent entry
+        unpackedTime = 0;
+        unpackedDistance = 0;
+        if (reverse)
+            shortcutUnpacker.visitOriginalEdgesBwd(edge, adjNode, false, EdgeIterator.NO_EDGE);
+        else
+            shortcutUnpacker.visitOriginalEdgesFwd(edge, adjNode, false, EdgeIterator.NO_EDGE);
+        index = edgeTimes.size();
+        edgeTimes.add(unpackedTime);
+        edgeDistances.add(unpackedDistance);
+        edgeIndices.put(key, index);
+        return index;
+    }
+
+    private static class Entry extends CHEntry {
+        /**
+         * The id of the original edge at the parent node, i.e. the first original edge of the (forward) or the last
+         * original edge of the (backward) shortcut.
+         */
+        final int firstEdge;
+        long time = -1;
+        double distance;
+
+        Entry(int node) {
+            super(node, 0);
+            firstEdge = EdgeIterator.NO_EDGE;
+            time = 0;
+        }
+
+        Entry(int edge, int incEdge, int firstEdge, int adjNode, double weight, SPTEntry parent) {
+            super(edge, incEdge, adjNode, weight, parent);
+            this.firstEdge = firstEdge;
+        }
+    }
+
+    public static class Result {
+        private final int sources;
+        private final int targets;
+        private final double[] weights;
+        private final long[] times;
+        private final double[] distances;
+        private final Path[] paths;
+        private int visitedNodes;
+
+        Result(int sources, int targets, boolean withPaths) {
+            this.sources = sources;
+            this.targets = targets;
+            weights = new double[sources * targets];
+            times = new long[sources * targets];
+            distances = new double[sources * targets];
+            paths = withPaths ? new Path[sources * targets] : null;
+        }
+
+        public int getSources() {
+            return sources;
+        }
+
+        public int getTargets() {
+            return targets;
+        }
+
+        public boolean isFound(int source, int target) {
+            return Double.isFinite(getWeight(source, target));
+        }
+
+        /**
+         * @return the weight of the shortest path from the given source to the given target or infinity if there is
+         * no such path
+         */
+        public double getWeight(int source, int target) {
+            return weights[index(source, target)];
+        }
+
+        /**
+         * @return the time in milliseconds, only meaningful if {@link #isFound(int, int)}
+         */
+        public long getTime(int source, int target) {
+            return times[index(source, target)];
+        }
+
+        /**
+         * @return the distance in meters, only meaningful if {@link #isFound(int, int)}
+         */
+        public double getDistance(int source, int target) {
+            return distances[index(source, target)];
+        }
+
+        public Path getPath(int source, int target) {
+            if (paths == null)
+                throw new IllegalStateException("Paths were not unpacked, use setUnpackPaths(true)");
+            return paths[index(source, target)];
+        }
+
+        public int getVisitedNodes() {
+            return visitedNodes;
+        }
+
+        private int index(int source, int target) {
+            if (source < 0 || source >= sources || target < 0 || target >= targets)
+                throw new IllegalArgumentException("Invalid source or target index: " + source + ", " + target);
+            return source * targets + target;
+        }
+    }
+}
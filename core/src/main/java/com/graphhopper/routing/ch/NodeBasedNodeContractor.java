@@ -17,6 +17,8 @@
  */
 package com.graphhopper.routing.ch;
 
+import com.carrotsearch.hppc.DoubleArrayList;
+import com.carrotsearch.hppc.IntArrayList;
 import com.carrotsearch.hppc.IntContainer;
 import com.graphhopper.storage.CHStorageBuilder;
 import com.graphhopper.util.PMap;
@@ -25,13 +27,16 @@ import com.graphhopper.util.StopWatch;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
+import java.util.function.IntPredicate;
 
 import static com.graphhopper.routing.ch.CHParameters.*;
 import static com.graphhopper.util.Helper.nf;
 
 class NodeBasedNodeContractor implements NodeContractor {
     private final CHPreparationGraph prepareGraph;
-    private final Params params = new Params();
+    private final Params params;
+    // the contractor whose mean degree is used, this one unless this is a worker
+    private final NodeBasedNodeContractor mainContractor;
     // todo: maybe use a set to prevent duplicates instead?
     private List<Shortcut> shortcuts = new ArrayList<>();
     private CHStorageBuilder chBuilder;
@@ -51,8 +56,17 @@ class NodeBasedNodeContractor implements NodeContractor {
 
     NodeBasedNodeContractor(CHPreparationGraph prepareGraph, CHStorageBuilder chBuilder, PMap pMap) {
         this.prepareGraph = prepareGraph;
+        params = new Params();
         extractParams(pMap);
         this.chBuilder = chBuilder;
+        mainContractor = this;
+    }
+
+    private NodeBasedNodeContractor(NodeBasedNodeContractor mainContractor) {
+        prepareGraph = mainContractor.prepareGraph;
+        params = mainContractor.params;
+        this.mainContractor = mainContractor;
+        initFromGraph();
     }
 
     private void extractParams(PMap pMap) {
@@ -97,7 +111,7 @@ class NodeBasedNodeContractor implements NodeContractor {
         // originalEdgesCount = σ(v) := sum_{ (u,w) ∈ shortcuts(v) } of r(u, w)
         shortcutsCount = 0;
         originalEdgesCount = 0;
-        findAndHandleShortcuts(node, this::countShortcuts, (int) (meanDegree * params.maxPollFactorHeuristic));
+        findAndHandleShortcuts(node, this::countShortcuts, (int) (mainContractor.meanDegree * params.maxPollFactorHeuristic));
 
         // from shortcuts we can compute the edgeDifference
         // # low influence: with it the shortcut creation is slightly faster
@@ -117,6 +131,36 @@ class NodeBasedNodeContractor implements NodeContractor {
     @Override
     public IntContainer contractNode(int node) {
         long degree = findAndHandleShortcuts(node, this::addOrUpdateShortcut, (int) (meanDegree * params.maxPollFactorContraction));
+        return disconnectNode(node, degree);
+    }
+
+    @Override
+    public NodeContractor createWorker() {
+        return new NodeBasedNodeContractor(this);
+    }
+
+    @Override
+    public FoundShortcuts findShortcuts(int node, IntPredicate ignoredNodes) {
+        NodeBasedFoundShortcuts shortcuts = new NodeBasedFoundShortcuts();
+        witnessPathSearcher.setIgnoredNodes(ignoredNodes);
+        shortcuts.degree = findAndHandleShortcuts(node, shortcuts::add, (int) (mainContractor.meanDegree * params.maxPollFactorContraction));
+        witnessPathSearcher.setIgnoredNodes(null);
+        return shortcuts;
+    }
+
+    @Override
+    public IntContainer contractNode(int node, FoundShortcuts foundShortcuts) {
+        NodeBasedFoundShortcuts shortcuts = (NodeBasedFoundShortcuts) foundShortcuts;
+        for (int i = 0; i < shortcuts.weights.size(); i++) {
+            int index = 6 * i;
+            addOrUpdateShortcut(shortcuts.ints.get(index), shortcuts.ints.get(index + 1), shortcuts.weights.get(i),
+                    shortcuts.ints.get(index + 2), shortcuts.ints.get(index + 3),
+                    shortcuts.ints.get(index + 4), shortcuts.ints.get(index + 5));
+        }
+        return disconnectNode(node, shortcuts.degree);
+    }
+
+    private IntContainer disconnectNode(int node, long degree) {
         insertShortcuts(node);
         // put weight factor on meanDegree instead of taking the average => meanDegree is more stable
         meanDegree = (meanDegree * 2 + degree) / 3;
@@ -299,6 +343,20 @@ class NodeBasedNodeContractor implements NodeContractor {
                             int incomingEdge, int inOrigEdgeCount);
     }
 
+    private static class NodeBasedFoundShortcuts implements FoundShortcuts {
+        // from, to, outgoing edge, outgoing orig edge count, incoming edge and incoming orig edge count of every shortcut
+        final IntArrayList ints = new IntArrayList();
+        final DoubleArrayList weights = new DoubleArrayList();
+        long degree;
+
+        void add(int fromNode, int toNode, double weight, int outgoingEdge, int outOrigEdgeCount,
+                 int incomingEdge, int inOrigEdgeCount) {
+            ints.add(fromNode, toNode, outgoingEdge, outOrigEdgeCount);
+            ints.add(incomingEdge, inOrigEdgeCount);
+            weights.add(weight);
+        }
+    }
+
     public static class Params {
         // default values were optimized for Unterfranken
         private float edgeDifferenceWeight = 10;
@@ -20,6 +20,8 @@ package com.graphhopper.routing.ch;
 
 import com.carrotsearch.hppc.IntContainer;
 
+import java.util.function.IntPredicate;
+
 public interface NodeContractor {
     void initFromGraph();
 
@@ -37,6 +39,30 @@ public interface NodeContractor {
      */
     IntContainer contractNode(int node);
 
+    /**
+     * Creates a contractor that can calculate priorities and find shortcuts (see {@link #findShortcuts}) for the same
+     * graph in another thread. It has its own witness path searchers, but it uses the state of this contractor that
+     * changes when nodes are contracted, so it must not be used while this contractor contracts a node.
+     */
+    NodeContractor createWorker();
+
+    /**
+     * Finds the shortcuts that are required to contract the given node like {@link #contractNode(int)}, but does not
+     * change the graph. So several contractors can do this for different nodes at the same time.
+     *
+     * @param ignoredNodes the nodes that must not be used by witness paths, e.g. because they are contracted at the
+     *                     same time
+     */
+    FoundShortcuts findShortcuts(int node, IntPredicate ignoredNodes);
+
+    /**
+     * Adds the shortcuts that were found for the given node by this contractor or one of its workers and removes the
+     * node from the graph.
+     *
+     * @return the set of nodes adjacent to this node (before contraction)
+     */
+    IntContainer contractNode(int node, FoundShortcuts shortcuts);
+
     void finishContraction();
 
     long getAddedShortcutsCount();
@@ -45,4 +71,9 @@ public interface NodeContractor {
 
     float getDijkstraSeconds();
 
+    /**
+     * The shortcuts found by {@link #findShortcuts}
+     */
+    interface FoundShortcuts {
+    }
 }
@@ -17,19 +17,25 @@
  */
 package com.graphhopper.routing.ch;
 
+import com.carrotsearch.hppc.FloatArrayList;
+import com.carrotsearch.hppc.IntArrayList;
 import com.carrotsearch.hppc.IntContainer;
 import com.carrotsearch.hppc.cursors.IntCursor;
 import com.graphhopper.coll.MinHeapWithUpdate;
 import com.graphhopper.routing.util.TraversalMode;
 import com.graphhopper.storage.*;
+import com.graphhopper.util.GHUtility;
 import com.graphhopper.util.Helper;
 import com.graphhopper.util.PMap;
 import com.graphhopper.util.StopWatch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Arrays;
 import java.util.Locale;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 import static com.graphhopper.routing.ch.CHParameters.*;
 import static com.graphhopper.util.Helper.getMemInfo;
@@ -45,10 +51,19 @@ import static com.graphhopper.util.Helper.nf;
  * The only difference is that we use two skipped edges instead of one skipped node for faster
  * unpacking.
  * <p>
+ * With more than one contraction thread the nodes are contracted in rounds. In each round we select an independent
+ * set of nodes with low priorities, i.e. no two of them are within each other's two-hop neighborhood, so the shortcuts
+ * of one node never touch the edges of another. The witness searches for these nodes run concurrently and skip the
+ * other nodes of the set, as if they were contracted already. Afterwards the shortcuts are added one node after the
+ * other, so the result does not depend on the number of threads.
+ * <p>
  *
  * @author Peter Karich
  */
 public class PrepareContractionHierarchies {
+    // the minimum number of nodes among which the nodes of a round of the parallel contraction are selected. this does
+    // not depend on the number of threads, so the result does not either
+    private static final int MIN_PARALLEL_CANDIDATES = 100;
     private final Logger logger = LoggerFactory.getLogger(getClass());
     private final CHConfig chConfig;
     private final CHStorage chStore;
@@ -62,6 +77,15 @@ public class PrepareContractionHierarchies {
     private final Params params;
     private final BaseGraph graph;
     private NodeContractor nodeContractor;
+    private CHPreparationGraph prepareGraph;
+    // the contractors used by the contraction threads, the first one is the nodeContractor
+    private NodeContractor[] workers;
+    // the nodes selected in a round of the parallel contraction and the nodes within two hops of them
+    private int[] selectedRounds;
+    private int[] blockedRounds;
+    private PrepareGraphEdgeExplorer[] explorers;
+    private PrepareGraphEdgeExplorer[] secondHopExplorers;
+    private int round;
     private final int nodes;
     private NodeOrderingProvider nodeOrderingProvider;
     private int maxLevel;
@@ -100,6 +124,8 @@ public class PrepareContractionHierarchies {
         params.setMaxNeighborUpdates(pMap.getInt(NEIGHBOR_UPDATES_MAX, params.getMaxNeighborUpdates()));
         params.setNodesContractedPercentage(pMap.getInt(CONTRACTED_NODES, params.getNodesContractedPercentage()));
         params.setLogMessagesPercentage(pMap.getInt(LOG_MESSAGES, params.getLogMessagesPercentage()));
+        params.setContractionThreads(pMap.getInt(CONTRACTION_THREADS, params.getContractionThreads()));
+        params.setParallelCandidatesPercentage(pMap.getInt(PARALLEL_CANDIDATES, params.getParallelCandidatesPercentage()));
         return this;
     }
 
@@ -131,6 +157,8 @@ public class PrepareContractionHierarchies {
         allSW.start();
         initFromGraph();
         runGraphContraction();
+        if (chConfig.isCompactShortcuts())
+            chStore.compact();
         allSW.stop();
         logFinalGraphStats();
         return new Result(
@@ -170,7 +198,6 @@ public class PrepareContractionHierarchies {
 
     private void initFromGraph() {
         logger.info("Creating CH prepare graph, {}", getMemInfo());
-        CHPreparationGraph prepareGraph;
         if (chConfig.getTraversalMode().isEdgeBased()) {
             TurnCostStorage turnCostStorage = graph.getTurnCostStorage();
             if (turnCostStorage == null)
@@ -190,8 +217,18 @@ public class PrepareContractionHierarchies {
         logger.info("Building CH prepare graph, {}", getMemInfo());
         StopWatch sw = new StopWatch().start();
         CHPreparationGraph.buildFromGraph(prepareGraph, graph, chConfig.getWeighting());
-        logger.info("Finished building CH prepare graph, took: {}s, {}", sw.stop().getSeconds(), getMemInfo());
+        logger.info("Finished building CH prepare graph, took: {}s, {}, {}", sw.stop().getSeconds(), prepareGraph.getMemoryUsageAsString(), getMemInfo());
         nodeContractor.initFromGraph();
+        if (params.getContractionThreads() > 1) {
+            workers = new NodeContractor[params.getContractionThreads()];
+            workers[0] = nodeContractor;
+            for (int i = 1; i < workers.length; i++)
+                workers[i] = nodeContractor.createWorker();
+            selectedRounds = new int[nodes];
+            blockedRounds = new int[nodes];
+            explorers = new PrepareGraphEdgeExplorer[]{prepareGraph.createOutEdgeExplorer(), prepareGraph.createInEdgeExplorer()};
+            secondHopExplorers = new PrepareGraphEdgeExplorer[]{prepareGraph.createOutEdgeExplorer(), prepareGraph.createInEdgeExplorer()};
+        }
     }
 
     private void setMaxLevelOnAllNodes() {
@@ -201,11 +238,21 @@ public class PrepareContractionHierarchies {
     private void updatePrioritiesOfRemainingNodes() {
         periodicUpdateSW.start();
         sortedNodes.clear();
-        for (int node = 0; node < nodes; node++) {
-            if (isContracted(node))
-                continue;
-            float priority = calculatePriority(node);
-            sortedNodes.push(node, priority);
+        if (workers == null) {
+            for (int node = 0; node < nodes; node++) {
+                if (isContracted(node))
+                    continue;
+                float priority = calculatePriority(node);
+                sortedNodes.push(node, priority);
+            }
+        } else {
+            IntArrayList remaining = new IntArrayList();
+            for (int node = 0; node < nodes; node++)
+                if (!isContracted(node))
+                    remaining.add(node);
+            float[] priorities = calculatePrioritiesConcurrently(remaining);
+            for (int i = 0; i < remaining.size(); i++)
+                sortedNodes.push(remaining.get(i), priorities[i]);
         }
         periodicUpdateSW.stop();
     }
@@ -218,7 +265,6 @@ public class PrepareContractionHierarchies {
         updatePrioritiesOfRemainingNodes();
         logger.info("Finished building queue, took: {}s, {}", sw.stop().getSeconds(), getMemInfo());
         final int initSize = sortedNodes.size();
-        int level = 0;
         checkCounter = 0;
         final long logSize = params.getLogMessagesPercentage() == 0
                 ? Long.MAX_VALUE
@@ -231,7 +277,6 @@ public class PrepareContractionHierarchies {
         final long periodicUpdatesCount = params.getPeriodicUpdatesPercentage() == 0
                 ? Long.MAX_VALUE
                 : Math.round(Math.max(10, initSize * (params.getPeriodicUpdatesPercentage() / 100d)));
-        int updateCounter = 0;
 
         // enable lazy updates for last x percentage of nodes. lazy updates make preparation slower but potentially
         // keep node priorities more up to date, possibly resulting in a better preparation.
@@ -241,6 +286,35 @@ public class PrepareContractionHierarchies {
         // we don't need to wait for all nodes to be contracted
         final long nodesToAvoidContract = Math.round(initSize * ((100 - params.getNodesContractedPercentage()) / 100d));
 
+        int updateCounter = workers == null
+                ? contractNodesOneByOne(logSize, periodicUpdatesCount, lastNodesLazyUpdates, nodesToAvoidContract)
+                : contractNodesInRounds(logSize, periodicUpdatesCount, lastNodesLazyUpdates, nodesToAvoidContract);
+
+        nodeContractor.finishContraction();
+
+        logHeuristicStats(updateCounter);
+
+        logger.info(
+                "new shortcuts: " + nf(nodeContractor.getAddedShortcutsCount())
+                        + ", initSize:" + nf(initSize)
+                        + ", " + chConfig.getWeighting()
+                        + ", periodic:" + params.getPeriodicUpdatesPercentage()
+                        + ", lazy:" + params.getLastNodesLazyUpdatePercentage()
+                        + ", neighbor:" + params.getNeighborUpdatePercentage()
+                        + ", threads:" + params.getContractionThreads()
+                        + ", " + getTimesAsString()
+                        + ", lazy-overhead: " + (int) (100 * ((checkCounter / (double) initSize) - 1)) + "%"
+                        + ", " + prepareGraph.getMemoryUsageAsString()
+                        + ", " + Helper.getMemInfo());
+
+        // Preparation works only once so we can release temporary data.
+        // The preparation object itself has to be intact to create the algorithm.
+        _close();
+    }
+
+    private int contractNodesOneByOne(long logSize, long periodicUpdatesCount, long lastNodesLazyUpdates, long nodesToAvoidContract) {
+        int level = 0;
+        int updateCounter = 0;
         // Recompute priority of (the given percentage of) uncontracted neighbors. Doing neighbor updates takes additional
         // time during preparation but keeps node priorities more up to date. this potentially improves query time and
         // reduces number of shortcuts.
@@ -295,25 +369,103 @@ public class PrepareContractionHierarchies {
                 }
             }
         }
+        return updateCounter;
+    }
 
-        nodeContractor.finishContraction();
+    /**
+     * Contracts the nodes in rounds like described in the class comment. Apart from that this works like
+     * {@link #contractNodesOneByOne}, but the priorities are calculated concurrently as well.
+     */
+    private int contractNodesInRounds(long logSize, long periodicUpdatesCount, long lastNodesLazyUpdates, long nodesToAvoidContract) {
+        int level = 0;
+        int updateCounter = 0;
+        long nextPeriodicUpdate = periodicUpdatesCount;
+        long nextLog = 0;
+        final boolean neighborUpdate = (params.getNeighborUpdatePercentage() != 0);
+        IntArrayList rejected = new IntArrayList();
+        FloatArrayList rejectedPriorities = new FloatArrayList();
 
-        logHeuristicStats(updateCounter);
+        while (!sortedNodes.isEmpty()) {
+            stopIfInterrupted();
+            if (checkCounter >= nextPeriodicUpdate) {
+                updatePrioritiesOfRemainingNodes();
+                updateCounter++;
+                nextPeriodicUpdate += periodicUpdatesCount;
+                if (sortedNodes.isEmpty())
+                    throw new IllegalStateException("Cannot prepare as no unprepared nodes where found. Called preparation twice?");
+            }
 
-        logger.info(
-                "new shortcuts: " + nf(nodeContractor.getAddedShortcutsCount())
-                        + ", initSize:" + nf(initSize)
-                        + ", " + chConfig.getWeighting()
-                        + ", periodic:" + params.getPeriodicUpdatesPercentage()
-                        + ", lazy:" + params.getLastNodesLazyUpdatePercentage()
-                        + ", neighbor:" + params.getNeighborUpdatePercentage()
-                        + ", " + getTimesAsString()
-                        + ", lazy-overhead: " + (int) (100 * ((checkCounter / (double) initSize) - 1)) + "%"
-                        + ", " + Helper.getMemInfo());
+            if (checkCounter >= nextLog) {
+                logHeuristicStats(updateCounter);
+                nextLog += logSize;
+            }
 
-        // Preparation works only once so we can release temporary data.
-        // The preparation object itself has to be intact to create the algorithm.
-        _close();
+            // select an independent set among the nodes with the lowest priorities. the others are put back.
+            round++;
+            long maxCandidates = Math.min(sortedNodes.size() - nodesToAvoidContract + 1, Math.max(MIN_PARALLEL_CANDIDATES,
+                    Math.round(sortedNodes.size() * (params.getParallelCandidatesPercentage() / 100d))));
+            IntArrayList selected = new IntArrayList();
+            rejected.clear();
+            rejectedPriorities.clear();
+            for (long i = 0; i < maxCandidates && !sortedNodes.isEmpty(); i++) {
+                float priority = sortedNodes.peekValue();
+                int node = sortedNodes.poll();
+                if (blockedRounds[node] == round) {
+                    rejected.add(node);
+                    rejectedPriorities.add(priority);
+                } else {
+                    selectNode(node);
+                    selected.add(node);
+                }
+            }
+            for (int i = 0; i < rejected.size(); i++)
+                sortedNodes.push(rejected.get(i), rejectedPriorities.get(i));
+            checkCounter += selected.size();
+
+            if (!sortedNodes.isEmpty() && sortedNodes.size() < lastNodesLazyUpdates) {
+                lazyUpdateSW.start();
+                float[] priorities = calculatePrioritiesConcurrently(selected);
+                float lowestRemainingPriority = sortedNodes.peekValue();
+                IntArrayList toContract = new IntArrayList(selected.size());
+                for (int i = 0; i < selected.size(); i++) {
+                    int node = selected.get(i);
+                    if (priorities[i] > lowestRemainingPriority) {
+                        // current node got more important => insert as new value and contract it later
+                        selectedRounds[node] = 0;
+                        sortedNodes.push(node, priorities[i]);
+                    } else {
+                        toContract.add(node);
+                    }
+                }
+                selected = toContract;
+                lazyUpdateSW.stop();
+            }
+
+            IntArrayList neighborsToUpdate = new IntArrayList();
+            contractSelectedNodes(selected, level, neighbors -> {
+                int neighborCount = 0;
+                for (IntCursor neighbor : neighbors) {
+                    if (neighborUpdate && (params.getMaxNeighborUpdates() < 0 || neighborCount < params.getMaxNeighborUpdates()) && rand.nextInt(100) < params.getNeighborUpdatePercentage()) {
+                        neighborCount++;
+                        neighborsToUpdate.add(neighbor.value);
+                    }
+                }
+            });
+            level += selected.size();
+
+            if (sortedNodes.size() < nodesToAvoidContract)
+                // skipped nodes are already set to maxLevel
+                break;
+
+            if (!neighborsToUpdate.isEmpty()) {
+                neighborUpdateSW.start();
+                float[] priorities = calculatePrioritiesConcurrently(neighborsToUpdate);
+                for (int i = 0; i < neighborsToUpdate.size(); i++)
+                    sortedNodes.update(neighborsToUpdate.get(i), priorities[i]);
+                neighborUpdateSW.stop();
+            }
+        }
+        return updateCounter;
     }
 
     private void contractNodesUsingFixedNodeOrdering() {
@@ -321,6 +473,10 @@ public class PrepareContractionHierarchies {
         final int logSize = Math.max(10, (int) (params.getLogMessagesPercentage() / 100.0 * nodesToContract));
         StopWatch stopWatch = new StopWatch();
         stopWatch.start();
+        if (workers != null) {
+            contractNodesUsingFixedNodeOrderingInRounds(nodesToContract, logSize, stopWatch);
+            return;
+        }
         for (int i = 0; i < nodesToContract; ++i) {
             stopIfInterrupted();
             int node = nodeOrderingProvider.getNodeIdForLevel(i);
@@ -334,6 +490,109 @@ public class PrepareContractionHierarchies {
         nodeContractor.finishContraction();
     }
 
+    /**
+     * Contracts the nodes in the given order, but in rounds like described in the class comment. Each round contracts
+     * the following nodes of the order until one of them is within two hops of another.
+     */
+    private void contractNodesUsingFixedNodeOrderingInRounds(int nodesToContract, int logSize, StopWatch stopWatch) {
+        int level = 0;
+        int nextLog = 0;
+        while (level < nodesToContract) {
+            stopIfInterrupted();
+            round++;
+            int maxNodes = Math.max(MIN_PARALLEL_CANDIDATES, (int) ((nodesToContract - level) * (params.getParallelCandidatesPercentage() / 100d)));
+            IntArrayList selected = new IntArrayList();
+            while (level + selected.size() < nodesToContract && selected.size() < maxNodes) {
+                int node = nodeOrderingProvider.getNodeIdForLevel(level + selected.size());
+                if (blockedRounds[node] == round)
+                    break;
+                selectNode(node);
+                selected.add(node);
+            }
+            contractSelectedNodes(selected, level, neighbors -> {
+            });
+            if (level >= nextLog) {
+                stopWatch.stop();
+                logFixedNodeOrderingStats(level, logSize, stopWatch);
+                stopWatch.start();
+                nextLog += logSize;
+            }
+            level += selected.size();
+        }
+        nodeContractor.finishContraction();
+    }
+
+    /**
+     * Marks the given node as selected for the current round and blocks all nodes within two hops of it, so none of
+     * them is selected in this round. We need to look at the incoming and the outgoing edges, because the shortcuts
+     * connect the nodes of both.
+     */
+    private void selectNode(int node) {
+        if (isContracted(node))
+            throw new IllegalArgumentException("Node " + node + " was contracted already");
+        selectedRounds[node] = round;
+        blockedRounds[node] = round;
+        for (PrepareGraphEdgeExplorer explorer : explorers) {
+            PrepareGraphEdgeIterator iter = explorer.setBaseNode(node);
+            while (iter.next()) {
+                blockedRounds[iter.getAdjNode()] = round;
+                for (PrepareGraphEdgeExplorer secondHopExplorer : secondHopExplorers) {
+                    PrepareGraphEdgeIterator secondHopIter = secondHopExplorer.setBaseNode(iter.getAdjNode());
+                    while (secondHopIter.next())
+                        blockedRounds[secondHopIter.getAdjNode()] = round;
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the shortcuts of the given nodes concurrently and then contracts the nodes one after the other. The
+     * witness searches skip all selected nodes.
+     *
+     * @param neighborsConsumer called with the neighbors of every contracted node, which are only valid during the call
+     */
+    private void contractSelectedNodes(IntArrayList selected, int firstLevel, Consumer<IntContainer> neighborsConsumer) {
+        contractionSW.start();
+        final int currentRound = round;
+        NodeContractor.FoundShortcuts[] foundShortcuts = new NodeContractor.FoundShortcuts[selected.size()];
+        runWithWorkers(selected.size(), (worker, i) ->
+                foundShortcuts[i] = worker.findShortcuts(selected.get(i), node -> selectedRounds[node] == currentRound));
+        for (int i = 0; i < selected.size(); i++) {
+            int node = selected.get(i);
+            chBuilder.setLevel(node, firstLevel + i);
+            neighborsConsumer.accept(nodeContractor.contractNode(node, foundShortcuts[i]));
+            foundShortcuts[i] = null;
+        }
+        contractionSW.stop();
+    }
+
+    private float[] calculatePrioritiesConcurrently(IntArrayList nodes) {
+        float[] priorities = new float[nodes.size()];
+        runWithWorkers(nodes.size(), (worker, i) -> {
+            if (isContracted(nodes.get(i)))
+                throw new IllegalArgumentException("Priority should only be calculated for not yet contracted nodes");
+            priorities[i] = worker.calculatePriority(nodes.get(i));
+        });
+        return priorities;
+    }
+
+    /**
+     * Runs the given task for the indices 0 to count - 1 with one thread per worker. The indices are distributed
+     * dynamically, because the time needed for a node varies a lot.
+     */
+    private void runWithWorkers(int count, WorkerTask task) {
+        AtomicInteger nextIndex = new AtomicInteger();
+        GHUtility.runConcurrently(Arrays.stream(workers).map(worker -> () -> {
+            for (int i = nextIndex.getAndIncrement(); i < count; i = nextIndex.getAndIncrement())
+                task.run(worker, i);
+        }), workers.length);
+    }
+
+    @FunctionalInterface
+    private interface WorkerTask {
+        void run(NodeContractor worker, int index);
+    }
+
     private void stopIfInterrupted() {
         if (Thread.currentThread().isInterrupted()) {
             throw new RuntimeException("Thread was interrupted");
@@ -356,7 +615,7 @@ public class PrepareContractionHierarchies {
 
     private void logHeuristicStats(int updateCounter) {
         logger.info(String.format(Locale.ROOT,
-                "%s, nodes: %10s, shortcuts: %10s, updates: %2d, checked-nodes: %10s, %s, %s, %s",
+                "%s, nodes: %10s, shortcuts: %10s, updates: %2d, checked-nodes: %10s, %s, %s, %s, %s",
                 (isEdgeBased() ? "edge" : "node"),
                 nf(sortedNodes.size()),
                 nf(nodeContractor.getAddedShortcutsCount()),
@@ -364,18 +623,20 @@ public class PrepareContractionHierarchies {
                 nf(checkCounter),
                 getTimesAsString(),
                 nodeContractor.getStatisticsString(),
+                prepareGraph.getMemoryUsageAsString(),
                 Helper.getMemInfo()));
     }
 
     private void logFixedNodeOrderingStats(int nodesContracted, int logSize, StopWatch stopWatch) {
         logger.info(String.format(Locale.ROOT,
-                "nodes: %10s / %10s (%6.2f%%), shortcuts: %10s, speed = %6.2f nodes/ms, %s, %s",
+                "nodes: %10s / %10s (%6.2f%%), shortcuts: %10s, speed = %6.2f nodes/ms, %s, %s, %s",
                 nf(nodesContracted),
                 nf(nodes),
                 (100.0 * nodesContracted / nodes),
                 nf(nodeContractor.getAddedShortcutsCount()),
                 nodesContracted == 0 ? 0 : logSize / (double) stopWatch.getMillis(),
                 nodeContractor.getStatisticsString(),
+                prepareGraph.getMemoryUsageAsString(),
                 Helper.getMemInfo())
         );
     }
@@ -416,6 +677,12 @@ public class PrepareContractionHierarchies {
     private void _close() {
         nodeContractor.close();
         sortedNodes = null;
+        prepareGraph = null;
+        workers = null;
+        selectedRounds = null;
+        blockedRounds = null;
+        explorers = null;
+        secondHopExplorers = null;
     }
 
     void flush() {
@@ -514,6 +781,20 @@ public class PrepareContractionHierarchies {
          * @see #periodicUpdatesPercentage
          */
         private int logMessagesPercentage;
+        /**
+         * Specifies the number of threads that contract the nodes. With more than one thread the nodes are contracted
+         * in rounds, see {@link PrepareContractionHierarchies}. This needs one witness path searcher per thread, which
+         * uses a lot of memory for edge-based CH.
+         */
+        private int contractionThreads = 1;
+        /**
+         * Specifies the fraction of the remaining nodes with the lowest priorities among which the nodes of a round of
+         * the parallel contraction are selected. For example a value of 1 means that the nodes are selected among the
+         * 1% of the remaining nodes with the lowest priorities, but at least among 100 nodes.
+         * Higher values here lead to bigger rounds and a better use of the threads, but the contraction order follows
+         * the node priorities less closely (potentially leading to more shortcuts and slower queries).
+         */
+        private int parallelCandidatesPercentage = 1;
 
         static Params forTraversalMode(TraversalMode traversalMode) {
             // Lower values for the neighbor update percentage (and/or max neighbor updates) yield a slower
@@ -588,6 +869,25 @@ public class PrepareContractionHierarchies {
             this.logMessagesPercentage = logMessagesPercentage;
         }
 
+        int getContractionThreads() {
+            return contractionThreads;
+        }
+
+        void setContractionThreads(int contractionThreads) {
+            if (contractionThreads < 1)
+                throw new IllegalArgumentException(CONTRACTION_THREADS + " has to be at least 1, but was: " + contractionThreads);
+            this.contractionThreads = contractionThreads;
+        }
+
+        int getParallelCandidatesPercentage() {
+            return parallelCandidatesPercentage;
+        }
+
+        void setParallelCandidatesPercentage(int parallelCandidatesPercentage) {
+            checkPercentage(PARALLEL_CANDIDATES, parallelCandidatesPercentage);
+            this.parallelCandidatesPercentage = parallelCandidatesPercentage;
+        }
+
         private void checkPercentage(String name, int value) {
             if (value < 0 || value > 100) {
                 throw new IllegalArgumentException(name + " has to be in [0, 100], to disable it use 0");
@@ -59,6 +59,7 @@ public class LMPreparationHandler {
     private int minNodes = -1;
     private final List<String> lmSuggestionsLocations = new ArrayList<>(5);
     private int preparationThreads;
+    private boolean flushProperties = false;
     private boolean logDetails = false;
     private AreaIndex<SplitArea> areaIndex;
 
@@ -117,6 +118,14 @@ public class LMPreparationHandler {
         this.preparationThreads = preparationThreads;
     }
 
+    /**
+     * Flushes the properties whenever the preparation of a profile is finished, so the finished preparations are
+     * recorded even if the import is interrupted later.
+     */
+    public void setFlushProperties(boolean flushProperties) {
+        this.flushProperties = flushProperties;
+    }
+
     public LMPreparationHandler setLMProfiles(LMProfile... lmProfiles) {
         return setLMProfiles(Arrays.asList(lmProfiles));
     }
@@ -187,6 +196,8 @@ public class LMPreparationHandler {
                     prepare.close();
                 LOGGER.info("LM {} finished {}", name, getMemInfo());
                 properties.put(Landmark.PREPARE + "date." + name, createFormatter().format(new Date()));
+                if (flushProperties)
+                    properties.flush();
             });
         }
         GHUtility.runConcurrently(prepareRunnables.stream(), preparationThreads);
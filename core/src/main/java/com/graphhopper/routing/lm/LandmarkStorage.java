@@ -684,7 +684,8 @@ public class LandmarkStorage {
                 throw new IllegalStateException("landmark weights loaded but not the subnetworks!?");
 
             int nodes = landmarkWeightDA.getHeader(0 * 4);
-            if (nodes != graph.getNodes())
+            // the graph can have more nodes if OSM changes added edges that this weighting cannot use, see GraphHopper.applyOSMChanges
+            if (nodes > graph.getNodes())
                 throw new IllegalArgumentException("Cannot load landmark data as written for different graph storage with " + nodes + " nodes, not " + graph.getNodes());
             landmarks = landmarkWeightDA.getHeader(1 * 4);
             int subnetworks = landmarkWeightDA.getHeader(2 * 4);
@@ -17,17 +17,13 @@
  */
 package com.graphhopper.routing.subnetwork;
 
-import com.carrotsearch.hppc.BitSet;
-import com.carrotsearch.hppc.BitSetIterator;
-import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.*;
 import com.carrotsearch.hppc.cursors.IntCursor;
 import com.graphhopper.routing.ev.BooleanEncodedValue;
 import com.graphhopper.routing.util.AllEdgesIterator;
 import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.storage.BaseGraph;
-import com.graphhopper.util.GHUtility;
-import com.graphhopper.util.Helper;
-import com.graphhopper.util.StopWatch;
+import com.graphhopper.util.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -37,6 +33,7 @@ import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
+import static com.graphhopper.util.GHUtility.createEdgeKey;
 import static com.graphhopper.util.GHUtility.getEdgeFromEdgeKey;
 
 /**
@@ -119,6 +116,104 @@ public class PrepareRoutingSubnetworks {
         return total.get();
     }
 
+    /**
+     * Checks the subnetwork flags around the given edges again, e.g. after they were changed or added. Unlike
+     * {@link #doWork()} this does not search the whole graph, but only up to 2*{@link #setMinNetworkSize(int)}
+     * directed edges (edge keys) from every checked edge: an edge belongs to a subnetwork if the edge keys that can be
+     * reached from it, or that can reach it, are fewer. The given edges and their adjacent edges are checked, as well
+     * as the edges that are found by these searches and might have been connected or disconnected by the change.
+     * <p>
+     * Edges that can reach and be reached from many edges, but still do not belong to the same strongly connected
+     * component as them, e.g. because they are only connected via one-ways leading into different parts of the
+     * graph, are not marked, and the biggest component is marked as well if it is small. Such differences are fixed
+     * by the next full search.
+     *
+     * @return the number of edges whose subnetwork flag changed
+     */
+    public int updateSubnetworks(IntContainer edges) {
+        if (minNetworkSize <= 0)
+            return 0;
+        StopWatch sw = new StopWatch().start();
+        int changed = 0;
+        for (PrepareJob job : prepareJobs)
+            changed += updateSubnetworks(job, edges);
+        logger.info("Checked the subnetworks around " + edges.size() + " edges for " + prepareJobs.size() + " jobs, changed flags: "
+                + changed + ", took: " + sw.stop().getSeconds() + "s");
+        return changed;
+    }
+
+    private int updateSubnetworks(PrepareJob job, IntContainer edges) {
+        final int minNetworkSizeEdgeKeys = 2 * minNetworkSize;
+        EdgeExplorer explorer = graph.createEdgeExplorer();
+        IntArrayDeque queue = new IntArrayDeque();
+        IntHashSet queued = new IntHashSet();
+        for (IntCursor edge : edges) {
+            EdgeIteratorState edgeState = graph.getEdgeIteratorState(edge.value, Integer.MIN_VALUE);
+            for (int node : new int[]{edgeState.getBaseNode(), edgeState.getAdjNode()}) {
+                // this includes the edge itself
+                EdgeIterator iter = explorer.setBaseNode(node);
+                while (iter.next())
+                    if (queued.add(iter.getEdge()))
+                        queue.addLast(iter.getEdge());
+            }
+        }
+        int changed = 0;
+        while (!queue.isEmpty()) {
+            int edge = queue.removeFirst();
+            boolean accessible = false;
+            boolean subnetwork = false;
+            for (int edgeKey : new int[]{createEdgeKey(edge, false), createEdgeKey(edge, true)}) {
+                // edges that are not accessible anyway are not marked, just like in setSubnetworkEdge
+                if (!Double.isFinite(job.weighting.calcEdgeWeight(graph.getEdgeIteratorStateForKey(edgeKey), false)))
+                    continue;
+                accessible = true;
+                for (boolean reverse : new boolean[]{false, true}) {
+                    IntHashSet reached = explore(job.weighting, explorer, edgeKey, reverse, minNetworkSizeEdgeKeys);
+                    boolean small = reached.size() < minNetworkSizeEdgeKeys;
+                    subnetwork |= small;
+                    // all edges of a small component need to be marked, and the marked edges that can be reached
+                    // from a large component might not be subnetworks anymore
+                    for (IntCursor key : reached) {
+                        int reachedEdge = getEdgeFromEdgeKey(key.value);
+                        if ((small || graph.getEdgeIteratorState(reachedEdge, Integer.MIN_VALUE).get(job.subnetworkEnc)) && queued.add(reachedEdge))
+                            queue.addLast(reachedEdge);
+                    }
+                }
+            }
+            if (!accessible)
+                continue;
+            EdgeIteratorState edgeState = graph.getEdgeIteratorState(edge, Integer.MIN_VALUE);
+            if (edgeState.get(job.subnetworkEnc) != subnetwork) {
+                edgeState.set(job.subnetworkEnc, subnetwork);
+                changed++;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * @return the edge keys that can be reached from the given edge key, or that can reach it if reverse is true, but
+     * at most the given number
+     */
+    private IntHashSet explore(Weighting weighting, EdgeExplorer explorer, int startKey, boolean reverse, int maxEdgeKeys) {
+        IntHashSet reached = new IntHashSet();
+        IntArrayDeque queue = new IntArrayDeque();
+        reached.add(startKey);
+        queue.addLast(startKey);
+        while (!queue.isEmpty() && reached.size() < maxEdgeKeys) {
+            EdgeIteratorState edgeState = graph.getEdgeIteratorStateForKey(queue.removeFirst());
+            EdgeIterator iter = explorer.setBaseNode(reverse ? edgeState.getBaseNode() : edgeState.getAdjNode());
+            while (iter.next()) {
+                if (!Double.isFinite(GHUtility.calcWeightWithTurnWeight(weighting, iter, reverse, edgeState.getEdge())))
+                    continue;
+                int key = reverse ? GHUtility.reverseEdgeKey(iter.getEdgeKey()) : iter.getEdgeKey();
+                if (reached.add(key))
+                    queue.addLast(key);
+            }
+        }
+        return reached;
+    }
+
     private int setSubnetworks(Weighting weighting, String jobName, BitSet subnetworkFlags) {
         // partition graph into strongly connected components using Tarjan's algorithm
         StopWatch sw = new StopWatch().start();
@@ -21,22 +21,51 @@ package com.graphhopper.routing.util;
 import org.locationtech.jts.geom.*;
 import org.locationtech.jts.geom.prep.PreparedGeometry;
 import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
-import org.locationtech.jts.geom.prep.PreparedPolygon;
 import org.locationtech.jts.index.strtree.STRtree;
 
+import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
+/**
+ * Finds the areas that contain a point. The areas are stored in an STRtree, but most queries are answered by a grid
+ * cache: every grid cell stores which borders contain the whole cell and which borders intersect the cell boundary.
+ * Only for the latter an exact containment test is necessary. Cells with intersecting borders are split into four
+ * sub-cells until a maximum depth is reached, like a quad-tree. The cells are created on demand, so only the cells
+ * with queries are stored. The results are the same as without the cache, also their order.
+ * <p>
+ * This class is thread-safe.
+ */
 public class AreaIndex<T extends AreaIndex.Area> {
 
     public interface Area {
         List<Polygon> getBorders();
     }
 
+    // the cells are slightly bigger, so that rounding errors cannot put a point outside of its cell
+    private static final double CELL_EPSILON = 1e-9;
     private final GeometryFactory gf;
     private final STRtree index;
+    private final double cellSize;
+    private final int maxDepth;
+    private final Map<Long, Cell<T>> cells = new ConcurrentHashMap<>();
 
     public AreaIndex(List<T> areas) {
+        this(areas, 1, 6);
+    }
+
+    /**
+     * @param cellSize the size of the grid cells in degrees
+     * @param maxDepth the number of times a cell is split into four sub-cells if a border intersects it. 0 disables
+     *                 the splitting
+     */
+    public AreaIndex(List<T> areas, double cellSize, int maxDepth) {
+        if (cellSize <= 0)
+            throw new IllegalArgumentException("cellSize must be positive, but was: " + cellSize);
+        this.cellSize = cellSize;
+        this.maxDepth = maxDepth;
         gf = new GeometryFactory();
         index = new STRtree();
         PreparedGeometryFactory pgf = new PreparedGeometryFactory();
@@ -50,14 +79,112 @@ public class AreaIndex<T extends AreaIndex.Area> {
     }
 
     public List<T> query(double lat, double lon) {
-        Envelope searchEnv = new Envelope(lon, lon, lat, lat);
-        @SuppressWarnings("unchecked")
-        List<IndexedCustomArea<T>> result = index.query(searchEnv);
-        Point point = gf.createPoint(new Coordinate(lon, lat));
-        return result.stream()
-                .filter(c -> c.intersects(point))
-                .map(c -> c.area)
-                .collect(Collectors.toList());
+        int row = (int) Math.floor(lat / cellSize);
+        int col = (int) Math.floor(lon / cellSize);
+        double minLat = row * cellSize;
+        double minLon = col * cellSize;
+        double size = cellSize;
+        Cell<T> cell = cells.computeIfAbsent(((long) row << 32) | (col & 0xFFFF_FFFFL), key -> {
+            Envelope envelope = createCellEnvelope(row * cellSize, col * cellSize, cellSize);
+            @SuppressWarnings("unchecked")
+            List<IndexedCustomArea<T>> candidates = index.query(envelope);
+            return createCell(candidates, null, envelope);
+        });
+
+        for (int depth = 0; depth < maxDepth && cell.hasBoundary(); depth++) {
+            size /= 2;
+            int quadrant = 0;
+            if (lat >= minLat + size) {
+                quadrant |= 2;
+                minLat += size;
+            }
+            if (lon >= minLon + size) {
+                quadrant |= 1;
+                minLon += size;
+            }
+            cell = cell.getChild(quadrant, minLat, minLon, size);
+        }
+
+        List<T> result = new ArrayList<>(cell.entries.size());
+        Point point = null;
+        for (int i = 0; i < cell.entries.size(); i++) {
+            IndexedCustomArea<T> entry = cell.entries.get(i);
+            if (!cell.inside[i]) {
+                if (point == null)
+                    point = gf.createPoint(new Coordinate(lon, lat));
+                if (!entry.intersects(point))
+                    continue;
+            }
+            result.add(entry.area);
+        }
+        return result;
+    }
+
+    private static Envelope createCellEnvelope(double minLat, double minLon, double size) {
+        return new Envelope(minLon - CELL_EPSILON, minLon + size + CELL_EPSILON, minLat - CELL_EPSILON, minLat + size + CELL_EPSILON);
+    }
+
+    /**
+     * @param candidates   the borders that might intersect the cell, in the order of the STRtree
+     * @param knownInside  true for the candidates that contain a bigger cell around this cell, or null if unknown
+     */
+    private Cell<T> createCell(List<IndexedCustomArea<T>> candidates, boolean[] knownInside, Envelope envelope) {
+        Geometry cellGeometry = gf.toGeometry(envelope);
+        List<IndexedCustomArea<T>> entries = new ArrayList<>(candidates.size());
+        boolean[] inside = new boolean[candidates.size()];
+        for (int i = 0; i < candidates.size(); i++) {
+            IndexedCustomArea<T> candidate = candidates.get(i);
+            boolean containsCell;
+            if (knownInside != null && knownInside[i]) {
+                containsCell = true;
+            } else {
+                try {
+                    if (!candidate.preparedGeometry.intersects(cellGeometry))
+                        continue;
+                    containsCell = candidate.preparedGeometry.contains(cellGeometry);
+                } catch (RuntimeException ex) {
+                    // e.g. for an invalid border, then we always use the exact test of the point
+                    containsCell = false;
+                }
+            }
+            inside[entries.size()] = containsCell;
+            entries.add(candidate);
+        }
+        return new Cell<>(this, entries, inside);
+    }
+
+    private static class Cell<T extends Area> {
+        final AreaIndex<T> areaIndex;
+        final List<IndexedCustomArea<T>> entries;
+        final boolean[] inside;
+        final boolean boundary;
+        // the sub-cells are created on demand. two threads might create the same sub-cell, but as they are equal this
+        // does not matter
+        final AtomicReferenceArray<Cell<T>> children;
+
+        Cell(AreaIndex<T> areaIndex, List<IndexedCustomArea<T>> entries, boolean[] inside) {
+            this.areaIndex = areaIndex;
+            this.entries = entries;
+            this.inside = inside;
+            boolean boundary = false;
+            for (int i = 0; i < entries.size(); i++)
+                boundary |= !inside[i];
+            this.boundary = boundary;
+            children = boundary ? new AtomicReferenceArray<>(4) : null;
+        }
+
+        boolean hasBoundary() {
+            return boundary;
+        }
+
+        Cell<T> getChild(int quadrant, double minLat, double minLon, double size) {
+            Cell<T> child = children.get(quadrant);
+            if (child == null) {
+                child = areaIndex.createCell(entries, inside, createCellEnvelope(minLat, minLon, size));
+                children.set(quadrant, child);
+            }
+            return child;
+        }
     }
 
     private static class IndexedCustomArea<T extends Area> {
@@ -73,7 +200,6 @@ public class AreaIndex<T extends AreaIndex.Area> {
             return preparedGeometry.intersects(point);
         }
     }
-
 }
 
 
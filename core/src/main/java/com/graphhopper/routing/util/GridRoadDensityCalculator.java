@@ -0,0 +1,218 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.routing.util;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.LongArrayList;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.GHUtility;
+
+import java.util.Arrays;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.IntStream;
+
+import static com.graphhopper.util.DistanceCalcEarth.METERS_PER_DEGREE;
+
+/**
+ * Calculates the road densities of all edges with a grid instead of exploring the graph around every edge like
+ * {@link RoadDensityCalculator}. Every junction is added once to the grid cell it lies in, weighted with the largest
+ * road factor of its edges. The road density of an edge is then the weighted number of junctions in a square around
+ * its center that has the same area as the circle with the given radius, divided by the squared radius. The radius of
+ * this circle is increased by half the average edge length, because the RoadDensityCalculator also counts junctions
+ * just outside the radius. So the results are comparable to the ones of the RoadDensityCalculator, but the grid cells
+ * make them less exact.
+ * <p>
+ * The grid is split into tiles that are processed in parallel. A tile is only created if edges lie in it, and it
+ * includes the cells around it that are needed for the squares of its edges. For every tile a summed-area table is
+ * built, so the sum of every square is calculated from four values.
+ */
+public class GridRoadDensityCalculator {
+    // the square around an edge is 2 * HALF_WINDOW + 1 cells wide
+    private static final int HALF_WINDOW = 3;
+    private static final int TILE_CELLS = 256;
+    private static final int SIZE = TILE_CELLS + 2 * HALF_WINDOW;
+
+    private final Graph graph;
+    private final double radius;
+    private final double cellLat;
+    private final double tileLat;
+
+    private GridRoadDensityCalculator(Graph graph, double radius, double windowRadius) {
+        this.graph = graph;
+        this.radius = radius;
+        double cellMeters = windowRadius * Math.sqrt(Math.PI) / (2 * HALF_WINDOW + 1);
+        cellLat = cellMeters / METERS_PER_DEGREE;
+        tileLat = cellLat * TILE_CELLS;
+        // the band and the column of a tile are stored in 16 bits each
+        if (360 / tileLat >= 1 << 15)
+            throw new IllegalArgumentException("radius is too small: " + radius);
+    }
+
+    /**
+     * @param radius         in meters
+     * @param calcRoadFactor weighting function. use this to define how different kinds of roads shall contribute to the calculated road density
+     * @param threads        the number of threads used to process the tiles
+     * @return the road density of every edge, i.e. the weighted number of junctions in the vicinity of the edge divided
+     * by the squared radius
+     */
+    public static float[] calcRoadDensities(Graph graph, double radius, ToDoubleFunction<EdgeIteratorState> calcRoadFactor, int threads) {
+        if (radius <= 0)
+            throw new IllegalArgumentException("radius must be positive, but was: " + radius);
+        float[] nodeFactors = new float[graph.getNodes()];
+        double distanceSum = 0;
+        AllEdgesIterator iter = graph.getAllEdges();
+        while (iter.next()) {
+            float factor = (float) calcRoadFactor.applyAsDouble(iter);
+            nodeFactors[iter.getBaseNode()] = Math.max(nodeFactors[iter.getBaseNode()], factor);
+            nodeFactors[iter.getAdjNode()] = Math.max(nodeFactors[iter.getAdjNode()], factor);
+            distanceSum += iter.getDistance();
+        }
+        // the RoadDensityCalculator also counts the junctions that are reached by an edge from inside the radius, so
+        // we use a bigger square
+        double windowRadius = radius + (graph.getEdges() == 0 ? 0 : distanceSum / graph.getEdges() / 2);
+        return new GridRoadDensityCalculator(graph, radius, windowRadius).calcRoadDensities(nodeFactors, threads);
+    }
+
+    private float[] calcRoadDensities(float[] nodeFactors, int threads) {
+        NodeAccess na = graph.getNodeAccess();
+        long[] edgeKeys = new long[graph.getEdges()];
+        AllEdgesIterator iter = graph.getAllEdges();
+        while (iter.next()) {
+            int baseNode = iter.getBaseNode();
+            int adjNode = iter.getAdjNode();
+            double lat = (na.getLat(baseNode) + na.getLat(adjNode)) / 2;
+            double lon = (na.getLon(baseNode) + na.getLon(adjNode)) / 2;
+            int band = getBand(lat);
+            edgeKeys[iter.getEdge()] = (long) createTileKey(band, getTileColumn(band, lon)) << 32 | iter.getEdge();
+        }
+        Arrays.parallelSort(edgeKeys);
+
+        // a junction is added to every tile whose surrounding cells contain it
+        LongArrayList nodeKeyList = new LongArrayList(graph.getNodes());
+        for (int node = 0; node < nodeFactors.length; node++) {
+            if (nodeFactors[node] <= 0)
+                continue;
+            double lat = na.getLat(node);
+            double lon = na.getLon(node);
+            int nodeBand = getBand(lat);
+            for (int band = Math.max(0, nodeBand - 1); band <= nodeBand + 1; band++) {
+                double minLat = getMinLat(band) - HALF_WINDOW * cellLat;
+                if (lat < minLat || lat >= minLat + SIZE * cellLat)
+                    continue;
+                double cellLon = getCellLon(band);
+                int fromColumn = getTileColumn(band, lon - HALF_WINDOW * cellLon);
+                int toColumn = getTileColumn(band, lon + HALF_WINDOW * cellLon);
+                for (int column = fromColumn; column <= toColumn; column++)
+                    nodeKeyList.add((long) createTileKey(band, column) << 32 | node);
+            }
+        }
+        long[] nodeKeys = nodeKeyList.toArray();
+        Arrays.parallelSort(nodeKeys);
+
+        IntArrayList tileStarts = new IntArrayList();
+        for (int i = 0; i < edgeKeys.length; i++)
+            if (i == 0 || edgeKeys[i] >>> 32 != edgeKeys[i - 1] >>> 32)
+                tileStarts.add(i);
+        int[] starts = tileStarts.toArray();
+
+        float[] densities = new float[graph.getEdges()];
+        ThreadLocal<double[]> sums = ThreadLocal.withInitial(() -> new double[(SIZE + 1) * (SIZE + 1)]);
+        GHUtility.runConcurrently(IntStream.range(0, starts.length).mapToObj(t -> () -> {
+            int to = t + 1 < starts.length ? starts[t + 1] : edgeKeys.length;
+            processTile(sums.get(), (int) (edgeKeys[starts[t]] >>> 32), edgeKeys, starts[t], to, nodeKeys, nodeFactors, densities);
+        }), threads);
+        return densities;
+    }
+
+    private void processTile(double[] sums, int tileKey, long[] edgeKeys, int fromEdge, int toEdge,
+                             long[] nodeKeys, float[] nodeFactors, float[] densities) {
+        int band = tileKey >>> 16;
+        int column = tileKey & 0xFFFF;
+        double cellLon = getCellLon(band);
+        double minLat = getMinLat(band) - HALF_WINDOW * cellLat;
+        double minLon = column * cellLon * TILE_CELLS - 180 - HALF_WINDOW * cellLon;
+        NodeAccess na = graph.getNodeAccess();
+
+        // the first row and column of the summed-area table stay zero
+        Arrays.fill(sums, 0);
+        int i = findFirst(nodeKeys, tileKey);
+        for (; i < nodeKeys.length && (int) (nodeKeys[i] >>> 32) == tileKey; i++) {
+            int node = (int) nodeKeys[i];
+            int row = (int) Math.floor((na.getLat(node) - minLat) / cellLat);
+            int col = (int) Math.floor((na.getLon(node) - minLon) / cellLon);
+            if (row >= 0 && row < SIZE && col >= 0 && col < SIZE)
+                sums[(row + 1) * (SIZE + 1) + col + 1] += nodeFactors[node];
+        }
+        for (int row = 1; row <= SIZE; row++)
+            for (int col = 1; col <= SIZE; col++)
+                sums[row * (SIZE + 1) + col] += sums[(row - 1) * (SIZE + 1) + col]
+                        + sums[row * (SIZE + 1) + col - 1] - sums[(row - 1) * (SIZE + 1) + col - 1];
+
+        for (int e = fromEdge; e < toEdge; e++) {
+            int edge = (int) edgeKeys[e];
+            EdgeIteratorState state = graph.getEdgeIteratorState(edge, Integer.MIN_VALUE);
+            double lat = (na.getLat(state.getBaseNode()) + na.getLat(state.getAdjNode())) / 2;
+            double lon = (na.getLon(state.getBaseNode()) + na.getLon(state.getAdjNode())) / 2;
+            // the center of the edge lies in the tile, but rounding errors could move it to the surrounding cells
+            int row = clamp((int) Math.floor((lat - minLat) / cellLat));
+            int col = clamp((int) Math.floor((lon - minLon) / cellLon));
+            // sum of the cells row - HALF_WINDOW to row + HALF_WINDOW, which are the indices row - HALF_WINDOW + 1 to
+            // row + HALF_WINDOW + 1 in the summed-area table
+            int top = row + HALF_WINDOW + 1, bottom = row - HALF_WINDOW, right = col + HALF_WINDOW + 1, left = col - HALF_WINDOW;
+            double sum = sums[top * (SIZE + 1) + right] - sums[bottom * (SIZE + 1) + right]
+                    - sums[top * (SIZE + 1) + left] + sums[bottom * (SIZE + 1) + left];
+            densities[edge] = (float) (sum / radius / radius);
+        }
+    }
+
+    private static int clamp(int index) {
+        return Math.max(HALF_WINDOW, Math.min(HALF_WINDOW + TILE_CELLS - 1, index));
+    }
+
+    private static int findFirst(long[] keys, int tileKey) {
+        int index = Arrays.binarySearch(keys, (long) tileKey << 32);
+        return index < 0 ? -index - 1 : index;
+    }
+
+    private static int createTileKey(int band, int column) {
+        return band << 16 | column;
+    }
+
+    private int getBand(double lat) {
+        return Math.max(0, (int) Math.floor((lat + 90) / tileLat));
+    }
+
+    private double getMinLat(int band) {
+        return band * tileLat - 90;
+    }
+
+    /**
+     * The cells of a band are roughly square, so they are wider in degrees the closer the band is to a pole.
+     */
+    private double getCellLon(int band) {
+        double centerLat = getMinLat(band) + tileLat / 2;
+        return cellLat / Math.max(0.01, Math.cos(Math.toRadians(centerLat)));
+    }
+
+    private int getTileColumn(int band, double lon) {
+        return Math.max(0, (int) Math.floor((lon + 180) / (getCellLon(band) * TILE_CELLS)));
+    }
+}
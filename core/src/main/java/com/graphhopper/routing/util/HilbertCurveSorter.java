@@ -0,0 +1,114 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.routing.util;
+
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.util.ArrayUtil;
+import com.graphhopper.util.StopWatch;
+import com.graphhopper.util.shapes.BBox;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Renumbers the nodes of a graph along a Hilbert curve such that nodes that are close to each other are also stored
+ * close to each other. The edges are sorted by their smaller node id. This way a routing algorithm exploring the graph
+ * touches far fewer pages of the nodes and edges storage, which matters most when the graph is memory mapped and does
+ * not fit into RAM.
+ * <p>
+ * This must run after the import and before anything that stores node or edge ids outside the graph is created, i.e.
+ * before the subnetwork removal, the location index and the LM and CH preparations.
+ */
+public class HilbertCurveSorter {
+    private static final Logger logger = LoggerFactory.getLogger(HilbertCurveSorter.class);
+    // number of cells per axis, with 2^15 cells the curve index still fits into a positive int
+    private static final int CELLS = 1 << 15;
+
+    /**
+     * @return the new edge ids indexed by the old ones, for storages outside the graph that refer to edge ids
+     */
+    public static int[] sort(BaseGraph graph) {
+        logger.info("Sorting graph along Hilbert curve ..., nodes: {}, edges: {}", graph.getNodes(), graph.getEdges());
+        StopWatch sw = StopWatch.started();
+        int[] newNodeIds = calcNewNodeIds(graph);
+        int[] newEdgeIds = calcNewEdgeIds(graph, newNodeIds);
+        graph.renumber(newNodeIds, newEdgeIds);
+        logger.info("Finished sorting graph along Hilbert curve, took: " + sw.stop().getSeconds() + "s");
+        return newEdgeIds;
+    }
+
+    static int[] calcNewNodeIds(BaseGraph graph) {
+        int nodes = graph.getNodes();
+        BBox bounds = graph.getBounds();
+        NodeAccess na = graph.getNodeAccess();
+        double latFactor = (CELLS - 1) / Math.max(1e-9, bounds.maxLat - bounds.minLat);
+        double lonFactor = (CELLS - 1) / Math.max(1e-9, bounds.maxLon - bounds.minLon);
+        int[] curveIndices = new int[nodes];
+        int[] oldIds = new int[nodes];
+        for (int node = 0; node < nodes; node++) {
+            int x = clamp((int) ((na.getLon(node) - bounds.minLon) * lonFactor));
+            int y = clamp((int) ((na.getLat(node) - bounds.minLat) * latFactor));
+            curveIndices[node] = hilbertIndex(x, y);
+            oldIds[node] = node;
+        }
+        // the sort order contains the old node ids in their new order, so we invert it
+        return ArrayUtil.invert(ArrayUtil.calcSortOrder(curveIndices, oldIds, nodes));
+    }
+
+    static int[] calcNewEdgeIds(BaseGraph graph, int[] newNodeIds) {
+        int edges = graph.getEdges();
+        int[] minNodes = new int[edges];
+        int[] maxNodes = new int[edges];
+        AllEdgesIterator iter = graph.getAllEdges();
+        while (iter.next()) {
+            int base = newNodeIds[iter.getBaseNode()];
+            int adj = newNodeIds[iter.getAdjNode()];
+            minNodes[iter.getEdge()] = Math.min(base, adj);
+            maxNodes[iter.getEdge()] = Math.max(base, adj);
+        }
+        return ArrayUtil.invert(ArrayUtil.calcSortOrder(minNodes, maxNodes, edges));
+    }
+
+    private static int clamp(int cell) {
+        return Math.max(0, Math.min(CELLS - 1, cell));
+    }
+
+    /**
+     * Calculates the position of the cell (x, y) along the Hilbert curve that fills the CELLS x CELLS grid.
+     */
+    static int hilbertIndex(int x, int y) {
+        int d = 0;
+        for (int s = CELLS / 2; s > 0; s /= 2) {
+            int rx = (x & s) > 0 ? 1 : 0;
+            int ry = (y & s) > 0 ? 1 : 0;
+            d += s * s * ((3 * rx) ^ ry);
+            // rotate the quadrant such that the curve stays continuous
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = CELLS - 1 - x;
+                    y = CELLS - 1 - y;
+                }
+                int tmp = x;
+                x = y;
+                y = tmp;
+            }
+        }
+        return d;
+    }
+}
@@ -89,17 +89,18 @@ public class MaxSpeedCalculator {
     }
 
     /**
-     * Creates temporary uni dir max_speed storage that is removed after import.
+     * Creates temporary uni dir max_speed storage that is removed after import. It is synchronized, because the ways
+     * can be parsed by multiple threads.
      */
     private EdgeIntAccess createMaxSpeedStorage(DataAccess dataAccess) {
         return new EdgeIntAccess() {
 
-            public int getInt(int edgeId, int index) {
+            public synchronized int getInt(int edgeId, int index) {
                 dataAccess.ensureCapacity(edgeId * 2L + 2L);
                 return dataAccess.getShort(edgeId * 2L);
             }
 
-            public void setInt(int edgeId, int index, int value) {
+            public synchronized void setInt(int edgeId, int index, int value) {
                 dataAccess.ensureCapacity(edgeId * 2L + 2L);
                 if (value > Short.MAX_VALUE)
                     throw new IllegalStateException("value too large for short: " + value);
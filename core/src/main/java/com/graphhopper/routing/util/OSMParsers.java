@@ -26,17 +26,26 @@ import com.graphhopper.routing.ev.EdgeIntAccess;
 import com.graphhopper.routing.util.parsers.RelationTagParser;
 import com.graphhopper.routing.util.parsers.TagParser;
 import com.graphhopper.storage.IntsRef;
+import com.graphhopper.util.ImportMetrics;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.function.Function;
 
 public class OSMParsers {
+    private static final int TIMING_SAMPLE_INTERVAL = 16;
     private final List<String> ignoredHighways;
     private final List<TagParser> wayTagParsers;
     private final List<RelationTagParser> relationTagParsers;
     private final List<RestrictionTagParser> restrictionTagParsers;
     private final EncodedValue.InitializerConfig relConfig = new EncodedValue.InitializerConfig();
+    // only used if the timing is enabled
+    private List<String> timedParserNames;
+    private long[] timedNanos;
+    private long[] timedBytes;
+    private long calls;
+    private long timedCalls;
 
     public OSMParsers() {
         this(new ArrayList<>(), new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
@@ -94,13 +103,60 @@ public class OSMParsers {
         return relFlags;
     }
 
+    /**
+     * Measures the time and the bytes allocated by every relation and way tag parser in
+     * {@link #handleWayTags}. Only every 16th call is measured to keep the overhead small, see {@link ImportMetrics}.
+     * This must be called after all parsers were added.
+     */
+    public OSMParsers enableTiming() {
+        List<String> names = new ArrayList<>();
+        for (RelationTagParser relParser : relationTagParsers)
+            names.add(createUniqueName(names, relParser.getClass().getSimpleName()));
+        for (TagParser parser : wayTagParsers)
+            names.add(createUniqueName(names, parser.getClass().getSimpleName()));
+        timedParserNames = names;
+        timedNanos = new long[names.size()];
+        timedBytes = new long[names.size()];
+        return this;
+    }
+
+    private static String createUniqueName(List<String> names, String name) {
+        String result = name;
+        for (int i = 2; names.contains(result); i++)
+            result = name + "_" + i;
+        return result;
+    }
+
     public void handleWayTags(int edgeId, EdgeIntAccess edgeIntAccess, ReaderWay way, IntsRef relationFlags) {
+        if (timedParserNames != null && calls++ % TIMING_SAMPLE_INTERVAL == 0) {
+            handleWayTagsTimed(edgeId, edgeIntAccess, way, relationFlags);
+            return;
+        }
         for (RelationTagParser relParser : relationTagParsers)
             relParser.handleWayTags(edgeId, edgeIntAccess, way, relationFlags);
         for (TagParser parser : wayTagParsers)
             parser.handleWayTags(edgeId, edgeIntAccess, way, relationFlags);
     }
 
+    private void handleWayTagsTimed(int edgeId, EdgeIntAccess edgeIntAccess, ReaderWay way, IntsRef relationFlags) {
+        timedCalls++;
+        int index = 0;
+        for (RelationTagParser relParser : relationTagParsers) {
+            long bytes = ImportMetrics.getThreadAllocatedBytes();
+            long start = System.nanoTime();
+            relParser.handleWayTags(edgeId, edgeIntAccess, way, relationFlags);
+            timedNanos[index] += System.nanoTime() - start;
+            timedBytes[index++] += ImportMetrics.getThreadAllocatedBytes() - bytes;
+        }
+        for (TagParser parser : wayTagParsers) {
+            long bytes = ImportMetrics.getThreadAllocatedBytes();
+            long start = System.nanoTime();
+            parser.handleWayTags(edgeId, edgeIntAccess, way, relationFlags);
+            timedNanos[index] += System.nanoTime() - start;
+            timedBytes[index++] += ImportMetrics.getThreadAllocatedBytes() - bytes;
+        }
+    }
+
     public IntsRef createRelationFlags() {
         int requiredInts = relConfig.getRequiredInts();
         if (requiredInts > 2)
@@ -123,4 +179,33 @@ public class OSMParsers {
     public List<RestrictionTagParser> getRestrictionTagParsers() {
         return restrictionTagParsers;
     }
+
+    /**
+     * @return the names of the timed relation and way tag parsers or an empty list if the timing is not enabled
+     */
+    public List<String> getTimedParserNames() {
+        return timedParserNames == null ? Collections.emptyList() : timedParserNames;
+    }
+
+    public long[] getTimedNanos() {
+        return timedNanos;
+    }
+
+    public long[] getTimedBytes() {
+        return timedBytes;
+    }
+
+    /**
+     * @return the number of calls of handleWayTags since the timing was enabled
+     */
+    public long getCalls() {
+        return calls;
+    }
+
+    /**
+     * @return the number of calls of handleWayTags that were timed
+     */
+    public long getTimedCalls() {
+        return timedCalls;
+    }
 }
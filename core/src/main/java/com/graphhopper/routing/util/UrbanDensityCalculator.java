@@ -47,21 +47,35 @@ public class UrbanDensityCalculator {
                                         double residentialAreaRadius, double residentialAreaSensitivity,
                                         double cityAreaRadius, double cityAreaSensitivity,
                                         int threads) {
-        logger.info("Calculating residential areas ..., radius={}, sensitivity={}, threads={}", residentialAreaRadius, residentialAreaSensitivity, threads);
+        calcUrbanDensity(graph, urbanDensityEnc, roadClassEnc, roadClassLinkEnc, residentialAreaRadius, residentialAreaSensitivity,
+                cityAreaRadius, cityAreaSensitivity, threads, false);
+    }
+
+    /**
+     * @param grid true if the road densities should be calculated with the much faster, but less exact
+     *             {@link GridRoadDensityCalculator} instead of the {@link RoadDensityCalculator}
+     * @see #calcUrbanDensity(Graph, EnumEncodedValue, EnumEncodedValue, BooleanEncodedValue, double, double, double, double, int)
+     */
+    public static void calcUrbanDensity(Graph graph, EnumEncodedValue<UrbanDensity> urbanDensityEnc,
+                                        EnumEncodedValue<RoadClass> roadClassEnc, BooleanEncodedValue roadClassLinkEnc,
+                                        double residentialAreaRadius, double residentialAreaSensitivity,
+                                        double cityAreaRadius, double cityAreaSensitivity,
+                                        int threads, boolean grid) {
+        logger.info("Calculating residential areas ..., radius={}, sensitivity={}, threads={}, grid={}", residentialAreaRadius, residentialAreaSensitivity, threads, grid);
         StopWatch sw = StopWatch.started();
-        calcResidential(graph, urbanDensityEnc, roadClassEnc, roadClassLinkEnc, residentialAreaRadius, residentialAreaSensitivity, threads);
+        calcResidential(graph, urbanDensityEnc, roadClassEnc, roadClassLinkEnc, residentialAreaRadius, residentialAreaSensitivity, threads, grid);
         logger.info("Finished calculating residential areas, took: " + sw.stop().getSeconds() + "s");
         if (cityAreaRadius > 1) {
-            logger.info("Calculating city areas ..., radius={}, sensitivity={}, threads={}", cityAreaRadius, cityAreaSensitivity, threads);
+            logger.info("Calculating city areas ..., radius={}, sensitivity={}, threads={}, grid={}", cityAreaRadius, cityAreaSensitivity, threads, grid);
             sw = StopWatch.started();
-            calcCity(graph, urbanDensityEnc, cityAreaRadius, cityAreaSensitivity, threads);
+            calcCity(graph, urbanDensityEnc, cityAreaRadius, cityAreaSensitivity, threads, grid);
             logger.info("Finished calculating city areas, took: " + sw.stop().getSeconds() + "s");
         }
     }
 
     private static void calcResidential(Graph graph, EnumEncodedValue<UrbanDensity> urbanDensityEnc,
                                         EnumEncodedValue<RoadClass> roadClassEnc, BooleanEncodedValue roadClassLinkEnc,
-                                        double radius, double sensitivity, int threads) {
+                                        double radius, double sensitivity, int threads, boolean grid) {
         final ToDoubleFunction<EdgeIteratorState> calcRoadFactor = edge -> {
             RoadClass roadClass = edge.get(roadClassEnc);
             // we're interested in the road density of 'urban' roads, so dense road clusters of outdoor
@@ -77,27 +91,40 @@ public class UrbanDensityCalculator {
         };
         // temporarily write results to an external array for thread-safety
         boolean[] isResidential = new boolean[graph.getEdges()];
-        RoadDensityCalculator.calcRoadDensities(graph, (calculator, edge) -> {
-            double roadDensity = calculator.calcRoadDensity(edge, radius, calcRoadFactor);
-            isResidential[edge.getEdge()] = roadDensity * sensitivity >= 1.0;
-        }, threads);
+        if (grid) {
+            float[] roadDensities = GridRoadDensityCalculator.calcRoadDensities(graph, radius, calcRoadFactor, threads);
+            for (int edge = 0; edge < isResidential.length; edge++)
+                isResidential[edge] = roadDensities[edge] * sensitivity >= 1.0;
+        } else {
+            RoadDensityCalculator.calcRoadDensities(graph, (calculator, edge) -> {
+                double roadDensity = calculator.calcRoadDensity(edge, radius, calcRoadFactor);
+                isResidential[edge.getEdge()] = roadDensity * sensitivity >= 1.0;
+            }, threads);
+        }
         for (int edge = 0; edge < isResidential.length; edge++)
             graph.getEdgeIteratorState(edge, Integer.MIN_VALUE).set(urbanDensityEnc, isResidential[edge] ? UrbanDensity.RESIDENTIAL : UrbanDensity.RURAL);
     }
 
     private static void calcCity(Graph graph, EnumEncodedValue<UrbanDensity> urbanDensityEnc,
-                                 double radius, double sensitivity, int threads) {
+                                 double radius, double sensitivity, int threads, boolean grid) {
         // do not modify the urban density values as long as we are still reading them -> store city flags in this array first
         boolean[] isCity = new boolean[graph.getEdges()];
         final ToDoubleFunction<EdgeIteratorState> calcRoadFactor = edge -> edge.get(urbanDensityEnc) == UrbanDensity.RESIDENTIAL ? 1 : 0;
-        RoadDensityCalculator.calcRoadDensities(graph, (calculator, edge) -> {
-            UrbanDensity urbanDensity = edge.get(urbanDensityEnc);
-            if (urbanDensity == UrbanDensity.RURAL)
-                return;
-            double roadDensity = calculator.calcRoadDensity(edge, radius, calcRoadFactor);
-            if (roadDensity * sensitivity >= 1.0)
-                isCity[edge.getEdge()] = true;
-        }, threads);
+        if (grid) {
+            float[] roadDensities = GridRoadDensityCalculator.calcRoadDensities(graph, radius, calcRoadFactor, threads);
+            for (int edge = 0; edge < isCity.length; edge++)
+                isCity[edge] = roadDensities[edge] * sensitivity >= 1.0
+                        && graph.getEdgeIteratorState(edge, Integer.MIN_VALUE).get(urbanDensityEnc) != UrbanDensity.RURAL;
+        } else {
+            RoadDensityCalculator.calcRoadDensities(graph, (calculator, edge) -> {
+                UrbanDensity urbanDensity = edge.get(urbanDensityEnc);
+                if (urbanDensity == UrbanDensity.RURAL)
+                    return;
+                double roadDensity = calculator.calcRoadDensity(edge, radius, calcRoadFactor);
+                if (roadDensity * sensitivity >= 1.0)
+                    isCity[edge.getEdge()] = true;
+            }, threads);
+        }
         for (int edge = 0; edge < isCity.length; edge++)
             if (isCity[edge])
                 graph.getEdgeIteratorState(edge, Integer.MIN_VALUE).set(urbanDensityEnc, UrbanDensity.CITY);
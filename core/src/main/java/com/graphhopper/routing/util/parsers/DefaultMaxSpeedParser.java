@@ -98,11 +98,12 @@ public class DefaultMaxSpeedParser implements TagParser {
     }
 
     private final int SIZE = 3_000;
-    private final Map<Map<String, String>, Result> cache = new LinkedHashMap<Map<String, String>, Result>(SIZE + 1, .75F, true) {
+    // the same parser is used by all threads when the ways are parsed in parallel
+    private final Map<Map<String, String>, Result> cache = Collections.synchronizedMap(new LinkedHashMap<Map<String, String>, Result>(SIZE + 1, .75F, true) {
         public boolean removeEldestEntry(Map.Entry eldest) {
             return size() > SIZE;
         }
-    };
+    });
 
     private static Integer parseInt(String str) {
         try {
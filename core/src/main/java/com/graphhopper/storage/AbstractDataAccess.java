@@ -99,8 +99,15 @@ public abstract class AbstractDataAccess implements DataAccess {
     }
 
     protected long readHeader(RandomAccessFile raFile) throws IOException {
-        raFile.seek(0);
-        if (raFile.length() == 0)
+        return readHeader(raFile, 0);
+    }
+
+    /**
+     * Reads the header written by {@link #writeHeader} at the given position of the file.
+     */
+    protected long readHeader(RandomAccessFile raFile, long offset) throws IOException {
+        raFile.seek(offset);
+        if (raFile.length() <= offset)
             return -1;
 
         String versionHint = raFile.readUTF();
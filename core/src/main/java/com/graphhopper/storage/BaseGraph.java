@@ -53,7 +53,7 @@ public class BaseGraph implements Graph, Closeable {
     // can be null if turn costs are not supported
     final TurnCostStorage turnCostStorage;
     final BitUtil bitUtil;
-    // length | nodeA | nextNode | ... | nodeB
+    // length | nodeA | nextNode | ... | nodeB, or the format of CompressedGeometry if compressedGeometry is true
     private final DataAccess wayGeometry;
     private final Directory dir;
     private final int segmentSize;
@@ -61,9 +61,20 @@ public class BaseGraph implements Graph, Closeable {
     private long minGeoRef;
     private long maxGeoRef;
     private final int eleBytesPerCoord;
+    private boolean compressedGeometry;
 
     public BaseGraph(Directory dir, boolean withElevation, boolean withTurnCosts, int segmentSize, int bytesForFlags) {
+        this(dir, withElevation, withTurnCosts, false, segmentSize, bytesForFlags);
+    }
+
+    /**
+     * @param compressedGeometry if true the pillar nodes are delta encoded with variable length integers, see
+     *                           {@link CompressedGeometry}. This is only relevant for {@link #create}, when loading an
+     *                           existing graph the format is read from the stored geometry.
+     */
+    public BaseGraph(Directory dir, boolean withElevation, boolean withTurnCosts, boolean compressedGeometry, int segmentSize, int bytesForFlags) {
         this.dir = dir;
+        this.compressedGeometry = compressedGeometry;
         this.bitUtil = BitUtil.LITTLE;
         this.wayGeometry = dir.create("geometry", segmentSize);
         this.edgeKVStorage = new KVStorage(dir, true);
@@ -123,6 +134,7 @@ public class BaseGraph implements Graph, Closeable {
                 wayGeometry.getHeader(12),
                 wayGeometry.getHeader(16)
         );
+        compressedGeometry = wayGeometry.getHeader(20) == 1;
     }
 
     private void setWayGeometryHeader() {
@@ -131,6 +143,7 @@ public class BaseGraph implements Graph, Closeable {
         wayGeometry.setHeader(8, bitUtil.getIntHigh(minGeoRef));
         wayGeometry.setHeader(12, bitUtil.getIntLow(maxGeoRef));
         wayGeometry.setHeader(16, bitUtil.getIntHigh(maxGeoRef));
+        wayGeometry.setHeader(20, compressedGeometry ? 1 : 0);
     }
 
     private void setInitialized() {
@@ -167,6 +180,16 @@ public class BaseGraph implements Graph, Closeable {
         store.setFrozen(true);
     }
 
+    /**
+     * Allows adding edges to a frozen graph again. Everything that was created for the frozen graph, like the CH and
+     * LM preparations, must be created again afterwards.
+     */
+    public synchronized void unfreeze() {
+        if (!isFrozen())
+            throw new IllegalStateException("base graph is not frozen");
+        store.setFrozen(false);
+    }
+
     public synchronized boolean isFrozen() {
         return store.getFrozen();
     }
@@ -189,6 +212,20 @@ public class BaseGraph implements Graph, Closeable {
         return this;
     }
 
+    /**
+     * Renumbers the nodes and edges of this graph, i.e. node n gets the id newNodeIds[n] and edge e gets the id
+     * newEdgeIds[e]. Edge flags, distances, geometry and key-value references as well as the turn costs are kept
+     * consistent. Data that refers to node or edge ids and that is stored outside of this graph (like the location
+     * index or CH and LM preparations) has to be created after calling this method.
+     */
+    public void renumber(int[] newNodeIds, int[] newEdgeIds) {
+        if (isFrozen())
+            throw new IllegalStateException("Cannot renumber the graph if it is already frozen");
+        store.renumber(newNodeIds, newEdgeIds);
+        if (supportsTurnCosts())
+            turnCostStorage.renumberEdges(newEdgeIds);
+    }
+
     public String toDetailsString() {
         return store.toDetailsString() + ", "
                 + "name:(" + edgeKVStorage.getCapacity() / Helper.MB + "MB), "
@@ -240,7 +277,10 @@ public class BaseGraph implements Graph, Closeable {
                 + wayGeometry.getCapacity() + (supportsTurnCosts() ? turnCostStorage.getCapacity() : 0);
     }
 
-    long getMaxGeoRef() {
+    /**
+     * @return the number of bytes used in the geometry storage
+     */
+    public long getMaxGeoRef() {
         return maxGeoRef;
     }
 
@@ -447,6 +487,11 @@ public class BaseGraph implements Graph, Closeable {
                 // longer possible to find the copies corresponding to an edge, so we deny this
                 throw new IllegalStateException("This edge has already been copied so we can no longer change the geometry, pointer=" + edgePointer);
 
+            if (compressedGeometry) {
+                setCompressedWayGeometry(pillarNodes, edgePointer, reverse, existingGeoRef);
+                return;
+            }
+
             int len = pillarNodes.size();
             if (existingGeoRef > 0) {
                 final int count = getPillarCount(existingGeoRef);
@@ -464,12 +509,37 @@ public class BaseGraph implements Graph, Closeable {
         }
     }
 
+    public int getBytesForFlags() {
+        return store.getBytesForFlags();
+    }
+
     public EdgeIntAccess getEdgeAccess() {
         return store;
     }
 
+    private void setCompressedWayGeometry(PointList pillarNodes, long edgePointer, boolean reverse, long existingGeoRef) {
+        if (reverse)
+            pillarNodes.reverse();
+        byte[] wayGeometryBytes = CompressedGeometry.encode(pillarNodes);
+        // the size of the new geometry depends on the coordinates and not only on the number of points. We overwrite
+        // the existing geometry if the new one fits and append it otherwise. This wastes a few bytes, but changing
+        // the geometry is rare and usually does not change the coordinates anyway, e.g. for the elevation interpolation.
+        long geoRef = existingGeoRef;
+        if (existingGeoRef == 0 || wayGeometryBytes.length > getCompressedWayGeometryLength(existingGeoRef))
+            geoRef = nextGeoRef(wayGeometryBytes.length);
+        setWayGeometryBytesAtGeoRef(wayGeometryBytes, edgePointer, geoRef);
+    }
+
+    private int getCompressedWayGeometryLength(long geoRef) {
+        int payloadLength = CompressedGeometry.readPayloadLength(wayGeometry, geoRef);
+        return CompressedGeometry.varIntLength(payloadLength) + payloadLength;
+    }
+
     private void setWayGeometryAtGeoRef(PointList pillarNodes, long edgePointer, boolean reverse, long geoRef) {
-        byte[] wayGeometryBytes = createWayGeometryBytes(pillarNodes, reverse);
+        setWayGeometryBytesAtGeoRef(createWayGeometryBytes(pillarNodes, reverse), edgePointer, geoRef);
+    }
+
+    private void setWayGeometryBytesAtGeoRef(byte[] wayGeometryBytes, long edgePointer, long geoRef) {
         wayGeometry.ensureCapacity(geoRef + wayGeometryBytes.length);
         wayGeometry.setBytes(geoRef, wayGeometryBytes, wayGeometryBytes.length);
         store.setGeoRef(edgePointer, geoRef);
@@ -516,6 +586,8 @@ public class BaseGraph implements Graph, Closeable {
             return pillarNodes;
         }
         long geoRef = store.getGeoRef(edgePointer);
+        if (compressedGeometry)
+            return fetchCompressedWayGeometry(geoRef, reverse, mode, baseNode, adjNode);
         int count = 0;
         byte[] bytes = null;
         if (geoRef > 0) {
@@ -558,6 +630,38 @@ public class BaseGraph implements Graph, Closeable {
         return pillarNodes;
     }
 
+    private PointList fetchCompressedWayGeometry(long geoRef, boolean reverse, FetchMode mode, int baseNode, int adjNode) {
+        byte[] payload = null;
+        if (geoRef > 0) {
+            int payloadLength = CompressedGeometry.readPayloadLength(wayGeometry, geoRef);
+            payload = new byte[payloadLength];
+            wayGeometry.getBytes(geoRef + CompressedGeometry.varIntLength(payloadLength), payload, payloadLength);
+        } else if (mode == FetchMode.PILLAR_ONLY)
+            return PointList.EMPTY;
+
+        // we do not know the number of pillar nodes in advance, but every point needs at least two bytes
+        int maxCount = payload == null ? 0 : payload.length / (nodeAccess.is3D() ? 3 : 2);
+        PointList pillarNodes = new PointList(getPointListLength(maxCount, mode), nodeAccess.is3D());
+        if (reverse) {
+            if (mode == FetchMode.ALL || mode == FetchMode.PILLAR_AND_ADJ)
+                pillarNodes.add(nodeAccess, adjNode);
+        } else if (mode == FetchMode.ALL || mode == FetchMode.BASE_AND_PILLAR)
+            pillarNodes.add(nodeAccess, baseNode);
+
+        if (payload != null)
+            CompressedGeometry.decode(payload, pillarNodes);
+
+        if (reverse) {
+            if (mode == FetchMode.ALL || mode == FetchMode.BASE_AND_PILLAR)
+                pillarNodes.add(nodeAccess, baseNode);
+
+            pillarNodes.reverse();
+        } else if (mode == FetchMode.ALL || mode == FetchMode.PILLAR_AND_ADJ)
+            pillarNodes.add(nodeAccess, adjNode);
+
+        return pillarNodes;
+    }
+
     static int getPointListLength(int pillarNodes, FetchMode mode) {
         switch (mode) {
             case TOWER_ONLY:
@@ -591,6 +695,10 @@ public class BaseGraph implements Graph, Closeable {
         return segmentSize;
     }
 
+    public boolean isCompressedGeometry() {
+        return compressedGeometry;
+    }
+
     public static class Builder {
         private final int bytesForFlags;
         private Directory directory = new RAMDirectory();
@@ -598,6 +706,7 @@ public class BaseGraph implements Graph, Closeable {
         private boolean withTurnCosts = false;
         private long bytes = 100;
         private int segmentSize = -1;
+        private boolean compressedGeometry = false;
 
         public Builder(EncodingManager em) {
             this(em.getBytesForFlags());
@@ -631,13 +740,18 @@ public class BaseGraph implements Graph, Closeable {
             return this;
         }
 
+        public Builder setCompressedGeometry(boolean compressedGeometry) {
+            this.compressedGeometry = compressedGeometry;
+            return this;
+        }
+
         public Builder setBytes(long bytes) {
             this.bytes = bytes;
             return this;
         }
 
         public BaseGraph build() {
-            return new BaseGraph(directory, withElevation, withTurnCosts, segmentSize, bytesForFlags);
+            return new BaseGraph(directory, withElevation, withTurnCosts, compressedGeometry, segmentSize, bytesForFlags);
         }
 
         public BaseGraph create() {
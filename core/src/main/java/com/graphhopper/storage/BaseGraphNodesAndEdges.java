@@ -18,6 +18,8 @@
 
 package com.graphhopper.storage;
 
+import com.graphhopper.coll.GHBitSet;
+import com.graphhopper.coll.GHBitSetImpl;
 import com.graphhopper.routing.ev.EdgeIntAccess;
 import com.graphhopper.util.*;
 import com.graphhopper.util.shapes.BBox;
@@ -218,6 +220,80 @@ class BaseGraphNodesAndEdges implements EdgeIntAccess {
         return edge;
     }
 
+    /**
+     * Moves every node n to newNodeIds[n] and every edge e to newEdgeIds[e]. The node references of the edges are
+     * updated and the adjacency lists are rebuilt. All other attributes like the flags, the geometry and key-value
+     * references or the turn cost references of the nodes move together with their node or edge.
+     */
+    void renumber(int[] newNodeIds, int[] newEdgeIds) {
+        if (newNodeIds.length != nodeCount || newEdgeIds.length != edgeCount)
+            throw new IllegalArgumentException("Invalid number of nodes or edges: " + newNodeIds.length + " vs. " + nodeCount
+                    + ", " + newEdgeIds.length + " vs. " + edgeCount);
+        permute(nodes, nodeEntryBytes, newNodeIds);
+        permute(edges, edgeEntryBytes, newEdgeIds);
+        for (int node = 0; node < nodeCount; node++)
+            setEdgeRef(toNodePointer(node), NO_EDGE);
+        for (int edge = 0; edge < edgeCount; edge++) {
+            long edgePointer = toEdgePointer(edge);
+            int nodeA = newNodeIds[getNodeA(edgePointer)];
+            int nodeB = newNodeIds[getNodeB(edgePointer)];
+            setNodeA(edgePointer, nodeA);
+            setNodeB(edgePointer, nodeB);
+            // same as in edge(): prepend the edge to the linked lists of both nodes
+            long nodePointerA = toNodePointer(nodeA);
+            setLinkA(edgePointer, getEdgeRef(nodePointerA));
+            setEdgeRef(nodePointerA, edge);
+            long nodePointerB = toNodePointer(nodeB);
+            setLinkB(edgePointer, getEdgeRef(nodePointerB));
+            setEdgeRef(nodePointerB, edge);
+        }
+    }
+
+    /**
+     * Moves the entries of the given DataAccess in place by following the cycles of the permutation, so we only need
+     * memory for two entries.
+     */
+    private static void permute(DataAccess da, int entryBytes, int[] newIds) {
+        GHBitSet moved = new GHBitSetImpl(newIds.length);
+        byte[] carry = new byte[entryBytes];
+        byte[] tmp = new byte[entryBytes];
+        for (int start = 0; start < newIds.length; start++) {
+            if (moved.contains(start))
+                continue;
+            readEntry(da, (long) start * entryBytes, carry);
+            int pos = start;
+            do {
+                int target = newIds[pos];
+                if (target < 0 || target >= newIds.length || moved.contains(target))
+                    throw new IllegalArgumentException("Not a permutation, invalid target " + target + " for " + pos);
+                readEntry(da, (long) target * entryBytes, tmp);
+                writeEntry(da, (long) target * entryBytes, carry);
+                moved.add(target);
+                byte[] swap = carry;
+                carry = tmp;
+                tmp = swap;
+                pos = target;
+            } while (pos != start);
+        }
+    }
+
+    // we cannot use getBytes/setBytes as they are not supported by RAMIntDataAccess, which we use for the nodes
+    private static void readEntry(DataAccess da, long pointer, byte[] entry) {
+        int i = 0;
+        for (; i + 4 <= entry.length; i += 4)
+            BitUtil.LITTLE.fromInt(entry, da.getInt(pointer + i), i);
+        for (; i < entry.length; i++)
+            entry[i] = da.getByte(pointer + i);
+    }
+
+    private static void writeEntry(DataAccess da, long pointer, byte[] entry) {
+        int i = 0;
+        for (; i + 4 <= entry.length; i += 4)
+            da.setInt(pointer + i, BitUtil.LITTLE.toInt(entry, i));
+        for (; i < entry.length; i++)
+            da.setByte(pointer + i, entry[i]);
+    }
+
     public void ensureNodeCapacity(int node) {
         if (node < nodeCount)
             return;
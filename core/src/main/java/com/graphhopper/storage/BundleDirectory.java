@@ -0,0 +1,164 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+import com.graphhopper.util.StopWatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.util.*;
+
+import static com.graphhopper.util.Helper.toLowerCase;
+
+/**
+ * A read-only Directory that serves the DataAccess objects from a single graph bundle file, see
+ * {@link GraphBundle#write(String, String)}. Every DataAccess is a memory mapped view of its section in the bundle.
+ * Opening the directory only reads and checks the table of contents, the checksums of the sections are verified only
+ * if requested, see {@link GraphBundle#verify(String)}. DataAccess objects that are not contained in the bundle are
+ * created in memory and are not stored.
+ */
+public class BundleDirectory implements Directory {
+    private static final Logger LOGGER = LoggerFactory.getLogger(BundleDirectory.class);
+    private final String bundleFile;
+    private final Map<String, GraphBundle.Section> sections = new LinkedHashMap<>();
+    private final Map<String, DataAccess> map = Collections.synchronizedMap(new HashMap<>());
+
+    public BundleDirectory(String bundleFile) {
+        this(bundleFile, false);
+    }
+
+    /**
+     * @param verify true if the checksums of all sections should be verified, which requires reading the whole file
+     */
+    public BundleDirectory(String bundleFile, boolean verify) {
+        this.bundleFile = bundleFile;
+        if (!new File(bundleFile).isFile())
+            throw new IllegalArgumentException("Bundle file does not exist: " + bundleFile);
+        StopWatch sw = new StopWatch().start();
+        try (RandomAccessFile raFile = new RandomAccessFile(bundleFile, "r")) {
+            List<GraphBundle.Section> toc = GraphBundle.readTableOfContents(raFile, bundleFile);
+            if (verify)
+                GraphBundle.verify(raFile, toc, bundleFile);
+            for (GraphBundle.Section section : toc)
+                sections.put(section.name, section);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Could not open graph bundle " + bundleFile, ex);
+        }
+        LOGGER.info("Opened graph bundle " + bundleFile + " with " + sections.size() + " sections"
+                + (verify ? ", verified checksums" : "") + ", took: " + sw.stop().getSeconds() + "s");
+    }
+
+    /**
+     * @return the names of the DataAccess objects that are stored in the bundle
+     */
+    public Set<String> getNames() {
+        return Collections.unmodifiableSet(sections.keySet());
+    }
+
+    @Override
+    public String getLocation() {
+        return bundleFile;
+    }
+
+    @Override
+    public DataAccess create(String name) {
+        return create(name, getDefaultType());
+    }
+
+    @Override
+    public DataAccess create(String name, int segmentSize) {
+        return create(name, getDefaultType(), segmentSize);
+    }
+
+    @Override
+    public DataAccess create(String name, DAType type) {
+        return create(name, type, -1);
+    }
+
+    /**
+     * Returns a read-only view of the section with the given name. The type and segment size are ignored for them,
+     * because the segment size is stored in the header of the section.
+     */
+    @Override
+    public DataAccess create(String name, DAType type, int segmentSize) {
+        if (!name.equals(toLowerCase(name)))
+            throw new IllegalArgumentException("Since 0.7 DataAccess objects does no longer accept upper case names");
+        if (map.containsKey(name))
+            throw new IllegalStateException("DataAccess " + name + " has already been created");
+
+        GraphBundle.Section section = sections.get(name);
+        // the views use the bundle as their location, which is used for their names in logs and errors
+        DataAccess da = section == null
+                ? new RAMDataAccess(name, bundleFile + "/", false, segmentSize)
+                : new MMapDataAccess(name, bundleFile + "/", bundleFile, section.offset);
+        map.put(name, da);
+        return da;
+    }
+
+    @Override
+    public void remove(String name) {
+        DataAccess old = map.remove(name);
+        if (old == null)
+            throw new IllegalStateException("Couldn't remove DataAccess: " + name);
+        old.close();
+    }
+
+    @Override
+    public DAType getDefaultType() {
+        return DAType.MMAP_RO;
+    }
+
+    @Override
+    public DAType getDefaultType(String dataAccess, boolean preferInts) {
+        return getDefaultType();
+    }
+
+    /**
+     * Closes all DataAccess objects. The bundle file itself is never removed.
+     */
+    @Override
+    public void clear() {
+        close();
+    }
+
+    @Override
+    public void close() {
+        for (DataAccess da : map.values())
+            da.close();
+        map.clear();
+    }
+
+    @Override
+    public Directory create() {
+        return this;
+    }
+
+    @Override
+    public Map<String, DataAccess> getDAs() {
+        return map;
+    }
+
+    @Override
+    public String toString() {
+        return getLocation();
+    }
+}
@@ -17,6 +17,7 @@ public class CHConfig {
     private final String chGraphName;
     private final Weighting weighting;
     private final boolean edgeBased;
+    private final boolean compactShortcuts;
 
     public static CHConfig nodeBased(String chGraphName, Weighting weighting) {
         return new CHConfig(chGraphName, weighting, false);
@@ -27,10 +28,19 @@ public class CHConfig {
     }
 
     public CHConfig(String chGraphName, Weighting weighting, boolean edgeBased) {
+        this(chGraphName, weighting, edgeBased, false);
+    }
+
+    /**
+     * @param compactShortcuts if true the shortcuts are stored in a compact, bit-packed layout after the
+     *                         preparation, see {@link CHStorage#compact()}
+     */
+    public CHConfig(String chGraphName, Weighting weighting, boolean edgeBased, boolean compactShortcuts) {
         validateProfileName(chGraphName);
         this.chGraphName = chGraphName;
         this.weighting = weighting;
         this.edgeBased = edgeBased;
+        this.compactShortcuts = compactShortcuts;
     }
 
     public Weighting getWeighting() {
@@ -41,6 +51,10 @@ public class CHConfig {
         return edgeBased;
     }
 
+    public boolean isCompactShortcuts() {
+        return compactShortcuts;
+    }
+
     public TraversalMode getTraversalMode() {
         return edgeBased ? TraversalMode.EDGE_BASED : TraversalMode.NODE_BASED;
     }
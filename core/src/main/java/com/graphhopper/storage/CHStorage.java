@@ -51,11 +51,23 @@ public class CHStorage {
     private static final double MIN_WEIGHT = 1 / WEIGHT_FACTOR;
 
     // shortcuts
-    private final DataAccess shortcuts;
+    private final Directory dir;
+    private final String name;
+    private final int segmentSize;
+    // the storage that is flushed and loaded
+    private final DataAccess shortcutsStorage;
+    // the storage we read from and write to. when compact shortcuts are requested this is a temporary storage using
+    // the default layout until we call compact()
+    private DataAccess shortcuts;
     private final int S_NODEA, S_NODEB, S_WEIGHT, S_SKIP_EDGE1, S_SKIP_EDGE2, S_ORIG_KEY_FIRST, S_ORIG_KEY_LAST;
     private int shortcutEntryBytes;
     private int shortcutCount = 0;
 
+    // reads the shortcut fields, this is chosen once when the layout is known so the getters do not need to check it
+    private ShortcutLayout layout;
+    private final boolean compactShortcuts;
+    private boolean compact;
+
     // nodes
     private final DataAccess nodesCH;
     private final int N_LEVEL, N_LAST_SC;
@@ -74,7 +86,7 @@ public class CHStorage {
         boolean edgeBased = chConfig.isEdgeBased();
         if (!baseGraph.isFrozen())
             throw new IllegalStateException("graph must be frozen before we can create ch graphs");
-        CHStorage store = new CHStorage(baseGraph.getDirectory(), name, baseGraph.getSegmentSize(), edgeBased);
+        CHStorage store = new CHStorage(baseGraph.getDirectory(), name, baseGraph.getSegmentSize(), edgeBased, chConfig.isCompactShortcuts());
         store.setLowShortcutWeightConsumer(s -> {
             // we just log these to find mapping errors
             NodeAccess nodeAccess = baseGraph.getNodeAccess();
@@ -92,9 +104,23 @@ public class CHStorage {
     }
 
     public CHStorage(Directory dir, String name, int segmentSize, boolean edgeBased) {
+        this(dir, name, segmentSize, edgeBased, false);
+    }
+
+    /**
+     * @param compactShortcuts if true the shortcuts are converted into a compact layout when calling {@link #compact()},
+     *                         which must happen before {@link #flush()}. For existing storages the layout is read from
+     *                         the file instead.
+     */
+    public CHStorage(Directory dir, String name, int segmentSize, boolean edgeBased, boolean compactShortcuts) {
+        this.dir = dir;
+        this.name = name;
+        this.segmentSize = segmentSize;
         this.edgeBased = edgeBased;
+        this.compactShortcuts = compactShortcuts;
         this.nodesCH = dir.create("nodes_ch_" + name, dir.getDefaultType("nodes_ch_" + name, true), segmentSize);
-        this.shortcuts = dir.create("shortcuts_" + name, dir.getDefaultType("shortcuts_" + name, true), segmentSize);
+        this.shortcutsStorage = dir.create("shortcuts_" + name, dir.getDefaultType("shortcuts_" + name, true), segmentSize);
+        this.shortcuts = shortcutsStorage;
         // shortcuts are stored consecutively using this layout (the last two entries only exist for edge-based):
         // NODEA | NODEB | WEIGHT | SKIP_EDGE1 | SKIP_EDGE2 | S_ORIG_FIRST | S_ORIG_LAST
         S_NODEA = 0;
@@ -105,6 +131,7 @@ public class CHStorage {
         S_ORIG_KEY_FIRST = S_SKIP_EDGE2 + (edgeBased ? 4 : 0);
         S_ORIG_KEY_LAST = S_ORIG_KEY_FIRST + (edgeBased ? 4 : 0);
         shortcutEntryBytes = S_ORIG_KEY_LAST + 4;
+        layout = new DefaultShortcutLayout(this, shortcuts);
 
         // nodes/levels are stored consecutively using this layout:
         // LEVEL | N_LAST_SC
@@ -136,10 +163,78 @@ public class CHStorage {
         nodeCount = nodes;
         for (int node = 0; node < nodes; node++)
             setLastShortcut(toNodePointer(node), -1);
+        if (compactShortcuts) {
+            shortcuts = dir.create("shortcuts_tmp_" + name, dir.getDefaultType("shortcuts_" + name, true), segmentSize);
+            layout = new DefaultShortcutLayout(this, shortcuts);
+        }
         shortcuts.create((long) expectedShortcuts * shortcutEntryBytes);
     }
 
+    /**
+     * Converts the shortcuts into a compact layout. Every field only uses as many bits as are needed for the largest
+     * value of this storage and the fields are packed without padding. This includes the weights: they are stored with
+     * the same unit as in the default layout (1/1000), so the compact layout returns exactly the same weights and routes.
+     * Since the shortcuts are stored in the order of the levels of their lower node the shortcuts that are explored
+     * together are also stored close to each other.
+     * <p>
+     * This must be called after all shortcuts were added, the compact shortcuts can no longer be modified. The default
+     * layout is kept in a temporary storage until then, which is removed afterward.
+     */
+    public void compact() {
+        if (!compactShortcuts)
+            throw new IllegalStateException("Compact shortcuts must be requested when creating the CHStorage");
+        if (compact)
+            throw new IllegalStateException("Shortcuts are already compact");
+        long maxSkippedEdge = -1, maxOrigKey = -1, maxWeight = 0;
+        for (int i = 0; i < shortcutCount; i++) {
+            long shortcutPointer = toShortcutPointer(i);
+            maxSkippedEdge = Math.max(maxSkippedEdge, Math.max(getSkippedEdge1(shortcutPointer), getSkippedEdge2(shortcutPointer)));
+            if (edgeBased)
+                maxOrigKey = Math.max(maxOrigKey, Math.max(getOrigEdgeKeyFirst(shortcutPointer), getOrigEdgeKeyLast(shortcutPointer)));
+            long weight = getWeightLong(shortcutPointer);
+            if (weight != MAX_STORED_INTEGER_WEIGHT)
+                maxWeight = Math.max(maxWeight, weight);
+        }
+        // we store skipped edges and orig keys plus one such that -1 (no edge) becomes zero. the largest weight value
+        // is reserved for the infinity marker
+        CompactShortcutLayout c = new CompactShortcutLayout(shortcutsStorage, bitsFor(nodeCount - 1), bitsFor(maxSkippedEdge + 1),
+                edgeBased ? bitsFor(maxOrigKey + 1) : 0, bitsFor(maxWeight + 1));
+
+        shortcutsStorage.create(Math.max(4, (((long) shortcutCount * c.shortcutEntryBits + 31) >>> 5) << 2));
+        for (int i = 0; i < shortcutCount; i++) {
+            long shortcutPointer = (long) i * shortcutEntryBytes;
+            long bitPointer = (long) i * c.shortcutEntryBits;
+            c.setBits(bitPointer, c.nodeBits + 1, shortcuts.getInt(shortcutPointer + S_NODEA) & 0xFFFF_FFFFL);
+            c.setBits(bitPointer + c.C_NODEB, c.nodeBits + 1, shortcuts.getInt(shortcutPointer + S_NODEB) & 0xFFFF_FFFFL);
+            long weight = getWeightLong(shortcutPointer);
+            c.setBits(bitPointer + c.C_WEIGHT, c.weightBits, weight == MAX_STORED_INTEGER_WEIGHT ? c.infinityWeight : weight);
+            c.setBits(bitPointer + c.C_SKIP_EDGE1, c.skipBits, getSkippedEdge1(shortcutPointer) + 1L);
+            c.setBits(bitPointer + c.C_SKIP_EDGE2, c.skipBits, getSkippedEdge2(shortcutPointer) + 1L);
+            if (edgeBased) {
+                c.setBits(bitPointer + c.C_ORIG_KEY_FIRST, c.origKeyBits, getOrigEdgeKeyFirst(shortcutPointer) + 1L);
+                c.setBits(bitPointer + c.C_ORIG_KEY_LAST, c.origKeyBits, getOrigEdgeKeyLast(shortcutPointer) + 1L);
+            }
+        }
+        dir.remove(shortcuts.getName());
+        shortcuts = shortcutsStorage;
+        layout = c;
+        compact = true;
+        LOGGER.info("compacted shortcuts of {}, bytes per shortcut: {} -> {}", name, shortcutEntryBytes,
+                String.format(Locale.ROOT, "%.2f", c.shortcutEntryBits / 8.0));
+    }
+
+    private static int bitsFor(long maxValue) {
+        return Math.max(1, 64 - Long.numberOfLeadingZeros(maxValue));
+    }
+
+    public boolean isCompact() {
+        return compact;
+    }
+
     public void flush() {
+        if (compactShortcuts && !compact)
+            throw new IllegalStateException("Compact shortcuts were requested, so compact() must be called before flush()");
+
         // nodes
         nodesCH.setHeader(0, Constants.VERSION_NODE_CH);
         nodesCH.setHeader(4, nodeCount);
@@ -152,6 +247,14 @@ public class CHStorage {
         shortcuts.setHeader(8, shortcutEntryBytes);
         shortcuts.setHeader(12, numShortcutsExceedingWeight);
         shortcuts.setHeader(16, edgeBased ? 1 : 0);
+        shortcuts.setHeader(20, compact ? 1 : 0);
+        if (compact) {
+            CompactShortcutLayout c = (CompactShortcutLayout) layout;
+            shortcuts.setHeader(24, c.nodeBits);
+            shortcuts.setHeader(28, c.skipBits);
+            shortcuts.setHeader(32, c.origKeyBits);
+            shortcuts.setHeader(36, c.weightBits);
+        }
         shortcuts.flush();
     }
 
@@ -172,13 +275,21 @@ public class CHStorage {
         shortcutEntryBytes = shortcuts.getHeader(8);
         numShortcutsExceedingWeight = shortcuts.getHeader(12);
         edgeBased = shortcuts.getHeader(16) == 1;
+        compact = shortcuts.getHeader(20) == 1;
+        if (compact)
+            layout = new CompactShortcutLayout(shortcuts, shortcuts.getHeader(24), shortcuts.getHeader(28), shortcuts.getHeader(32),
+                    shortcuts.getHeader(36));
+        else
+            layout = new DefaultShortcutLayout(this, shortcuts);
 
         return true;
     }
 
     public void close() {
         nodesCH.close();
-        shortcuts.close();
+        if (shortcuts != shortcutsStorage)
+            shortcuts.close();
+        shortcutsStorage.close();
     }
 
     /**
@@ -202,6 +313,7 @@ public class CHStorage {
     private int shortcut(int nodeA, int nodeB, int accessFlags, double weight, int skip1, int skip2) {
         if (shortcutCount == Integer.MAX_VALUE)
             throw new IllegalStateException("Maximum shortcut count exceeded: " + shortcutCount);
+        checkNotCompact();
         if (lowShortcutWeightConsumer != null && weight < MIN_WEIGHT)
             lowShortcutWeightConsumer.accept(new LowWeightShortcut(nodeA, nodeB, shortcutCount, weight, MIN_WEIGHT));
         long shortcutPointer = (long) shortcutCount * shortcutEntryBytes;
@@ -241,7 +353,7 @@ public class CHStorage {
      */
     public long toShortcutPointer(int shortcut) {
         assert shortcut < shortcutCount : "shortcut " + shortcut + " not in bounds [0, " + shortcutCount + "[";
-        return (long) shortcut * shortcutEntryBytes;
+        return layout.toShortcutPointer(shortcut);
     }
 
     public boolean isEdgeBased() {
@@ -270,6 +382,7 @@ public class CHStorage {
     }
 
     public void setWeight(long shortcutPointer, double weight) {
+        checkNotCompact();
         setWeightInt(shortcutPointer, weightFromDouble(weight));
     }
 
@@ -277,7 +390,15 @@ public class CHStorage {
         shortcuts.setInt(shortcutPointer + S_WEIGHT, weightInt);
     }
 
+    /**
+     * @return the unsigned weight value of the default layout, only used before the shortcuts are compacted
+     */
+    private long getWeightLong(long shortcutPointer) {
+        return shortcuts.getInt(shortcutPointer + S_WEIGHT) & 0xFFFF_FFFFL;
+    }
+
     public void setSkippedEdges(long shortcutPointer, int edge1, int edge2) {
+        checkNotCompact();
         shortcuts.setInt(shortcutPointer + S_SKIP_EDGE1, edge1);
         shortcuts.setInt(shortcutPointer + S_SKIP_EDGE2, edge2);
     }
@@ -285,46 +406,52 @@ public class CHStorage {
     public void setOrigEdgeKeys(long shortcutPointer, int origKeyFirst, int origKeyLast) {
         if (!edgeBased)
             throw new IllegalArgumentException("Setting orig edge keys is only possible for edge-based CH");
+        checkNotCompact();
         shortcuts.setInt(shortcutPointer + S_ORIG_KEY_FIRST, origKeyFirst);
         shortcuts.setInt(shortcutPointer + S_ORIG_KEY_LAST, origKeyLast);
     }
 
     public int getNodeA(long shortcutPointer) {
-        return shortcuts.getInt(shortcutPointer + S_NODEA) >>> 1;
+        return layout.getNodeA(shortcutPointer);
     }
 
     public int getNodeB(long shortcutPointer) {
-        return shortcuts.getInt(shortcutPointer + S_NODEB) >>> 1;
+        return layout.getNodeB(shortcutPointer);
     }
 
     public boolean getFwdAccess(long shortcutPointer) {
-        return (shortcuts.getInt(shortcutPointer + S_NODEA) & 0x1) != 0;
+        return layout.getFwdAccess(shortcutPointer);
     }
 
     public boolean getBwdAccess(long shortcutPointer) {
-        return (shortcuts.getInt(shortcutPointer + S_NODEB) & 0x1) != 0;
+        return layout.getBwdAccess(shortcutPointer);
     }
 
     public double getWeight(long shortcutPointer) {
-        return weightToDouble(shortcuts.getInt(shortcutPointer + S_WEIGHT));
+        return layout.getWeight(shortcutPointer);
     }
 
     public int getSkippedEdge1(long shortcutPointer) {
-        return shortcuts.getInt(shortcutPointer + S_SKIP_EDGE1);
+        return layout.getSkippedEdge1(shortcutPointer);
     }
 
     public int getSkippedEdge2(long shortcutPointer) {
-        return shortcuts.getInt(shortcutPointer + S_SKIP_EDGE2);
+        return layout.getSkippedEdge2(shortcutPointer);
     }
 
     public int getOrigEdgeKeyFirst(long shortcutPointer) {
         assert edgeBased : "orig edge keys are only available for edge-based CH";
-        return shortcuts.getInt(shortcutPointer + S_ORIG_KEY_FIRST);
+        return layout.getOrigEdgeKeyFirst(shortcutPointer);
     }
 
     public int getOrigEdgeKeyLast(long shortcutPointer) {
         assert edgeBased : "orig edge keys are only available for edge-based CH";
-        return shortcuts.getInt(shortcutPointer + S_ORIG_KEY_LAST);
+        return layout.getOrigEdgeKeyLast(shortcutPointer);
+    }
+
+    private void checkNotCompact() {
+        if (compact)
+            throw new IllegalStateException("Compact shortcuts cannot be modified");
     }
 
     public NodeOrderingProvider getNodeOrderingProvider() {
@@ -333,10 +460,18 @@ public class CHStorage {
         // the node ordering is the inverse of the ch levels
         // if we really want to save some memory it could be still reasonable to not create the node ordering here,
         // but search nodesCH for a given level on demand.
+        int contracted = 0;
         for (int i = 0; i < numNodes; ++i) {
             int level = getLevel(toNodePointer(i));
-            nodeOrdering[level] = i;
+            if (level < numNodes) {
+                nodeOrdering[level] = i;
+                contracted++;
+            }
         }
+        // the nodes that were not contracted all have the maximum level, we put them at the end of the ordering
+        for (int i = 0; i < numNodes; ++i)
+            if (getLevel(toNodePointer(i)) == numNodes)
+                nodeOrdering[contracted++] = i;
         return NodeOrderingProvider.fromArray(nodeOrdering);
     }
 
@@ -390,7 +525,7 @@ public class CHStorage {
     }
 
     public String toDetailsString() {
-        return "shortcuts:" + nf(shortcutCount) + " (" + nf(shortcuts.getCapacity() / Helper.MB) + "MB)" +
+        return "shortcuts:" + nf(shortcutCount) + " (" + nf(shortcuts.getCapacity() / Helper.MB) + "MB" + (compact ? ", compact" : "") + ")" +
                 ", nodesCH:" + nf(nodeCount) + " (" + nf(nodesCH.getCapacity() / Helper.MB) + "MB)";
     }
 
@@ -411,7 +546,7 @@ public class CHStorage {
             return (int) Math.round(weight * WEIGHT_FACTOR);
     }
 
-    private double weightToDouble(int intWeight) {
+    private static double weightToDouble(int intWeight) {
         // If the value is too large (> Integer.MAX_VALUE) the `int` is negative. Converted to `long` the JVM fills the
         // high bits with 1's which we remove via "& 0xFFFFFFFFL" to get the unsigned value. (The L is necessary or prepend 8 zeros.)
         long weightLong = (long) intWeight & 0xFFFFFFFFL;
@@ -424,6 +559,212 @@ public class CHStorage {
         return weight;
     }
 
+    /**
+     * Reads the fields of a shortcut. There is one implementation per storage layout, so the layout is only checked
+     * once and not on every access.
+     */
+    private static abstract class ShortcutLayout {
+        abstract long toShortcutPointer(int shortcut);
+
+        abstract int getNodeA(long shortcutPointer);
+
+        abstract int getNodeB(long shortcutPointer);
+
+        abstract boolean getFwdAccess(long shortcutPointer);
+
+        abstract boolean getBwdAccess(long shortcutPointer);
+
+        abstract double getWeight(long shortcutPointer);
+
+        abstract int getSkippedEdge1(long shortcutPointer);
+
+        abstract int getSkippedEdge2(long shortcutPointer);
+
+        abstract int getOrigEdgeKeyFirst(long shortcutPointer);
+
+        abstract int getOrigEdgeKeyLast(long shortcutPointer);
+    }
+
+    /**
+     * The default layout: every field is an int, the pointer is a byte position.
+     */
+    private static final class DefaultShortcutLayout extends ShortcutLayout {
+        private final DataAccess shortcuts;
+        private final int S_NODEA, S_NODEB, S_WEIGHT, S_SKIP_EDGE1, S_SKIP_EDGE2, S_ORIG_KEY_FIRST, S_ORIG_KEY_LAST;
+        private final int shortcutEntryBytes;
+
+        DefaultShortcutLayout(CHStorage store, DataAccess shortcuts) {
+            this.shortcuts = shortcuts;
+            S_NODEA = store.S_NODEA;
+            S_NODEB = store.S_NODEB;
+            S_WEIGHT = store.S_WEIGHT;
+            S_SKIP_EDGE1 = store.S_SKIP_EDGE1;
+            S_SKIP_EDGE2 = store.S_SKIP_EDGE2;
+            S_ORIG_KEY_FIRST = store.S_ORIG_KEY_FIRST;
+            S_ORIG_KEY_LAST = store.S_ORIG_KEY_LAST;
+            shortcutEntryBytes = store.shortcutEntryBytes;
+        }
+
+        @Override
+        long toShortcutPointer(int shortcut) {
+            return (long) shortcut * shortcutEntryBytes;
+        }
+
+        @Override
+        int getNodeA(long shortcutPointer) {
+            return shortcuts.getInt(shortcutPointer + S_NODEA) >>> 1;
+        }
+
+        @Override
+        int getNodeB(long shortcutPointer) {
+            return shortcuts.getInt(shortcutPointer + S_NODEB) >>> 1;
+        }
+
+        @Override
+        boolean getFwdAccess(long shortcutPointer) {
+            return (shortcuts.getInt(shortcutPointer + S_NODEA) & 0x1) != 0;
+        }
+
+        @Override
+        boolean getBwdAccess(long shortcutPointer) {
+            return (shortcuts.getInt(shortcutPointer + S_NODEB) & 0x1) != 0;
+        }
+
+        @Override
+        double getWeight(long shortcutPointer) {
+            return weightToDouble(shortcuts.getInt(shortcutPointer + S_WEIGHT));
+        }
+
+        @Override
+        int getSkippedEdge1(long shortcutPointer) {
+            return shortcuts.getInt(shortcutPointer + S_SKIP_EDGE1);
+        }
+
+        @Override
+        int getSkippedEdge2(long shortcutPointer) {
+            return shortcuts.getInt(shortcutPointer + S_SKIP_EDGE2);
+        }
+
+        @Override
+        int getOrigEdgeKeyFirst(long shortcutPointer) {
+            return shortcuts.getInt(shortcutPointer + S_ORIG_KEY_FIRST);
+        }
+
+        @Override
+        int getOrigEdgeKeyLast(long shortcutPointer) {
+            return shortcuts.getInt(shortcutPointer + S_ORIG_KEY_LAST);
+        }
+    }
+
+    /**
+     * The compact layout, see {@link #compact()}. All positions are given in bits and the pointer is a bit position.
+     */
+    private static final class CompactShortcutLayout extends ShortcutLayout {
+        private final DataAccess shortcuts;
+        private final int nodeBits, skipBits, origKeyBits, weightBits;
+        private final int C_NODEB, C_WEIGHT, C_SKIP_EDGE1, C_SKIP_EDGE2, C_ORIG_KEY_FIRST, C_ORIG_KEY_LAST;
+        private final int shortcutEntryBits;
+        // the largest value that fits into the weight bits marks infinite weights
+        private final long infinityWeight;
+
+        CompactShortcutLayout(DataAccess shortcuts, int nodeBits, int skipBits, int origKeyBits, int weightBits) {
+            this.shortcuts = shortcuts;
+            this.nodeBits = nodeBits;
+            this.skipBits = skipBits;
+            this.origKeyBits = origKeyBits;
+            this.weightBits = weightBits;
+            this.infinityWeight = (1L << weightBits) - 1;
+            // NODEA | NODEB | WEIGHT | SKIP_EDGE1 | SKIP_EDGE2 | ORIG_FIRST | ORIG_LAST, the node fields include the access bit
+            C_NODEB = nodeBits + 1;
+            C_WEIGHT = C_NODEB + nodeBits + 1;
+            C_SKIP_EDGE1 = C_WEIGHT + weightBits;
+            C_SKIP_EDGE2 = C_SKIP_EDGE1 + skipBits;
+            C_ORIG_KEY_FIRST = C_SKIP_EDGE2 + skipBits;
+            C_ORIG_KEY_LAST = C_ORIG_KEY_FIRST + origKeyBits;
+            shortcutEntryBits = C_ORIG_KEY_LAST + origKeyBits;
+        }
+
+        @Override
+        long toShortcutPointer(int shortcut) {
+            return (long) shortcut * shortcutEntryBits;
+        }
+
+        @Override
+        int getNodeA(long shortcutPointer) {
+            return (int) (getBits(shortcutPointer, nodeBits + 1) >>> 1);
+        }
+
+        @Override
+        int getNodeB(long shortcutPointer) {
+            return (int) (getBits(shortcutPointer + C_NODEB, nodeBits + 1) >>> 1);
+        }
+
+        @Override
+        boolean getFwdAccess(long shortcutPointer) {
+            return (getBits(shortcutPointer, nodeBits + 1) & 0x1) != 0;
+        }
+
+        @Override
+        boolean getBwdAccess(long shortcutPointer) {
+            return (getBits(shortcutPointer + C_NODEB, nodeBits + 1) & 0x1) != 0;
+        }
+
+        @Override
+        double getWeight(long shortcutPointer) {
+            long weight = getBits(shortcutPointer + C_WEIGHT, weightBits);
+            if (weight == infinityWeight)
+                return Double.POSITIVE_INFINITY;
+            return weight / WEIGHT_FACTOR;
+        }
+
+        @Override
+        int getSkippedEdge1(long shortcutPointer) {
+            return (int) getBits(shortcutPointer + C_SKIP_EDGE1, skipBits) - 1;
+        }
+
+        @Override
+        int getSkippedEdge2(long shortcutPointer) {
+            return (int) getBits(shortcutPointer + C_SKIP_EDGE2, skipBits) - 1;
+        }
+
+        @Override
+        int getOrigEdgeKeyFirst(long shortcutPointer) {
+            return (int) getBits(shortcutPointer + C_ORIG_KEY_FIRST, origKeyBits) - 1;
+        }
+
+        @Override
+        int getOrigEdgeKeyLast(long shortcutPointer) {
+            return (int) getBits(shortcutPointer + C_ORIG_KEY_LAST, origKeyBits) - 1;
+        }
+
+        /**
+         * Reads up to 32 bits at the given bit position. We only read ints at positions that are multiples of four, so
+         * they never cross segment boundaries and this also works for the int-based DataAccess implementations.
+         */
+        private long getBits(long bitPointer, int bits) {
+            long intPointer = (bitPointer >>> 5) << 2;
+            int shift = (int) (bitPointer & 31);
+            long value = shortcuts.getInt(intPointer) & 0xFFFF_FFFFL;
+            if (shift + bits > 32)
+                value |= (shortcuts.getInt(intPointer + 4) & 0xFFFF_FFFFL) << 32;
+            return (value >>> shift) & ((1L << bits) - 1);
+        }
+
+        void setBits(long bitPointer, int bits, long value) {
+            long intPointer = (bitPointer >>> 5) << 2;
+            int shift = (int) (bitPointer & 31);
+            long mask = ((1L << bits) - 1) << shift;
+            boolean twoInts = shift + bits > 32;
+            long current = shortcuts.getInt(intPointer) & 0xFFFF_FFFFL;
+            if (twoInts)
+                current |= (shortcuts.getInt(intPointer + 4) & 0xFFFF_FFFFL) << 32;
+            current = (current & ~mask) | ((value << shift) & mask);
+            shortcuts.setInt(intPointer, (int) current);
+            if (twoInts)
+                shortcuts.setInt(intPointer + 4, (int) (current >>> 32));
+        }
+    }
+
     public static class LowWeightShortcut {
         int nodeA;
         int nodeB;
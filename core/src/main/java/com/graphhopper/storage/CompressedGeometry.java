@@ -0,0 +1,134 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.PointList;
+
+/**
+ * The compressed format of the pillar nodes: | payload length | lat | lon | (ele) | lat | lon | (ele) | ...
+ * <p>
+ * All values are zigzag encoded varints. Every value is stored as difference to the previous point, only the
+ * first point is stored as is. We do not refer to the tower nodes here, because their coordinates and especially their
+ * elevation can still change after the geometry was written, e.g. by the bridge and tunnel interpolation. Consecutive
+ * pillar nodes are typically a few meters apart, so most coordinates need one or two bytes instead of four.
+ */
+final class CompressedGeometry {
+    private CompressedGeometry() {
+    }
+
+    static byte[] encode(PointList pillarNodes) {
+        boolean is3D = pillarNodes.is3D();
+        byte[] payload = new byte[pillarNodes.size() * (is3D ? 15 : 10)];
+        int offset = 0;
+        int prevLat = 0, prevLon = 0, prevEle = 0;
+        for (int i = 0; i < pillarNodes.size(); i++) {
+            int lat = Helper.degreeToInt(pillarNodes.getLat(i));
+            int lon = Helper.degreeToInt(pillarNodes.getLon(i));
+            // the differences can overflow, but this is fine as the decoding overflows in the same way
+            offset = writeVarInt(payload, offset, zigzag(lat - prevLat));
+            offset = writeVarInt(payload, offset, zigzag(lon - prevLon));
+            prevLat = lat;
+            prevLon = lon;
+            if (is3D) {
+                int ele = Helper.eleToUInt(pillarNodes.getEle(i));
+                offset = writeVarInt(payload, offset, zigzag(ele - prevEle));
+                prevEle = ele;
+            }
+        }
+        byte[] bytes = new byte[varIntLength(offset) + offset];
+        int headerLength = writeVarInt(bytes, 0, offset);
+        System.arraycopy(payload, 0, bytes, headerLength, offset);
+        return bytes;
+    }
+
+    /**
+     * Decodes the payload (without the length header) and adds the points to the given list.
+     */
+    static void decode(byte[] payload, PointList result) {
+        boolean is3D = result.is3D();
+        int lat = 0, lon = 0, ele = 0;
+        int offset = 0;
+        while (offset < payload.length) {
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = payload[offset++];
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) break;
+            }
+            lat += unzigzag(value);
+            value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = payload[offset++];
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) break;
+            }
+            lon += unzigzag(value);
+            if (is3D) {
+                value = 0;
+                for (int shift = 0; ; shift += 7) {
+                    byte b = payload[offset++];
+                    value |= (b & 0x7F) << shift;
+                    if (b >= 0) break;
+                }
+                ele += unzigzag(value);
+                result.add(Helper.intToDegree(lat), Helper.intToDegree(lon), Helper.uIntToEle(ele));
+            } else {
+                result.add(Helper.intToDegree(lat), Helper.intToDegree(lon));
+            }
+        }
+    }
+
+    /**
+     * Reads the payload length at the given position of the way geometry storage.
+     */
+    static int readPayloadLength(DataAccess wayGeometry, long pointer) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = wayGeometry.getByte(pointer++);
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+    }
+
+    static int varIntLength(int value) {
+        int length = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            length++;
+        }
+        return length;
+    }
+
+    private static int writeVarInt(byte[] bytes, int offset, int value) {
+        while ((value & ~0x7F) != 0) {
+            bytes[offset++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[offset++] = (byte) value;
+        return offset;
+    }
+
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
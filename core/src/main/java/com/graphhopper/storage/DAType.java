@@ -53,20 +53,37 @@ public class DAType {
      * embedded data stores.
      */
     public static final DAType MMAP_RO = new DAType(MemRef.MMAP, true, false, false);
+
+    /**
+     * Memory mapped DA object that maps the file in large, overlapping windows and therefore never splits a value
+     * across two buffers. Suited for big graphs. See MMapLargeDataAccess.
+     */
+    public static final DAType MMAP_LARGE = new DAType(MemRef.MMAP, true, false, true, true);
+
+    /**
+     * Read-only variant of MMAP_LARGE.
+     */
+    public static final DAType MMAP_LARGE_RO = new DAType(MemRef.MMAP, true, false, false, true);
     private final MemRef memRef;
     private final boolean storing;
     private final boolean integ;
     private final boolean allowWrites;
+    private final boolean large;
 
     public DAType(DAType type) {
-        this(type.getMemRef(), type.isStoring(), type.isInteg(), type.isAllowWrites());
+        this(type.getMemRef(), type.isStoring(), type.isInteg(), type.isAllowWrites(), type.isLarge());
     }
 
     public DAType(MemRef memRef, boolean storing, boolean integ, boolean allowWrites) {
+        this(memRef, storing, integ, allowWrites, false);
+    }
+
+    public DAType(MemRef memRef, boolean storing, boolean integ, boolean allowWrites, boolean large) {
         this.memRef = memRef;
         this.storing = storing;
         this.integ = integ;
         this.allowWrites = allowWrites;
+        this.large = large;
     }
 
     public static DAType fromString(String dataAccess) {
@@ -74,6 +91,10 @@ public class DAType {
         DAType type;
         if (dataAccess.contains("SYNC"))
             throw new IllegalArgumentException("SYNC option is no longer supported, see #982");
+        else if (dataAccess.contains("MMAP_LARGE_RO"))
+            type = DAType.MMAP_LARGE_RO;
+        else if (dataAccess.contains("MMAP_LARGE"))
+            type = DAType.MMAP_LARGE;
         else if (dataAccess.contains("MMAP_RO"))
             type = DAType.MMAP_RO;
         else if (dataAccess.contains("MMAP"))
@@ -109,6 +130,13 @@ public class DAType {
         return memRef == MemRef.MMAP;
     }
 
+    /**
+     * Memory mapped in large windows? default is false
+     */
+    public boolean isLarge() {
+        return large;
+    }
+
     /**
      * Temporary data or store (with loading and storing)? default is false
      */
@@ -127,7 +155,7 @@ public class DAType {
     public String toString() {
         String str;
         if (getMemRef() == MemRef.MMAP)
-            str = "MMAP";
+            str = isLarge() ? "MMAP_LARGE" : "MMAP";
         else
             str = "RAM";
 
@@ -144,6 +172,7 @@ public class DAType {
         hash = 59 * hash + 37 * this.memRef.hashCode();
         hash = 59 * hash + (this.storing ? 1 : 0);
         hash = 59 * hash + (this.integ ? 1 : 0);
+        hash = 59 * hash + (this.large ? 1 : 0);
         return hash;
     }
 
@@ -160,6 +189,8 @@ public class DAType {
             return false;
         if (this.integ != other.integ)
             return false;
+        if (this.large != other.large)
+            return false;
         return true;
     }
 
@@ -0,0 +1,230 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+import com.graphhopper.util.Helper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reads memory mapped DataAccess objects in the background so their pages are in the page cache before they are
+ * needed by the first requests. In contrast to {@link MMapDataAccess#load(int)} this does not block the loading and
+ * the storages are read in the order of the given name patterns, e.g. CH shortcuts first and the geometry last. The
+ * throughput can be limited so the warmup does not saturate the disk while requests are served already.
+ * <p>
+ * The storages are split into chunks and every touched chunk counts as warm, see {@link #getWarmedBytes()}. This
+ * assumes that the page cache is large enough to keep the selected storages, otherwise the first chunks might be
+ * evicted again before the warmup is done.
+ */
+public class DataAccessWarmup {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DataAccessWarmup.class);
+    static final int PAGE_SIZE = 4096;
+    static final int CHUNK_SIZE = 1 << 20;
+
+    private final List<DataAccess> dataAccesses;
+    // the start of every DataAccess in the (chunk aligned) concatenation of all DataAccess objects
+    private final long[] offsets;
+    private final long totalBytes;
+    private final int threads;
+    private final double maxBytesPerSecond;
+    private final AtomicLong nextChunk = new AtomicLong();
+    private final AtomicLong warmedBytes = new AtomicLong();
+    private final AtomicLong nextFreeNanos = new AtomicLong(System.nanoTime());
+    private final CountDownLatch finished;
+    private volatile boolean started;
+    private volatile boolean stopped;
+
+    /**
+     * @param dataAccesses   the DataAccess objects to read, sorted by priority
+     * @param threads        the number of threads reading concurrently
+     * @param maxMBPerSecond the maximum number of megabytes per second to read or 0 if this should not be limited
+     */
+    public DataAccessWarmup(List<DataAccess> dataAccesses, int threads, double maxMBPerSecond) {
+        if (threads < 1)
+            throw new IllegalArgumentException("threads must be positive, but was: " + threads);
+        if (maxMBPerSecond < 0)
+            throw new IllegalArgumentException("maxMBPerSecond must not be negative, but was: " + maxMBPerSecond);
+        this.dataAccesses = new ArrayList<>(dataAccesses);
+        this.threads = threads;
+        this.maxBytesPerSecond = maxMBPerSecond * Helper.MB;
+        offsets = new long[this.dataAccesses.size() + 1];
+        long bytes = 0;
+        for (int i = 0; i < this.dataAccesses.size(); i++) {
+            long capacity = this.dataAccesses.get(i).getCapacity();
+            bytes += capacity;
+            offsets[i + 1] = offsets[i] + (capacity + CHUNK_SIZE - 1) / CHUNK_SIZE * CHUNK_SIZE;
+        }
+        totalBytes = bytes;
+        finished = new CountDownLatch(threads);
+    }
+
+    /**
+     * Selects the memory mapped DataAccess objects whose names match one of the given patterns. The result is sorted
+     * by the index of the first matching pattern and then by name.
+     */
+    public static List<DataAccess> select(Collection<DataAccess> dataAccesses, List<String> patterns) {
+        List<DataAccess> result = new ArrayList<>();
+        for (DataAccess da : dataAccesses)
+            if (da.getType().isMMap() && !da.isClosed() && getPriority(da.getName(), patterns) >= 0)
+                result.add(da);
+        result.sort(Comparator.<DataAccess>comparingInt(da -> getPriority(da.getName(), patterns)).thenComparing(DataAccess::getName));
+        return result;
+    }
+
+    private static int getPriority(String name, List<String> patterns) {
+        for (int i = 0; i < patterns.size(); i++)
+            if (name.matches(patterns.get(i)))
+                return i;
+        return -1;
+    }
+
+    /**
+     * Starts the background threads and returns immediately.
+     */
+    public DataAccessWarmup start() {
+        if (started)
+            throw new IllegalStateException("Warmup was already started");
+        started = true;
+        LOGGER.info("Starting warmup of {} with {} thread(s), {}MB", dataAccesses, threads, totalBytes / Helper.MB);
+        long start = System.nanoTime();
+        for (int i = 0; i < threads; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    run();
+                } catch (Exception ex) {
+                    LOGGER.warn("Warmup failed, continuing without it", ex);
+                } finally {
+                    finished.countDown();
+                    if (finished.getCount() == 0 && !stopped)
+                        LOGGER.info("Finished warmup of {}MB in {}s", totalBytes / Helper.MB, (System.nanoTime() - start) / 1_000_000_000);
+                }
+            }, "warmup-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        return this;
+    }
+
+    /**
+     * Reads chunks until all DataAccess objects were read or the warmup was stopped. This can be called from
+     * multiple threads concurrently.
+     */
+    void run() {
+        long total = offsets[offsets.length - 1];
+        while (!stopped) {
+            long chunkStart = nextChunk.getAndAdd(CHUNK_SIZE);
+            if (chunkStart >= total)
+                return;
+            int index = findDataAccess(chunkStart);
+            DataAccess da = dataAccesses.get(index);
+            long from = chunkStart - offsets[index];
+            long to = Math.min(from + CHUNK_SIZE, da.getCapacity());
+            if (to <= from)
+                continue;
+            throttle(to - from);
+            // reading a single byte is enough to load the whole page
+            for (long pos = from; pos < to && !stopped; pos += PAGE_SIZE)
+                da.getByte(pos);
+            warmedBytes.addAndGet(to - from);
+        }
+    }
+
+    private int findDataAccess(long chunkStart) {
+        int index = 0;
+        while (offsets[index + 1] <= chunkStart)
+            index++;
+        return index;
+    }
+
+    private void throttle(long bytes) {
+        if (maxBytesPerSecond <= 0)
+            return;
+        long duration = (long) (bytes * 1e9 / maxBytesPerSecond);
+        long start = nextFreeNanos.getAndUpdate(prev -> Math.max(prev, System.nanoTime()) + duration);
+        long waitNanos;
+        // sleep in small steps so stopping the warmup is not delayed
+        while (!stopped && (waitNanos = start - System.nanoTime()) > 0)
+            try {
+                TimeUnit.NANOSECONDS.sleep(Math.min(waitNanos, 50_000_000L));
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                stopped = true;
+            }
+    }
+
+    /**
+     * @return true if all chunks were read (or the warmup failed). Stopping the warmup does not make it ready.
+     */
+    public boolean isReady() {
+        return finished.getCount() == 0 && !stopped;
+    }
+
+    /**
+     * Waits until the warmup is ready, but at most the given time.
+     *
+     * @return true if the warmup is ready
+     */
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        if (!started)
+            throw new IllegalStateException("Warmup was not started");
+        return finished.await(timeout, unit) && !stopped;
+    }
+
+    public long getWarmedBytes() {
+        return warmedBytes.get();
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * @return the fraction of the bytes that were read already, between 0 and 1
+     */
+    public double getProgress() {
+        return totalBytes == 0 ? 1 : (double) warmedBytes.get() / totalBytes;
+    }
+
+    /**
+     * Stops the warmup and waits until the threads are done. This must be called before the DataAccess objects are
+     * closed, because reading an unmapped buffer can crash the JVM.
+     */
+    public void stop() {
+        stopped = true;
+        if (!started)
+            return;
+        try {
+            finished.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "warmup " + Math.round(getProgress() * 100) + "% of " + totalBytes / Helper.MB + "MB";
+    }
+}
@@ -53,6 +53,18 @@ public interface Directory {
      */
     void remove(String name);
 
+    /**
+     * Releases the resources of the specified object and removes it from the directory, but keeps its backing file.
+     * A new object with the same name can be created afterwards to load it again. The default implementation removes
+     * the object from {@link #getDAs()}, so it needs to be overridden if this map cannot be modified.
+     */
+    default void close(String name) {
+        DataAccess old = getDAs().remove(name);
+        if (old == null)
+            throw new IllegalStateException("Couldn't close DataAccess: " + name);
+        old.close();
+    }
+
     /**
      * @return the default type of a newly created DataAccess object
      */
@@ -87,11 +87,15 @@ public class GHDirectory implements Directory {
 
     public void loadMMap() {
         for (DataAccess da : map.values()) {
-            if (!(da instanceof MMapDataAccess))
+            if (!(da instanceof MMapDataAccess) && !(da instanceof MMapLargeDataAccess))
                 continue;
             int preload = getPreload(da.getName());
-            if (preload > 0)
+            if (preload <= 0)
+                continue;
+            if (da instanceof MMapDataAccess)
                 ((MMapDataAccess) da).load(preload);
+            else
+                ((MMapLargeDataAccess) da).load(preload);
         }
     }
 
@@ -138,7 +142,10 @@ public class GHDirectory implements Directory {
             else
                 da = new RAMDataAccess(name, location, false, segmentSize);
         } else if (type.isMMap()) {
-            da = new MMapDataAccess(name, location, type.isAllowWrites(), segmentSize);
+            if (type.isLarge())
+                da = new MMapLargeDataAccess(name, location, type.isAllowWrites(), segmentSize);
+            else
+                da = new MMapDataAccess(name, location, type.isAllowWrites(), segmentSize);
         } else {
             throw new IllegalArgumentException("DAType not supported " + type);
         }
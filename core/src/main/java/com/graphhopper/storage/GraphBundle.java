@@ -0,0 +1,273 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.StopWatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+
+import static com.graphhopper.storage.AbstractDataAccess.HEADER_OFFSET;
+
+/**
+ * A graph bundle is a single file that contains all DataAccess files of a graph folder including the properties. It
+ * starts with a table of contents followed by the files, every file starts at a multiple of {@link #ALIGNMENT} and
+ * is stored unchanged, i.e. with its own header, so it can be memory mapped directly, see {@link BundleDirectory}.
+ * Every section and the table of contents have a CRC32C checksum to detect corrupted files before they are used.
+ * <p>
+ * Layout: the magic bytes "GHBUNDLE", the format version, the number of sections and for every section its name,
+ * offset, length, padded length and checksum followed by the checksum of all previous bytes. All numbers are big endian as written
+ * by {@link DataOutputStream}.
+ */
+public class GraphBundle {
+    private static final Logger LOGGER = LoggerFactory.getLogger(GraphBundle.class);
+    static final byte[] MAGIC = "GHBUNDLE".getBytes(StandardCharsets.US_ASCII);
+    static final int VERSION = 1;
+    static final int ALIGNMENT = 4096;
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private GraphBundle() {
+    }
+
+    /**
+     * Writes all DataAccess files of the given graph folder into a single bundle file. Other files like the lock
+     * file or properties.txt are skipped. The graph must not be modified while this method runs.
+     */
+    public static void write(String graphLocation, String bundleFile) {
+        File folder = new File(graphLocation);
+        File[] files = folder.listFiles(File::isFile);
+        if (files == null)
+            throw new IllegalArgumentException("Graph folder does not exist: " + graphLocation);
+        Arrays.sort(files);
+        StopWatch sw = new StopWatch().start();
+        List<Section> sections = new ArrayList<>();
+        List<File> sectionFiles = new ArrayList<>();
+        try {
+            for (File file : files) {
+                long mappedLength = getMappedLength(file);
+                if (mappedLength < 0) {
+                    LOGGER.info("Skipping " + file + ", it is not a DataAccess file");
+                    continue;
+                }
+                // the offset is set below, we reserve the space the DataAccess needs for its last segment
+                sections.add(new Section(file.getName(), 0, file.length(), Math.max(file.length(), mappedLength), 0));
+                sectionFiles.add(file);
+            }
+            if (sections.isEmpty())
+                throw new IllegalArgumentException("Graph folder contains no DataAccess files: " + graphLocation);
+
+            long offset = align(toBytes(sections).length);
+            for (int i = 0; i < sections.size(); i++) {
+                Section section = sections.get(i);
+                sections.set(i, new Section(section.name, offset, section.length, section.paddedLength, 0));
+                offset = align(offset + section.paddedLength);
+            }
+
+            try (RandomAccessFile out = new RandomAccessFile(bundleFile, "rw")) {
+                out.setLength(0);
+                FileChannel outChannel = out.getChannel();
+                ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+                for (int i = 0; i < sections.size(); i++) {
+                    Section section = sections.get(i);
+                    CRC32C crc = new CRC32C();
+                    try (FileChannel in = new FileInputStream(sectionFiles.get(i)).getChannel()) {
+                        long position = section.offset;
+                        while (true) {
+                            buffer.clear();
+                            if (in.read(buffer) < 0)
+                                break;
+                            buffer.flip();
+                            crc.update(buffer.duplicate());
+                            while (buffer.hasRemaining())
+                                position += outChannel.write(buffer, position);
+                        }
+                        if (position != section.offset + section.length)
+                            throw new IllegalStateException("File " + sectionFiles.get(i) + " was modified while writing the bundle");
+                    }
+                    sections.set(i, new Section(section.name, section.offset, section.length, section.paddedLength, crc.getValue()));
+                }
+                out.setLength(offset);
+                out.seek(0);
+                out.write(toBytes(sections));
+                out.getFD().sync();
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Could not write graph bundle " + bundleFile, ex);
+        }
+        LOGGER.info("Wrote graph bundle " + bundleFile + " with " + sections.size() + " sections, "
+                + getBundleLength(sections) / Helper.MB + "MB, took: " + sw.stop().getSeconds() + "s");
+    }
+
+    /**
+     * @return the number of bytes a memory mapped DataAccess will map for the given file or -1 if it is not a
+     * DataAccess file, see {@link AbstractDataAccess#writeHeader}
+     */
+    private static long getMappedLength(File file) throws IOException {
+        if (file.length() < HEADER_OFFSET)
+            return -1;
+        try (RandomAccessFile raFile = new RandomAccessFile(file, "r")) {
+            if (raFile.readShort() != 2 || raFile.readByte() != 'G' || raFile.readByte() != 'H')
+                return -1;
+            long bytes = raFile.readLong();
+            int segmentSize = raFile.readInt();
+            if (segmentSize <= 0)
+                return -1;
+            long segments = (Math.max(bytes - HEADER_OFFSET, 0) + segmentSize - 1) / segmentSize;
+            return HEADER_OFFSET + segments * segmentSize;
+        }
+    }
+
+    private static long getBundleLength(List<Section> sections) {
+        Section last = sections.get(sections.size() - 1);
+        return align(last.offset + last.paddedLength);
+    }
+
+    private static long align(long bytes) {
+        return (bytes + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+
+    private static byte[] toBytes(List<Section> sections) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.write(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(sections.size());
+        for (Section section : sections) {
+            out.writeUTF(section.name);
+            out.writeLong(section.offset);
+            out.writeLong(section.length);
+            out.writeLong(section.paddedLength);
+            out.writeLong(section.checksum);
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(bytes.toByteArray());
+        out.writeLong(crc.getValue());
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads the table of contents of the given bundle and checks its checksum.
+     */
+    static List<Section> readTableOfContents(RandomAccessFile raFile, String bundleFile) throws IOException {
+        CRC32C crc = new CRC32C();
+        // the stream is not closed as this would close the file
+        DataInputStream in = new DataInputStream(new CheckedInputStream(
+                new BufferedInputStream(Channels.newInputStream(raFile.getChannel().position(0))), crc));
+        byte[] magic = new byte[MAGIC.length];
+        try {
+            in.readFully(magic);
+            if (!Arrays.equals(MAGIC, magic))
+                throw new IllegalArgumentException("Not a GraphHopper bundle: " + bundleFile);
+            int version = in.readInt();
+            if (version != VERSION)
+                throw new IllegalArgumentException("Unsupported version " + version + " of bundle " + bundleFile + ", expected: " + VERSION);
+            int count = in.readInt();
+            List<Section> sections = new ArrayList<>(count);
+            for (int i = 0; i < count; i++)
+                sections.add(new Section(in.readUTF(), in.readLong(), in.readLong(), in.readLong(), in.readLong()));
+            long expected = crc.getValue();
+            if (in.readLong() != expected)
+                throw new IllegalStateException("The table of contents of bundle " + bundleFile + " is corrupt");
+            return Collections.unmodifiableList(sections);
+        } catch (EOFException ex) {
+            throw new IllegalStateException("The bundle " + bundleFile + " is truncated", ex);
+        }
+    }
+
+    /**
+     * Reads the whole bundle and compares the checksums of all sections with the ones in the table of contents.
+     *
+     * @throws IllegalStateException if the bundle is corrupt
+     */
+    public static void verify(String bundleFile) {
+        StopWatch sw = new StopWatch().start();
+        try (RandomAccessFile raFile = new RandomAccessFile(bundleFile, "r")) {
+            List<Section> sections = readTableOfContents(raFile, bundleFile);
+            verify(raFile, sections, bundleFile);
+            LOGGER.info("Verified graph bundle " + bundleFile + " with " + sections.size() + " sections, took: "
+                    + sw.stop().getSeconds() + "s");
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Could not verify graph bundle " + bundleFile, ex);
+        }
+    }
+
+    /**
+     * Reads all sections of the bundle and compares their checksums with the ones in the table of contents.
+     *
+     * @throws IllegalStateException if the bundle is corrupt
+     */
+    static void verify(RandomAccessFile raFile, List<Section> sections, String bundleFile) throws IOException {
+        FileChannel channel = raFile.getChannel();
+        if (!sections.isEmpty() && channel.size() < getBundleLength(sections))
+            throw new IllegalStateException("The bundle " + bundleFile + " is truncated");
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        for (Section section : sections) {
+            CRC32C crc = new CRC32C();
+            long position = section.offset;
+            long end = section.offset + section.length;
+            while (position < end) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), end - position));
+                int read = channel.read(buffer, position);
+                if (read < 0)
+                    throw new IllegalStateException("The bundle " + bundleFile + " is truncated");
+                position += read;
+                buffer.flip();
+                crc.update(buffer);
+            }
+            if (crc.getValue() != section.checksum)
+                throw new IllegalStateException("Checksum of section " + section.name + " in bundle " + bundleFile + " does not match");
+        }
+    }
+
+    static class Section {
+        final String name;
+        final long offset;
+        // the length of the original file
+        final long length;
+        // the length including the zeros that are needed to map the last segment of the DataAccess
+        final long paddedLength;
+        final long checksum;
+
+        Section(String name, long offset, long length, long paddedLength, long checksum) {
+            this.name = name;
+            this.offset = offset;
+            this.length = length;
+            this.paddedLength = paddedLength;
+            this.checksum = checksum;
+        }
+
+        @Override
+        public String toString() {
+            return name + "@" + offset + "+" + length;
+        }
+    }
+}
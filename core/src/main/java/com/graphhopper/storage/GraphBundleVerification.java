@@ -0,0 +1,100 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Verifies the checksums of all sections of a graph bundle in the background, see {@link GraphBundle#verify(String)}.
+ * Loading the bundle does not wait for this, but a server should not receive traffic before {@link #isValid()} is
+ * true, e.g. by reporting itself as unhealthy until then.
+ */
+public class GraphBundleVerification {
+    private static final Logger LOGGER = LoggerFactory.getLogger(GraphBundleVerification.class);
+
+    private final String bundleFile;
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private volatile RuntimeException error;
+    private volatile boolean started;
+
+    public GraphBundleVerification(String bundleFile) {
+        this.bundleFile = bundleFile;
+    }
+
+    /**
+     * Starts the verification in a background thread and returns immediately.
+     */
+    public GraphBundleVerification start() {
+        if (started)
+            throw new IllegalStateException("Verification was already started");
+        started = true;
+        Thread thread = new Thread(() -> {
+            try {
+                GraphBundle.verify(bundleFile);
+            } catch (RuntimeException ex) {
+                error = ex;
+                LOGGER.error("Verification of graph bundle " + bundleFile + " failed", ex);
+            } finally {
+                finished.countDown();
+            }
+        }, "bundle-verification");
+        thread.setDaemon(true);
+        thread.start();
+        return this;
+    }
+
+    public boolean isDone() {
+        return finished.getCount() == 0;
+    }
+
+    /**
+     * @return true if the verification is done and the checksums of all sections match
+     */
+    public boolean isValid() {
+        return isDone() && error == null;
+    }
+
+    /**
+     * @return the reason why the verification failed or null if it did not fail (yet)
+     */
+    public RuntimeException getError() {
+        return error;
+    }
+
+    /**
+     * Waits until the verification is done, but at most the given time.
+     *
+     * @return true if the verification is done
+     */
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        if (!started)
+            throw new IllegalStateException("Verification was not started");
+        return finished.await(timeout, unit);
+    }
+
+    @Override
+    public String toString() {
+        if (!isDone())
+            return "verifying graph bundle " + bundleFile;
+        return error == null ? "verified graph bundle " + bundleFile : "graph bundle " + bundleFile + " is corrupt: " + error.getMessage();
+    }
+}
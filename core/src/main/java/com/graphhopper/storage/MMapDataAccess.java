@@ -49,12 +49,28 @@ import java.util.List;
 public final class MMapDataAccess extends AbstractDataAccess {
 
     private final boolean allowWrites;
+    // the file and the position in this file where the data is stored, this differs from the full name only for
+    // sections of a graph bundle, see BundleDirectory
+    private final String fileName;
+    private final long fileOffset;
     private RandomAccessFile raFile;
     private final List<MappedByteBuffer> segments = new ArrayList<>();
 
     MMapDataAccess(String name, String location, boolean allowWrites, int segmentSize) {
         super(name, location, segmentSize);
         this.allowWrites = allowWrites;
+        this.fileName = getFullName();
+        this.fileOffset = 0;
+    }
+
+    /**
+     * Creates a read-only DataAccess for the data stored in the given file starting at the given position.
+     */
+    MMapDataAccess(String name, String location, String fileName, long fileOffset) {
+        super(name, location, -1);
+        this.allowWrites = false;
+        this.fileName = fileName;
+        this.fileOffset = fileOffset;
     }
 
     public static void cleanMappedByteBuffer(final ByteBuffer buffer) {
@@ -83,7 +99,7 @@ public final class MMapDataAccess extends AbstractDataAccess {
 
         try {
             // raFile necessary for loadExisting and create
-            raFile = new RandomAccessFile(getFullName(), allowWrites ? "rw" : "r");
+            raFile = new RandomAccessFile(fileName, allowWrites ? "rw" : "r");
         } catch (IOException ex) {
             throw new RuntimeException(ex);
         }
@@ -94,6 +110,8 @@ public final class MMapDataAccess extends AbstractDataAccess {
         if (!segments.isEmpty()) {
             throw new IllegalThreadStateException("already created");
         }
+        if (fileOffset > 0)
+            throw new IllegalStateException("Cannot create " + getName() + ", it is part of the read-only file " + fileName);
         initRandomAccessFile();
         bytes = Math.max(10 * 4, bytes);
         ensureCapacity(bytes);
@@ -102,7 +120,7 @@ public final class MMapDataAccess extends AbstractDataAccess {
 
     @Override
     public boolean ensureCapacity(long bytes) {
-        return mapIt(HEADER_OFFSET, bytes);
+        return mapIt(fileOffset + HEADER_OFFSET, bytes);
     }
 
     private boolean mapIt(long offset, long byteCount) {
@@ -193,17 +211,17 @@ public final class MMapDataAccess extends AbstractDataAccess {
         if (isClosed())
             throw new IllegalStateException("already closed");
 
-        File file = new File(getFullName());
+        File file = new File(fileName);
         if (!file.exists() || file.length() == 0)
             return false;
 
         initRandomAccessFile();
         try {
-            long byteCount = readHeader(raFile);
+            long byteCount = readHeader(raFile, fileOffset);
             if (byteCount < 0)
                 return false;
 
-            mapIt(HEADER_OFFSET, byteCount - HEADER_OFFSET);
+            mapIt(fileOffset + HEADER_OFFSET, byteCount - HEADER_OFFSET);
             return true;
         } catch (IOException ex) {
             throw new RuntimeException("Problem while loading " + getFullName(), ex);
@@ -214,6 +232,8 @@ public final class MMapDataAccess extends AbstractDataAccess {
     public void flush() {
         if (isClosed())
             throw new IllegalStateException("already closed");
+        if (fileOffset > 0)
+            throw new IllegalStateException("Cannot flush " + getName() + ", it is part of the read-only file " + fileName);
 
         try {
             for (MappedByteBuffer bb : segments) {
@@ -0,0 +1,286 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+import com.graphhopper.util.Helper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * A memory-mapped DataAccess that maps the file in a few large windows (1GB by default) instead of many small
+ * segments. Every window additionally maps the first bytes of its successor, so that an int or short is always
+ * read from or written to exactly one buffer: there is no special case for values crossing a window boundary and
+ * no limit on the number of segments in practice, also for files larger than 2GB.
+ * <p>
+ * The file layout is identical to the one of MMapDataAccess and RAMDataAccess, i.e. a graph folder can be switched
+ * between these types without a new import. Until the capacity reaches the window size it grows in powers of two, so
+ * small files are not blown up to the window size.
+ * <p>
+ * The configured segment size is ignored, because small windows would mean many mappings. The window size is fixed
+ * for the lifetime of the object, so accessing a value only needs a single shift and mask to find its window.
+ */
+public final class MMapLargeDataAccess extends AbstractDataAccess {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MMapLargeDataAccess.class);
+    // the largest value that can be accessed at a single position
+    private static final int OVERLAP = 8;
+    private static final int WINDOW_SIZE = 1 << 30;
+    private final boolean allowWrites;
+    private final int windowSize;
+    private final int windowPower;
+    private final int windowMask;
+    private RandomAccessFile raFile;
+    private MappedByteBuffer[] windows = new MappedByteBuffer[0];
+    private long capacity;
+
+    MMapLargeDataAccess(String name, String location, boolean allowWrites, int segmentSize) {
+        this(name, location, allowWrites, segmentSize, WINDOW_SIZE);
+    }
+
+    /**
+     * @param windowSize is only smaller than the default in tests, which need to access values near window boundaries
+     */
+    MMapLargeDataAccess(String name, String location, boolean allowWrites, int segmentSize, int windowSize) {
+        super(name, location, windowSize);
+        if (segmentSize >= 0 && segmentSize != windowSize)
+            LOGGER.info("Ignoring segment size " + segmentSize + " of " + name + ", it is always mapped in windows of "
+                    + windowSize + " bytes");
+        this.allowWrites = allowWrites;
+        // setSegmentSize rounds to a power of two and applies the minimum segment size
+        this.windowSize = segmentSizeInBytes;
+        this.windowPower = segmentSizePower;
+        this.windowMask = indexDivisor;
+    }
+
+    private void initRandomAccessFile() {
+        if (raFile != null)
+            return;
+
+        try {
+            raFile = new RandomAccessFile(getFullName(), allowWrites ? "rw" : "r");
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    @Override
+    public MMapLargeDataAccess create(long bytes) {
+        if (windows.length > 0)
+            throw new IllegalThreadStateException("already created");
+        initRandomAccessFile();
+        ensureCapacity(Math.max(10 * 4, bytes));
+        return this;
+    }
+
+    @Override
+    public boolean ensureCapacity(long bytes) {
+        if (bytes < 0)
+            throw new IllegalArgumentException("new capacity has to be strictly positive");
+        if (bytes <= capacity)
+            return false;
+
+        long newCapacity;
+        if (bytes < windowSize)
+            // grow small files in powers of two, this keeps the capacity a multiple of the segment size we store
+            newCapacity = Math.max(SEGMENT_SIZE_MIN, Long.highestOneBit(bytes - 1) << 1);
+        else
+            newCapacity = ((bytes + windowSize - 1) >>> windowPower) << windowPower;
+        mapIt(newCapacity);
+        return true;
+    }
+
+    private void mapIt(long newCapacity) {
+        long windowCount = (newCapacity + windowSize - 1) >>> windowPower;
+        if (windowCount > Integer.MAX_VALUE)
+            throw new IllegalStateException("Too many windows need to be mapped for " + name + " and " + newCapacity + " bytes");
+
+        // a partially mapped last window is replaced with a bigger one. We do not unmap the old buffer explicitly as
+        // readers could still use it. It will be unmapped when it is garbage collected.
+        int from = capacity % windowSize == 0 ? windows.length : windows.length - 1;
+        MappedByteBuffer[] newWindows = Arrays.copyOf(windows, (int) windowCount);
+        int i = from;
+        try {
+            for (; i < newWindows.length; i++) {
+                long start = (long) i << windowPower;
+                newWindows[i] = newByteBuffer(HEADER_OFFSET + start, Math.min(windowSize, newCapacity - start) + OVERLAP);
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException("Couldn't map window " + i + " of " + windowCount + " with " + windowSize
+                    + " for " + name + " and " + newCapacity + " bytes, " + Helper.getMemInfo(), ex);
+        }
+        windows = newWindows;
+        capacity = newCapacity;
+    }
+
+    private MappedByteBuffer newByteBuffer(long offset, long byteCount) throws IOException {
+        if (!allowWrites)
+            // a read-only mapping cannot increase the file length, so the last window might not include the overlap
+            byteCount = Math.min(byteCount, raFile.length() - offset);
+        MappedByteBuffer buf = raFile.getChannel().map(
+                allowWrites ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY, offset, byteCount);
+        buf.order(byteOrder);
+        return buf;
+    }
+
+    @Override
+    public boolean loadExisting() {
+        if (windows.length > 0)
+            throw new IllegalStateException("already initialized");
+
+        if (isClosed())
+            throw new IllegalStateException("already closed");
+
+        File file = new File(getFullName());
+        if (!file.exists() || file.length() == 0)
+            return false;
+
+        initRandomAccessFile();
+        try {
+            long byteCount = readHeader(raFile);
+            if (byteCount < 0)
+                return false;
+
+            // the stored segment size only tells us the granularity of the file, we still map it in large windows
+            setSegmentSize(windowSize);
+            mapIt(byteCount - HEADER_OFFSET);
+            return true;
+        } catch (IOException ex) {
+            throw new RuntimeException("Problem while loading " + getFullName(), ex);
+        }
+    }
+
+    @Override
+    public void flush() {
+        if (isClosed())
+            throw new IllegalStateException("already closed");
+
+        try {
+            for (MappedByteBuffer bb : windows) {
+                bb.force();
+            }
+            // store the biggest power of two that divides the capacity as segment size. Like this the file can also be
+            // loaded via MMapDataAccess or RAMDataAccess, which expect the file to consist of full segments.
+            writeHeader(raFile, HEADER_OFFSET + capacity, (int) Math.min(windowSize, Long.lowestOneBit(capacity)));
+            raFile.getFD().sync();
+        } catch (Exception ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * Load memory mapped files into physical memory.
+     */
+    public void load(int percentage) {
+        if (percentage < 0 || percentage > 100)
+            throw new IllegalArgumentException("Percentage for MMapLargeDataAccess.load for " + getName() + " must be in [0,100] but was " + percentage);
+        int max = Math.round(windows.length * percentage / 100f);
+        for (int i = 0; i < max; i++) {
+            windows[i].load();
+        }
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        for (MappedByteBuffer bb : windows) {
+            MMapDataAccess.cleanMappedByteBuffer(bb);
+        }
+        windows = new MappedByteBuffer[0];
+        capacity = 0;
+        Helper.close(raFile);
+    }
+
+    @Override
+    public void setInt(long bytePos, int value) {
+        windows[(int) (bytePos >>> windowPower)].putInt((int) (bytePos & windowMask), value);
+    }
+
+    @Override
+    public int getInt(long bytePos) {
+        return windows[(int) (bytePos >>> windowPower)].getInt((int) (bytePos & windowMask));
+    }
+
+    @Override
+    public void setShort(long bytePos, short value) {
+        windows[(int) (bytePos >>> windowPower)].putShort((int) (bytePos & windowMask), value);
+    }
+
+    @Override
+    public short getShort(long bytePos) {
+        return windows[(int) (bytePos >>> windowPower)].getShort((int) (bytePos & windowMask));
+    }
+
+    @Override
+    public void setByte(long bytePos, byte value) {
+        windows[(int) (bytePos >>> windowPower)].put((int) (bytePos & windowMask), value);
+    }
+
+    @Override
+    public byte getByte(long bytePos) {
+        return windows[(int) (bytePos >>> windowPower)].get((int) (bytePos & windowMask));
+    }
+
+    @Override
+    public void setBytes(long bytePos, byte[] values, int length) {
+        assert length <= windowSize : "the length has to be smaller or equal to the segment size: " + length + " vs. " + windowSize;
+        int windowIndex = (int) (bytePos >>> windowPower);
+        int index = (int) (bytePos & windowMask);
+        int delta = index + length - windowSize;
+        if (delta > 0) {
+            windows[windowIndex].put(index, values, 0, length - delta);
+            windows[windowIndex + 1].put(0, values, length - delta, delta);
+        } else {
+            windows[windowIndex].put(index, values, 0, length);
+        }
+    }
+
+    @Override
+    public void getBytes(long bytePos, byte[] values, int length) {
+        assert length <= windowSize : "the length has to be smaller or equal to the segment size: " + length + " vs. " + windowSize;
+        int windowIndex = (int) (bytePos >>> windowPower);
+        int index = (int) (bytePos & windowMask);
+        int delta = index + length - windowSize;
+        if (delta > 0) {
+            windows[windowIndex].get(index, values, 0, length - delta);
+            windows[windowIndex + 1].get(0, values, length - delta, delta);
+        } else {
+            windows[windowIndex].get(index, values, 0, length);
+        }
+    }
+
+    @Override
+    public long getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public int getSegments() {
+        return windows.length;
+    }
+
+    @Override
+    public DAType getType() {
+        return allowWrites ? DAType.MMAP_LARGE : DAType.MMAP_LARGE_RO;
+    }
+}
@@ -28,6 +28,11 @@ import com.graphhopper.util.GHUtility;
 /**
  * A key/value store, where the unique keys are triples (fromEdge, viaNode, toEdge) and the values
  * are integers that can be used to store encoded values.
+ * <p>
+ * The entries of a via node are stored as a linked list. After all entries were added the storage can be converted
+ * into a sorted layout via {@link #sortEntries()}: the entries of each via node then form a contiguous block sorted by
+ * (fromEdge, toEdge) and the lookup is a binary search instead of a list traversal. This matters for nodes with many
+ * turn restrictions, because the turn costs are read in the innermost loop of the edge-based algorithms.
  *
  * @author Karl Hübner
  * @author Peter Karich
@@ -35,7 +40,8 @@ import com.graphhopper.util.GHUtility;
  */
 public class TurnCostStorage {
     static final int NO_TURN_ENTRY = -1;
-    // we store each turn cost entry in the format |from_edge|to_edge|flags|next|. each entry has 4 bytes -> 16 bytes total
+    // we store each turn cost entry in the format |from_edge|to_edge|flags|next|. each entry has 4 bytes -> 16 bytes total.
+    // in the sorted layout 'next' is the (exclusive) end of the block of the via node
     private static final int TC_FROM = 0;
     private static final int TC_TO = 4;
     private static final int TC_FLAGS = 8;
@@ -46,6 +52,7 @@ public class TurnCostStorage {
     private final DataAccess turnCosts;
     private final EdgeIntAccess edgeIntAccess = createEdgeIntAccess();
     private int turnCostsCount;
+    private boolean sorted;
 
     public TurnCostStorage(BaseGraph baseGraph, DataAccess turnCosts) {
         this.baseGraph = baseGraph;
@@ -61,6 +68,7 @@ public class TurnCostStorage {
         turnCosts.setHeader(0, Constants.VERSION_TURN_COSTS);
         turnCosts.setHeader(4, BYTES_PER_ENTRY);
         turnCosts.setHeader(2 * 4, turnCostsCount);
+        turnCosts.setHeader(3 * 4, sorted ? 1 : 0);
         turnCosts.flush();
     }
 
@@ -81,6 +89,7 @@ public class TurnCostStorage {
             throw new IllegalStateException("Number of bytes per turn cost entry does not match the current configuration: " + turnCosts.getHeader(0) + " vs. " + BYTES_PER_ENTRY);
         }
         turnCostsCount = turnCosts.getHeader(8);
+        sorted = turnCosts.getHeader(3 * 4) == 1;
         return true;
     }
 
@@ -104,6 +113,9 @@ public class TurnCostStorage {
     private int findOrCreateTurnCostEntry(int fromEdge, int viaNode, int toEdge) {
         int index = findIndex(fromEdge, viaNode, toEdge);
         if (index < 0) {
+            // new entries are always added to the linked lists
+            if (sorted)
+                unsortEntries();
             // create a new entry
             index = turnCostsCount;
             ensureTurnCostIndex(index);
@@ -156,8 +168,11 @@ public class TurnCostStorage {
         if (viaNode < 0)
             throw new IllegalArgumentException("via node cannot be negative");
 
-        final int maxEntries = 1000;
         int index = baseGraph.getNodeAccess().getTurnCostIndex(viaNode);
+        if (sorted)
+            return index == NO_TURN_ENTRY ? -1 : binarySearch(index, turnCosts.getInt((long) index * BYTES_PER_ENTRY + TC_NEXT), fromEdge, toEdge);
+
+        final int maxEntries = 1000;
         for (int i = 0; i < maxEntries; ++i) {
             if (index == NO_TURN_ENTRY) return -1;
             long pointer = (long) index * BYTES_PER_ENTRY;
@@ -168,6 +183,131 @@ public class TurnCostStorage {
         throw new IllegalStateException("Turn cost list for node: " + viaNode + " is longer than expected, max: " + maxEntries);
     }
 
+    private int binarySearch(int start, int end, int fromEdge, int toEdge) {
+        long key = toKey(fromEdge, toEdge);
+        int low = start;
+        int high = end - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long pointer = (long) mid * BYTES_PER_ENTRY;
+            long midKey = toKey(turnCosts.getInt(pointer + TC_FROM), turnCosts.getInt(pointer + TC_TO));
+            if (midKey < key)
+                low = mid + 1;
+            else if (midKey > key)
+                high = mid - 1;
+            else
+                return mid;
+        }
+        return -1;
+    }
+
+    private static long toKey(int fromEdge, int toEdge) {
+        // edge IDs are never negative
+        return ((long) fromEdge << 32) | toEdge;
+    }
+
+    /**
+     * @return the index of the entry following the given one for the same via node or NO_TURN_ENTRY
+     */
+    private int getNext(int index) {
+        int next = turnCosts.getInt((long) index * BYTES_PER_ENTRY + TC_NEXT);
+        if (!sorted)
+            return next;
+        return index + 1 < next ? index + 1 : NO_TURN_ENTRY;
+    }
+
+    /**
+     * Converts the entries into the sorted layout, see the class comment. This should be done once after all turn
+     * costs were set, because adding another entry converts them back into linked lists. Changing the value of
+     * existing entries is still possible.
+     */
+    public void sortEntries() {
+        int[] from = new int[turnCostsCount];
+        int[] to = new int[turnCostsCount];
+        int[] flags = new int[turnCostsCount];
+        int[] blockEnds = new int[baseGraph.getNodes()];
+        int count = 0;
+        for (int node = 0; node < baseGraph.getNodes(); node++) {
+            int start = count;
+            for (int index = baseGraph.getNodeAccess().getTurnCostIndex(node); index != NO_TURN_ENTRY; index = getNext(index)) {
+                long pointer = (long) index * BYTES_PER_ENTRY;
+                from[count] = turnCosts.getInt(pointer + TC_FROM);
+                to[count] = turnCosts.getInt(pointer + TC_TO);
+                flags[count] = turnCosts.getInt(pointer + TC_FLAGS);
+                count++;
+            }
+            sortBlock(from, to, flags, start, count);
+            blockEnds[node] = count;
+        }
+        if (count != turnCostsCount)
+            throw new IllegalStateException("Found " + count + " turn cost entries, but expected " + turnCostsCount);
+
+        int start = 0;
+        for (int node = 0; node < blockEnds.length; node++) {
+            int end = blockEnds[node];
+            baseGraph.getNodeAccess().setTurnCostIndex(node, start == end ? NO_TURN_ENTRY : start);
+            for (int index = start; index < end; index++) {
+                long pointer = (long) index * BYTES_PER_ENTRY;
+                turnCosts.setInt(pointer + TC_FROM, from[index]);
+                turnCosts.setInt(pointer + TC_TO, to[index]);
+                turnCosts.setInt(pointer + TC_FLAGS, flags[index]);
+                turnCosts.setInt(pointer + TC_NEXT, end);
+            }
+            start = end;
+        }
+        sorted = true;
+    }
+
+    /**
+     * Sorts the entries in [start, end) by (from, to). The blocks are small, so insertion sort is good enough.
+     */
+    private static void sortBlock(int[] from, int[] to, int[] flags, int start, int end) {
+        for (int i = start + 1; i < end; i++) {
+            int f = from[i], t = to[i], fl = flags[i];
+            long key = toKey(f, t);
+            int j = i - 1;
+            for (; j >= start && toKey(from[j], to[j]) > key; j--) {
+                from[j + 1] = from[j];
+                to[j + 1] = to[j];
+                flags[j + 1] = flags[j];
+            }
+            from[j + 1] = f;
+            to[j + 1] = t;
+            flags[j + 1] = fl;
+        }
+    }
+
+    /**
+     * Converts the sorted layout back into linked lists, which keeps the order of the entries.
+     */
+    private void unsortEntries() {
+        for (int index = 0; index < turnCostsCount; index++) {
+            long pointer = (long) index * BYTES_PER_ENTRY;
+            int end = turnCosts.getInt(pointer + TC_NEXT);
+            turnCosts.setInt(pointer + TC_NEXT, index + 1 < end ? index + 1 : NO_TURN_ENTRY);
+        }
+        sorted = false;
+    }
+
+    public boolean isSorted() {
+        return sorted;
+    }
+
+    /**
+     * Replaces the from and to edges of all entries according to the given mapping. The entries are linked per via
+     * node, so renumbering the nodes does not require any changes here.
+     */
+    void renumberEdges(int[] newEdgeIds) {
+        for (int index = 0; index < turnCostsCount; index++) {
+            long pointer = (long) index * BYTES_PER_ENTRY;
+            turnCosts.setInt(pointer + TC_FROM, newEdgeIds[turnCosts.getInt(pointer + TC_FROM)]);
+            turnCosts.setInt(pointer + TC_TO, newEdgeIds[turnCosts.getInt(pointer + TC_TO)]);
+        }
+        // the new edge IDs change the order within the blocks
+        if (sorted)
+            sortEntries();
+    }
+
     public int getTurnCostsCount() {
         return turnCostsCount;
     }
@@ -176,8 +316,7 @@ public class TurnCostStorage {
         int index = baseGraph.getNodeAccess().getTurnCostIndex(node);
         int count = 0;
         while (index != NO_TURN_ENTRY) {
-            long pointer = (long) index * BYTES_PER_ENTRY;
-            index = turnCosts.getInt(pointer + TC_NEXT);
+            index = getNext(index);
             count++;
         }
         return count;
@@ -284,7 +423,7 @@ public class TurnCostStorage {
             if (turnCostIndex == NO_TURN_ENTRY) {
                 return false;
             }
-            turnCostIndex = turnCosts.getInt(turnCostPtr() + TC_NEXT);
+            turnCostIndex = getNext(turnCostIndex);
             if (turnCostIndex == NO_TURN_ENTRY) {
                 return false;
             }
@@ -0,0 +1,229 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+import com.graphhopper.util.Constants;
+import com.graphhopper.util.GHUtility;
+import com.graphhopper.util.Helper;
+
+import java.util.Arrays;
+
+import static com.graphhopper.util.EdgeIterator.NO_EDGE;
+import static com.graphhopper.util.Helper.nf;
+
+/**
+ * Stores the edges of a CH graph that are used by {@link UpwardRoutingCHGraph}. It consists of a single DataAccess
+ * that is built after the CH preparation and stored next to the CH files, so it does not need to be built again when
+ * the graph is loaded and it can be memory mapped like the other storages.
+ * <p>
+ * The layout is: | block of node 0 | ... | block of node n-1 | followed by the edges of every direction (out/in) and
+ * kind (upward/downward), each stored as | offset of block 0 | ... | offset of block n | edge records |, i.e. a
+ * compressed sparse row matrix whose rows are the nodes sorted by CH level. The downward edges are only stored for
+ * edge-based graphs. Every edge record uses {@link #RECORD_BYTES} bytes.
+ */
+public class UpwardCHStorage {
+    static final int OUT_UP = 0;
+    static final int IN_UP = 1;
+    static final int OUT_DOWN = 2;
+    static final int IN_DOWN = 3;
+
+    private static final int R_EDGE = 0;
+    private static final int R_ADJ = 4;
+    private static final int R_ORIG_KEY_FIRST = 8;
+    private static final int R_ORIG_KEY_LAST = 12;
+    private static final int R_SKIP1 = 16;
+    private static final int R_SKIP2 = 20;
+    private static final int R_WEIGHT_FWD = 24;
+    private static final int R_WEIGHT_BWD = 32;
+    private static final int RECORD_BYTES = 40;
+
+    private final DataAccess da;
+    private int nodes = -1;
+    private int arrays;
+    // the pointers of the offsets and of the edge records of each array
+    private final long[] offsetsPointers = new long[4];
+    private final long[] recordsPointers = new long[4];
+
+    public UpwardCHStorage(Directory dir, String name, int segmentSize) {
+        String daName = "upward_ch_" + name;
+        da = dir.create(daName, dir.getDefaultType(daName, true), segmentSize);
+    }
+
+    /**
+     * Copies the edges of the given CH graph into this storage. Like in the CH query algorithms an edge is upward if
+     * it is a shortcut or if it leads to a node with the same or a higher level.
+     */
+    public UpwardCHStorage build(RoutingCHGraph graph) {
+        if (nodes >= 0)
+            throw new IllegalStateException("UpwardCHStorage can only be built once");
+        nodes = graph.getNodes();
+        arrays = graph.isEdgeBased() ? 4 : 2;
+        long[] levelAndNode = new long[nodes];
+        for (int node = 0; node < nodes; node++)
+            levelAndNode[node] = ((long) graph.getLevel(node) << 32) | node;
+        Arrays.sort(levelAndNode);
+        int[] nodesByLevel = new int[nodes];
+        for (int i = 0; i < nodes; i++)
+            nodesByLevel[i] = (int) levelAndNode[i];
+
+        da.create(Math.max(4, 4L * nodes));
+        for (int i = 0; i < nodes; i++)
+            da.setInt(4L * nodesByLevel[i], i);
+        long pointer = 4L * nodes;
+        for (int array = 0; array < arrays; array++) {
+            RoutingCHEdgeExplorer explorer = array == OUT_UP || array == OUT_DOWN ? graph.createOutEdgeExplorer() : graph.createInEdgeExplorer();
+            pointer = buildArray(graph, array, explorer, nodesByLevel, array == OUT_UP || array == IN_UP, pointer);
+        }
+        return this;
+    }
+
+    private long buildArray(RoutingCHGraph graph, int array, RoutingCHEdgeExplorer explorer, int[] nodesByLevel, boolean upward, long pointer) {
+        offsetsPointers[array] = pointer;
+        recordsPointers[array] = pointer + 4L * (nodes + 1);
+        da.ensureCapacity(recordsPointers[array]);
+        int count = 0;
+        da.setInt(offsetsPointers[array], count);
+        for (int i = 0; i < nodes; i++) {
+            int node = nodesByLevel[i];
+            int level = graph.getLevel(node);
+            RoutingCHEdgeIterator iter = explorer.setBaseNode(node);
+            while (iter.next()) {
+                // this is the same condition the CH query algorithms use to filter the edges
+                boolean downward = !iter.isShortcut() && graph.getLevel(iter.getAdjNode()) < level;
+                if (downward == upward)
+                    continue;
+                long recordPointer = recordsPointers[array] + (long) count * RECORD_BYTES;
+                da.ensureCapacity(recordPointer + RECORD_BYTES);
+                da.setInt(recordPointer + R_EDGE, iter.getEdge());
+                da.setInt(recordPointer + R_ADJ, iter.getAdjNode());
+                da.setInt(recordPointer + R_ORIG_KEY_FIRST, iter.getOrigEdgeKeyFirst());
+                da.setInt(recordPointer + R_ORIG_KEY_LAST, iter.getOrigEdgeKeyLast());
+                da.setInt(recordPointer + R_SKIP1, iter.isShortcut() ? iter.getSkippedEdge1() : NO_EDGE);
+                da.setInt(recordPointer + R_SKIP2, iter.isShortcut() ? iter.getSkippedEdge2() : NO_EDGE);
+                setDouble(recordPointer + R_WEIGHT_FWD, iter.getWeight(false));
+                setDouble(recordPointer + R_WEIGHT_BWD, iter.getWeight(true));
+                count++;
+            }
+            da.setInt(offsetsPointers[array] + 4L * (i + 1), count);
+        }
+        return recordsPointers[array] + (long) count * RECORD_BYTES;
+    }
+
+    public boolean loadExisting() {
+        if (!da.loadExisting())
+            return false;
+        GHUtility.checkDAVersion(da.getName(), Constants.VERSION_UPWARD_CH, da.getHeader(0));
+        nodes = da.getHeader(4);
+        arrays = da.getHeader(8);
+        long pointer = 4L * nodes;
+        for (int array = 0; array < arrays; array++) {
+            offsetsPointers[array] = pointer;
+            recordsPointers[array] = pointer + 4L * (nodes + 1);
+            pointer = recordsPointers[array] + (long) size(array) * RECORD_BYTES;
+        }
+        return true;
+    }
+
+    public void flush() {
+        da.setHeader(0, Constants.VERSION_UPWARD_CH);
+        da.setHeader(4, nodes);
+        da.setHeader(8, arrays);
+        da.flush();
+    }
+
+    public void close() {
+        da.close();
+    }
+
+    public boolean isClosed() {
+        return da.isClosed();
+    }
+
+    public long getCapacity() {
+        return da.getCapacity();
+    }
+
+    public int getNodes() {
+        return nodes;
+    }
+
+    /**
+     * @return true if the downward base edges are stored, which is only the case for edge-based graphs
+     */
+    public boolean hasDownwardEdges() {
+        return arrays == 4;
+    }
+
+    /**
+     * @return the number of edges stored in the given array
+     */
+    int size(int array) {
+        return getOffset(array, nodes);
+    }
+
+    int getBlock(int node) {
+        return da.getInt(4L * node);
+    }
+
+    int getOffset(int array, int block) {
+        return da.getInt(offsetsPointers[array] + 4L * block);
+    }
+
+    long toRecordPointer(int array, int index) {
+        return recordsPointers[array] + (long) index * RECORD_BYTES;
+    }
+
+    int getEdge(long recordPointer) {
+        return da.getInt(recordPointer + R_EDGE);
+    }
+
+    int getAdjNode(long recordPointer) {
+        return da.getInt(recordPointer + R_ADJ);
+    }
+
+    int getOrigEdgeKeyFirst(long recordPointer) {
+        return da.getInt(recordPointer + R_ORIG_KEY_FIRST);
+    }
+
+    int getOrigEdgeKeyLast(long recordPointer) {
+        return da.getInt(recordPointer + R_ORIG_KEY_LAST);
+    }
+
+    int getSkippedEdge1(long recordPointer) {
+        return da.getInt(recordPointer + R_SKIP1);
+    }
+
+    int getSkippedEdge2(long recordPointer) {
+        return da.getInt(recordPointer + R_SKIP2);
+    }
+
+    double getWeight(long recordPointer, boolean reverse) {
+        long pointer = recordPointer + (reverse ? R_WEIGHT_BWD : R_WEIGHT_FWD);
+        return Double.longBitsToDouble((da.getInt(pointer) & 0xFFFF_FFFFL) | ((long) da.getInt(pointer + 4) << 32));
+    }
+
+    private void setDouble(long pointer, double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        da.setInt(pointer, (int) bits);
+        da.setInt(pointer + 4, (int) (bits >>> 32));
+    }
+
+    public String toDetailsString() {
+        return "upward edges:" + nf((long) size(OUT_UP) + size(IN_UP)) + " (" + nf(da.getCapacity() / Helper.MB) + "MB)";
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+import com.graphhopper.routing.weighting.Weighting;
+
+import static com.graphhopper.storage.UpwardCHStorage.*;
+import static com.graphhopper.util.EdgeIterator.NO_EDGE;
+
+/**
+ * A {@link RoutingCHGraph} that keeps only the edges a bidirectional CH query actually relaxes, i.e. the shortcuts and
+ * the base edges leading to a node with the same or a higher level. The in- and out-edges are stored separately in
+ * flat arrays (offsets + packed edge records, like a compressed sparse row matrix) and the blocks of the nodes are
+ * ordered by CH level. This way the upper part of the hierarchy that is visited by almost every query ends up in a
+ * contiguous memory area and iterating the edges of a node does not require reading the base graph, the shortcut
+ * storage or calculating any weights.
+ * <p>
+ * All other methods delegate to the wrapped graph, so the edge IDs are the same. The downward edges cannot be
+ * iterated, so this graph is only suitable for the CH query algorithms, see {@link com.graphhopper.routing.AbstractBidirCHAlgo}.
+ * The only exception are edge-based graphs: the edge-based algorithms use all edges at the source and target node,
+ * so here the downward base edges are stored as well. They are kept in separate arrays and iterated after the upward
+ * edges of a node, so they do not interrupt the upward blocks.
+ * <p>
+ * The arrays are kept in an {@link UpwardCHStorage}, which is built once after the preparation and then loaded like
+ * the CH storage.
+ */
+public class UpwardRoutingCHGraph implements RoutingCHGraph {
+    private final RoutingCHGraph graph;
+    private final UpwardCHStorage storage;
+    private final int baseGraphEdges;
+
+    /**
+     * Builds the upward edges of the given graph in memory, mostly useful for tests
+     */
+    public static UpwardRoutingCHGraph fromGraph(RoutingCHGraph graph) {
+        return new UpwardRoutingCHGraph(graph, new UpwardCHStorage(new RAMDirectory(), "", -1).build(graph));
+    }
+
+    public UpwardRoutingCHGraph(RoutingCHGraph graph, UpwardCHStorage storage) {
+        if (graph instanceof UpwardRoutingCHGraph)
+            throw new IllegalArgumentException("The given graph is already an upward graph");
+        // the graph can have more nodes if OSM changes added edges that this weighting cannot use, see GraphHopper.applyOSMChanges
+        if (storage.getNodes() > graph.getNodes() || storage.hasDownwardEdges() != graph.isEdgeBased())
+            throw new IllegalArgumentException("The upward storage does not match the CH graph, nodes: " + storage.getNodes()
+                    + " vs. " + graph.getNodes() + ", edge-based: " + storage.hasDownwardEdges() + " vs. " + graph.isEdgeBased());
+        this.graph = graph;
+        this.storage = storage;
+        this.baseGraphEdges = graph.getBaseGraph().getEdges();
+    }
+
+    /**
+     * @return the number of stored edges, summed up for both directions
+     */
+    public int getUpwardEdges() {
+        return storage.size(OUT_UP) + storage.size(IN_UP);
+    }
+
+    /**
+     * @return the number of stored downward base edges, summed up for both directions. These are only stored for
+     * edge-based graphs.
+     */
+    public int getDownwardEdges() {
+        return storage.hasDownwardEdges() ? storage.size(OUT_DOWN) + storage.size(IN_DOWN) : 0;
+    }
+
+    @Override
+    public int getNodes() {
+        return graph.getNodes();
+    }
+
+    @Override
+    public int getEdges() {
+        return graph.getEdges();
+    }
+
+    @Override
+    public int getShortcuts() {
+        return graph.getShortcuts();
+    }
+
+    @Override
+    public RoutingCHEdgeExplorer createInEdgeExplorer() {
+        return new UpwardEdgeIterator(IN_UP, IN_DOWN);
+    }
+
+    @Override
+    public RoutingCHEdgeExplorer createOutEdgeExplorer() {
+        return new UpwardEdgeIterator(OUT_UP, OUT_DOWN);
+    }
+
+    @Override
+    public RoutingCHEdgeIteratorState getEdgeIteratorState(int chEdge, int adjNode) {
+        return graph.getEdgeIteratorState(chEdge, adjNode);
+    }
+
+    @Override
+    public int getLevel(int node) {
+        return graph.getLevel(node);
+    }
+
+    @Override
+    public double getTurnWeight(int inEdge, int viaNode, int outEdge) {
+        return graph.getTurnWeight(inEdge, viaNode, outEdge);
+    }
+
+    @Override
+    public Graph getBaseGraph() {
+        return graph.getBaseGraph();
+    }
+
+    @Override
+    public boolean hasTurnCosts() {
+        return graph.hasTurnCosts();
+    }
+
+    @Override
+    public boolean isEdgeBased() {
+        return graph.isEdgeBased();
+    }
+
+    @Override
+    public Weighting getWeighting() {
+        return graph.getWeighting();
+    }
+
+    @Override
+    public void close() {
+        graph.close();
+        storage.close();
+    }
+
+    private class UpwardEdgeIterator implements RoutingCHEdgeExplorer, RoutingCHEdgeIterator {
+        private final int upArray;
+        // the array of the downward edges, or -1 if there are none
+        private final int downArray;
+        private int baseNode;
+        private int block;
+        private int array;
+        private int current;
+        private int end;
+        private long recordPointer;
+
+        UpwardEdgeIterator(int upArray, int downArray) {
+            this.upArray = upArray;
+            this.downArray = storage.hasDownwardEdges() ? downArray : -1;
+        }
+
+        @Override
+        public RoutingCHEdgeIterator setBaseNode(int baseNode) {
+            this.baseNode = baseNode;
+            block = storage.getBlock(baseNode);
+            setArray(upArray);
+            return this;
+        }
+
+        private void setArray(int array) {
+            this.array = array;
+            current = storage.getOffset(array, block) - 1;
+            end = storage.getOffset(array, block + 1);
+        }
+
+        @Override
+        public boolean next() {
+            current++;
+            if (current >= end) {
+                if (array != upArray || downArray < 0)
+                    return false;
+                setArray(downArray);
+                current++;
+                if (current >= end)
+                    return false;
+            }
+            recordPointer = storage.toRecordPointer(array, current);
+            return true;
+        }
+
+        @Override
+        public int getEdge() {
+            return storage.getEdge(recordPointer);
+        }
+
+        @Override
+        public int getOrigEdge() {
+            return isShortcut() ? NO_EDGE : getEdge();
+        }
+
+        @Override
+        public int getOrigEdgeKeyFirst() {
+            return storage.getOrigEdgeKeyFirst(recordPointer);
+        }
+
+        @Override
+        public int getOrigEdgeKeyLast() {
+            return storage.getOrigEdgeKeyLast(recordPointer);
+        }
+
+        @Override
+        public int getBaseNode() {
+            return baseNode;
+        }
+
+        @Override
+        public int getAdjNode() {
+            return storage.getAdjNode(recordPointer);
+        }
+
+        @Override
+        public boolean isShortcut() {
+            return getEdge() >= baseGraphEdges;
+        }
+
+        @Override
+        public int getSkippedEdge1() {
+            checkShortcut("getSkippedEdge1");
+            return storage.getSkippedEdge1(recordPointer);
+        }
+
+        @Override
+        public int getSkippedEdge2() {
+            checkShortcut("getSkippedEdge2");
+            return storage.getSkippedEdge2(recordPointer);
+        }
+
+        @Override
+        public double getWeight(boolean reverse) {
+            return storage.getWeight(recordPointer, reverse);
+        }
+
+        private void checkShortcut(String methodName) {
+            if (!isShortcut())
+                throw new IllegalStateException("Method " + methodName + " only for shortcuts " + getEdge());
+        }
+
+        @Override
+        public String toString() {
+            return getEdge() + " " + getBaseNode() + "-" + getAdjNode();
+        }
+    }
+}
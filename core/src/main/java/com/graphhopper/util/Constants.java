@@ -68,6 +68,9 @@ public class Constants {
     public static final int VERSION_TURN_COSTS = 0;
     public static final int VERSION_LOCATION_IDX = 5;
     public static final int VERSION_KV_STORAGE = 2;
+    public static final int VERSION_OSM_NODES = 1;
+    public static final int VERSION_UPWARD_CH = 0;
+    public static final int VERSION_CCH = 0;
     /**
      * The version without the snapshot string
      */
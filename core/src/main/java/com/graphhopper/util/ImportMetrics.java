@@ -0,0 +1,259 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.graphhopper.routing.util.OSMParsers;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.*;
+
+/**
+ * Records the resources used by the stages of an import, e.g. reading the OSM file, removing the subnetworks or the
+ * CH preparation, and by the tag parsers. For every stage the wall time, the CPU time of the whole process, the bytes
+ * allocated by the thread that runs the stage and counts like the number of edges are recorded. Stages that use other
+ * threads allocate more than this. The stages are listed in the order they were started, and a stage can run within
+ * another stage.
+ * <p>
+ * The tag parsers are only timed if this is enabled, see {@link OSMParsers#enableTiming()}.
+ */
+public class ImportMetrics {
+    private static final ThreadMXBean THREAD_BEAN = ManagementFactory.getThreadMXBean();
+    private static final boolean ALLOCATION_SUPPORTED = THREAD_BEAN instanceof com.sun.management.ThreadMXBean
+            && ((com.sun.management.ThreadMXBean) THREAD_BEAN).isThreadAllocatedMemorySupported()
+            && ((com.sun.management.ThreadMXBean) THREAD_BEAN).isThreadAllocatedMemoryEnabled();
+    private final long startNanos = System.nanoTime();
+    private final List<Stage> stages = new ArrayList<>();
+    private final Map<String, TagParserTimes> tagParserTimes = new LinkedHashMap<>();
+    private boolean tagParserTiming;
+
+    public ImportMetrics setTagParserTiming(boolean tagParserTiming) {
+        this.tagParserTiming = tagParserTiming;
+        return this;
+    }
+
+    public boolean isTagParserTiming() {
+        return tagParserTiming;
+    }
+
+    /**
+     * Starts a new stage. It must be stopped by the same thread.
+     */
+    public Stage start(String name) {
+        Stage stage = new Stage(name, System.nanoTime() - startNanos);
+        synchronized (this) {
+            stages.add(stage);
+        }
+        return stage;
+    }
+
+    public synchronized List<Stage> getStages() {
+        return new ArrayList<>(stages);
+    }
+
+    /**
+     * Adds the times of the tag parsers of the given OSMParsers to the ones that were already added. This can be
+     * called for every OSMParsers that was used by another thread.
+     */
+    public synchronized void addTagParserTimes(OSMParsers osmParsers) {
+        List<String> names = osmParsers.getTimedParserNames();
+        for (int i = 0; i < names.size(); i++) {
+            TagParserTimes times = tagParserTimes.computeIfAbsent(names.get(i), TagParserTimes::new);
+            times.sampledNanos += osmParsers.getTimedNanos()[i];
+            times.sampledBytes += osmParsers.getTimedBytes()[i];
+            times.sampledCalls += osmParsers.getTimedCalls();
+            times.calls += osmParsers.getCalls();
+        }
+    }
+
+    public synchronized List<TagParserTimes> getTagParserTimes() {
+        return new ArrayList<>(tagParserTimes.values());
+    }
+
+    /**
+     * @return the bytes the current thread allocated so far, or -1 if the JVM cannot measure it
+     */
+    public static long getThreadAllocatedBytes() {
+        return ALLOCATION_SUPPORTED ? ((com.sun.management.ThreadMXBean) THREAD_BEAN).getCurrentThreadAllocatedBytes() : -1;
+    }
+
+    public synchronized Map<String, Object> toMap() {
+        List<Map<String, Object>> stageList = new ArrayList<>();
+        for (Stage stage : stages) {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("name", stage.name);
+            map.put("start_ms", stage.startOffsetNanos / 1_000_000);
+            map.put("wall_ms", stage.getWallNanos() < 0 ? -1 : stage.getWallNanos() / 1_000_000);
+            map.put("cpu_ms", stage.getCpuNanos() < 0 ? -1 : stage.getCpuNanos() / 1_000_000);
+            map.put("allocated_bytes", stage.getAllocatedBytes());
+            map.put("counts", stage.getCounts());
+            stageList.add(map);
+        }
+        List<Map<String, Object>> parserList = new ArrayList<>();
+        for (TagParserTimes times : tagParserTimes.values()) {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("name", times.name);
+            map.put("calls", times.calls);
+            map.put("sampled_calls", times.sampledCalls);
+            map.put("estimated_ms", times.getEstimatedNanos() / 1_000_000);
+            map.put("estimated_allocated_bytes", times.getEstimatedBytes());
+            map.put("nanos_per_call", times.sampledCalls == 0 ? 0 : times.sampledNanos / times.sampledCalls);
+            parserList.add(map);
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("stages", stageList);
+        result.put("tag_parsers", parserList);
+        return result;
+    }
+
+    public void writeJson(File file) {
+        try {
+            new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(file, toMap());
+        } catch (IOException ex) {
+            throw new RuntimeException("Cannot write the import metrics to " + file, ex);
+        }
+    }
+
+    public static class Stage implements AutoCloseable {
+        private static final OperatingSystemMXBean OS_BEAN = ManagementFactory.getOperatingSystemMXBean();
+        private final String name;
+        private final long startOffsetNanos;
+        private final Map<String, Long> counts = new LinkedHashMap<>();
+        private final long startNanos;
+        private final long startCpuNanos;
+        private final long startBytes;
+        // the stage is stopped by the thread that runs the import, but the results might be read by another one
+        private volatile long wallNanos = -1;
+        private volatile long cpuNanos = -1;
+        private volatile long allocatedBytes = -1;
+
+        private Stage(String name, long startOffsetNanos) {
+            this.name = name;
+            this.startOffsetNanos = startOffsetNanos;
+            startCpuNanos = getProcessCpuNanos();
+            startBytes = getThreadAllocatedBytes();
+            startNanos = System.nanoTime();
+        }
+
+        public Stage setCount(String key, long count) {
+            synchronized (counts) {
+                counts.put(key, count);
+            }
+            return this;
+        }
+
+        public void stop() {
+            if (wallNanos >= 0)
+                throw new IllegalStateException("Stage " + name + " was already stopped");
+            wallNanos = System.nanoTime() - startNanos;
+            long cpu = getProcessCpuNanos();
+            cpuNanos = cpu < 0 || startCpuNanos < 0 ? -1 : cpu - startCpuNanos;
+            long bytes = getThreadAllocatedBytes();
+            allocatedBytes = bytes < 0 || startBytes < 0 ? -1 : bytes - startBytes;
+        }
+
+        @Override
+        public void close() {
+            stop();
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the time since the stage was started, or -1 if it was not stopped yet
+         */
+        public long getWallNanos() {
+            return wallNanos;
+        }
+
+        /**
+         * @return the CPU time of all threads of the process while the stage ran, or -1 if the JVM cannot measure it
+         */
+        public long getCpuNanos() {
+            return cpuNanos;
+        }
+
+        /**
+         * @return the bytes allocated by the thread that ran the stage, or -1 if the JVM cannot measure it
+         */
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        public Map<String, Long> getCounts() {
+            synchronized (counts) {
+                return new LinkedHashMap<>(counts);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return name + ": " + wallNanos / 1_000_000 + "ms, cpu: " + cpuNanos / 1_000_000 + "ms, allocated: "
+                    + allocatedBytes + "B, " + getCounts();
+        }
+
+        private static long getProcessCpuNanos() {
+            return OS_BEAN instanceof com.sun.management.OperatingSystemMXBean
+                    ? ((com.sun.management.OperatingSystemMXBean) OS_BEAN).getProcessCpuTime()
+                    : -1;
+        }
+    }
+
+    /**
+     * The time and the allocated bytes of a tag parser. Only a sample of the calls is measured, so the totals are
+     * estimated.
+     */
+    public static class TagParserTimes {
+        private final String name;
+        private long calls;
+        private long sampledCalls;
+        private long sampledNanos;
+        private long sampledBytes;
+
+        private TagParserTimes(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getCalls() {
+            return calls;
+        }
+
+        public long getEstimatedNanos() {
+            return sampledCalls == 0 ? 0 : (long) ((double) sampledNanos * calls / sampledCalls);
+        }
+
+        public long getEstimatedBytes() {
+            return sampledCalls == 0 ? 0 : (long) ((double) sampledBytes * calls / sampledCalls);
+        }
+
+        @Override
+        public String toString() {
+            return name + ": " + getEstimatedNanos() / 1_000_000 + "ms, calls: " + calls;
+        }
+    }
+}
@@ -89,6 +89,32 @@ public class GraphHopperProfileTest {
         assertIllegalArgument(hopper::importOrLoad, "Duplicate CH reference to profile 'profile'");
     }
 
+    @Test
+    public void unknownCHNodeOrderingProfile_error() {
+        final GraphHopper hopper = createHopper();
+        hopper.setProfiles(TestProfiles.constantSpeed("profile1"), TestProfiles.constantSpeed("profile2"));
+        hopper.getCHPreparationHandler().setCHProfiles(
+                new CHProfile("profile1").setNodeOrderingProfile("profile2")
+        );
+        assertIllegalArgument(hopper::importOrLoad, "Unknown CH profile 'profile2' in CH profile 'profile1' cannot be used as node_ordering_profile");
+    }
+
+    @Test
+    public void chNodeOrderingProfileChain_error() {
+        final GraphHopper hopper = createHopper();
+        hopper.setProfiles(
+                TestProfiles.constantSpeed("profile1"),
+                TestProfiles.constantSpeed("profile2"),
+                TestProfiles.constantSpeed("profile3")
+        );
+        hopper.getCHPreparationHandler().setCHProfiles(
+                new CHProfile("profile1"),
+                new CHProfile("profile2").setNodeOrderingProfile("profile1"),
+                new CHProfile("profile3").setNodeOrderingProfile("profile2")
+        );
+        assertIllegalArgument(hopper::importOrLoad, "Cannot use 'profile2' as node_ordering_profile for CH profile 'profile3', because it uses the node ordering of another profile itself.");
+    }
+
     @Test
     public void lmProfileDoesNotExist_error() {
         final GraphHopper hopper = createHopper();
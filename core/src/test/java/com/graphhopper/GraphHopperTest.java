@@ -17,6 +17,8 @@
  */
 package com.graphhopper;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.graphhopper.config.CHProfile;
 import com.graphhopper.config.LMProfile;
 import com.graphhopper.config.Profile;
@@ -24,14 +26,24 @@ import com.graphhopper.util.TurnCostsConfig;
 import com.graphhopper.reader.ReaderWay;
 import com.graphhopper.reader.dem.SRTMProvider;
 import com.graphhopper.reader.dem.SkadiProvider;
+import com.graphhopper.reader.osm.OSMChangeApplier;
 import com.graphhopper.routing.TestProfiles;
+import com.graphhopper.routing.ch.PrepareContractionHierarchies;
 import com.graphhopper.routing.ev.*;
+import com.graphhopper.routing.lm.LMConfig;
+import com.graphhopper.routing.lm.PrepareLandmarks;
 import com.graphhopper.routing.util.AllEdgesIterator;
 import com.graphhopper.routing.util.DefaultSnapFilter;
 import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.util.MaxSpeedCalculator;
 import com.graphhopper.routing.util.countryrules.CountryRuleFactory;
 import com.graphhopper.routing.util.parsers.OSMRoadEnvironmentParser;
 import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.BundleDirectory;
+import com.graphhopper.storage.CHConfig;
+import com.graphhopper.storage.DataAccessWarmup;
+import com.graphhopper.storage.GraphBundle;
 import com.graphhopper.storage.IntsRef;
 import com.graphhopper.storage.index.LocationIndexTree;
 import com.graphhopper.storage.index.Snap;
@@ -57,8 +69,11 @@ import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.GeometryFactory;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 import static com.graphhopper.json.Statement.If;
 import static com.graphhopper.json.Statement.Op.LIMIT;
@@ -142,6 +157,59 @@ public class GraphHopperTest {
         assertTrue(rsp.getErrors().toString().contains("ConnectionNotFoundException"), rsp.getErrors().toString());
     }
 
+    @Test
+    public void testUpwardCHGraphIsStoredAndLoaded() {
+        GraphHopper hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(MONACO).
+                setEncodedValuesString("car_access, car_average_speed").
+                setProfiles(TestProfiles.accessAndSpeed("profile", "car")).
+                setUpwardCHGraphs(true).
+                setStoreOnFlush(true);
+        hopper.getCHPreparationHandler().setCHProfiles(new CHProfile("profile"));
+        hopper.importOrLoad();
+        GHRequest req = new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setProfile("profile");
+        assertEquals(3587.6, hopper.route(req).getBest().getDistance(), .1);
+        hopper.close();
+        // the upward edges are written next to the CH files, so they do not need to be built again when loading
+        assertTrue(new File(GH_LOCATION, "upward_ch_profile").exists());
+
+        hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setEncodedValuesString("car_access, car_average_speed").
+                setProfiles(TestProfiles.accessAndSpeed("profile", "car")).
+                setUpwardCHGraphs(true).
+                setAllowWrites(false);
+        hopper.getCHPreparationHandler().setCHProfiles(new CHProfile("profile"));
+        assertTrue(hopper.load());
+        assertEquals(3587.6, hopper.route(req).getBest().getDistance(), .1);
+        hopper.close();
+    }
+
+    @Test
+    public void testUpwardCHGraphAfterImportAndClose() {
+        Supplier<GraphHopper> creator = () -> {
+            GraphHopper hopper = new GraphHopper().
+                    setGraphHopperLocation(GH_LOCATION).
+                    setOSMFile(MONACO).
+                    setEncodedValuesString("car_access, car_average_speed").
+                    setProfiles(TestProfiles.accessAndSpeed("profile", "car")).
+                    setUpwardCHGraphs(true);
+            hopper.getCHPreparationHandler().setCHProfiles(new CHProfile("profile"));
+            return hopper;
+        };
+        // the CH graph is closed right after the preparation, so the upward edges are built when the graph is loaded
+        creator.get().importAndClose();
+        assertFalse(new File(GH_LOCATION, "upward_ch_profile").exists());
+
+        GraphHopper hopper = creator.get();
+        assertTrue(hopper.load());
+        GHRequest req = new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setProfile("profile");
+        assertEquals(3587.6, hopper.route(req).getBest().getDistance(), .1);
+        hopper.close();
+        assertTrue(new File(GH_LOCATION, "upward_ch_profile").exists());
+    }
+
     @Test
     public void testMonacoWithInstructions() {
         final String profile = "profile";
@@ -696,6 +764,59 @@ public class GraphHopperTest {
         assertTrue(rsp.getErrors().get(0) instanceof ConnectionNotFoundException);
     }
 
+    @Test
+    public void testCustomizableCH() {
+        final String profile = "profile";
+        GraphHopper hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(BAYREUTH).
+                setEncodedValuesString("car_access, car_average_speed").
+                setProfiles(TestProfiles.accessAndSpeed(profile, "car")).
+                setCustomizableCH(true, 2, 10);
+        hopper.getCHPreparationHandler().setCHProfiles(new CHProfile(profile));
+        hopper.importOrLoad();
+        assertNotNull(hopper.getCustomizableCH());
+
+        GHRequest req = new GHRequest(49.975845, 11.522598, 50.026821, 11.497364).
+                setProfile(profile);
+        GHResponse rsp = hopper.route(req);
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        assertEquals(6685, rsp.getBest().getDistance(), 1);
+
+        // a custom model no longer requires disabling CH
+        CustomModel customModel = new CustomModel().addToPriority(If("in_blocked_area", MULTIPLY, "0"));
+        customModel.getAreas().getFeatures().add(createRectangle("blocked_area", 49.97986, 11.472902, 50.003946, 11.534357));
+        req.setCustomModel(customModel);
+        rsp = hopper.route(req);
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        assertEquals(13988, rsp.getBest().getDistance(), 1);
+        double weight = rsp.getBest().getRouteWeight();
+
+        req.putHint(CH.DISABLE, true);
+        rsp = hopper.route(req);
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        assertEquals(13988, rsp.getBest().getDistance(), 1);
+        assertEquals(weight, rsp.getBest().getRouteWeight(), 1);
+        int arcs = hopper.getCustomizableCH().getArcs();
+        hopper.close();
+
+        // the node ordering is stored with the graph and loaded again
+        assertTrue(new File(GH_LOCATION, "cch").exists());
+        hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setEncodedValuesString("car_access, car_average_speed").
+                setProfiles(TestProfiles.accessAndSpeed(profile, "car")).
+                setCustomizableCH(true, 1, 10, 2);
+        hopper.getCHPreparationHandler().setCHProfiles(new CHProfile(profile));
+        assertTrue(hopper.load());
+        assertEquals(arcs, hopper.getCustomizableCH().getArcs());
+        req.getHints().remove(CH.DISABLE);
+        rsp = hopper.route(req);
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        assertEquals(weight, rsp.getBest().getRouteWeight(), 1);
+        hopper.close();
+    }
+
     @Test
     public void testCustomModel() {
         final String customCar = "custom_car";
@@ -1072,8 +1193,9 @@ public class GraphHopperTest {
         assertEquals(91, rsp.getBest().getDistance(), 5.);
     }
 
-    @Test
-    public void testSRTMWithInstructions() {
+    @ParameterizedTest
+    @ValueSource(ints = {0, 2})
+    public void testSRTMWithInstructions(int elevationLookupThreads) {
         final String profile = "profile";
 
         GraphHopper hopper = new GraphHopper().
@@ -1082,6 +1204,7 @@ public class GraphHopperTest {
                 setEncodedValuesString("foot_access, foot_priority, foot_average_speed").
                 setProfiles(TestProfiles.accessSpeedAndPriority(profile, "foot")).
                 setStoreOnFlush(true);
+        hopper.getReaderConfig().setElevationLookupThreads(elevationLookupThreads);
 
         hopper.setElevationProvider(new SRTMProvider(DIR));
         hopper.importOrLoad();
@@ -2793,6 +2916,317 @@ public class GraphHopperTest {
         hopper.close();
     }
 
+    @Test
+    void testWarmupAfterLoad() throws InterruptedException {
+        GraphHopper hopper = new GraphHopper()
+                .setProfiles(TestProfiles.constantSpeed("car"))
+                .setGraphHopperLocation(GH_LOCATION)
+                .setOSMFile(MONACO);
+        hopper.getCHPreparationHandler().setCHProfiles(new CHProfile("car"));
+        hopper.importOrLoad();
+        assertNull(hopper.getWarmup());
+        hopper.close();
+
+        GraphHopperConfig config = new GraphHopperConfig()
+                .putObject("graph.location", GH_LOCATION)
+                .putObject("graph.dataaccess", "MMAP")
+                .putObject("graph.dataaccess.mmap.warmup", "shortcuts_.*, nodes_ch_.*, edges, nodes")
+                .putObject("graph.dataaccess.mmap.warmup.threads", 2)
+                .putObject("import.osm.ignored_highways", "")
+                .setProfiles(List.of(TestProfiles.constantSpeed("car")))
+                .setCHProfiles(List.of(new CHProfile("car")));
+        hopper = new GraphHopper().init(config);
+        assertTrue(hopper.load());
+        DataAccessWarmup warmup = hopper.getWarmup();
+        assertTrue(warmup.await(10, TimeUnit.SECONDS));
+        assertTrue(warmup.getTotalBytes() > 0);
+        assertEquals(1, warmup.getProgress());
+        assertTrue(hopper.route(new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setProfile("car")).getBest().getDistance() > 0);
+        hopper.close();
+    }
+
+    @Test
+    void testLoadFromBundle() throws InterruptedException {
+        GraphHopper hopper = new GraphHopper()
+                .setProfiles(TestProfiles.constantSpeed("car"))
+                .setGraphHopperLocation(GH_LOCATION)
+                .setOSMFile(MONACO);
+        hopper.getCHPreparationHandler().setCHProfiles(new CHProfile("car"));
+        hopper.importOrLoad();
+        GHRequest request = new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setProfile("car");
+        double distance = hopper.route(request).getBest().getDistance();
+        hopper.close();
+
+        String bundle = GH_LOCATION + ".ghb";
+        try {
+            GraphBundle.write(GH_LOCATION, bundle);
+            // the bundle does not need the graph folder
+            Helper.removeDir(new File(GH_LOCATION));
+            hopper = new GraphHopper()
+                    .setProfiles(TestProfiles.constantSpeed("car"))
+                    .setGraphHopperLocation(bundle);
+            hopper.getCHPreparationHandler().setCHProfiles(new CHProfile("car"));
+            assertTrue(hopper.load());
+            assertTrue(hopper.getBaseGraph().getDirectory() instanceof BundleDirectory);
+            // the checksums are verified in the background by default
+            assertTrue(hopper.getBundleVerification().await(1, TimeUnit.MINUTES));
+            assertTrue(hopper.getBundleVerification().isValid(), hopper.getBundleVerification().toString());
+            GHResponse response = hopper.route(request);
+            assertFalse(response.hasErrors(), response.getErrors().toString());
+            assertEquals(distance, response.getBest().getDistance(), 1.e-6);
+            hopper.close();
+        } finally {
+            new File(bundle).delete();
+        }
+    }
+
+    @Test
+    void testParallelTagParsing() {
+        BaseGraph[] graphs = new BaseGraph[2];
+        int[] threads = {1, 4};
+        for (int i = 0; i < threads.length; i++) {
+            GraphHopper hopper = new GraphHopper()
+                    .setProfiles(TestProfiles.accessSpeedAndPriority("bike"), TestProfiles.accessAndSpeed("car"), TestProfiles.accessSpeedAndPriority("foot"))
+                    .setMaxSpeedCalculator(new MaxSpeedCalculator(MaxSpeedCalculator.createLegalDefaultSpeeds()))
+                    .setUrbanDensityCalculation(400, 6000, 1500, 1000, 1)
+                    .setEncodedValuesString("max_speed, road_class, surface, car_temporal_access, bike_access, bike_priority, bike_average_speed, car_access, car_average_speed, foot_access, foot_priority, foot_average_speed")
+                    .setGraphHopperLocation(GH_LOCATION + threads[i])
+                    .setStoreOnFlush(false)
+                    .setOSMFile(MONACO);
+            hopper.getReaderConfig().setTagParserThreads(threads[i]);
+            hopper.importOrLoad();
+            graphs[i] = hopper.getBaseGraph();
+        }
+        assertEquals(graphs[0].getEdges(), graphs[1].getEdges());
+        AllEdgesIterator iter = graphs[0].getAllEdges();
+        while (iter.next()) {
+            EdgeIteratorState other = graphs[1].getEdgeIteratorState(iter.getEdge(), iter.getAdjNode());
+            assertEquals(iter.getFlags(), other.getFlags(), "different flags for edge " + iter.getEdge());
+            assertEquals(iter.getKeyValues(), other.getKeyValues());
+            assertEquals(iter.getDistance(), other.getDistance());
+        }
+        for (int t : threads)
+            Helper.removeDir(new File(GH_LOCATION + t));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2})
+    void testImportMetrics(int tagParserThreads) throws IOException {
+        GraphHopper hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(MONACO).
+                setEncodedValuesString("car_access, car_average_speed").
+                setProfiles(TestProfiles.accessAndSpeed("car")).
+                setImportMetrics(true, true).
+                setStoreOnFlush(true);
+        hopper.getReaderConfig().setTagParserThreads(tagParserThreads);
+        hopper.getCHPreparationHandler().setCHProfiles(new CHProfile("car"));
+        hopper.importOrLoad();
+
+        List<String> stages = hopper.getImportMetrics().getStages().stream().map(ImportMetrics.Stage::getName).toList();
+        assertEquals(List.of("import_osm", "osm_pass1", "osm_pass2", "subnetworks", "location_index", "ch"), stages);
+        for (ImportMetrics.Stage stage : hopper.getImportMetrics().getStages())
+            assertTrue(stage.getWallNanos() >= 0, stage.getName());
+        ImportMetrics.Stage importStage = hopper.getImportMetrics().getStages().get(0);
+        assertEquals(hopper.getBaseGraph().getEdges(), importStage.getCounts().get("edges"));
+        long edgeCalls = hopper.getImportMetrics().getTagParserTimes().get(0).getCalls();
+        assertTrue(edgeCalls >= hopper.getBaseGraph().getEdges(), "calls: " + edgeCalls);
+        List<String> parsers = hopper.getImportMetrics().getTagParserTimes().stream().map(ImportMetrics.TagParserTimes::getName).toList();
+        assertTrue(parsers.contains("CarAccessParser"), parsers.toString());
+        assertTrue(parsers.contains("CarAverageSpeedParser"), parsers.toString());
+
+        JsonNode report = new ObjectMapper().readTree(new File(GH_LOCATION, "import_metrics.json"));
+        assertEquals("import_osm", report.get("stages").get(0).get("name").asText());
+        assertEquals(hopper.getBaseGraph().getEdges(), report.get("stages").get(0).get("counts").get("edges").asInt());
+        assertEquals(parsers.size(), report.get("tag_parsers").size());
+        assertEquals(edgeCalls, report.get("tag_parsers").get(0).get("calls").asLong());
+        hopper.close();
+    }
+
+    @Test
+    void testResumableImport() {
+        // the first import is interrupted after the CH preparation of the first profile
+        GraphHopper interrupted = new GraphHopper() {
+            @Override
+            protected Map<String, PrepareContractionHierarchies.Result> prepareCH(boolean closeEarly, List<CHConfig> configsToPrepare) {
+                super.prepareCH(closeEarly, configsToPrepare.subList(0, 1));
+                throw new IllegalStateException("interrupted");
+            }
+        };
+        initResumableImport(interrupted);
+        IllegalStateException ex = assertThrows(IllegalStateException.class, interrupted::importOrLoad);
+        assertEquals("interrupted", ex.getMessage());
+        interrupted.close();
+
+        // without resuming the incomplete graph cannot be loaded
+        GraphHopper notResumable = initResumableImport(new GraphHopper()).setResumableImport(false);
+        ex = assertThrows(IllegalStateException.class, notResumable::importOrLoad);
+        assertTrue(ex.getMessage().contains("was interrupted after the stage 'subnetworks'"), ex.getMessage());
+
+        List<String> prepared = new ArrayList<>();
+        GraphHopper resumed = new GraphHopper() {
+            @Override
+            protected void importOSM() {
+                throw new IllegalStateException("the OSM file should not be read again");
+            }
+
+            @Override
+            protected List<PrepareLandmarks> prepareLM(boolean closeEarly, List<LMConfig> configsToPrepare) {
+                configsToPrepare.forEach(c -> prepared.add("lm:" + c.getName()));
+                return super.prepareLM(closeEarly, configsToPrepare);
+            }
+
+            @Override
+            protected Map<String, PrepareContractionHierarchies.Result> prepareCH(boolean closeEarly, List<CHConfig> configsToPrepare) {
+                configsToPrepare.forEach(c -> prepared.add("ch:" + c.getName()));
+                return super.prepareCH(closeEarly, configsToPrepare);
+            }
+        };
+        initResumableImport(resumed).importOrLoad();
+        assertEquals(List.of("ch:foot"), prepared);
+        GHResponse rsp = resumed.route(new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setProfile("foot"));
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        assertEquals("done", resumed.getProperties().get("import.checkpoint"));
+        assertFalse(resumed.getProperties().get("graph.profiles.ch.car.version").isEmpty());
+        resumed.close();
+
+        // the finished graph is loaded like any other graph
+        GraphHopper loaded = initResumableImport(new GraphHopper()).setResumableImport(false);
+        assertTrue(loaded.load());
+        loaded.close();
+    }
+
+    private static GraphHopper initResumableImport(GraphHopper hopper) {
+        hopper.setProfiles(TestProfiles.accessAndSpeed("car"), TestProfiles.accessSpeedAndPriority("foot"))
+                .setEncodedValuesString("car_access, car_average_speed, foot_access, foot_priority, foot_average_speed")
+                .setGraphHopperLocation(GH_LOCATION)
+                .setOSMFile(MONACO)
+                .setResumableImport(true);
+        hopper.getCHPreparationHandler().setCHProfiles(new CHProfile("car"), new CHProfile("foot"));
+        hopper.getLMPreparationHandler().setLMProfiles(new LMProfile("car"));
+        return hopper;
+    }
+
+    @Test
+    public void testApplyOSMChanges() {
+        initOSMChanges(new GraphHopper()).importAndClose();
+
+        // only the tags of way 100 change. it becomes a oneway, which changes the car weights, but not the foot weights
+        OSMChangeApplier.Result result = initOSMChanges(new GraphHopper()).applyOSMChanges(DIR + "/osm-changes-1.osc");
+        assertEquals(1, result.getUpdatedWays());
+        assertFalse(result.isTopologyChanged());
+        assertEquals(Set.of("car"), result.getChangedWeightings());
+
+        List<String> prepared = new ArrayList<>();
+        Supplier<GraphHopper> loader = () -> initOSMChanges(new GraphHopper() {
+            @Override
+            protected List<PrepareLandmarks> prepareLM(boolean closeEarly, List<LMConfig> configsToPrepare) {
+                configsToPrepare.forEach(c -> prepared.add("lm:" + c.getName()));
+                return super.prepareLM(closeEarly, configsToPrepare);
+            }
+
+            @Override
+            protected Map<String, PrepareContractionHierarchies.Result> prepareCH(boolean closeEarly, List<CHConfig> configsToPrepare) {
+                configsToPrepare.forEach(c -> prepared.add("ch:" + c.getName()));
+                return super.prepareCH(closeEarly, configsToPrepare);
+            }
+        });
+        GraphHopper hopper = loader.get();
+        hopper.importOrLoad();
+        assertEquals(List.of("lm:car", "ch:car"), prepared);
+        assertFalse(hopper.route(new GHRequest(51.000, 9.000, 51.000, 9.002).setProfile("car")).hasErrors());
+        assertTrue(hopper.route(new GHRequest(51.000, 9.002, 51.000, 9.000).setProfile("car")).hasErrors());
+        GHResponse rsp = hopper.route(new GHRequest(51.000, 9.002, 51.000, 9.000).setProfile("foot"));
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        assertEquals("High Street", rsp.getBest().getInstructions().get(0).getName());
+        hopper.close();
+
+        // way 102 is deleted and ways 103 and 104 are created. way 103 starts at the end of way 101 and way 104 at the
+        // pillar node 8 of way 100, so the edge of way 100 is split there. the change file does not contain these nodes.
+        result = initOSMChanges(new GraphHopper()).applyOSMChanges(DIR + "/osm-changes-2.osc");
+        assertEquals(1, result.getRemovedWays());
+        assertEquals(2, result.getAddedWays());
+        assertEquals(1, result.getSplitEdges());
+        assertEquals(4, result.getAddedEdges());
+        assertEquals(0, result.getSkippedWays());
+        assertTrue(result.isTopologyChanged());
+
+        prepared.clear();
+        hopper = loader.get();
+        hopper.importOrLoad();
+        assertEquals(List.of("lm:car", "ch:car", "ch:foot"), prepared);
+        rsp = hopper.route(new GHRequest(51.002, 9.002, 51.000, 9.000).setProfile("foot"));
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        assertEquals(362, rsp.getBest().getDistance(), 1);
+        assertEquals("New Street", rsp.getBest().getInstructions().get(0).getName());
+        rsp = hopper.route(new GHRequest(50.999, 9.0015, 51.000, 9.000).setProfile("foot"));
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        assertEquals(216, rsp.getBest().getDistance(), 1);
+        assertEquals("Side Street", rsp.getBest().getInstructions().get(0).getName());
+        // the split edges keep the tags of way 100
+        assertFalse(hopper.route(new GHRequest(51.000, 9.000, 51.000, 9.002).setProfile("car")).hasErrors());
+        assertTrue(hopper.route(new GHRequest(51.000, 9.002, 51.000, 9.000).setProfile("car")).hasErrors());
+        // the deleted way cannot be used anymore
+        rsp = hopper.route(new GHRequest(51.001, 9.002, 51.000, 9.002).setProfile("foot"));
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        assertTrue(rsp.getBest().getDistance() > 150, "distance: " + rsp.getBest().getDistance());
+        hopper.close();
+
+        // node 1 moves without its way, and way 101 is rerouted over existing nodes
+        result = initOSMChanges(new GraphHopper()).applyOSMChanges(DIR + "/osm-changes-3.osc");
+        assertEquals(1, result.getMovedNodes());
+        assertEquals(0, result.getUpdatedWays());
+        assertEquals(1, result.getAddedWays());
+        assertEquals(1, result.getAddedEdges());
+        assertEquals(0, result.getSkippedWays());
+
+        hopper = loader.get();
+        hopper.importOrLoad();
+        rsp = hopper.route(new GHRequest(51.000, 8.999, 51.000, 9.001).setProfile("foot"));
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        assertEquals(140, rsp.getBest().getDistance(), 1);
+        // way 101 does not connect node 4 with node 2 anymore, but with node 3
+        rsp = hopper.route(new GHRequest(51.001, 9.001, 51.000, 9.001).setProfile("foot"));
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        assertEquals(201, rsp.getBest().getDistance(), 1);
+        hopper.close();
+
+        // the new footway 105 only changes the foot weights, so the car preparations are kept although the graph has
+        // new nodes and edges now
+        result = initOSMChanges(new GraphHopper()).applyOSMChanges(DIR + "/osm-changes-4.osc");
+        assertEquals(1, result.getAddedWays());
+        assertEquals(1, result.getAddedEdges());
+        assertTrue(result.isTopologyChanged());
+        assertEquals(Set.of("foot"), result.getChangedWeightings());
+        assertEquals(1, result.getChangedEdges().size());
+
+        prepared.clear();
+        hopper = loader.get();
+        hopper.importOrLoad();
+        assertEquals(List.of("ch:foot"), prepared);
+        rsp = hopper.route(new GHRequest(51.002, 9.000, 51.000, 9.000).setProfile("foot"));
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        assertEquals("Garden Path", rsp.getBest().getInstructions().get(0).getName());
+        rsp = hopper.route(new GHRequest(51.000, 8.999, 51.001, 9.001).setProfile("car"));
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        assertEquals(hopper.route(new GHRequest(51.000, 8.999, 51.001, 9.001).setProfile("car")
+                .putHint(CH.DISABLE, true)).getBest().getDistance(), rsp.getBest().getDistance(), 1.e-6);
+        hopper.close();
+    }
+
+    private static GraphHopper initOSMChanges(GraphHopper hopper) {
+        hopper.setProfiles(TestProfiles.accessAndSpeed("car"), TestProfiles.accessSpeedAndPriority("foot"))
+                .setEncodedValuesString("car_access, car_average_speed, foot_access, foot_priority, foot_average_speed, osm_way_id")
+                .setGraphHopperLocation(GH_LOCATION)
+                .setOSMFile(DIR + "/osm-changes.osm.xml")
+                .setMinNetworkSize(0)
+                .setUpwardCHGraphs(true);
+        hopper.getReaderConfig().setStoreOSMNodes(true);
+        hopper.getCHPreparationHandler().setCHProfiles(new CHProfile("car"), new CHProfile("foot"));
+        hopper.getLMPreparationHandler().setLMProfiles(new LMProfile("car"));
+        return hopper;
+    }
+
     @Test
     void testLoadingWithAnotherSpeedFactorWorks() {
         {
@@ -0,0 +1,108 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.coll;
+
+import com.graphhopper.storage.DAType;
+import com.graphhopper.storage.GHDirectory;
+import com.graphhopper.storage.RAMDirectory;
+import com.graphhopper.util.Helper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GHLongLongSortedRunMapTest {
+    private final String location = "./target/tmp/sorted-run-map";
+
+    @AfterEach
+    public void tearDown() {
+        Helper.removeDir(new File(location));
+    }
+
+    @Test
+    public void testEmptyValue() {
+        GHLongLongSortedRunMap instance = new GHLongLongSortedRunMap(new RAMDirectory(), "ids", DAType.RAM, 2, -1);
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, () -> instance.put(1, -1));
+        assertTrue(ex.getMessage().contains("Value cannot be the 'empty value' -1"));
+        assertEquals(-1, instance.get(404));
+        assertEquals(-1, instance.put(404, 0));
+        assertEquals(0, instance.put(404, 5));
+        assertEquals(5, instance.get(404));
+        assertEquals(-1, instance.put(-404, 7));
+        assertEquals(-1, instance.put(Long.MAX_VALUE, 8));
+        assertEquals(5, instance.get(404));
+        assertEquals(7, instance.get(-404));
+        assertEquals(8, instance.get(Long.MAX_VALUE));
+        assertEquals(-1, instance.get(405));
+        assertEquals(-1, instance.get(Long.MIN_VALUE));
+        assertEquals(3, instance.getSize());
+    }
+
+    @Test
+    public void testValueRange() {
+        GHLongLongSortedRunMap instance = new GHLongLongSortedRunMap(new RAMDirectory(), "ids", DAType.RAM, 2, -1);
+        long max = instance.getMaxValue();
+        instance.put(1, max);
+        instance.put(2, -max - 1);
+        instance.put(3, -2);
+        assertEquals(max, instance.get(1));
+        assertEquals(-max - 1, instance.get(2));
+        assertEquals(-2, instance.get(3));
+        assertThrows(IllegalArgumentException.class, () -> instance.put(4, max + 1));
+        assertThrows(IllegalArgumentException.class, () -> instance.put(4, -max - 2));
+    }
+
+    @Test
+    public void testRandom() {
+        GHDirectory dir = new GHDirectory(location, DAType.RAM_STORE);
+        dir.create();
+        // a small buffer creates many runs that are merged
+        GHLongLongSortedRunMap instance = new GHLongLongSortedRunMap(dir, "ids", DAType.MMAP, 1000, -1);
+        Random random = new Random(123);
+        Map<Long, Long> expected = new HashMap<>();
+        for (int i = 0; i < 100_000; i++) {
+            // mostly dense keys, so many keys are updated, with some outliers and negative keys
+            long key = random.nextInt(20) == 0 ? random.nextLong() : random.nextInt(50_000);
+            long value = random.nextInt() * 37L;
+            if (value == -1)
+                continue;
+            Long old = expected.put(key, value);
+            assertEquals(old == null ? -1 : old, instance.put(key, value));
+        }
+        assertEquals(expected.size(), instance.getSize());
+        for (Map.Entry<Long, Long> e : expected.entrySet())
+            assertEquals((long) e.getValue(), instance.get(e.getKey()));
+        for (int i = 0; i < 1000; i++) {
+            long key = random.nextInt(100_000);
+            assertEquals(expected.getOrDefault(key, -1L), instance.get(key));
+        }
+        // the runs are merged, so there are only a few of them
+        assertTrue(instance.toString().matches("runs: [1-9], entries: " + expected.size()), instance.toString());
+        assertTrue(new File(location).list().length > 0);
+
+        instance.clear();
+        assertEquals(0, instance.getSize());
+        assertEquals(-1, instance.get(1));
+        assertEquals(0, new File(location).list().length);
+    }
+}
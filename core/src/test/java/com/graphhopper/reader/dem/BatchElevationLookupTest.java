@@ -0,0 +1,130 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.reader.dem;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchElevationLookupTest {
+    private TileBasedElevationProvider provider;
+
+    @AfterEach
+    public void tearDown() {
+        if (provider != null)
+            provider.release();
+    }
+
+    private static class Points implements BatchElevationLookup.Points {
+        final double[] lats;
+        final double[] lons;
+        final double[] eles;
+
+        Points(double[] lats, double[] lons) {
+            this.lats = lats;
+            this.lons = lons;
+            this.eles = new double[lats.length];
+        }
+
+        @Override
+        public long size() {
+            return lats.length;
+        }
+
+        @Override
+        public double getLat(long index) {
+            return lats[(int) index];
+        }
+
+        @Override
+        public double getLon(long index) {
+            return lons[(int) index];
+        }
+
+        @Override
+        public void setEle(long index, double ele) {
+            eles[(int) index] = ele;
+        }
+    }
+
+    @Test
+    public void testSortKey() {
+        // north before south within a cell
+        assertTrue(BatchElevationLookup.createSortKey(49.9, 11.5) < BatchElevationLookup.createSortKey(49.1, 11.5));
+        // the row does not depend on the longitude
+        assertEquals(BatchElevationLookup.createSortKey(49.5, 11.1), BatchElevationLookup.createSortKey(49.5, 11.9));
+        // the cells are sorted before the rows
+        assertTrue(BatchElevationLookup.createSortKey(49.1, 11.5) < BatchElevationLookup.createSortKey(49.9, 12.5));
+        assertTrue(BatchElevationLookup.createSortKey(-28.9, -71.1) < BatchElevationLookup.createSortKey(49.9, 11.5));
+        // the index bits are empty
+        assertEquals(0, BatchElevationLookup.createSortKey(90, 180) & Integer.MAX_VALUE);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 4})
+    public void testSameElevationsAsSingleLookups(int threads) {
+        provider = new SRTMProvider("./files/");
+        // mix the points of three tiles, like the nodes of an OSM file
+        List<double[]> tiles = new ArrayList<>();
+        tiles.add(new double[]{49.9, 11.5});
+        tiles.add(new double[]{-28.9, -71.1});
+        tiles.add(new double[]{55.85, -2.99});
+        int count = 3000;
+        double[] lats = new double[count];
+        double[] lons = new double[count];
+        for (int i = 0; i < count; i++) {
+            double[] tile = tiles.get(i % tiles.size());
+            lats[i] = tile[0] + (i % 97) * 0.0007;
+            lons[i] = tile[1] + (i % 89) * 0.0009;
+        }
+        Points points = new Points(lats, lons);
+        // use small chunks to test more than one chunk
+        new BatchElevationLookup(provider, threads).setChunkSize(1000).lookup(points, 0);
+        for (int i = 0; i < count; i++)
+            assertEquals(provider.getEle(lats[i], lons[i]), points.eles[i], 1e-6, "point " + i);
+    }
+
+    @Test
+    public void testDefaultElevation() {
+        ElevationProvider nanProvider = new ElevationProvider() {
+            @Override
+            public double getEle(double lat, double lon) {
+                return lat > 0 ? lat : Double.NaN;
+            }
+
+            @Override
+            public boolean canInterpolate() {
+                return false;
+            }
+
+            @Override
+            public void release() {
+            }
+        };
+        Points points = new Points(new double[]{10, -10, 20}, new double[]{5, 5, 5});
+        // this provider is not thread-safe, so a single thread is used
+        new BatchElevationLookup(nanProvider, 4).lookup(points, 42);
+        assertArrayEquals(new double[]{10, 42, 20}, points.eles);
+    }
+}
@@ -19,10 +19,13 @@ package com.graphhopper.reader.dem;
 
 import com.graphhopper.coll.GHIntHashSet;
 import com.graphhopper.routing.ev.RoadEnvironment;
+import com.graphhopper.storage.BaseGraph;
 import com.graphhopper.storage.NodeAccess;
 import com.graphhopper.util.*;
 import org.junit.jupiter.api.Test;
 
+import java.util.Random;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
 /**
@@ -125,4 +128,42 @@ public class BridgeElevationInterpolatorTest extends EdgeElevationInterpolatorTe
         assertEquals(18, edge17PointList.getEle(4), PRECISION);
         assertEquals(20, edge17PointList.getEle(5), PRECISION);
     }
+
+    @Test
+    public void testMultipleThreadsGiveSameResult() {
+        BaseGraph otherGraph = new BaseGraph.Builder(encodingManager).set3D(true).create();
+        createRandomGraph(graph);
+        createRandomGraph(otherGraph);
+        edgeElevationInterpolator.execute();
+        // small batches, so the graph is changed several times in between
+        new EdgeElevationInterpolator(otherGraph, roadEnvEnc, RoadEnvironment.BRIDGE).setThreads(4).setBatchSize(7).execute();
+
+        for (int node = 0; node < graph.getNodes(); node++)
+            assertEquals(graph.getNodeAccess().getEle(node), otherGraph.getNodeAccess().getEle(node), "node " + node);
+        for (int edge = 0; edge < graph.getEdges(); edge++) {
+            EdgeIteratorState state = graph.getEdgeIteratorState(edge, Integer.MIN_VALUE);
+            EdgeIteratorState otherState = otherGraph.getEdgeIteratorState(edge, Integer.MIN_VALUE);
+            assertEquals(state.fetchWayGeometry(FetchMode.ALL), otherState.fetchWayGeometry(FetchMode.ALL), "edge " + edge);
+            assertEquals(state.getDistance(), otherState.getDistance(), "edge " + edge);
+        }
+    }
+
+    private void createRandomGraph(BaseGraph graph) {
+        Random rnd = new Random(42);
+        int size = 30;
+        NodeAccess na = graph.getNodeAccess();
+        for (int node = 0; node < size * size; node++)
+            na.setNode(node, 50 + (node / size) * 0.001, 10 + (node % size) * 0.001, rnd.nextInt(500));
+        for (int node = 0; node < size * size; node++) {
+            for (int adj : new int[]{node + 1, node + size}) {
+                if (adj >= size * size || adj == node + 1 && adj % size == 0)
+                    continue;
+                EdgeIteratorState edge = graph.edge(node, adj).setDistance(100);
+                edge.set(roadEnvEnc, rnd.nextDouble() < 0.4 ? interpolatableRoadEnvironment : normalRoadEnvironment);
+                if (rnd.nextBoolean())
+                    edge.setWayGeometry(Helper.createPointList3D(na.getLat(node) + 0.0002, na.getLon(node) + 0.0003, rnd.nextInt(500),
+                            na.getLat(node) + 0.0004, na.getLon(node) + 0.0005, rnd.nextInt(500)));
+            }
+        }
+    }
 }
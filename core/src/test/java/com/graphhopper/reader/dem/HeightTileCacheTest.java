@@ -0,0 +1,117 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.reader.dem;
+
+import com.graphhopper.storage.DataAccess;
+import com.graphhopper.storage.Directory;
+import com.graphhopper.storage.RAMDirectory;
+import com.graphhopper.util.GHUtility;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HeightTileCacheTest {
+
+    /**
+     * Creates a cache with tiles of 128 bytes, the tile of a point is the integer part of its longitude and all its
+     * heights are 100 + this key.
+     */
+    private static HeightTileCache<Integer> createCache(Directory dir, AtomicInteger loads) {
+        return new HeightTileCache<>(() -> dir, (lat, lon) -> {
+            loads.incrementAndGet();
+            int key = (int) lon;
+            DataAccess heights;
+            synchronized (dir) {
+                heights = dir.create("tile" + key, 128);
+            }
+            heights.create(128);
+            for (int i = 0; i < 64; i++)
+                heights.setShort(2L * i, (short) (100 + key));
+            HeightTile tile = new HeightTile(0, key, 8, 8, 1e7, 1, 1);
+            tile.setHeights(heights);
+            return tile;
+        });
+    }
+
+    private static double getHeight(HeightTileCache<Integer> cache, int key, long maxBytes) {
+        return cache.getHeight(key, 0.5, key + 0.5, maxBytes);
+    }
+
+    @Test
+    public void testEvictLeastRecentlyUsed() {
+        Directory dir = new RAMDirectory();
+        AtomicInteger loads = new AtomicInteger();
+        HeightTileCache<Integer> cache = createCache(dir, loads);
+        assertEquals(100, getHeight(cache, 0, 300));
+        assertEquals(101, getHeight(cache, 1, 300));
+        assertEquals(256, cache.getBytes());
+        // tile 1 is now the least recently used tile
+        assertEquals(100, getHeight(cache, 0, 300));
+        assertEquals(2, loads.get());
+        assertEquals(102, getHeight(cache, 2, 300));
+        assertEquals(2, cache.size());
+        assertEquals(256, cache.getBytes());
+        assertNull(cache.get(1));
+        assertNotNull(cache.get(0));
+        assertNotNull(cache.get(2));
+        assertFalse(dir.getDAs().containsKey("tile1"));
+
+        // the closed tile can be opened again
+        assertEquals(101, getHeight(cache, 1, 300));
+        assertEquals(4, loads.get());
+        assertNull(cache.get(0));
+
+        // the last tile stays open even if it is too big
+        assertEquals(103, getHeight(cache, 3, 100));
+        assertEquals(1, cache.size());
+        assertNotNull(cache.get(3));
+
+        cache.clear(true);
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getBytes());
+    }
+
+    @Test
+    public void testConcurrentLookups() {
+        Directory dir = new RAMDirectory();
+        AtomicInteger loads = new AtomicInteger();
+        HeightTileCache<Integer> cache = createCache(dir, loads);
+        // only two of the eight tiles fit into the cache, so tiles are closed while other threads read
+        GHUtility.runConcurrently(IntStream.range(0, 8).mapToObj(thread -> () -> {
+            Random rand = new Random(thread);
+            for (int i = 0; i < 10_000; i++) {
+                int key = rand.nextInt(8);
+                assertEquals(100 + key, getHeight(cache, key, 300));
+            }
+        }), 4);
+        assertTrue(cache.size() <= 2);
+        assertTrue(loads.get() >= 8);
+    }
+
+    @Test
+    public void testMissingTile() {
+        Directory dir = new RAMDirectory();
+        HeightTileCache<Integer> cache = new HeightTileCache<>(() -> dir, (lat, lon) -> null);
+        assertEquals(0, cache.getHeight(0, 0.5, 0.5, Long.MAX_VALUE));
+        assertEquals(0, cache.size());
+    }
+}
@@ -85,6 +85,18 @@ public class SRTMProviderTest {
         // assertEquals(161, instance.getEle(55.8943144, -3.0000001), 1e-1);
     }
 
+    @Test
+    public void testMaxTileCache() {
+        instance = new SRTMProvider("./files/");
+        // every tile uses more than one MB, so only the last used tile stays open
+        instance.setMaxTileCacheMB(1);
+        for (int i = 0; i < 2; i++) {
+            assertEquals(466, instance.getEle(49.968651, 11.574869), 1e-1);
+            assertEquals(1678, instance.getEle(-28.88316, -71.070557), 1e-1);
+            assertEquals(161, instance.getEle(55.8943144, -3), 1e-1);
+        }
+    }
+
     @Test
     public void testGetHeight_issue545() throws IOException {
         instance = new SRTMProvider("./files/");
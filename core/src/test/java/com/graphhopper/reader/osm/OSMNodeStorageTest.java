@@ -0,0 +1,124 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.reader.osm;
+
+import com.carrotsearch.hppc.LongArrayList;
+import com.graphhopper.storage.RAMDirectory;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.PointList;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OSMNodeStorageTest {
+    private static final String DIR = "./target/osm-node-storage";
+
+    @AfterEach
+    void cleanUp() {
+        Helper.removeDir(new File(DIR));
+    }
+
+    @Test
+    void addRemoveAndLoad() {
+        OSMNodeStorage storage = new OSMNodeStorage(new RAMDirectory(DIR, true).create()).create(100);
+        long first = storage.addEdge(0, 100, LongArrayList.from(1, 2, 3), createPointList(3));
+        storage.addEdge(1, 101, LongArrayList.from(3, 10_000_000_000L), createPointList(2));
+        storage.addEdge(2, 102, LongArrayList.from(3, 4), createPointList(2));
+        assertThrows(IllegalArgumentException.class, () -> storage.addEdge(3, 103, LongArrayList.from(5), createPointList(2)));
+        storage.remove(first);
+        storage.renumberEdges(new int[]{2, 0, 1});
+        storage.flush();
+        storage.close();
+
+        OSMNodeStorage loaded = new OSMNodeStorage(new RAMDirectory(DIR, true));
+        assertTrue(loaded.loadExisting());
+        OSMNodeStorage.Cursor cursor = loaded.cursor();
+        assertTrue(cursor.next());
+        assertEquals(0, cursor.getEdge());
+        assertEquals(101, cursor.getOSMWayId());
+        assertEquals(2, cursor.size());
+        assertEquals(3, cursor.getOSMNodeId(0));
+        assertEquals(10_000_000_000L, cursor.getOSMNodeId(1));
+        assertEquals(50.1, cursor.getLat(1), 1.e-6);
+        assertEquals(10.1, cursor.getLon(1), 1.e-6);
+        loaded.setCoordinates(cursor.getPointer(), 1, 52, 11);
+        assertEquals(52, cursor.getLat(1), 1.e-6);
+        assertEquals(11, cursor.getLon(1), 1.e-6);
+        assertTrue(cursor.next());
+        assertEquals(1, cursor.getEdge());
+        assertEquals(4, cursor.getOSMNodeId(1));
+        assertFalse(cursor.next());
+        loaded.close();
+    }
+
+    @Test
+    void findByWayAndNode() {
+        OSMNodeStorage storage = new OSMNodeStorage(new RAMDirectory(DIR, true).create()).create(100);
+        long first = storage.addEdge(0, 100, LongArrayList.from(1, 2, 3), createPointList(3));
+        long second = storage.addEdge(1, 100, LongArrayList.from(3, 4), createPointList(2));
+        storage.buildIndex();
+        assertEquals(LongArrayList.from(first, second), sorted(storage.findByWay(100)));
+        assertEquals(LongArrayList.from(first, second), sorted(storage.findByNode(3)));
+        assertEquals(LongArrayList.from(first), storage.findByNode(1));
+        assertTrue(storage.findByWay(101).isEmpty());
+        assertTrue(storage.findByNode(5).isEmpty());
+
+        // new entries are added to the index, and the index grows when needed
+        long third = 0;
+        for (int i = 0; i < 100; i++) {
+            long pointer = storage.addEdge(2 + i, 200 + i, LongArrayList.from(4, 1000 + i, 1000 + i, 2000 + i), createPointList(4));
+            if (i == 0)
+                third = pointer;
+        }
+        assertEquals(LongArrayList.from(third), storage.findByWay(200));
+        // the node occurs twice in this entry
+        assertEquals(LongArrayList.from(third), storage.findByNode(1000));
+        assertEquals(101, storage.findByNode(4).size());
+        storage.remove(first);
+        assertEquals(LongArrayList.from(second), storage.findByWay(100));
+        storage.flush();
+        storage.close();
+
+        OSMNodeStorage loaded = new OSMNodeStorage(new RAMDirectory(DIR, true));
+        assertTrue(loaded.loadExisting());
+        assertEquals(LongArrayList.from(third), loaded.findByNode(2000));
+        OSMNodeStorage.Cursor cursor = loaded.cursor().moveTo(loaded.findByWay(201).get(0));
+        assertEquals(3, cursor.getEdge());
+        assertEquals(1001, cursor.getOSMNodeId(1));
+        assertTrue(cursor.next());
+        assertEquals(4, cursor.getEdge());
+        loaded.close();
+    }
+
+    private static LongArrayList sorted(LongArrayList list) {
+        long[] values = list.toArray();
+        Arrays.sort(values);
+        return LongArrayList.from(values);
+    }
+
+    private static PointList createPointList(int size) {
+        PointList pointList = new PointList(size, false);
+        for (int i = 0; i < size; i++)
+            pointList.add(50 + 0.1 * i, 10 + 0.1 * i);
+        return pointList;
+    }
+}
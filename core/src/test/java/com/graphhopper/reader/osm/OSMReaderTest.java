@@ -44,9 +44,12 @@ import com.graphhopper.util.details.PathDetail;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
@@ -146,6 +149,27 @@ public class OSMReaderTest {
         return index.findClosest(lat, lon, EdgeFilter.ALL_EDGES).getClosestNode();
     }
 
+    @ParameterizedTest
+    @ValueSource(strings = {"dense", "sorted_runs"})
+    public void testNodeIdMap(String nodeIdMap) {
+        GraphHopperFacade hopper = new GraphHopperFacade(file1);
+        hopper.getReaderConfig().setNodeIdMap(nodeIdMap);
+        hopper.importOrLoad();
+        BaseGraph graph = hopper.getBaseGraph();
+        assertEquals(4, graph.getNodes());
+        int n20 = AbstractGraphStorageTester.getIdOf(graph, 52);
+        int n10 = AbstractGraphStorageTester.getIdOf(graph, 51.2492152);
+        int n30 = AbstractGraphStorageTester.getIdOf(graph, 51.2);
+        assertEquals(GHUtility.asSet(n20), GHUtility.getNeighbors(carOutExplorer.setBaseNode(n10)));
+        assertEquals(3, GHUtility.count(carOutExplorer.setBaseNode(n20)));
+        assertEquals(GHUtility.asSet(n20), GHUtility.getNeighbors(carOutExplorer.setBaseNode(n30)));
+        assertFalse(graph.getDirectory().getDAs().containsKey("tmp_node_ids"));
+
+        GraphHopperFacade invalid = new GraphHopperFacade(file1);
+        invalid.getReaderConfig().setNodeIdMap("hash");
+        assertThrows(IllegalArgumentException.class, invalid::importOrLoad);
+    }
+
     @Test
     public void testOneWay() {
         GraphHopper hopper = new GraphHopperFacade(file2)
@@ -886,6 +910,34 @@ public class OSMReaderTest {
         assertEquals("2014-01-02T00:10:14Z", properties.get("datareader.data.date"));
     }
 
+    @Test
+    public void testPooledPbfDecoding() {
+        GraphHopperFacade hopper = new GraphHopperFacade("test-osm6.pbf");
+        hopper.setMinNetworkSize(0).importOrLoad();
+        List<String> expected = getEdges(hopper.getBaseGraph());
+        hopper.close();
+        Helper.removeDir(new File(dir));
+
+        GraphHopperFacade pooled = new GraphHopperFacade("test-osm6.pbf");
+        pooled.getReaderConfig().setPooledPbfDecoding(true);
+        pooled.setMinNetworkSize(0).importOrLoad();
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, getEdges(pooled.getBaseGraph()));
+        assertEquals("2014-01-02T00:10:14Z", pooled.getProperties().get("datareader.data.date"));
+    }
+
+    private static List<String> getEdges(BaseGraph graph) {
+        List<String> edges = new ArrayList<>();
+        AllEdgesIterator iter = graph.getAllEdges();
+        while (iter.next()) {
+            int[] flags = new int[(graph.getBytesForFlags() + 3) / 4];
+            for (int i = 0; i < flags.length; i++)
+                flags[i] = graph.getEdgeAccess().getInt(iter.getEdge(), i);
+            edges.add(iter.getBaseNode() + "-" + iter.getAdjNode() + " " + iter.getName() + " " + iter.getDistance() + " " + Arrays.toString(flags));
+        }
+        return edges;
+    }
+
     @Test
     public void testCrossBoundary_issue667() {
         GraphHopper hopper = new GraphHopperFacade("test-osm-waterway.xml").importOrLoad();
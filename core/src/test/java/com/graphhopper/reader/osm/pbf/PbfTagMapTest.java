@@ -0,0 +1,74 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.reader.osm.pbf;
+
+import com.google.protobuf.ByteString;
+import com.graphhopper.reader.ReaderWay;
+import org.junit.jupiter.api.Test;
+import org.openstreetmap.osmosis.osmbinary.Osmformat;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PbfTagMapTest {
+
+    private static PbfFieldDecoder createFieldDecoder(String... strings) {
+        Osmformat.StringTable.Builder stringTable = Osmformat.StringTable.newBuilder();
+        for (String s : strings) {
+            stringTable.addS(ByteString.copyFromUtf8(s));
+        }
+        return new PbfFieldDecoder(Osmformat.PrimitiveBlock.newBuilder().setStringtable(stringTable).build());
+    }
+
+    @Test
+    public void testLookup() {
+        PbfFieldDecoder fieldDecoder = createFieldDecoder("", "highway", "primary", "name", "main street", "secondary");
+        // the second highway tag overwrites the first one, like it does in a HashMap
+        PbfTagMap tags = new PbfTagMap(fieldDecoder, new int[]{1, 2, 3, 4, 1, 5});
+        assertEquals(2, tags.size());
+        assertEquals("secondary", tags.get("highway"));
+        assertEquals("main street", tags.get("name"));
+        assertTrue(tags.containsKey("name"));
+        assertFalse(tags.containsKey("oneway"));
+        assertNull(tags.get("oneway"));
+        Map<String, Object> expected = new HashMap<>();
+        expected.put("name", "main street");
+        expected.put("highway", "secondary");
+        assertEquals(expected, tags);
+        assertEquals(expected.entrySet(), tags.entrySet());
+
+        PbfTagMap empty = new PbfTagMap(fieldDecoder, PbfTagMap.NO_TAGS);
+        assertTrue(empty.isEmpty());
+        assertEquals(0, empty.size());
+        assertFalse(empty.entrySet().iterator().hasNext());
+    }
+
+    @Test
+    public void testModify() {
+        PbfFieldDecoder fieldDecoder = createFieldDecoder("", "highway", "primary", "name", "main street");
+        ReaderWay way = new ReaderWay(1, new PbfTagMap(fieldDecoder, new int[]{1, 2, 3, 4}));
+        assertTrue(way.hasTag("highway", "primary"));
+        way.setTag("oneway", "yes");
+        way.removeTag("name");
+        assertEquals("{highway=primary, oneway=yes}", way.getTags().toString());
+        way.clearTags();
+        assertFalse(way.hasTags());
+    }
+}
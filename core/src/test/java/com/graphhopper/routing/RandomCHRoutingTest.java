@@ -16,6 +16,7 @@ import com.graphhopper.storage.BaseGraph;
 import com.graphhopper.storage.CHConfig;
 import com.graphhopper.storage.RoutingCHGraph;
 import com.graphhopper.storage.RoutingCHGraphImpl;
+import com.graphhopper.storage.UpwardRoutingCHGraph;
 import com.graphhopper.storage.index.LocationIndexTree;
 import com.graphhopper.storage.index.Snap;
 import com.graphhopper.util.GHUtility;
@@ -43,6 +44,8 @@ public class RandomCHRoutingTest {
 
     private static final class Fixture {
         private final TraversalMode traversalMode;
+        private final boolean compactShortcuts;
+        private final boolean upwardGraph;
         private final int maxTurnCosts;
         private final double uTurnCosts;
         private final DecimalEncodedValue speedEnc;
@@ -51,8 +54,10 @@ public class RandomCHRoutingTest {
         private final BaseGraph graph;
         private CHConfig chConfig;
 
-        Fixture(TraversalMode traversalMode, double uTurnCosts) {
+        Fixture(TraversalMode traversalMode, double uTurnCosts, boolean compactShortcuts, boolean upwardGraph) {
             this.traversalMode = traversalMode;
+            this.compactShortcuts = compactShortcuts;
+            this.upwardGraph = upwardGraph;
             this.maxTurnCosts = 10;
             this.uTurnCosts = uTurnCosts;
             speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
@@ -64,14 +69,14 @@ public class RandomCHRoutingTest {
         void freeze() {
             graph.freeze();
             chConfig = traversalMode.isEdgeBased()
-                    ? CHConfig.edgeBased("p", new SpeedWeighting(speedEnc, turnCostEnc, graph.getTurnCostStorage(), uTurnCosts))
-                    : CHConfig.nodeBased("p", new SpeedWeighting(speedEnc));
+                    ? new CHConfig("p", new SpeedWeighting(speedEnc, turnCostEnc, graph.getTurnCostStorage(), uTurnCosts), true, compactShortcuts)
+                    : new CHConfig("p", new SpeedWeighting(speedEnc), false, compactShortcuts);
             weighting = chConfig.getWeighting();
         }
 
         @Override
         public String toString() {
-            return traversalMode + ", u-turn-costs=" + uTurnCosts;
+            return traversalMode + ", u-turn-costs=" + uTurnCosts + ", compact-shortcuts=" + compactShortcuts + ", upward-graph=" + upwardGraph;
         }
     }
 
@@ -79,9 +84,13 @@ public class RandomCHRoutingTest {
         @Override
         public Stream<? extends Arguments> provideArguments(ExtensionContext context) {
             return Stream.of(
-                            new Fixture(TraversalMode.NODE_BASED, Double.POSITIVE_INFINITY),
-                            new Fixture(TraversalMode.EDGE_BASED, 40),
-                            new Fixture(TraversalMode.EDGE_BASED, Double.POSITIVE_INFINITY)
+                            new Fixture(TraversalMode.NODE_BASED, Double.POSITIVE_INFINITY, false, false),
+                            new Fixture(TraversalMode.EDGE_BASED, 40, false, false),
+                            new Fixture(TraversalMode.EDGE_BASED, Double.POSITIVE_INFINITY, false, false),
+                            new Fixture(TraversalMode.NODE_BASED, Double.POSITIVE_INFINITY, true, false),
+                            new Fixture(TraversalMode.EDGE_BASED, 40, true, false),
+                            new Fixture(TraversalMode.NODE_BASED, Double.POSITIVE_INFINITY, false, true),
+                            new Fixture(TraversalMode.EDGE_BASED, 40, false, true)
                     )
                     .map(Arguments::of);
         }
@@ -118,6 +127,8 @@ public class RandomCHRoutingTest {
         PrepareContractionHierarchies pch = PrepareContractionHierarchies.fromGraph(f.graph, f.chConfig);
         PrepareContractionHierarchies.Result res = pch.doWork();
         RoutingCHGraph chGraph = RoutingCHGraphImpl.fromGraph(f.graph, res.getCHStorage(), res.getCHConfig());
+        if (f.upwardGraph)
+            chGraph = UpwardRoutingCHGraph.fromGraph(chGraph);
 
         int numQueryGraph = 25;
         int numVirtualNodes = 20;
@@ -18,6 +18,7 @@
 
 package com.graphhopper.routing.ch;
 
+import com.carrotsearch.hppc.IntContainer;
 import com.graphhopper.util.GHUtility;
 import org.junit.jupiter.api.Test;
 
@@ -55,6 +56,61 @@ class CHPreparationGraphTest {
         assertEquals("3-4 16.0,", res.toString());
     }
 
+    @Test
+    void compact() {
+        // 0-1-2-3-4
+        CHPreparationGraph pg = CHPreparationGraph.nodeBased(5, 4);
+        pg.setMinRemovedEdgesForCompaction(Integer.MAX_VALUE);
+        pg.addEdge(0, 1, 0, 1, 1);
+        pg.addEdge(1, 2, 1, 2, 2);
+        pg.addEdge(2, 3, 2, 3, 3);
+        pg.addEdge(3, 4, 3, 4, 4);
+        pg.prepareForContraction();
+        assertEquals(4, pg.addShortcut(0, 2, -1, -1, 0, 1, 3, 2));
+        assertEquals(5, pg.addShortcut(2, 0, -1, -1, 1, 0, 3, 2));
+        assertEquals(6, pg.addShortcut(2, 4, -1, -1, 2, 3, 7, 2));
+        pg.disconnect(1);
+        pg.disconnect(3);
+        assertEquals("0-2 3.0 (4),", getOutEdges(pg, 0));
+        assertEquals("2-4 7.0 (6),2-0 3.0 (5),", getOutEdges(pg, 2));
+        assertEquals(0, pg.getCompactions());
+        long bytes = pg.getMemoryUsage();
+
+        // the removed base edges are released, but the remaining edges and their order do not change
+        pg.compact();
+        assertEquals(1, pg.getCompactions());
+        assertTrue(pg.getMemoryUsage() < bytes, pg.getMemoryUsage() + " vs. " + bytes);
+        assertEquals(bytes, pg.getMaxMemoryUsage());
+        assertEquals("0-2 3.0 (4),", getOutEdges(pg, 0));
+        assertEquals("2-4 7.0 (6),2-0 3.0 (5),", getOutEdges(pg, 2));
+        assertEquals(2, pg.getDegree(0));
+        assertEquals(3, pg.getDegree(2));
+
+        // we can still update the graph, and it is compacted automatically once there are more removed edges than
+        // remaining ones
+        assertEquals(7, pg.addShortcut(0, 4, -1, -1, 4, 6, 10, 4));
+        pg.setMinRemovedEdgesForCompaction(1);
+        IntContainer neighbors = pg.disconnect(2);
+        assertEquals(2, neighbors.size());
+        assertTrue(neighbors.contains(0) && neighbors.contains(4));
+        assertEquals(2, pg.getCompactions());
+        assertEquals("0-4 10.0 (7),", getOutEdges(pg, 0));
+        PrepareGraphEdgeIterator iter = pg.createInEdgeExplorer().setBaseNode(4);
+        assertTrue(iter.next());
+        assertEquals(0, iter.getAdjNode());
+        assertEquals(7, iter.getPrepareEdge());
+        assertEquals(4, iter.getOrigEdgeCount());
+        assertFalse(iter.next());
+    }
+
+    private static String getOutEdges(CHPreparationGraph pg, int node) {
+        PrepareGraphEdgeIterator iter = pg.createOutEdgeExplorer().setBaseNode(node);
+        StringBuilder res = new StringBuilder();
+        while (iter.next())
+            res.append(iter).append(" (").append(iter.getPrepareEdge()).append("),");
+        return res.toString();
+    }
+
     @Test
     void useLargeEdgeId() {
         CHPreparationGraph.OrigGraph.Builder builder = new CHPreparationGraph.OrigGraph.Builder();
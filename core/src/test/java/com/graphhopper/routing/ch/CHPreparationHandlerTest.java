@@ -18,15 +18,37 @@
 package com.graphhopper.routing.ch;
 
 import com.graphhopper.config.CHProfile;
+import com.graphhopper.routing.ev.DecimalEncodedValue;
+import com.graphhopper.routing.ev.DecimalEncodedValueImpl;
+import com.graphhopper.routing.util.AllEdgesIterator;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.weighting.SpeedWeighting;
+import com.graphhopper.storage.*;
+import com.graphhopper.util.GHUtility;
+import com.graphhopper.util.Helper;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 
-import static org.junit.jupiter.api.Assertions.assertFalse;
-import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
 
 /**
  * @author Peter Karich
  */
 public class CHPreparationHandlerTest {
+    private static final String LOCATION = "./target/ch-preparation-handler-test";
+    private final DecimalEncodedValue speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
+    private final DecimalEncodedValue otherSpeedEnc = new DecimalEncodedValueImpl("other_speed", 5, 5, true);
+    private final EncodingManager encodingManager = EncodingManager.start().add(speedEnc).add(otherSpeedEnc).build();
+
+    @AfterEach
+    public void tearDown() {
+        Helper.removeDir(new File(LOCATION));
+    }
 
     @Test
     public void testEnabled() {
@@ -36,4 +58,55 @@ public class CHPreparationHandlerTest {
         assertTrue(instance.isEnabled());
     }
 
+    @Test
+    public void testNodeOrderingProfile() {
+        Helper.removeDir(new File(LOCATION));
+        BaseGraph graph = new BaseGraph.Builder(encodingManager).setDir(new GHDirectory(LOCATION, DAType.RAM_STORE)).create();
+        long seed = 42;
+        Random rnd = new Random(seed);
+        GHUtility.buildRandomGraph(graph, rnd, 500, 2.2, true, speedEnc, null, 0.8, 0.8);
+        // the other profile uses similar speeds
+        AllEdgesIterator iter = graph.getAllEdges();
+        while (iter.next())
+            iter.set(otherSpeedEnc, iter.get(speedEnc) * (0.8 + 0.4 * rnd.nextDouble()), iter.getReverse(speedEnc));
+        graph.freeze();
+        CHConfig car = CHConfig.nodeBased("car", new SpeedWeighting(speedEnc));
+        CHConfig other = CHConfig.nodeBased("other", new SpeedWeighting(otherSpeedEnc));
+        CHConfig dedicated = CHConfig.nodeBased("dedicated", new SpeedWeighting(otherSpeedEnc));
+
+        CHPreparationHandler handler = new CHPreparationHandler();
+        handler.setCHProfiles(new CHProfile("car"), new CHProfile("other").setNodeOrderingProfile("car"), new CHProfile("dedicated"));
+        // the profile with the node ordering is prepared first, even though it is listed last
+        Map<String, PrepareContractionHierarchies.Result> results = handler.prepare(graph, new StorableProperties(new RAMDirectory()),
+                List.of(other, dedicated, car), false);
+        CHStorage carStorage = results.get("car").getCHStorage();
+        CHStorage otherStorage = results.get("other").getCHStorage();
+        for (int node = 0; node < graph.getNodes(); node++)
+            assertEquals(carStorage.getLevel(carStorage.toNodePointer(node)), otherStorage.getLevel(otherStorage.toNodePointer(node)));
+        // the node ordering is not the best one for this weighting, but it still yields correct routes. its overhead is
+        // measured against the dedicated node ordering of the same weighting and not against the shortcuts of 'car'
+        long dedicatedShortcuts = results.get("dedicated").getShortcuts();
+        double overhead = (double) (results.get("other").getShortcuts() - dedicatedShortcuts) / dedicatedShortcuts;
+        assertTrue(overhead > -0.1 && overhead < 0.1, "overhead: " + overhead);
+        CHQueryChecker.checkRandomQueries(graph, other.getWeighting(), RoutingCHGraphImpl.fromGraph(graph, otherStorage, other), rnd, seed);
+        graph.flush();
+        results.values().forEach(r -> r.getCHStorage().close());
+        graph.close();
+
+        // the node ordering can also be taken from a loaded CH graph
+        BaseGraph loadedGraph = new BaseGraph.Builder(encodingManager).setDir(new GHDirectory(LOCATION, DAType.RAM_STORE)).build();
+        assertTrue(loadedGraph.loadExisting());
+        new File(LOCATION, "nodes_ch_other").delete();
+        new File(LOCATION, "shortcuts_other").delete();
+        handler = new CHPreparationHandler();
+        handler.setCHProfiles(new CHProfile("car"), new CHProfile("other").setNodeOrderingProfile("car"));
+        Map<String, RoutingCHGraph> loaded = handler.load(loadedGraph, List.of(car, other));
+        assertEquals(List.of("car"), List.copyOf(loaded.keySet()));
+        results = handler.prepare(loadedGraph, new StorableProperties(new RAMDirectory()), List.of(other), false);
+        assertEquals(otherStorage.getShortcuts(), results.get("other").getShortcuts());
+        CHQueryChecker.checkRandomQueries(loadedGraph, other.getWeighting(), RoutingCHGraphImpl.fromGraph(loadedGraph, results.get("other").getCHStorage(), other), rnd, seed);
+        loaded.values().forEach(RoutingCHGraph::close);
+        results.values().forEach(r -> r.getCHStorage().close());
+        loadedGraph.close();
+    }
 }
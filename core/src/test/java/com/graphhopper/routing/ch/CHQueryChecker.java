@@ -0,0 +1,56 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.carrotsearch.hppc.IntIndexedContainer;
+import com.graphhopper.routing.Dijkstra;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.RoutingCHGraph;
+import com.graphhopper.util.PMap;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compares node-based CH queries between random nodes with Dijkstra on the base graph.
+ */
+class CHQueryChecker {
+    static void checkRandomQueries(Graph graph, Weighting weighting, RoutingCHGraph chGraph, Random rnd, long seed) {
+        for (int i = 0; i < 100; i++) {
+            int from = rnd.nextInt(graph.getNodes());
+            int to = rnd.nextInt(graph.getNodes());
+            Path dijkstraPath = new Dijkstra(graph, weighting, TraversalMode.NODE_BASED).calcPath(from, to);
+            Path chPath = new CHRoutingAlgorithmFactory(chGraph).createAlgo(new PMap()).calcPath(from, to);
+            String msg = "seed: " + seed + ", from: " + from + ", to: " + to;
+            assertEquals(dijkstraPath.isFound(), chPath.isFound(), msg);
+            if (!chPath.isFound())
+                continue;
+            assertEquals(dijkstraPath.getWeight(), chPath.getWeight(), 1.e-1, msg);
+            // the unpacked path must consist of connected edges with the same weight
+            IntIndexedContainer nodes = chPath.calcNodes();
+            double weight = 0;
+            for (int j = 0; j < chPath.getEdgeCount(); j++)
+                weight += weighting.calcEdgeWeight(graph.getEdgeIteratorState(chPath.getEdges().get(j), nodes.get(j + 1)), false);
+            assertEquals(dijkstraPath.getWeight(), weight, 1.e-1, msg);
+        }
+    }
+}
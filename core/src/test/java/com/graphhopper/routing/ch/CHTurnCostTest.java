@@ -77,6 +77,7 @@ public class CHTurnCostTest {
     private CHConfig chConfig;
     private RoutingCHGraph chGraph;
     private boolean checkStrict;
+    private int contractionThreads;
 
     @BeforeEach
     public void init() {
@@ -91,6 +92,7 @@ public class CHTurnCostTest {
         // costs
         chConfig = chConfigs.get(0);
         checkStrict = true;
+        contractionThreads = 1;
     }
 
     /**
@@ -1116,6 +1118,18 @@ public class CHTurnCostTest {
         automaticCompareCHWithDijkstra(100);
     }
 
+    @RepeatedTest(10)
+    public void testFindPath_parallelContraction_compareWithDijkstra() {
+        long seed = System.nanoTime();
+        LOGGER.info("Seed for testFindPath_parallelContraction_compareWithDijkstra: {}", seed);
+        GHUtility.buildRandomGraph(graph, new Random(seed), 50, 3.0, true, speedEnc, null, 0.9, 0.8);
+        GHUtility.addRandomTurnCosts(graph, seed, null, turnCostEnc, maxCost, turnCostStorage);
+        graph.freeze();
+        checkStrict = false;
+        contractionThreads = 3;
+        automaticCompareCHWithDijkstra(100);
+    }
+
     private int nextCost(Random rnd) {
         // choose bound above max cost such that turn restrictions are likely
         return rnd.nextInt(3 * maxCost);
@@ -1186,6 +1200,7 @@ public class CHTurnCostTest {
         pMap.putObject(LAST_LAZY_NODES_UPDATES, 100);
         pMap.putObject(NEIGHBOR_UPDATES, 4);
         pMap.putObject(LOG_MESSAGES, 10);
+        pMap.putObject(CONTRACTION_THREADS, contractionThreads);
         PrepareContractionHierarchies ch = PrepareContractionHierarchies.fromGraph(graph, chConfig);
         ch.setParams(pMap);
         PrepareContractionHierarchies.Result res = ch.doWork();
@@ -0,0 +1,214 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.graphhopper.routing.Dijkstra;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.ev.*;
+import com.graphhopper.routing.util.AllEdgesIterator;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.AbstractAdjustedWeighting;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.routing.weighting.custom.CustomModelParser;
+import com.graphhopper.storage.*;
+import com.graphhopper.util.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.Random;
+import java.util.concurrent.*;
+
+import static com.graphhopper.json.Statement.If;
+import static com.graphhopper.json.Statement.Op.LIMIT;
+import static com.graphhopper.json.Statement.Op.MULTIPLY;
+import static com.graphhopper.routing.weighting.TurnCostProvider.NO_TURN_COST_PROVIDER;
+import static org.junit.jupiter.api.Assertions.*;
+
+class CustomizableCHTest {
+    private final DecimalEncodedValue speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
+    private final EnumEncodedValue<RoadClass> roadClassEnc = RoadClass.create();
+    private final EncodingManager encodingManager = EncodingManager.start().add(speedEnc).add(roadClassEnc).build();
+
+    private Weighting createWeighting(CustomModel customModel) {
+        customModel.addToSpeed(If("true", LIMIT, speedEnc.getName()));
+        return CustomModelParser.createWeighting(encodingManager, NO_TURN_COST_PROVIDER, customModel);
+    }
+
+    @Test
+    public void testCompareWithDijkstra() {
+        long seed = System.nanoTime();
+        Random rnd = new Random(seed);
+        BaseGraph graph = new BaseGraph.Builder(encodingManager).create();
+        GHUtility.buildRandomGraph(graph, rnd, 300, 2.2, true, speedEnc, null, 0.8, 0.8);
+        AllEdgesIterator iter = graph.getAllEdges();
+        RoadClass[] roadClasses = {RoadClass.PRIMARY, RoadClass.SECONDARY, RoadClass.RESIDENTIAL};
+        while (iter.next())
+            iter.set(roadClassEnc, roadClasses[rnd.nextInt(roadClasses.length)]);
+        graph.freeze();
+
+        CustomizableCH cch = CustomizableCH.fromGraph(graph, 3);
+        boolean[] ranks = new boolean[graph.getNodes()];
+        for (int node = 0; node < graph.getNodes(); node++)
+            ranks[cch.getRank(node)] = true;
+        for (boolean rank : ranks)
+            assertTrue(rank, "the ranks must be a permutation of the nodes");
+
+        // the same shortcuts are customized for very different metrics
+        checkQueries(graph, cch, createWeighting(new CustomModel()), rnd, seed);
+        checkQueries(graph, cch, createWeighting(new CustomModel()
+                .addToPriority(If("road_class == PRIMARY", MULTIPLY, "0"))
+                .addToPriority(If("road_class == SECONDARY", MULTIPLY, "0.3"))), rnd, seed);
+        checkQueries(graph, cch, createWeighting(new CustomModel().setDistanceInfluence(200d)), rnd, seed);
+        graph.close();
+    }
+
+    private void checkQueries(BaseGraph graph, CustomizableCH cch, Weighting weighting, Random rnd, long seed) {
+        CHQueryChecker.checkRandomQueries(graph, weighting, cch.getCHGraph(weighting.toString(), weighting), rnd, seed);
+    }
+
+    @Test
+    public void testGridAndCache() {
+        // 0-1-2-...
+        // | | |
+        // 30-31-...
+        BaseGraph graph = new BaseGraph.Builder(encodingManager).create();
+        int size = 30;
+        for (int row = 0; row < size; row++)
+            for (int col = 0; col < size; col++)
+                graph.getNodeAccess().setNode(row * size + col, 50 + row * 0.001, 10 + col * 0.0015);
+        for (int row = 0; row < size; row++)
+            for (int col = 0; col < size; col++) {
+                int node = row * size + col;
+                if (col + 1 < size)
+                    graph.edge(node, node + 1).setDistance(100).set(speedEnc, 60, 60).set(roadClassEnc, RoadClass.RESIDENTIAL);
+                if (row + 1 < size)
+                    graph.edge(node, node + size).setDistance(100).set(speedEnc, 60, 60).set(roadClassEnc, row % 5 == 0 ? RoadClass.PRIMARY : RoadClass.RESIDENTIAL);
+            }
+        graph.freeze();
+        CustomizableCH cch = CustomizableCH.fromGraph(graph, 2).setCacheSize(1);
+        // the nested dissection yields small separators for a grid, so most pairs of nodes are not connected
+        assertTrue(cch.getArcs() < 20 * graph.getNodes(), "arcs: " + cch.getArcs());
+
+        Weighting weighting = createWeighting(new CustomModel());
+        Weighting avoidPrimary = createWeighting(new CustomModel().addToPriority(If("road_class == PRIMARY", MULTIPLY, "0.1")));
+        RoutingCHGraph chGraph = cch.getCHGraph("a", weighting);
+        assertSame(chGraph, cch.getCHGraph("a", weighting));
+        RoutingCHGraph avoidPrimaryGraph = cch.getCHGraph("b", avoidPrimary);
+        assertNotSame(chGraph, avoidPrimaryGraph);
+        // the cache only holds one graph
+        assertNotSame(chGraph, cch.getCHGraph("a", weighting));
+
+        // from the north-west to the south-east corner, without the primary roads we need to go to the east first
+        Path path = new CHRoutingAlgorithmFactory(avoidPrimaryGraph).createAlgo(new PMap()).calcPath(size - 1, size * size - size);
+        Path dijkstraPath = new Dijkstra(graph, avoidPrimary, TraversalMode.NODE_BASED).calcPath(size - 1, size * size - size);
+        assertEquals(dijkstraPath.getWeight(), path.getWeight(), 1.e-1);
+        assertEquals(2 * (size - 1) * 100, path.getDistance(), 1.e-6);
+
+        // the thread pool is shut down when closing, so no further graphs can be customized
+        cch.close();
+        assertThrows(IllegalStateException.class, () -> cch.getCHGraph("a", weighting));
+        graph.close();
+    }
+
+    private BaseGraph createRandomGraph(Random rnd, int nodes) {
+        BaseGraph graph = new BaseGraph.Builder(encodingManager).create();
+        GHUtility.buildRandomGraph(graph, rnd, nodes, 2.2, true, speedEnc, null, 0.8, 0.8);
+        AllEdgesIterator iter = graph.getAllEdges();
+        while (iter.next())
+            iter.set(roadClassEnc, rnd.nextBoolean() ? RoadClass.PRIMARY : RoadClass.RESIDENTIAL);
+        graph.freeze();
+        return graph;
+    }
+
+    @Test
+    public void testStoreAndLoad(@TempDir File dir) {
+        long seed = System.nanoTime();
+        Random rnd = new Random(seed);
+        BaseGraph graph = createRandomGraph(rnd, 300);
+        CustomizableCH cch = CustomizableCH.fromGraph(graph, 1);
+        Directory directory = new GHDirectory(dir.getAbsolutePath(), DAType.MMAP).create();
+        cch.store(directory.create("cch"));
+        directory.close();
+
+        directory = new GHDirectory(dir.getAbsolutePath(), DAType.MMAP);
+        CustomizableCH loaded = CustomizableCH.load(graph, directory.create("cch"), 2);
+        assertNotNull(loaded);
+        assertEquals(cch.getArcs(), loaded.getArcs());
+        for (int node = 0; node < graph.getNodes(); node++)
+            assertEquals(cch.getRank(node), loaded.getRank(node));
+        checkQueries(graph, loaded, createWeighting(new CustomModel().addToPriority(If("road_class == PRIMARY", MULTIPLY, "0.5"))), rnd, seed);
+        directory.close();
+
+        // the stored ordering cannot be used for a different graph
+        BaseGraph otherGraph = createRandomGraph(rnd, 200);
+        directory = new GHDirectory(dir.getAbsolutePath(), DAType.MMAP);
+        assertNull(CustomizableCH.load(otherGraph, directory.create("cch"), 1));
+        assertNull(CustomizableCH.load(graph, directory.create("missing"), 1));
+        directory.close();
+        cch.close();
+        loaded.close();
+        graph.close();
+        otherGraph.close();
+    }
+
+    @Test
+    public void testMaxConcurrentCustomizations() throws Exception {
+        BaseGraph graph = createRandomGraph(new Random(123), 300);
+        CustomizableCH cch = CustomizableCH.fromGraph(graph, 1).setMaxConcurrentCustomizations(1);
+        Weighting weighting = createWeighting(new CustomModel());
+        CountDownLatch started = new CountDownLatch(1), release = new CountDownLatch(1);
+        Weighting blocking = new AbstractAdjustedWeighting(weighting) {
+            @Override
+            public double calcEdgeWeight(EdgeIteratorState edgeState, boolean reverse) {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                return superWeighting.calcEdgeWeight(edgeState, reverse);
+            }
+
+            @Override
+            public String getName() {
+                return "blocking";
+            }
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<RoutingCHGraph> first = executor.submit(() -> cch.getCHGraph("a", blocking));
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            // a request for the same key waits for the running customization
+            Future<RoutingCHGraph> second = executor.submit(() -> cch.getCHGraph("a", blocking));
+            // a different key is rejected, because the only customization is running
+            assertNull(cch.getCHGraph("b", weighting));
+            release.countDown();
+            assertNotNull(first.get(10, TimeUnit.SECONDS));
+            assertSame(first.get(), second.get(10, TimeUnit.SECONDS));
+            assertNotNull(cch.getCHGraph("b", weighting));
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+        assertThrows(IllegalArgumentException.class, () -> cch.setMaxConcurrentCustomizations(0));
+        cch.close();
+        graph.close();
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.graphhopper.routing.Dijkstra;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.ev.DecimalEncodedValue;
+import com.graphhopper.routing.ev.DecimalEncodedValueImpl;
+import com.graphhopper.routing.ev.TurnCost;
+import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.routing.querygraph.QueryRoutingCHGraph;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.SpeedWeighting;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.CHConfig;
+import com.graphhopper.storage.RoutingCHGraph;
+import com.graphhopper.storage.RoutingCHGraphImpl;
+import com.graphhopper.storage.index.LocationIndexTree;
+import com.graphhopper.storage.index.Snap;
+import com.graphhopper.util.GHUtility;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.List;
+import java.util.Random;
+
+import static com.graphhopper.util.GHUtility.createRandomSnaps;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ManyToManyCHTest {
+    private final DecimalEncodedValue speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
+    private final DecimalEncodedValue turnCostEnc = TurnCost.create("car", 10);
+    private final EncodingManager encodingManager = EncodingManager.start().add(speedEnc).addTurnCostEncodedValue(turnCostEnc).build();
+
+    @Test
+    public void simple() {
+        // 0-1-2-3
+        //   |
+        //   4
+        BaseGraph graph = new BaseGraph.Builder(encodingManager).create();
+        graph.edge(0, 1).setDistance(100).set(speedEnc, 10, 10);
+        graph.edge(1, 2).setDistance(200).set(speedEnc, 10, 10);
+        graph.edge(2, 3).setDistance(300).set(speedEnc, 10, 0);
+        graph.edge(1, 4).setDistance(400).set(speedEnc, 10, 10);
+        graph.freeze();
+        RoutingCHGraph chGraph = prepareCH(graph, CHConfig.nodeBased("p", new SpeedWeighting(speedEnc)));
+        ManyToManyCH.Result result = new ManyToManyCH(chGraph).calcMatrix(new int[]{0, 3, 4}, new int[]{3, 4, 0});
+        assertEquals(3, result.getSources());
+        assertEquals(3, result.getTargets());
+        assertEquals(600, result.getDistance(0, 0), 1.e-6);
+        assertEquals(500, result.getDistance(0, 1), 1.e-6);
+        assertEquals(0, result.getDistance(0, 2), 1.e-6);
+        assertEquals(60_000, result.getTime(0, 0));
+        // the edge 2-3 is one-way
+        assertFalse(result.isFound(1, 1));
+        assertFalse(result.isFound(1, 2));
+        assertTrue(Double.isInfinite(result.getWeight(1, 1)));
+        assertEquals(900, result.getDistance(2, 0), 1.e-6);
+        assertEquals(500, result.getDistance(2, 2), 1.e-6);
+        assertTrue(result.getVisitedNodes() > 0);
+        assertThrows(IllegalStateException.class, () -> result.getPath(0, 0));
+        assertThrows(IllegalArgumentException.class, () -> new ManyToManyCH(chGraph).calcMatrix(new int[]{5}, new int[]{0}));
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    public void random(boolean edgeBased) {
+        long seed = System.nanoTime();
+        Random rnd = new Random(seed);
+        BaseGraph graph = new BaseGraph.Builder(encodingManager).withTurnCosts(true).create();
+        // no offset, because traveling via virtual edges would not be the same as taking the direct edge otherwise
+        GHUtility.buildRandomGraph(graph, rnd, 200, 2.2, true, speedEnc, null, 0.8, 0);
+        if (edgeBased)
+            GHUtility.addRandomTurnCosts(graph, seed, null, turnCostEnc, 10, graph.getTurnCostStorage());
+        LocationIndexTree locationIndex = new LocationIndexTree(graph, graph.getDirectory());
+        locationIndex.prepareIndex();
+        graph.freeze();
+        CHConfig chConfig = edgeBased
+                ? CHConfig.edgeBased("p", new SpeedWeighting(speedEnc, turnCostEnc, graph.getTurnCostStorage(), 40))
+                : CHConfig.nodeBased("p", new SpeedWeighting(speedEnc));
+        RoutingCHGraph chGraph = prepareCH(graph, chConfig);
+        TraversalMode traversalMode = edgeBased ? TraversalMode.EDGE_BASED : TraversalMode.NODE_BASED;
+
+        for (int rep = 0; rep < 5; rep++) {
+            // the virtual nodes and edges must be handled just like in the other CH algorithms
+            List<Snap> snaps = createRandomSnaps(graph.getBounds(), locationIndex, rnd, 10, false, EdgeFilter.ALL_EDGES);
+            QueryGraph queryGraph = QueryGraph.create(graph, snaps);
+            RoutingCHGraph queryCHGraph = new QueryRoutingCHGraph(chGraph, queryGraph);
+            int[] sources = randomNodes(rnd, 15, queryGraph.getNodes());
+            int[] targets = randomNodes(rnd, 20, queryGraph.getNodes());
+            ManyToManyCH.Result result = new ManyToManyCH(queryCHGraph).calcMatrix(sources, targets);
+            ManyToManyCH.Result resultWithPaths = new ManyToManyCH(queryCHGraph).setUnpackPaths(true).calcMatrix(sources, targets);
+            for (int i = 0; i < sources.length; i++) {
+                for (int j = 0; j < targets.length; j++) {
+                    String msg = "seed: " + seed + ", source: " + sources[i] + ", target: " + targets[j];
+                    Path refPath = new Dijkstra(queryGraph, queryGraph.wrapWeighting(chConfig.getWeighting()), traversalMode).calcPath(sources[i], targets[j]);
+                    assertEquals(refPath.isFound(), result.isFound(i, j), msg);
+                    assertEquals(refPath.isFound(), resultWithPaths.isFound(i, j), msg);
+                    if (!refPath.isFound())
+                        continue;
+                    assertEquals(refPath.getWeight(), result.getWeight(i, j), 1.e-2, msg);
+                    // the times and distances calculated without unpacking the paths must be the same as the ones of
+                    // the unpacked paths
+                    Path path = resultWithPaths.getPath(i, j);
+                    assertEquals(refPath.getWeight(), path.getWeight(), 1.e-2, msg);
+                    assertEquals(sources[i], path.calcNodes().get(0), msg);
+                    assertEquals(targets[j], path.calcNodes().get(path.calcNodes().size() - 1), msg);
+                    assertEquals(path.getTime(), result.getTime(i, j), msg);
+                    assertEquals(path.getDistance(), result.getDistance(i, j), 1.e-6, msg);
+                    assertEquals(path.getTime(), resultWithPaths.getTime(i, j), msg);
+                }
+            }
+        }
+    }
+
+    private static RoutingCHGraph prepareCH(BaseGraph graph, CHConfig chConfig) {
+        PrepareContractionHierarchies.Result res = PrepareContractionHierarchies.fromGraph(graph, chConfig).doWork();
+        return RoutingCHGraphImpl.fromGraph(graph, res.getCHStorage(), res.getCHConfig());
+    }
+
+    private static int[] randomNodes(Random rnd, int count, int nodes) {
+        int[] result = new int[count];
+        for (int i = 0; i < count; i++)
+            result[i] = rnd.nextInt(nodes);
+        return result;
+    }
+}
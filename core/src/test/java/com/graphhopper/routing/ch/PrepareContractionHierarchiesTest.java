@@ -577,6 +577,69 @@ public class PrepareContractionHierarchiesTest {
         }
     }
 
+    @Test
+    public void testParallelContraction() {
+        long seed = System.nanoTime();
+        Random rnd = new Random(seed);
+        GHUtility.buildRandomGraph(g, rnd, 2_000, 1.3, true, speedEnc, null, 0.9, 0.8);
+        g.freeze();
+
+        PrepareContractionHierarchies.Result twoThreads = prepareInParallel(2, null);
+        PrepareContractionHierarchies.Result fourThreads = prepareInParallel(4, null);
+        // the shortcuts are added one node after the other, so the number of threads does not change the result
+        assertEquals(twoThreads.getShortcuts(), fourThreads.getShortcuts(), "seed: " + seed);
+        for (int node = 0; node < g.getNodes(); node++)
+            assertEquals(twoThreads.getCHStorage().getLevel(twoThreads.getCHStorage().toNodePointer(node)),
+                    fourThreads.getCHStorage().getLevel(fourThreads.getCHStorage().toNodePointer(node)), "seed: " + seed);
+        checkQueries(fourThreads, rnd, seed);
+
+        // contract the nodes in the same order once more, the nodes of each round are taken from this order
+        PrepareContractionHierarchies.Result fixedOrder = prepareInParallel(3, fourThreads.getCHStorage().getNodeOrderingProvider());
+        checkQueries(fixedOrder, rnd, seed);
+    }
+
+    @Test
+    public void testCompactShortcuts() {
+        long seed = System.nanoTime();
+        Random rnd = new Random(seed);
+        GHUtility.buildRandomGraph(g, rnd, 1_000, 1.3, true, speedEnc, null, 0.9, 0.8);
+        // node 1000 is only connected via two very long edges, so there will be a shortcut with a very large weight. it
+        // must not reduce the precision of the other shortcut weights
+        g.edge(0, 1_000).setDistance(1_000_000).set(speedEnc, 5, 5);
+        g.edge(1_000, 1).setDistance(1_000_000).set(speedEnc, 5, 5);
+        g.freeze();
+
+        PrepareContractionHierarchies.Result defaultResult = createPrepareContractionHierarchies(g, new CHConfig("default", weighting, false, false)).doWork();
+        PrepareContractionHierarchies.Result compactResult = createPrepareContractionHierarchies(g, new CHConfig("compact", weighting, false, true)).doWork();
+        assertTrue(compactResult.getCHStorage().isCompact());
+        RoutingCHGraph defaultCHGraph = RoutingCHGraphImpl.fromGraph(g, defaultResult.getCHStorage(), defaultResult.getCHConfig());
+        RoutingCHGraph compactCHGraph = RoutingCHGraphImpl.fromGraph(g, compactResult.getCHStorage(), compactResult.getCHConfig());
+        for (int i = 0; i < 100; i++) {
+            int from = rnd.nextInt(g.getNodes());
+            int to = rnd.nextInt(g.getNodes());
+            Path defaultPath = new CHRoutingAlgorithmFactory(defaultCHGraph).createAlgo(new PMap()).calcPath(from, to);
+            Path compactPath = new CHRoutingAlgorithmFactory(compactCHGraph).createAlgo(new PMap()).calcPath(from, to);
+            // the compact layout stores the same weights, so the routes must be exactly the same
+            String msg = "seed: " + seed + ", from: " + from + ", to: " + to;
+            assertEquals(defaultPath.getWeight(), compactPath.getWeight(), msg);
+            assertEquals(defaultPath.calcNodes(), compactPath.calcNodes(), msg);
+        }
+        CHQueryChecker.checkRandomQueries(g, weighting, compactCHGraph, rnd, seed);
+    }
+
+    private PrepareContractionHierarchies.Result prepareInParallel(int threads, NodeOrderingProvider nodeOrdering) {
+        PrepareContractionHierarchies prepare = createPrepareContractionHierarchies(g, CHConfig.nodeBased("p" + threads, weighting))
+                .setParams(new PMap().putObject(CHParameters.CONTRACTION_THREADS, threads));
+        if (nodeOrdering != null)
+            prepare.useFixedNodeOrdering(nodeOrdering);
+        return prepare.doWork();
+    }
+
+    private void checkQueries(PrepareContractionHierarchies.Result result, Random rnd, long seed) {
+        RoutingCHGraph chGraph = RoutingCHGraphImpl.fromGraph(g, result.getCHStorage(), result.getCHConfig());
+        CHQueryChecker.checkRandomQueries(g, weighting, chGraph, rnd, seed);
+    }
+
     private void checkPath(BaseGraph g, CHConfig c, int expShortcuts, double expDistance, IntIndexedContainer expNodes, int[] nodeOrdering) {
         PrepareContractionHierarchies prepare = createPrepareContractionHierarchies(g, c);
         useNodeOrdering(prepare, nodeOrdering);
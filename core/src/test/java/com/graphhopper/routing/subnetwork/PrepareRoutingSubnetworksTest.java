@@ -92,6 +92,29 @@ public class PrepareRoutingSubnetworksTest {
         assertEquals(IntArrayList.from(), getSubnetworkEdges(g, subnetworkEnc));
     }
 
+    @Test
+    public void testUpdateSubnetworks() {
+        DecimalEncodedValue speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
+        BooleanEncodedValue subnetworkEnc = Subnetwork.create("car");
+        EncodingManager em = EncodingManager.start().add(speedEnc).add(subnetworkEnc).build();
+        BaseGraph g = createSubnetworkTestStorage(em, speedEnc, null);
+        PrepareRoutingSubnetworks instance = new PrepareRoutingSubnetworks(g, Collections.singletonList(createJob(subnetworkEnc, speedEnc)));
+        instance.setMinNetworkSize(4);
+        assertEquals(3, instance.doWork());
+        assertEquals(IntArrayList.from(7, 8, 9), getSubnetworkEdges(g, subnetworkEnc));
+
+        // opening the middle edge connects the upper network, so it is not a subnetwork anymore
+        g.getEdgeIteratorState(0, Integer.MIN_VALUE).set(speedEnc, 10, 10);
+        assertEquals(3, instance.updateSubnetworks(IntArrayList.from(0)));
+        assertEquals(IntArrayList.from(), getSubnetworkEdges(g, subnetworkEnc));
+
+        // and closing it again makes it a subnetwork again, although only edge 0 is given
+        g.getEdgeIteratorState(0, Integer.MIN_VALUE).set(speedEnc, 0, 0);
+        assertEquals(3, instance.updateSubnetworks(IntArrayList.from(0)));
+        assertEquals(IntArrayList.from(7, 8, 9), getSubnetworkEdges(g, subnetworkEnc));
+        assertEquals(0, instance.updateSubnetworks(IntArrayList.from(0, 5)));
+    }
+
     @Test
     public void testPrepareSubnetworks_twoVehicles() {
         DecimalEncodedValue carSpeedEnc = new DecimalEncodedValueImpl("car_speed", 5, 5, true);
@@ -144,6 +144,57 @@ class AreaIndexTest {
         assertEquals("NL", countryIndex.query(52.208451, 5.500524).get(0).getProperties().get(State.ISO_3166_2));
     }
 
+    @Test
+    public void testGridCacheGivesSameResults() {
+        List<CustomArea> countries = readCountries();
+        // with a single cell that is never split all borders are tested exactly, like without the grid cache
+        AreaIndex<CustomArea> exactIndex = new AreaIndex<>(countries, 360, 0);
+        AreaIndex<CustomArea> gridIndex = new AreaIndex<>(countries);
+        AreaIndex<CustomArea> smallGridIndex = new AreaIndex<>(countries, 0.1, 2);
+        Random rand = new Random(123);
+        for (int i = 0; i < 20_000; i++) {
+            // mostly Europe, where the borders are close together
+            double lat = i % 2 == 0 ? 35 + rand.nextDouble() * 25 : -90 + rand.nextDouble() * 180;
+            double lon = i % 2 == 0 ? -10 + rand.nextDouble() * 40 : -180 + rand.nextDouble() * 360;
+            List<CustomArea> expected = exactIndex.query(lat, lon);
+            assertEquals(expected, gridIndex.query(lat, lon), "lat: " + lat + ", lon: " + lon);
+            assertEquals(expected, smallGridIndex.query(lat, lon), "lat: " + lat + ", lon: " + lon);
+        }
+        // points on the cell borders
+        for (double lat = 47; lat <= 49; lat += 0.5)
+            for (double lon = 6; lon <= 8; lon += 0.5)
+                assertEquals(exactIndex.query(lat, lon), gridIndex.query(lat, lon), "lat: " + lat + ", lon: " + lon);
+    }
+
+    @Test
+    public void testGridCacheWithHoleAndOverlap() {
+        GeometryFactory gf = new GeometryFactory();
+        Polygon border1 = gf.createPolygon(
+                gf.createLinearRing(new Coordinate[]{
+                        new Coordinate(0, 0), new Coordinate(4, 0), new Coordinate(4, 4), new Coordinate(0, 4),
+                        new Coordinate(0, 0)}),
+                new LinearRing[]{gf.createLinearRing(new Coordinate[]{
+                        new Coordinate(1.5, 1.5), new Coordinate(2.5, 1.5), new Coordinate(2.5, 2.5),
+                        new Coordinate(1.5, 2.5), new Coordinate(1.5, 1.5)})});
+        Polygon border2 = gf.createPolygon(new Coordinate[]{
+                new Coordinate(2, 2), new Coordinate(6, 2), new Coordinate(6, 3), new Coordinate(2, 3),
+                new Coordinate(2, 2)});
+        List<CustomArea> areas = Arrays.asList(createCustomArea("1", border1), createCustomArea("2", border2));
+        AreaIndex<CustomArea> exactIndex = new AreaIndex<>(areas, 360, 0);
+        AreaIndex<CustomArea> gridIndex = new AreaIndex<>(areas, 0.5, 3);
+        Random rand = new Random(42);
+        for (int i = 0; i < 10_000; i++) {
+            double lat = -1 + rand.nextDouble() * 8;
+            double lon = -1 + rand.nextDouble() * 8;
+            assertEquals(exactIndex.query(lat, lon), gridIndex.query(lat, lon), "lat: " + lat + ", lon: " + lon);
+        }
+        testQuery(gridIndex, 0.5, 0.5, "1");
+        testQuery(gridIndex, 2, 2, "2");
+        testQuery(gridIndex, 2.75, 2.75, "1", "2");
+        testQuery(gridIndex, 2.75, 5, "2");
+        testQuery(gridIndex, 5, 5);
+    }
+
     private AreaIndex<CustomArea> createCountryIndex() {
         return new AreaIndex<>(readCountries());
     }
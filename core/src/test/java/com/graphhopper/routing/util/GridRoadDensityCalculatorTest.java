@@ -0,0 +1,135 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.routing.util;
+
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.EdgeIteratorState;
+import org.junit.jupiter.api.Test;
+
+import java.util.function.ToDoubleFunction;
+
+import static com.graphhopper.util.DistanceCalcEarth.METERS_PER_DEGREE;
+import static org.junit.jupiter.api.Assertions.*;
+
+class GridRoadDensityCalculatorTest {
+
+    /**
+     * Creates a square grid of roads with the given distance between the junctions. The grid has its south-west corner
+     * at the given point.
+     */
+    private static void addGrid(BaseGraph graph, double lat, double lon, int size, double meters) {
+        NodeAccess na = graph.getNodeAccess();
+        int first = graph.getNodes();
+        double latStep = meters / METERS_PER_DEGREE;
+        double lonStep = latStep / Math.cos(Math.toRadians(lat));
+        for (int row = 0; row < size; row++)
+            for (int col = 0; col < size; col++)
+                na.setNode(first + row * size + col, lat + row * latStep, lon + col * lonStep);
+        for (int row = 0; row < size; row++)
+            for (int col = 0; col < size; col++) {
+                int node = first + row * size + col;
+                if (col + 1 < size)
+                    graph.edge(node, node + 1).setDistance(meters);
+                if (row + 1 < size)
+                    graph.edge(node, node + size).setDistance(meters);
+            }
+    }
+
+    @Test
+    public void testSimilarToRoadDensityCalculator() {
+        BaseGraph graph = new BaseGraph.Builder(4).create();
+        // a dense city and a sparse village
+        addGrid(graph, 50, 10, 60, 50);
+        addGrid(graph, 50.2, 10.2, 20, 200);
+        ToDoubleFunction<EdgeIteratorState> calcRoadFactor = edge -> 1;
+        double radius = 400;
+        float[] densities = GridRoadDensityCalculator.calcRoadDensities(graph, radius, calcRoadFactor, 2);
+        assertEquals(graph.getEdges(), densities.length);
+
+        RoadDensityCalculator calculator = new RoadDensityCalculator(graph);
+        // edges in the middle of both grids
+        float cityDensity = 0, villageDensity = 0;
+        for (int node : new int[]{30 * 60 + 30, 60 * 60 + 10 * 20 + 10}) {
+            EdgeIterator edge = graph.createEdgeExplorer().setBaseNode(node);
+            assertTrue(edge.next());
+            double expected = calculator.calcRoadDensity(edge, radius, calcRoadFactor);
+            assertEquals(expected, densities[edge.getEdge()], expected * 0.25, "node " + node);
+            if (node < 60 * 60)
+                cityDensity = densities[edge.getEdge()];
+            else
+                villageDensity = densities[edge.getEdge()];
+        }
+        assertTrue(cityDensity > 10 * villageDensity);
+        graph.close();
+    }
+
+    @Test
+    public void testTileBordersAndThreads() {
+        BaseGraph graph = new BaseGraph.Builder(4).create();
+        // this grid is bigger than a tile and a single road is far away
+        addGrid(graph, 49.9, 9.9, 400, 190);
+        int far = graph.getNodes();
+        graph.getNodeAccess().setNode(far, -30, -60);
+        graph.getNodeAccess().setNode(far + 1, -30.001, -60);
+        graph.edge(far, far + 1).setDistance(111);
+        float[] densities = GridRoadDensityCalculator.calcRoadDensities(graph, 1000, edge -> 1, 1);
+        assertArrayEquals(densities, GridRoadDensityCalculator.calcRoadDensities(graph, 1000, edge -> 1, 4));
+
+        // the junctions of the neighbouring tiles are included, so the density is nearly the same for all edges that
+        // are not close to the border of the grid
+        double sum = 0;
+        int count = 0;
+        for (int edge = 0; edge < graph.getEdges() - 1; edge++) {
+            EdgeIteratorState state = graph.getEdgeIteratorState(edge, Integer.MIN_VALUE);
+            int row = state.getBaseNode() / 400, col = state.getBaseNode() % 400;
+            if (row >= 10 && row < 390 && col >= 10 && col < 390) {
+                sum += densities[edge];
+                count++;
+            }
+        }
+        double mean = sum / count;
+        for (int edge = 0; edge < graph.getEdges() - 1; edge++) {
+            EdgeIteratorState state = graph.getEdgeIteratorState(edge, Integer.MIN_VALUE);
+            int row = state.getBaseNode() / 400, col = state.getBaseNode() % 400;
+            if (row >= 10 && row < 390 && col >= 10 && col < 390)
+                assertEquals(mean, densities[edge], mean * 0.15, "edge " + edge);
+        }
+        // the single road only counts its own two junctions
+        assertEquals(2 / 1000.0 / 1000.0, densities[graph.getEdges() - 1], 1e-12);
+
+        // only the edges to the east count, but every junction has such an edge, so nothing changes
+        NodeAccess na = graph.getNodeAccess();
+        float[] eastDensities = GridRoadDensityCalculator.calcRoadDensities(graph, 1000,
+                edge -> na.getLat(edge.getBaseNode()) == na.getLat(edge.getAdjNode()) ? 1 : 0, 4);
+        for (int edge = 0; edge < graph.getEdges() - 1; edge++)
+            assertEquals(densities[edge], eastDensities[edge], "edge " + edge);
+        assertEquals(0, eastDensities[graph.getEdges() - 1]);
+        graph.close();
+    }
+
+    @Test
+    public void testTooSmallRadius() {
+        BaseGraph graph = new BaseGraph.Builder(4).create();
+        assertThrows(IllegalArgumentException.class, () -> GridRoadDensityCalculator.calcRoadDensities(graph, 0, edge -> 1, 1));
+        assertThrows(IllegalArgumentException.class, () -> GridRoadDensityCalculator.calcRoadDensities(graph, 1, edge -> 1, 1));
+        graph.close();
+    }
+}
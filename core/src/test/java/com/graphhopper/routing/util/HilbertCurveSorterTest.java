@@ -0,0 +1,131 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.routing.util;
+
+import com.graphhopper.routing.ev.*;
+import com.graphhopper.search.KVStorage;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.storage.TurnCostStorage;
+import com.graphhopper.util.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HilbertCurveSorterTest {
+
+    @Test
+    void hilbertIndex() {
+        // the first level of the curve visits the four quadrants in the order: lower left, upper left, upper right, lower right
+        int half = 1 << 14;
+        assertEquals(0, HilbertCurveSorter.hilbertIndex(0, 0));
+        assertTrue(HilbertCurveSorter.hilbertIndex(0, 0) < HilbertCurveSorter.hilbertIndex(0, half));
+        assertTrue(HilbertCurveSorter.hilbertIndex(0, half) < HilbertCurveSorter.hilbertIndex(half, half));
+        assertTrue(HilbertCurveSorter.hilbertIndex(half, half) < HilbertCurveSorter.hilbertIndex(half, 0));
+        assertEquals((1 << 30) - 1, HilbertCurveSorter.hilbertIndex((1 << 15) - 1, 0));
+    }
+
+    @Test
+    void sortKeepsGraphConsistent() {
+        BooleanEncodedValue accessEnc = new SimpleBooleanEncodedValue("access", true);
+        DecimalEncodedValue speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, false);
+        DecimalEncodedValue turnCostEnc = TurnCost.create("car", 3);
+        EncodingManager em = EncodingManager.start().add(accessEnc).add(speedEnc).addTurnCostEncodedValue(turnCostEnc).build();
+        BaseGraph graph = new BaseGraph.Builder(em).withTurnCosts(true).create();
+        Random rnd = new Random(123);
+        NodeAccess na = graph.getNodeAccess();
+        int nodes = 100;
+        for (int node = 0; node < nodes; node++)
+            na.setNode(node, 50 + rnd.nextDouble(), 10 + rnd.nextDouble());
+        for (int i = 0; i < 300; i++) {
+            int a = rnd.nextInt(nodes), b = rnd.nextInt(nodes);
+            if (a == b) continue;
+            EdgeIteratorState edge = graph.edge(a, b).setDistance(i).set(accessEnc, true, i % 2 == 0).set(speedEnc, i % 30)
+                    .setKeyValues(Map.of("name", new KVStorage.KValue("road " + i)));
+            if (i % 3 == 0)
+                edge.setWayGeometry(Helper.createPointList(51, 11, 51.5, 11.5));
+        }
+        TurnCostStorage tcs = graph.getTurnCostStorage();
+        EdgeExplorer explorer = graph.createEdgeExplorer();
+        for (int node = 0; node < nodes; node += 7) {
+            EdgeIterator in = explorer.setBaseNode(node);
+            if (!in.next()) continue;
+            int inEdge = in.getEdge();
+            if (!in.next()) continue;
+            tcs.set(turnCostEnc, inEdge, node, in.getEdge(), node % 5);
+        }
+
+        List<String> edgesBefore = describeEdges(graph, accessEnc, speedEnc);
+        Set<String> turnCostsBefore = describeTurnCosts(graph, turnCostEnc);
+        Set<String> adjacencyBefore = describeAdjacency(graph);
+        int[] newNodeIds = HilbertCurveSorter.calcNewNodeIds(graph);
+        int[] newEdgeIds = HilbertCurveSorter.calcNewEdgeIds(graph, newNodeIds);
+        graph.renumber(newNodeIds, newEdgeIds);
+
+        List<String> edgesAfter = describeEdges(graph, accessEnc, speedEnc);
+        for (int edge = 0; edge < graph.getEdges(); edge++)
+            assertEquals(edgesBefore.get(edge), edgesAfter.get(newEdgeIds[edge]));
+        assertEquals(turnCostsBefore, describeTurnCosts(graph, turnCostEnc));
+        assertEquals(adjacencyBefore, describeAdjacency(graph));
+
+        // the edges are now sorted by their smaller node and the nodes along the curve
+        int prevMinNode = -1;
+        for (int edge = 0; edge < graph.getEdges(); edge++) {
+            EdgeIteratorState state = graph.getEdgeIteratorState(edge, Integer.MIN_VALUE);
+            int minNode = Math.min(state.getBaseNode(), state.getAdjNode());
+            assertTrue(minNode >= prevMinNode);
+            prevMinNode = minNode;
+        }
+    }
+
+    // describes the edges using coordinates instead of node ids, so they do not depend on the numbering
+    private static List<String> describeEdges(BaseGraph graph, BooleanEncodedValue accessEnc, DecimalEncodedValue speedEnc) {
+        List<String> result = new ArrayList<>();
+        AllEdgesIterator iter = graph.getAllEdges();
+        while (iter.next())
+            result.add(iter.fetchWayGeometry(FetchMode.ALL) + ", " + iter.getDistance() + ", " + iter.get(accessEnc) + ", "
+                    + iter.getReverse(accessEnc) + ", " + iter.get(speedEnc) + ", " + iter.getName());
+        return result;
+    }
+
+    private static Set<String> describeTurnCosts(BaseGraph graph, DecimalEncodedValue turnCostEnc) {
+        Set<String> result = new HashSet<>();
+        NodeAccess na = graph.getNodeAccess();
+        TurnCostStorage.Iterator iter = graph.getTurnCostStorage().getAllTurnCosts();
+        while (iter.next())
+            result.add(graph.getEdgeIteratorState(iter.getFromEdge(), iter.getViaNode()).getDistance() + " -> "
+                    + na.getLat(iter.getViaNode()) + "," + na.getLon(iter.getViaNode()) + " -> "
+                    + graph.getEdgeIteratorState(iter.getToEdge(), Integer.MIN_VALUE).getDistance() + ": " + iter.getCost(turnCostEnc));
+        return result;
+    }
+
+    private static Set<String> describeAdjacency(BaseGraph graph) {
+        Set<String> result = new HashSet<>();
+        NodeAccess na = graph.getNodeAccess();
+        EdgeExplorer explorer = graph.createEdgeExplorer();
+        for (int node = 0; node < graph.getNodes(); node++) {
+            EdgeIterator iter = explorer.setBaseNode(node);
+            while (iter.next())
+                result.add(na.getLat(node) + "," + na.getLon(node) + " -> " + na.getLat(iter.getAdjNode()) + "," + na.getLon(iter.getAdjNode()) + ": " + iter.getDistance());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.PointList;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static com.graphhopper.util.FetchMode.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BaseGraphWithCompressedGeometryTest extends BaseGraphTest {
+
+    @Override
+    protected BaseGraph newGHStorage(Directory dir, boolean enabled3D, int segmentSize) {
+        return new BaseGraph.Builder(encodingManager).setDir(dir).set3D(enabled3D).setSegmentSize(segmentSize).setCompressedGeometry(true).build();
+    }
+
+    @Test
+    @Override
+    public void copyEdge_changeGeometry() {
+        BaseGraph graph = createGHStorage();
+        EdgeIteratorState edge1 = graph.edge(1, 2);
+        EdgeIteratorState edge2 = graph.edge(1, 3).setWayGeometry(Helper.createPointList(0, 1, 2, 3));
+        graph.copyEdge(edge1.getEdge(), true);
+
+        // after copying an edge we can no longer change the geometry
+        assertThrows(IllegalStateException.class, () -> graph.getEdgeIteratorState(edge1.getEdge(), Integer.MIN_VALUE).setWayGeometry(Helper.createPointList(1.5, 1, 5, 4)));
+        // in contrast to the uncompressed format the geometry can also become bigger
+        graph.getEdgeIteratorState(edge2.getEdge(), Integer.MIN_VALUE).setWayGeometry(Helper.createPointList(2, 3, 4, 5, 6, 7));
+        assertEquals(Helper.createPointList(2, 3, 4, 5, 6, 7), graph.getEdgeIteratorState(edge2.getEdge(), Integer.MIN_VALUE).fetchWayGeometry(PILLAR_ONLY));
+        graph.getEdgeIteratorState(edge2.getEdge(), Integer.MIN_VALUE).setWayGeometry(Helper.createPointList(1, 1));
+        assertEquals(Helper.createPointList(1, 1), graph.getEdgeIteratorState(edge2.getEdge(), Integer.MIN_VALUE).fetchWayGeometry(PILLAR_ONLY));
+    }
+
+    @Test
+    @Override
+    public void testDontGrowOnUpdate() {
+        graph = createGHStorage(defaultGraphLoc, true);
+        EdgeIteratorState edge = graph.edge(0, 1);
+        BaseGraph baseGraph = graph.getBaseGraph();
+        edge.setWayGeometry(Helper.createPointList3D(1, 2, 3, 3, 4, 5, 5, 6, 7, 7, 8, 9));
+        long maxGeoRef = baseGraph.getMaxGeoRef();
+        edge.setWayGeometry(Helper.createPointList3D(1, 2, 3, 3, 4, 5, 5, 6, 7));
+        assertEquals(maxGeoRef, baseGraph.getMaxGeoRef());
+        edge.setWayGeometry(Helper.createPointList3D(1, 2, 3));
+        assertEquals(maxGeoRef, baseGraph.getMaxGeoRef());
+        assertEquals(Helper.createPointList3D(1, 2, 3), edge.fetchWayGeometry(PILLAR_ONLY));
+        // a bigger geometry is appended
+        edge.setWayGeometry(Helper.createPointList3D(1, 2, 3, 3, 4, 5, 5, 6, 7, 7, 8, 9, 9, 10, 11));
+        assertTrue(baseGraph.getMaxGeoRef() > maxGeoRef);
+        assertEquals(Helper.createPointList3D(1, 2, 3, 3, 4, 5, 5, 6, 7, 7, 8, 9, 9, 10, 11), edge.fetchWayGeometry(PILLAR_ONLY));
+    }
+
+    @Test
+    public void testCompressedGeometryIsSmaller() {
+        Random rnd = new Random(42);
+        BaseGraph compressed = newGHStorage(new RAMDirectory(), true, -1).create(defaultSize);
+        BaseGraph uncompressed = new BaseGraph.Builder(encodingManager).set3D(true).create();
+        assertTrue(compressed.isCompressedGeometry());
+        assertFalse(uncompressed.isCompressedGeometry());
+        for (BaseGraph g : new BaseGraph[]{compressed, uncompressed}) {
+            g.getNodeAccess().setNode(0, 49.9, 9.9, 100);
+            g.getNodeAccess().setNode(1, 50.1, 10.1, 120);
+        }
+        for (int i = 0; i < 100; i++) {
+            PointList pillars = new PointList(20, true);
+            double lat = 49.9, lon = 9.9, ele = 100;
+            for (int j = 0; j < 1 + rnd.nextInt(20); j++) {
+                lat += rnd.nextDouble() * 0.0002;
+                lon += (rnd.nextDouble() - 0.5) * 0.0002;
+                ele += (rnd.nextDouble() - 0.5) * 2;
+                pillars.add(lat, lon, ele);
+            }
+            boolean reverse = rnd.nextBoolean();
+            EdgeIteratorState e1 = compressed.edge(0, 1);
+            EdgeIteratorState e2 = uncompressed.edge(0, 1);
+            if (reverse) {
+                e1 = e1.detach(true);
+                e2 = e2.detach(true);
+            }
+            e1.setWayGeometry(pillars.clone(false));
+            e2.setWayGeometry(pillars.clone(false));
+            assertEquals(e2.fetchWayGeometry(ALL), e1.fetchWayGeometry(ALL));
+            assertEquals(e2.detach(true).fetchWayGeometry(PILLAR_AND_ADJ), e1.detach(true).fetchWayGeometry(PILLAR_AND_ADJ));
+        }
+        // pillar nodes that are ~20m apart need roughly three bytes per coordinate instead of four and the elevation
+        // usually fits into one byte
+        assertTrue(compressed.getMaxGeoRef() < 0.7 * uncompressed.getMaxGeoRef(), compressed.getMaxGeoRef() + " vs. " + uncompressed.getMaxGeoRef());
+    }
+
+    @Test
+    public void testLargeDifferences() {
+        BaseGraph graph = createGHStorage();
+        graph.getNodeAccess().setNode(0, 0, 0);
+        graph.getNodeAccess().setNode(1, 0, 0);
+        // crossing the antimeridian leads to differences that do not fit into an int
+        PointList pillars = Helper.createPointList(-89.9, 179.9, 89.9, -179.9, 0, 0, -89.9, 179.9);
+        EdgeIteratorState edge = graph.edge(0, 1).setWayGeometry(pillars);
+        assertEquals(pillars, edge.fetchWayGeometry(PILLAR_ONLY));
+    }
+}
@@ -5,9 +5,9 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
 import java.nio.file.Path;
+import java.util.Random;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.*;
 
 class CHStorageTest {
 
@@ -75,6 +75,98 @@ class CHStorageTest {
         assertTrue(Double.isInfinite(g.getWeight(0)));
     }
 
+    @Test
+    void compactAndLoad(@TempDir Path path) {
+        {
+            GHDirectory dir = new GHDirectory(path.toAbsolutePath().toString(), DAType.RAM_INT_STORE);
+            CHStorage chStorage = new CHStorage(dir, "car", -1, true, true);
+            chStorage.create(1000, 3);
+            chStorage.shortcutEdgeBased(0, 999, PrepareEncoder.getScFwdDir(), 10.123, -1, 5, 7, 1999);
+            chStorage.shortcutEdgeBased(500, 3, PrepareEncoder.getScBwdDir(), 0.0001, 4, 2000, 0, 8);
+            chStorage.shortcutEdgeBased(999, 999, PrepareEncoder.getScDirMask(), Double.POSITIVE_INFINITY, 7, 8, 9, 10);
+            assertFalse(chStorage.isCompact());
+            // the shortcuts must be compacted explicitly before flushing
+            assertThrows(IllegalStateException.class, chStorage::flush);
+            chStorage.compact();
+            assertTrue(chStorage.isCompact());
+            chStorage.flush();
+            assertCompactShortcuts(chStorage);
+            assertThrows(IllegalStateException.class, () -> chStorage.setWeight(chStorage.toShortcutPointer(0), 5));
+            chStorage.close();
+        }
+        {
+            GHDirectory dir = new GHDirectory(path.toAbsolutePath().toString(), DAType.RAM_INT_STORE);
+            CHStorage chStorage = new CHStorage(dir, "car", -1, true);
+            assertTrue(chStorage.loadExisting());
+            assertTrue(chStorage.isCompact());
+            assertCompactShortcuts(chStorage);
+        }
+    }
+
+    private static void assertCompactShortcuts(CHStorage chStorage) {
+        assertEquals(3, chStorage.getShortcuts());
+        long ptr = chStorage.toShortcutPointer(0);
+        assertEquals(0, chStorage.getNodeA(ptr));
+        assertEquals(999, chStorage.getNodeB(ptr));
+        assertTrue(chStorage.getFwdAccess(ptr));
+        assertFalse(chStorage.getBwdAccess(ptr));
+        assertEquals(10.123, chStorage.getWeight(ptr), 1.e-9);
+        assertEquals(-1, chStorage.getSkippedEdge1(ptr));
+        assertEquals(5, chStorage.getSkippedEdge2(ptr));
+        assertEquals(7, chStorage.getOrigEdgeKeyFirst(ptr));
+        assertEquals(1999, chStorage.getOrigEdgeKeyLast(ptr));
+
+        ptr = chStorage.toShortcutPointer(1);
+        assertEquals(500, chStorage.getNodeA(ptr));
+        assertEquals(3, chStorage.getNodeB(ptr));
+        assertFalse(chStorage.getFwdAccess(ptr));
+        assertTrue(chStorage.getBwdAccess(ptr));
+        // the minimum weight is kept
+        assertEquals(0.001, chStorage.getWeight(ptr), 1.e-9);
+        assertEquals(4, chStorage.getSkippedEdge1(ptr));
+        assertEquals(2000, chStorage.getSkippedEdge2(ptr));
+        assertEquals(0, chStorage.getOrigEdgeKeyFirst(ptr));
+        assertEquals(8, chStorage.getOrigEdgeKeyLast(ptr));
+
+        ptr = chStorage.toShortcutPointer(2);
+        assertEquals(999, chStorage.getNodeA(ptr));
+        assertEquals(999, chStorage.getNodeB(ptr));
+        assertTrue(chStorage.getFwdAccess(ptr));
+        assertTrue(chStorage.getBwdAccess(ptr));
+        assertTrue(Double.isInfinite(chStorage.getWeight(ptr)));
+        assertEquals(7, chStorage.getSkippedEdge1(ptr));
+        assertEquals(8, chStorage.getSkippedEdge2(ptr));
+    }
+
+    @Test
+    void compactManyShortcuts() {
+        Random rnd = new Random(123);
+        int nodes = 100_000;
+        CHStorage chStorage = new CHStorage(new RAMDirectory(), "car", 128, false, true);
+        chStorage.create(nodes, 10);
+        int[][] values = new int[10_000][];
+        double[] weights = new double[values.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = new int[]{rnd.nextInt(nodes), rnd.nextInt(nodes), rnd.nextInt(4), rnd.nextInt(300_000) - 1, rnd.nextInt(300_000) - 1};
+            // a single large weight must not reduce the precision of the other weights
+            weights[i] = i == 0 ? 1_000_000 : rnd.nextDouble() * 1000;
+            chStorage.shortcutNodeBased(values[i][0], values[i][1], values[i][2], weights[i], values[i][3], values[i][4]);
+        }
+        long capacityBefore = chStorage.getCapacity();
+        chStorage.compact();
+        assertTrue(chStorage.getCapacity() < capacityBefore);
+        for (int i = 0; i < values.length; i++) {
+            long ptr = chStorage.toShortcutPointer(i);
+            assertEquals(values[i][0], chStorage.getNodeA(ptr));
+            assertEquals(values[i][1], chStorage.getNodeB(ptr));
+            assertEquals((values[i][2] & PrepareEncoder.getScFwdDir()) != 0, chStorage.getFwdAccess(ptr));
+            assertEquals((values[i][2] & PrepareEncoder.getScBwdDir()) != 0, chStorage.getBwdAccess(ptr));
+            assertEquals(values[i][3], chStorage.getSkippedEdge1(ptr));
+            assertEquals(values[i][4], chStorage.getSkippedEdge2(ptr));
+            assertEquals(Math.round(weights[i] * 1000) / 1000.0, chStorage.getWeight(ptr), 1.e-9);
+        }
+    }
+
     @Test
     public void testLargeNodeA() {
         int nodeA = Integer.MAX_VALUE;
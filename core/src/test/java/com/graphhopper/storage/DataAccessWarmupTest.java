@@ -0,0 +1,105 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+import com.graphhopper.util.Helper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DataAccessWarmupTest {
+    private final File folder = new File("./target/tmp/warmup");
+    private Directory dir;
+
+    @BeforeEach
+    public void setUp() {
+        Helper.removeDir(folder);
+        dir = new GHDirectory(folder.getAbsolutePath(), DAType.MMAP).create();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        dir.close();
+        Helper.removeDir(folder);
+    }
+
+    @Test
+    public void select() {
+        dir.create("edges").create(100);
+        dir.create("shortcuts_car").create(100);
+        dir.create("shortcuts_bike").create(100);
+        dir.create("geometry").create(100);
+        dir.create("nodes", DAType.RAM_STORE).create(100);
+        List<DataAccess> selected = DataAccessWarmup.select(dir.getDAs().values(), Arrays.asList("shortcuts_.*", "nodes", "edges"));
+        // the RAM storage is already in memory and the geometry is not configured
+        assertEquals("[shortcuts_bike, shortcuts_car, edges]", selected.stream().map(DataAccess::getName).collect(Collectors.toList()).toString());
+    }
+
+    @Test
+    public void warmup() throws InterruptedException {
+        DataAccess da1 = dir.create("da1");
+        da1.create(3 * DataAccessWarmup.CHUNK_SIZE + 100);
+        DataAccess da2 = dir.create("da2", DAType.MMAP_LARGE);
+        da2.create(100);
+        DataAccess empty = dir.create("empty");
+        DataAccessWarmup warmup = new DataAccessWarmup(Arrays.asList(da1, empty, da2), 2, 0);
+        assertEquals(da1.getCapacity() + da2.getCapacity() + empty.getCapacity(), warmup.getTotalBytes());
+        assertFalse(warmup.isReady());
+        assertEquals(0, warmup.getProgress());
+
+        warmup.start();
+        assertThrows(IllegalStateException.class, warmup::start);
+        assertTrue(warmup.await(10, TimeUnit.SECONDS));
+        assertTrue(warmup.isReady());
+        assertEquals(warmup.getTotalBytes(), warmup.getWarmedBytes());
+        assertEquals(1, warmup.getProgress());
+    }
+
+    @Test
+    public void throttle() throws InterruptedException {
+        DataAccess da = dir.create("da");
+        da.create(4 * DataAccessWarmup.CHUNK_SIZE);
+        // 4MB with 20MB/s should take at least ~150ms, as the first chunk is read immediately
+        DataAccessWarmup warmup = new DataAccessWarmup(List.of(da), 2, 20);
+        long start = System.nanoTime();
+        assertTrue(warmup.start().await(10, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start >= 140_000_000L, "warmup was too fast: " + (System.nanoTime() - start) + "ns");
+    }
+
+    @Test
+    public void stop() {
+        DataAccess da = dir.create("da");
+        da.create(4 * DataAccessWarmup.CHUNK_SIZE);
+        DataAccessWarmup warmup = new DataAccessWarmup(List.of(da), 1, 1);
+        // stopping a warmup that was not started does not block
+        new DataAccessWarmup(List.of(da), 1, 1).stop();
+
+        warmup.start();
+        warmup.stop();
+        assertFalse(warmup.isReady());
+        assertTrue(warmup.getWarmedBytes() < da.getCapacity());
+    }
+}
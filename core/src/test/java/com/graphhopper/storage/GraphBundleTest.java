@@ -0,0 +1,135 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+import com.graphhopper.util.Helper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GraphBundleTest {
+    private final File folder = new File("./target/tmp/bundle-gh");
+    private final String bundle = "./target/tmp/bundle.ghb";
+
+    @BeforeEach
+    @AfterEach
+    public void cleanUp() {
+        Helper.removeDir(folder);
+        new File(bundle).delete();
+    }
+
+    private void writeGraphFolder() {
+        GHDirectory dir = new GHDirectory(folder.getAbsolutePath(), DAType.MMAP);
+        dir.create();
+        DataAccess big = dir.create("big", 1 << 12);
+        big.create(3 * (1 << 12) + 10);
+        for (long pos = 0; pos < big.getCapacity(); pos += 4)
+            big.setInt(pos, (int) pos);
+        big.setHeader(0, 42);
+        DataAccess small = dir.create("small", DAType.RAM_STORE);
+        small.create(100);
+        small.setInt(8, 123);
+        StorableProperties properties = new StorableProperties(dir);
+        properties.create(100).put("graph.test", "yes").flush();
+        big.flush();
+        small.flush();
+        dir.close();
+        // properties.txt is no DataAccess file and will be skipped
+        assertTrue(new File(folder, "properties.txt").exists());
+    }
+
+    @Test
+    public void writeAndLoad() throws IOException, InterruptedException {
+        writeGraphFolder();
+        GraphBundle.write(folder.getPath(), bundle);
+        assertEquals(0, new File(bundle).length() % GraphBundle.ALIGNMENT);
+        GraphBundle.verify(bundle);
+        GraphBundleVerification verification = new GraphBundleVerification(bundle).start();
+        assertTrue(verification.await(10, TimeUnit.SECONDS));
+        assertTrue(verification.isValid(), verification.toString());
+        assertNull(verification.getError());
+
+        BundleDirectory dir = new BundleDirectory(bundle);
+        assertEquals("[big, properties, small]", dir.getNames().toString());
+        DataAccess big = dir.create("big");
+        assertTrue(big.loadExisting());
+        assertEquals(1 << 12, big.getSegmentSize());
+        assertEquals(4 * (1 << 12), big.getCapacity());
+        assertEquals(42, big.getHeader(0));
+        for (long pos = 0; pos < big.getCapacity(); pos += 4)
+            assertEquals((int) pos, big.getInt(pos));
+        // the RAM_STORE file can be read as a memory mapped view as well
+        DataAccess small = dir.create("small", DAType.RAM_STORE);
+        assertTrue(small.loadExisting());
+        assertEquals(123, small.getInt(8));
+        StorableProperties properties = new StorableProperties(dir);
+        assertTrue(properties.loadExisting());
+        assertEquals("yes", properties.get("graph.test"));
+
+        assertThrows(IllegalStateException.class, () -> dir.create("big"));
+        assertThrows(IllegalStateException.class, big::flush);
+        // unknown DataAccess objects are only kept in memory
+        DataAccess unknown = dir.create("unknown");
+        assertFalse(unknown.loadExisting());
+        assertEquals(DAType.RAM, unknown.getType());
+        dir.close();
+        assertTrue(big.isClosed());
+    }
+
+    @Test
+    public void detectCorruption() throws IOException, InterruptedException {
+        writeGraphFolder();
+        GraphBundle.write(folder.getPath(), bundle);
+        try (RandomAccessFile raFile = new RandomAccessFile(bundle, "rw")) {
+            raFile.seek(raFile.length() - GraphBundle.ALIGNMENT - 10);
+            int b = raFile.read();
+            raFile.seek(raFile.length() - GraphBundle.ALIGNMENT - 10);
+            raFile.write(b + 1);
+        }
+        IllegalStateException ex = assertThrows(IllegalStateException.class, () -> new BundleDirectory(bundle, true));
+        assertTrue(ex.getMessage().contains("Checksum of section"), ex.getMessage());
+        ex = assertThrows(IllegalStateException.class, () -> GraphBundle.verify(bundle));
+        assertTrue(ex.getMessage().contains("Checksum of section"), ex.getMessage());
+        // without verification the corrupted bundle can be opened and is verified in the background
+        new BundleDirectory(bundle).close();
+        GraphBundleVerification verification = new GraphBundleVerification(bundle).start();
+        assertTrue(verification.await(10, TimeUnit.SECONDS));
+        assertFalse(verification.isValid());
+        assertTrue(verification.toString().contains("is corrupt: Checksum of section"), verification.toString());
+
+        try (RandomAccessFile raFile = new RandomAccessFile(bundle, "rw")) {
+            raFile.seek(GraphBundle.MAGIC.length + 8 + 2);
+            raFile.write("x".getBytes(StandardCharsets.UTF_8));
+        }
+        ex = assertThrows(IllegalStateException.class, () -> new BundleDirectory(bundle, false));
+        assertTrue(ex.getMessage().contains("table of contents"), ex.getMessage());
+
+        try (RandomAccessFile raFile = new RandomAccessFile(bundle, "rw")) {
+            raFile.write("GHFOLDER".getBytes(StandardCharsets.US_ASCII));
+        }
+        assertThrows(IllegalArgumentException.class, () -> new BundleDirectory(bundle));
+    }
+}
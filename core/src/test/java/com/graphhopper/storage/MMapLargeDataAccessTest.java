@@ -0,0 +1,120 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MMapLargeDataAccessTest extends DataAccessTest {
+    @Override
+    public DataAccess createDataAccess(String name, int segmentSize) {
+        // use small windows, so that the tests of the super class access values in several windows
+        return segmentSize < 0 ? new MMapLargeDataAccess(name, directory, true, segmentSize)
+                : new MMapLargeDataAccess(name, directory, true, segmentSize, segmentSize);
+    }
+
+    @Test
+    @Override
+    public void testSegmentSize() {
+        DataAccess da = createDataAccess(name, 20);
+        da.create(10);
+        // a minimum segment size is applied
+        assertEquals(128, da.getSegmentSize());
+        da.flush();
+        da.close();
+
+        // in contrast to the other implementations the configured window size is kept on load
+        da = createDataAccess(name, 256);
+        da.loadExisting();
+        assertEquals(256, da.getSegmentSize());
+        da.close();
+
+        // a configured segment size does not change the window size
+        da = new MMapLargeDataAccess(name, directory, true, 128);
+        da.loadExisting();
+        assertEquals(1 << 30, da.getSegmentSize());
+        assertEquals(1, da.getSegments());
+        da.close();
+    }
+
+    @Test
+    public void testValuesAcrossWindows() {
+        DataAccess da = createDataAccess(name, 128);
+        da.create(256);
+        for (int pos = 120; pos < 128; pos++) {
+            da.setInt(pos, -pos * 12345);
+            assertEquals(-pos * 12345, da.getInt(pos));
+            da.setShort(pos + 4, (short) -pos);
+            assertEquals((short) -pos, da.getShort(pos + 4));
+        }
+        da.setInt(126, 0x01020304);
+        // the bytes are written into the first window and are visible via the second one
+        assertEquals(0x02, da.getByte(128));
+        assertEquals(0x01020304, da.getInt(126));
+        da.close();
+    }
+
+    @Test
+    public void testGrowSmallFile() {
+        DataAccess da = createDataAccess(name, -1);
+        da.create(100);
+        assertEquals(128, da.getCapacity());
+        da.setInt(124, 42);
+        da.ensureCapacity(1000);
+        assertEquals(1024, da.getCapacity());
+        assertEquals(1, da.getSegments());
+        assertEquals(42, da.getInt(124));
+        da.setInt(1020, 43);
+        da.flush();
+        da.close();
+
+        da = createDataAccess(name, -1);
+        assertTrue(da.loadExisting());
+        assertEquals(1024, da.getCapacity());
+        assertEquals(42, da.getInt(124));
+        assertEquals(43, da.getInt(1020));
+        da.close();
+    }
+
+    @Test
+    public void testMixWithMMAP() {
+        DataAccess da = createDataAccess(name, -1);
+        da.create(300);
+        da.setInt(7 * 4, 123);
+        da.flush();
+        da.close();
+
+        da = new MMapDataAccess(name, directory, false, -1);
+        assertTrue(da.loadExisting());
+        assertEquals(123, da.getInt(7 * 4));
+        da.close();
+
+        da = new MMapDataAccess(name, directory, true, 128);
+        da.create(1000);
+        da.setInt(900, 456);
+        da.flush();
+        da.close();
+
+        da = new MMapLargeDataAccess(name, directory, false, -1);
+        assertTrue(da.loadExisting());
+        assertEquals(456, da.getInt(900));
+        assertEquals(1, da.getSegments());
+        da.close();
+    }
+}
@@ -21,9 +21,11 @@ package com.graphhopper.storage;
 import com.graphhopper.routing.ev.*;
 import com.graphhopper.routing.util.EncodingManager;
 import com.graphhopper.util.GHUtility;
+import com.graphhopper.util.Helper;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.File;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
@@ -33,6 +35,7 @@ import java.util.stream.IntStream;
 import static com.graphhopper.util.GHUtility.getEdge;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class TurnCostStorageTest {
 
@@ -185,4 +188,77 @@ public class TurnCostStorageTest {
         assertFalse(iterator.next());
     }
 
+    @Test
+    public void testSortEntries() {
+        BaseGraph g = new BaseGraph.Builder(manager).withTurnCosts(true).create();
+        // a star around node 0 with all turns restricted and a single entry at node 1
+        int edges = 20;
+        for (int i = 1; i <= edges; i++)
+            GHUtility.setSpeed(60, 60, accessEnc, speedEnc, g.edge(0, i).setDistance(1));
+        TurnCostStorage turnCostStorage = g.getTurnCostStorage();
+        for (int from = edges - 1; from >= 0; from--)
+            for (int to = 0; to < edges; to++)
+                if (from != to)
+                    turnCostStorage.set(carTurnCostEnc, from, 0, to, (from + to) % 3);
+        turnCostStorage.set(bikeTurnCostEnc, 0, 1, 0, 2);
+        int count = turnCostStorage.getTurnCostsCount();
+        assertFalse(turnCostStorage.isSorted());
+
+        turnCostStorage.sortEntries();
+        assertTrue(turnCostStorage.isSorted());
+        assertEquals(count, turnCostStorage.getTurnCostsCount());
+        assertEquals(edges * (edges - 1), turnCostStorage.getTurnCostsCount(0));
+        assertEquals(1, turnCostStorage.getTurnCostsCount(1));
+        assertEquals(0, turnCostStorage.getTurnCostsCount(2));
+        for (int from = 0; from < edges; from++)
+            for (int to = 0; to < edges; to++)
+                assertEquals(from == to ? 0 : (from + to) % 3, turnCostStorage.get(carTurnCostEnc, from, 0, to));
+        assertEquals(2, turnCostStorage.get(bikeTurnCostEnc, 0, 1, 0));
+        assertEquals(0, turnCostStorage.get(carTurnCostEnc, 0, 2, 1));
+
+        // changing existing entries keeps the sorted layout
+        turnCostStorage.set(carTurnCostEnc, 5, 0, 6, 1);
+        assertTrue(turnCostStorage.isSorted());
+        assertEquals(1, turnCostStorage.get(carTurnCostEnc, 5, 0, 6));
+        int iterated = 0;
+        TurnCostStorage.Iterator iterator = turnCostStorage.getAllTurnCosts();
+        while (iterator.next())
+            iterated++;
+        assertEquals(count, iterated);
+
+        // adding a new entry converts the storage back
+        turnCostStorage.set(carTurnCostEnc, 1, 2, 0, 2);
+        assertFalse(turnCostStorage.isSorted());
+        assertEquals(count + 1, turnCostStorage.getTurnCostsCount());
+        assertEquals(2, turnCostStorage.get(carTurnCostEnc, 1, 2, 0));
+        assertEquals(1, turnCostStorage.get(carTurnCostEnc, 5, 0, 6));
+        assertEquals(edges * (edges - 1), turnCostStorage.getTurnCostsCount(0));
+        assertEquals(2, turnCostStorage.get(bikeTurnCostEnc, 0, 1, 0));
+    }
+
+    @Test
+    public void testSortedLayoutIsStored() {
+        String location = "./target/tmp/turn-costs-sorted";
+        Helper.removeDir(new File(location));
+        BaseGraph g = new BaseGraph.Builder(manager).setDir(new GHDirectory(location, DAType.RAM_STORE)).withTurnCosts(true).create();
+        initGraph(g, accessEnc, speedEnc);
+        int edge02 = getEdge(g, 0, 2).getEdge();
+        int edge23 = getEdge(g, 2, 3).getEdge();
+        int edge24 = getEdge(g, 2, 4).getEdge();
+        g.getTurnCostStorage().set(carTurnCostEnc, edge24, 2, edge02, 1);
+        g.getTurnCostStorage().set(carTurnCostEnc, edge02, 2, edge23, 2);
+        g.getTurnCostStorage().sortEntries();
+        g.flush();
+        g.close();
+
+        g = new BaseGraph.Builder(manager).setDir(new GHDirectory(location, DAType.RAM_STORE)).withTurnCosts(true).build();
+        assertTrue(g.loadExisting());
+        assertTrue(g.getTurnCostStorage().isSorted());
+        assertEquals(1, g.getTurnCostStorage().get(carTurnCostEnc, edge24, 2, edge02));
+        assertEquals(2, g.getTurnCostStorage().get(carTurnCostEnc, edge02, 2, edge23));
+        assertEquals(0, g.getTurnCostStorage().get(carTurnCostEnc, edge23, 2, edge02));
+        g.close();
+        Helper.removeDir(new File(location));
+    }
+
 }
@@ -0,0 +1,181 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.storage;
+
+import com.graphhopper.routing.ch.PrepareEncoder;
+import com.graphhopper.routing.ev.DecimalEncodedValue;
+import com.graphhopper.routing.ev.DecimalEncodedValueImpl;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.weighting.SpeedWeighting;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.graphhopper.util.EdgeIterator.NO_EDGE;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UpwardRoutingCHGraphTest {
+    @Test
+    public void onlyUpwardEdges() {
+        DecimalEncodedValue speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
+        EncodingManager em = EncodingManager.start().add(speedEnc).build();
+        BaseGraph graph = new BaseGraph.Builder(em).create();
+        // 0 - 1 - 2 - 3, the middle nodes get the lowest levels
+        graph.edge(0, 1).setDistance(100).set(speedEnc, 10, 10);
+        graph.edge(1, 2).setDistance(200).set(speedEnc, 10, 0);
+        graph.edge(2, 3).setDistance(300).set(speedEnc, 10, 10);
+        graph.freeze();
+
+        CHConfig chConfig = CHConfig.nodeBased("p", new SpeedWeighting(speedEnc));
+        CHStorage store = CHStorage.fromGraph(graph, chConfig);
+        CHStorageBuilder chBuilder = new CHStorageBuilder(store);
+        chBuilder.setLevel(1, 0);
+        chBuilder.setLevel(2, 1);
+        chBuilder.setLevel(0, 2);
+        chBuilder.setLevel(3, 3);
+        chBuilder.addShortcutNodeBased(1, 3, PrepareEncoder.getScFwdDir(), 50, 1, 2);
+        chBuilder.addShortcutNodeBased(2, 0, PrepareEncoder.getScBwdDir(), 30, 1, 0);
+        RoutingCHGraph chGraph = RoutingCHGraphImpl.fromGraph(graph, store, chConfig);
+        UpwardRoutingCHGraph upwardGraph = UpwardRoutingCHGraph.fromGraph(chGraph);
+
+        assertEquals(chGraph.getEdges(), upwardGraph.getEdges());
+        assertEquals("[3 1-3, 1 1-2, 0 1-0]", edges(upwardGraph.createOutEdgeExplorer(), 1));
+        assertEquals("[0 1-0]", edges(upwardGraph.createInEdgeExplorer(), 1));
+        // edge 1 leads downwards from node 2 to node 1
+        assertEquals("[2 2-3]", edges(upwardGraph.createOutEdgeExplorer(), 2));
+        assertEquals("[4 2-0, 2 2-3]", edges(upwardGraph.createInEdgeExplorer(), 2));
+        assertEquals("[]", edges(upwardGraph.createOutEdgeExplorer(), 3));
+        assertEquals("[]", edges(upwardGraph.createInEdgeExplorer(), 0));
+        // without the level filter the original graph also contains the downward edges
+        assertEquals("[2 3-2]", edges(chGraph.createOutEdgeExplorer(), 3));
+        assertEquals(7, upwardGraph.getUpwardEdges());
+        // the downward edges are only needed for edge-based graphs
+        assertEquals(0, upwardGraph.getDownwardEdges());
+
+        RoutingCHEdgeIterator iter = upwardGraph.createOutEdgeExplorer().setBaseNode(1);
+        assertTrue(iter.next());
+        assertTrue(iter.isShortcut());
+        assertEquals(NO_EDGE, iter.getOrigEdge());
+        assertEquals(1, iter.getSkippedEdge1());
+        assertEquals(2, iter.getSkippedEdge2());
+        assertEquals(50, iter.getWeight(false), 1.e-6);
+        assertTrue(iter.next());
+        assertTrue(iter.next());
+        assertFalse(iter.isShortcut());
+        assertEquals(0, iter.getOrigEdge());
+        assertEquals(10, iter.getWeight(false), 1.e-6);
+        assertThrows(IllegalStateException.class, iter::getSkippedEdge1);
+        assertFalse(iter.next());
+    }
+
+    @Test
+    public void edgeBasedKeepsDownwardBaseEdges() {
+        DecimalEncodedValue speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
+        EncodingManager em = EncodingManager.start().add(speedEnc).build();
+        BaseGraph graph = new BaseGraph.Builder(em).withTurnCosts(true).create();
+        // 0 - 1 - 2
+        //  \_____/
+        graph.edge(0, 1).setDistance(100).set(speedEnc, 10, 10);
+        graph.edge(1, 2).setDistance(200).set(speedEnc, 10, 10);
+        graph.edge(0, 2).setDistance(400).set(speedEnc, 10, 10);
+        graph.freeze();
+
+        CHConfig chConfig = CHConfig.edgeBased("p", new SpeedWeighting(speedEnc));
+        CHStorage store = CHStorage.fromGraph(graph, chConfig);
+        CHStorageBuilder chBuilder = new CHStorageBuilder(store);
+        chBuilder.setLevel(1, 0);
+        chBuilder.setLevel(0, 1);
+        chBuilder.setLevel(2, 2);
+        RoutingCHGraph chGraph = RoutingCHGraphImpl.fromGraph(graph, store, chConfig);
+        UpwardRoutingCHGraph upwardGraph = UpwardRoutingCHGraph.fromGraph(chGraph);
+
+        assertEquals(6, upwardGraph.getUpwardEdges());
+        assertEquals(6, upwardGraph.getDownwardEdges());
+        // the downward edges are iterated after the upward edges of a node
+        assertEquals("[2 0-2, 0 0-1]", edges(upwardGraph.createOutEdgeExplorer(), 0));
+        assertEquals("[2 0-2, 0 0-1]", edges(upwardGraph.createInEdgeExplorer(), 0));
+        assertEquals("[1 1-2, 0 1-0]", edges(upwardGraph.createOutEdgeExplorer(), 1));
+        assertEquals("[2 2-0, 1 2-1]", edges(upwardGraph.createOutEdgeExplorer(), 2));
+    }
+
+    @Test
+    public void storeAndLoad(@TempDir Path path) {
+        DecimalEncodedValue speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
+        EncodingManager em = EncodingManager.start().add(speedEnc).build();
+        BaseGraph graph = new BaseGraph.Builder(em).withTurnCosts(true).create();
+        graph.edge(0, 1).setDistance(100).set(speedEnc, 10, 10);
+        graph.edge(1, 2).setDistance(200).set(speedEnc, 10, 0);
+        graph.freeze();
+
+        CHConfig chConfig = CHConfig.edgeBased("p", new SpeedWeighting(speedEnc));
+        CHStorage store = CHStorage.fromGraph(graph, chConfig);
+        CHStorageBuilder chBuilder = new CHStorageBuilder(store);
+        chBuilder.setLevel(1, 0);
+        chBuilder.setLevel(0, 1);
+        chBuilder.setLevel(2, 2);
+        chBuilder.addShortcutEdgeBased(0, 2, PrepareEncoder.getScFwdDir(), 30, 0, 1, 0, 2);
+        RoutingCHGraph chGraph = RoutingCHGraphImpl.fromGraph(graph, store, chConfig);
+
+        GHDirectory dir = new GHDirectory(path.toAbsolutePath().toString(), DAType.MMAP);
+        UpwardCHStorage upwardStorage = new UpwardCHStorage(dir, "p", -1).build(chGraph);
+        upwardStorage.flush();
+        String expected = edges(new UpwardRoutingCHGraph(chGraph, upwardStorage));
+        upwardStorage.close();
+
+        UpwardCHStorage loaded = new UpwardCHStorage(new GHDirectory(path.toAbsolutePath().toString(), DAType.MMAP), "p", -1);
+        assertTrue(loaded.loadExisting());
+        UpwardRoutingCHGraph upwardGraph = new UpwardRoutingCHGraph(chGraph, loaded);
+        assertEquals(expected, edges(upwardGraph));
+        assertEquals("[2 0-2, 0 0-1]", edges(upwardGraph.createOutEdgeExplorer(), 0));
+        RoutingCHEdgeIterator iter = upwardGraph.createOutEdgeExplorer().setBaseNode(0);
+        assertTrue(iter.next());
+        assertEquals(30, iter.getWeight(false), 1.e-6);
+        assertEquals(2, iter.getOrigEdgeKeyLast());
+        loaded.close();
+
+        // the storage must match the CH graph
+        UpwardCHStorage nodeBased = buildNodeBased(graph, speedEnc);
+        assertThrows(IllegalArgumentException.class, () -> new UpwardRoutingCHGraph(chGraph, nodeBased));
+    }
+
+    private static UpwardCHStorage buildNodeBased(BaseGraph graph, DecimalEncodedValue speedEnc) {
+        CHConfig chConfig = CHConfig.nodeBased("q", new SpeedWeighting(speedEnc));
+        CHStorage store = CHStorage.fromGraph(graph, chConfig);
+        new CHStorageBuilder(store).setIdentityLevels();
+        return new UpwardCHStorage(new RAMDirectory(), "q", -1).build(RoutingCHGraphImpl.fromGraph(graph, store, chConfig));
+    }
+
+    private static String edges(RoutingCHGraph graph) {
+        List<String> result = new ArrayList<>();
+        for (int node = 0; node < graph.getNodes(); node++)
+            result.add(edges(graph.createOutEdgeExplorer(), node) + edges(graph.createInEdgeExplorer(), node));
+        return result.toString();
+    }
+
+    private static String edges(RoutingCHEdgeExplorer explorer, int node) {
+        List<String> result = new ArrayList<>();
+        RoutingCHEdgeIterator iter = explorer.setBaseNode(node);
+        while (iter.next())
+            result.add(iter.getEdge() + " " + iter.getBaseNode() + "-" + iter.getAdjNode());
+        return result.toString();
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.util;
+
+import com.graphhopper.reader.ReaderWay;
+import com.graphhopper.routing.ev.ArrayEdgeIntAccess;
+import com.graphhopper.routing.ev.EdgeIntAccess;
+import com.graphhopper.routing.util.OSMParsers;
+import com.graphhopper.routing.util.parsers.TagParser;
+import com.graphhopper.storage.IntsRef;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImportMetricsTest {
+
+    @Test
+    public void testStages() {
+        ImportMetrics metrics = new ImportMetrics();
+        try (ImportMetrics.Stage outer = metrics.start("outer")) {
+            try (ImportMetrics.Stage inner = metrics.start("inner")) {
+                List<long[]> garbage = new ArrayList<>();
+                for (int i = 0; i < 100; i++)
+                    garbage.add(new long[1000]);
+                inner.setCount("arrays", garbage.size());
+            }
+            outer.setCount("items", 3);
+        }
+        List<ImportMetrics.Stage> stages = metrics.getStages();
+        assertEquals(2, stages.size());
+        ImportMetrics.Stage outer = stages.get(0);
+        ImportMetrics.Stage inner = stages.get(1);
+        assertEquals("outer", outer.getName());
+        assertEquals(Map.of("items", 3L), outer.getCounts());
+        assertEquals(Map.of("arrays", 100L), inner.getCounts());
+        assertTrue(outer.getWallNanos() >= inner.getWallNanos());
+        if (ImportMetrics.getThreadAllocatedBytes() >= 0)
+            assertTrue(inner.getAllocatedBytes() >= 100 * 8000, "allocated: " + inner.getAllocatedBytes());
+        assertThrows(IllegalStateException.class, outer::stop);
+
+        Map<String, Object> map = metrics.toMap();
+        List<?> stageList = (List<?>) map.get("stages");
+        assertEquals("inner", ((Map<?, ?>) stageList.get(1)).get("name"));
+        assertEquals(Map.of("arrays", 100L), ((Map<?, ?>) stageList.get(1)).get("counts"));
+    }
+
+    @Test
+    public void testTagParserTimes() {
+        TagParser parser = (edgeId, edgeIntAccess, way, relationFlags) -> way.setTag("parsed", true);
+        ImportMetrics metrics = new ImportMetrics();
+        EdgeIntAccess edgeIntAccess = new ArrayEdgeIntAccess(1);
+        for (int thread = 0; thread < 2; thread++) {
+            OSMParsers parsers = new OSMParsers().addWayTagParser(parser).addWayTagParser(parser).enableTiming();
+            for (int i = 0; i < 100; i++)
+                parsers.handleWayTags(0, edgeIntAccess, new ReaderWay(i), new IntsRef(2));
+            assertEquals(100, parsers.getCalls());
+            assertEquals(7, parsers.getTimedCalls());
+            metrics.addTagParserTimes(parsers);
+        }
+
+        List<ImportMetrics.TagParserTimes> times = metrics.getTagParserTimes();
+        assertEquals(2, times.size());
+        // both parsers have the same class, so the second one gets a suffix
+        assertEquals(times.get(0).getName() + "_2", times.get(1).getName());
+        assertEquals(200, times.get(0).getCalls());
+        assertTrue(times.get(0).getEstimatedNanos() > 0);
+        List<?> parserList = (List<?>) metrics.toMap().get("tag_parsers");
+        assertEquals(14L, ((Map<?, ?>) parserList.get(1)).get("sampled_calls"));
+    }
+}
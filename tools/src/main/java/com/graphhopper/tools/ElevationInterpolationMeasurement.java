@@ -0,0 +1,97 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.tools;
+
+import com.graphhopper.GraphHopper;
+import com.graphhopper.GraphHopperConfig;
+import com.graphhopper.reader.dem.EdgeElevationInterpolator;
+import com.graphhopper.routing.TestProfiles;
+import com.graphhopper.routing.ev.EnumEncodedValue;
+import com.graphhopper.routing.ev.RoadEnvironment;
+import com.graphhopper.routing.util.AllEdgesIterator;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.util.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures the time it takes to interpolate the elevations of tunnels, bridges and ferries with different numbers of
+ * threads, see graph.elevation.interpolation_threads. The interpolation does not change the elevations when it is
+ * repeated, so it runs several times on the same graph and the checksum of the elevations must be the same for all
+ * numbers of threads.
+ */
+public class ElevationInterpolationMeasurement {
+
+    public static void main(String[] strs) {
+        PMap args = PMap.read(strs);
+        GraphHopperConfig ghConfig = new GraphHopperConfig()
+                .putObject("datareader.file", args.getString("map", "map-matching/files/leipzig_germany.osm.pbf"))
+                .putObject("graph.location", args.getString("location", "elevation-interpolation-measurement-gh"))
+                .putObject("graph.dataaccess", args.getString("da", "RAM_STORE"))
+                .putObject("graph.elevation.provider", args.getString("ele_provider", "srtm"))
+                .putObject("graph.elevation.cache_dir", args.getString("ele_cache_dir", "srtm-cache"))
+                .putObject("import.osm.ignored_highways", "")
+                .putObject("graph.encoded_values", "road_environment,bike_access,bike_average_speed,bike_priority")
+                .setProfiles(List.of(
+                        TestProfiles.accessSpeedAndPriority("bike")
+                ));
+        GraphHopper hopper = new GraphHopper()
+                .init(ghConfig)
+                .importOrLoad();
+        BaseGraph baseGraph = hopper.getBaseGraph();
+        EnumEncodedValue<RoadEnvironment> roadEnvEnc = hopper.getEncodingManager().getEnumEncodedValue(RoadEnvironment.KEY, RoadEnvironment.class);
+
+        final int iterations = args.getInt("iters", 10);
+        List<String> result = new ArrayList<>();
+        for (String threadsStr : args.getString("threads", "1,2,4," + Runtime.getRuntime().availableProcessors()).split(",")) {
+            int threads = Integer.parseInt(threadsStr.trim());
+            System.out.println("Running measurement for threads=" + threads);
+            MiniPerfTest t = new MiniPerfTest().setIterations(iterations)
+                    .start((warmup, run) -> {
+                        for (RoadEnvironment roadEnvironment : new RoadEnvironment[]{RoadEnvironment.TUNNEL, RoadEnvironment.BRIDGE, RoadEnvironment.FERRY})
+                            new EdgeElevationInterpolator(baseGraph, roadEnvEnc, roadEnvironment).setThreads(threads).execute();
+                        return baseGraph.getEdges();
+                    });
+            result.add(String.format("threads: %d, edges: %d, took: %.2fms, per run: %.2fms, elevation checksum: %.2f",
+                    threads, baseGraph.getEdges(), t.getSum(), t.getMean(), calcElevationChecksum(baseGraph)));
+            System.out.println(result.get(result.size() - 1));
+        }
+        hopper.close();
+        System.out.println();
+        System.out.println("### RESULT ###");
+        for (String res : result)
+            System.out.println(res);
+    }
+
+    private static double calcElevationChecksum(BaseGraph baseGraph) {
+        double sum = 0;
+        NodeAccess nodeAccess = baseGraph.getNodeAccess();
+        for (int node = 0; node < baseGraph.getNodes(); node++)
+            sum += nodeAccess.getEle(node);
+        AllEdgesIterator edge = baseGraph.getAllEdges();
+        while (edge.next()) {
+            PointList pillarNodes = edge.fetchWayGeometry(FetchMode.PILLAR_ONLY);
+            for (int i = 0; i < pillarNodes.size(); i++)
+                sum += pillarNodes.getEle(i);
+            sum += edge.getDistance();
+        }
+        return sum;
+    }
+}
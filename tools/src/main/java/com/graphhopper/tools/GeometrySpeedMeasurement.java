@@ -0,0 +1,89 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.tools;
+
+import com.graphhopper.GraphHopper;
+import com.graphhopper.GraphHopperConfig;
+import com.graphhopper.routing.TestProfiles;
+import com.graphhopper.routing.util.AllEdgesIterator;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.util.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares the size of the geometry storage and the time it takes to decode the pillar nodes for the uncompressed and
+ * the compressed (delta and varint encoded) geometry format, see graph.compress_geometry.
+ */
+public class GeometrySpeedMeasurement {
+
+    public static void main(String[] strs) {
+        PMap args = PMap.read(strs);
+        List<String> result = new ArrayList<>();
+        for (boolean compress : new boolean[]{false, true}) {
+            System.out.println("Running measurement for compress_geometry=" + compress);
+            String location = args.getString("location", "geometry-speed-measurement") + "-" + compress + "-gh";
+            GraphHopperConfig ghConfig = new GraphHopperConfig()
+                    .putObject("datareader.file", args.getString("map", "map-matching/files/leipzig_germany.osm.pbf"))
+                    .putObject("graph.location", location)
+                    .putObject("graph.dataaccess", args.getString("da", "RAM_STORE"))
+                    .putObject("graph.compress_geometry", compress)
+                    .putObject("import.osm.ignored_highways", "")
+                    .putObject("graph.encoded_values", "car_access,car_average_speed")
+                    .setProfiles(List.of(
+                            TestProfiles.accessAndSpeed("car")
+                    ));
+            GraphHopper hopper = new GraphHopper()
+                    .init(ghConfig)
+                    .importOrLoad();
+            BaseGraph baseGraph = hopper.getBaseGraph();
+
+            long pillarNodes = 0;
+            AllEdgesIterator allEdges = baseGraph.getAllEdges();
+            while (allEdges.next())
+                pillarNodes += allEdges.fetchWayGeometry(FetchMode.PILLAR_ONLY).size();
+            long geometryBytes = baseGraph.getMaxGeoRef();
+            double bytesPerPillarNode = (double) geometryBytes / pillarNodes;
+
+            Random rnd = new Random(123);
+            final int iterations = args.getInt("iters", 10_000_000);
+            long[] fetchedPillarNodes = new long[1];
+            MiniPerfTest t = new MiniPerfTest().setIterations(iterations)
+                    .start((warmup, run) -> {
+                        PointList pointList = baseGraph.getEdgeIteratorState(rnd.nextInt(baseGraph.getEdges()), Integer.MIN_VALUE)
+                                .fetchWayGeometry(FetchMode.PILLAR_ONLY);
+                        if (!warmup)
+                            fetchedPillarNodes[0] += pointList.size();
+                        return pointList.size();
+                    });
+            result.add(String.format("compress: %b, geometry: %.2fMB, pillar nodes: %d, bytes per pillar node: %.2f, "
+                            + "fetched pillar nodes: %d, approx. bytes read: %.2fMB, took: %.2fms, per fetch: %.4fms, checksum: %d",
+                    compress, geometryBytes / (double) Helper.MB, pillarNodes, bytesPerPillarNode,
+                    fetchedPillarNodes[0], fetchedPillarNodes[0] * bytesPerPillarNode / Helper.MB, t.getSum(), t.getMean(), t.getDummySum()));
+            System.out.println(result.get(result.size() - 1));
+            hopper.close();
+        }
+        System.out.println();
+        System.out.println("### RESULT ###");
+        for (String res : result)
+            System.out.println(res);
+    }
+}
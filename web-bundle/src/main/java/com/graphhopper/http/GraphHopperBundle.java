@@ -18,13 +18,16 @@
 
 package com.graphhopper.http;
 
+import com.codahale.metrics.Gauge;
 import com.fasterxml.jackson.databind.MapperFeature;
 import com.fasterxml.jackson.databind.util.StdDateFormat;
 import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
 import com.graphhopper.GraphHopper;
 import com.graphhopper.GraphHopperConfig;
 import com.graphhopper.gtfs.*;
+import com.graphhopper.http.health.BundleHealthCheck;
 import com.graphhopper.http.health.GraphHopperHealthCheck;
+import com.graphhopper.http.health.WarmupHealthCheck;
 import com.graphhopper.isochrone.algorithm.JTSTriangulator;
 import com.graphhopper.isochrone.algorithm.Triangulator;
 import com.graphhopper.jackson.Jackson;
@@ -32,6 +35,7 @@ import com.graphhopper.matching.MapMatching;
 import com.graphhopper.resources.*;
 import com.graphhopper.routing.util.EncodingManager;
 import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.DataAccessWarmup;
 import com.graphhopper.storage.index.LocationIndex;
 import com.graphhopper.util.PMap;
 import com.graphhopper.util.TranslationMap;
@@ -41,11 +45,33 @@ import io.dropwizard.core.setup.Bootstrap;
 import io.dropwizard.core.setup.Environment;
 import org.glassfish.hk2.api.Factory;
 import org.glassfish.hk2.utilities.binding.AbstractBinder;
+import org.glassfish.jersey.process.internal.RequestScoped;
 
 import javax.inject.Inject;
+import java.util.Map;
 
 public class GraphHopperBundle implements ConfiguredBundle<GraphHopperBundleConfiguration> {
 
+    /**
+     * Provides the GraphHopper instance of the current generation for each request and releases it after the request
+     * is done, so a graph swap does not close it while it is still in use.
+     */
+    static class GraphHopperFactory implements Factory<GraphHopper> {
+
+        @Inject
+        GraphHopperManaged graphHopperManaged;
+
+        @Override
+        public GraphHopper provide() {
+            return graphHopperManaged.acquire();
+        }
+
+        @Override
+        public void dispose(GraphHopper instance) {
+            graphHopperManaged.release(instance);
+        }
+    }
+
     static class TranslationMapFactory implements Factory<TranslationMap> {
 
         @Inject
@@ -189,6 +215,22 @@ public class GraphHopperBundle implements ConfiguredBundle<GraphHopperBundleConf
         }
     }
 
+    static class TriangulatorFactory implements Factory<Triangulator> {
+
+        @Inject
+        GraphHopper graphHopper;
+
+        @Override
+        public Triangulator provide() {
+            return new JTSTriangulator(graphHopper.getRouterConfig());
+        }
+
+        @Override
+        public void dispose(Triangulator instance) {
+
+        }
+    }
+
     static class HasElevation implements Factory<Boolean> {
 
         @Inject
@@ -261,9 +303,14 @@ public class GraphHopperBundle implements ConfiguredBundle<GraphHopperBundleConf
             @Override
             protected void configure() {
                 bind(configuration.getGraphHopperConfiguration()).to(GraphHopperConfig.class);
-                bind(graphHopper).to(GraphHopper.class);
+                if (graphHopper instanceof GraphHopperGtfs) {
+                    bind(graphHopper).to(GraphHopper.class);
+                } else {
+                    bind(graphHopperManaged).to(GraphHopperManaged.class);
+                    bindFactory(GraphHopperFactory.class).to(GraphHopper.class).in(RequestScoped.class);
+                }
 
-                bind(new JTSTriangulator(graphHopper.getRouterConfig())).to(Triangulator.class);
+                bindFactory(TriangulatorFactory.class).to(Triangulator.class);
                 bindFactory(MapMatchingRouterFactoryFactory.class).to(MapMatchingResource.MapMatchingRouterFactory.class);
                 bindFactory(PathDetailsBuilderFactoryFactory.class).to(PathDetailsBuilderFactory.class);
                 bindFactory(ProfileResolverFactory.class).to(ProfileResolver.class);
@@ -302,9 +349,24 @@ public class GraphHopperBundle implements ConfiguredBundle<GraphHopperBundleConf
             environment.jersey().register(PtRedirectFilter.class);
         }
         environment.jersey().register(SPTResource.class);
+        environment.jersey().register(MatrixResource.class);
         environment.jersey().register(I18NResource.class);
         environment.jersey().register(InfoResource.class);
-        environment.healthChecks().register("graphhopper", new GraphHopperHealthCheck(graphHopper));
+        environment.healthChecks().register("graphhopper", new GraphHopperHealthCheck(graphHopperManaged));
+        environment.healthChecks().register("warmup", new WarmupHealthCheck(graphHopperManaged));
+        environment.healthChecks().register("bundle", new BundleHealthCheck(graphHopperManaged));
+        environment.metrics().register("graphhopper.warmup.progress", (Gauge<Double>) () -> {
+            DataAccessWarmup warmup = graphHopperManaged.getGraphHopper().getWarmup();
+            return warmup == null ? 1 : warmup.getProgress();
+        });
+        environment.metrics().register("graphhopper.warmup.bytes", (Gauge<Long>) () -> {
+            DataAccessWarmup warmup = graphHopperManaged.getGraphHopper().getWarmup();
+            return warmup == null ? 0 : warmup.getWarmedBytes();
+        });
+        environment.metrics().register("graphhopper.generation", (Gauge<Integer>) graphHopperManaged::getGeneration);
+        environment.metrics().register("graphhopper.import", (Gauge<Map<String, Object>>) () ->
+                graphHopperManaged.getGraphHopper().getImportMetrics().toMap());
+        environment.admin().addTask(new GraphSwapTask(graphHopperManaged));
         environment.jersey().register(environment.healthChecks());
         environment.jersey().register(HealthCheckResource.class);
     }
@@ -21,27 +21,52 @@ package com.graphhopper.http;
 import com.graphhopper.GraphHopper;
 import com.graphhopper.GraphHopperConfig;
 import com.graphhopper.gtfs.GraphHopperGtfs;
+import com.graphhopper.storage.DataAccessWarmup;
+import com.graphhopper.storage.GraphBundleVerification;
 import io.dropwizard.lifecycle.Managed;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Holds the GraphHopper instance that is used to serve the requests. Another graph folder can be loaded while the
+ * server is running and then replaces the current instance atomically, see {@link #swap(String)}. Requests that use
+ * the instance via {@link #acquire()} and {@link #release(GraphHopper)} keep using the old instance until they are
+ * done, and it is closed only afterwards.
+ */
 public class GraphHopperManaged implements Managed {
 
     private final static Logger logger = LoggerFactory.getLogger(GraphHopperManaged.class);
-    private final GraphHopper graphHopper;
+    private final GraphHopperConfig configuration;
+    private final AtomicReference<Generation> current;
+    private final Map<GraphHopper, Generation> generations = new ConcurrentHashMap<>();
 
     public GraphHopperManaged(GraphHopperConfig configuration) {
+        this.configuration = configuration;
+        GraphHopper graphHopper;
         if (configuration.has("gtfs.file")) {
             graphHopper = new GraphHopperGtfs(configuration);
         } else {
             graphHopper = new GraphHopper();
         }
         graphHopper.init(configuration);
+        current = new AtomicReference<>(new Generation(graphHopper, 0));
+        generations.put(graphHopper, current.get());
     }
 
     @Override
     public void start() {
+        GraphHopper graphHopper = getGraphHopper();
         graphHopper.importOrLoad();
+        logLoaded(graphHopper);
+    }
+
+    private static void logLoaded(GraphHopper graphHopper) {
         logger.info("loaded graph at:{}, data_reader_file:{}, encoded values:{}, {} bytes for edge flags, {}",
                 graphHopper.getGraphHopperLocation(), graphHopper.getOSMFile(),
                 graphHopper.getEncodingManager().toEncodedValuesAsString(),
@@ -49,14 +74,120 @@ public class GraphHopperManaged implements Managed {
                 graphHopper.getBaseGraph().toDetailsString());
     }
 
+    /**
+     * @return the GraphHopper instance of the current generation. Use {@link #acquire()} instead if the instance is
+     * used for a longer time, because it might be closed after the next {@link #swap(String)}.
+     */
     public GraphHopper getGraphHopper() {
-        return graphHopper;
+        return current.get().graphHopper;
+    }
+
+    /**
+     * @return the number of times the graph was swapped
+     */
+    public int getGeneration() {
+        return current.get().number;
+    }
+
+    /**
+     * Returns the GraphHopper instance of the current generation and makes sure it is not closed until
+     * {@link #release(GraphHopper)} is called.
+     */
+    public GraphHopper acquire() {
+        while (true) {
+            Generation generation = current.get();
+            if (generation.tryAcquire())
+                return generation.graphHopper;
+            if (generation == current.get())
+                throw new IllegalStateException("GraphHopper was already closed");
+            // the generation was just replaced and closed, so try again with the new one
+        }
+    }
+
+    public void release(GraphHopper graphHopper) {
+        Generation generation = generations.get(graphHopper);
+        if (generation == null)
+            throw new IllegalArgumentException("Unknown GraphHopper instance");
+        generation.release();
+    }
+
+    /**
+     * Loads the (already imported) graph from the given folder and waits for its warmup, see
+     * graph.dataaccess.mmap.warmup, and for the verification of a graph bundle, see graph.bundle.verify. Then it
+     * replaces the current GraphHopper instance. The old one is closed as soon as all requests that acquired it are
+     * finished. The configuration, e.g. the profiles, has to match the new graph.
+     */
+    public synchronized void swap(String graphLocation) throws InterruptedException {
+        if (getGraphHopper() instanceof GraphHopperGtfs)
+            throw new IllegalStateException("Swapping the graph is not supported for public transit");
+        if (graphLocation.equals(getGraphHopper().getGraphHopperLocation()))
+            throw new IllegalArgumentException("The graph at " + graphLocation + " is already loaded");
+        GraphHopperConfig config = new GraphHopperConfig(configuration).putObject("graph.location", graphLocation);
+        // the new graph is only loaded, never imported
+        config.asPMap().remove("datareader.file");
+        GraphHopper graphHopper = new GraphHopper().init(config);
+        try {
+            if (!graphHopper.load())
+                throw new IllegalArgumentException("Could not load graph from " + graphLocation);
+            DataAccessWarmup warmup = graphHopper.getWarmup();
+            if (warmup != null)
+                while (!warmup.await(10, TimeUnit.SECONDS))
+                    logger.info("waiting for the new graph at {}, {}", graphLocation, warmup);
+            GraphBundleVerification verification = graphHopper.getBundleVerification();
+            if (verification != null) {
+                while (!verification.await(10, TimeUnit.SECONDS))
+                    logger.info("waiting for the new graph at {}, {}", graphLocation, verification);
+                if (!verification.isValid())
+                    throw new IllegalStateException("Could not swap to " + graphLocation + ", " + verification);
+            }
+        } catch (RuntimeException | InterruptedException ex) {
+            graphHopper.close();
+            throw ex;
+        }
+        logLoaded(graphHopper);
+
+        Generation generation = new Generation(graphHopper, current.get().number + 1);
+        generations.put(graphHopper, generation);
+        Generation old = current.getAndSet(generation);
+        logger.info("swapped graph at {} with graph at {}, generation: {}", old.graphHopper.getGraphHopperLocation(),
+                graphHopper.getGraphHopperLocation(), generation.number);
+        // the old generation is closed once the requests still using it are done
+        old.release();
     }
 
     @Override
     public void stop() {
-        graphHopper.close();
+        current.get().release();
     }
 
+    private class Generation {
+        private final GraphHopper graphHopper;
+        private final int number;
+        // the number of requests using this generation plus one as long as it is the current generation
+        private final AtomicInteger users = new AtomicInteger(1);
+
+        Generation(GraphHopper graphHopper, int number) {
+            this.graphHopper = graphHopper;
+            this.number = number;
+        }
+
+        boolean tryAcquire() {
+            int u;
+            do {
+                u = users.get();
+                if (u == 0)
+                    return false;
+            } while (!users.compareAndSet(u, u + 1));
+            return true;
+        }
+
+        void release() {
+            if (users.decrementAndGet() == 0) {
+                logger.info("closing graph at {}, generation: {}", graphHopper.getGraphHopperLocation(), number);
+                generations.remove(graphHopper);
+                graphHopper.close();
+            }
+        }
+    }
 
 }
@@ -0,0 +1,50 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.http;
+
+import io.dropwizard.servlets.tasks.Task;
+
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Admin task that replaces the graph while the server keeps running, e.g.
+ * <code>curl -X POST 'localhost:8990/tasks/swap-graph?graph.location=graph-cache-2024-05-01'</code>
+ * The graph has to be imported with the same configuration before, e.g. using the import command.
+ * The request returns once the new graph is loaded (and warmed up) and used for new requests.
+ */
+public class GraphSwapTask extends Task {
+
+    private final GraphHopperManaged graphHopperManaged;
+
+    public GraphSwapTask(GraphHopperManaged graphHopperManaged) {
+        super("swap-graph");
+        this.graphHopperManaged = graphHopperManaged;
+    }
+
+    @Override
+    public void execute(Map<String, List<String>> parameters, PrintWriter output) throws Exception {
+        List<String> locations = parameters.get("graph.location");
+        if (locations == null || locations.size() != 1)
+            throw new IllegalArgumentException("Specify exactly one graph.location");
+        graphHopperManaged.swap(locations.get(0));
+        output.println("swapped to " + locations.get(0) + ", generation: " + graphHopperManaged.getGeneration());
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.http.health;
+
+import com.codahale.metrics.health.HealthCheck;
+import com.graphhopper.http.GraphHopperManaged;
+import com.graphhopper.storage.GraphBundleVerification;
+
+/**
+ * Reports the server as unhealthy until the checksums of the loaded graph bundle were verified, see graph.bundle.verify,
+ * and stays unhealthy if the bundle is corrupt, so a load balancer never sends traffic to a server with a broken graph.
+ */
+public class BundleHealthCheck extends HealthCheck {
+
+    private final GraphHopperManaged graphHopperManaged;
+
+    public BundleHealthCheck(GraphHopperManaged graphHopperManaged) {
+        this.graphHopperManaged = graphHopperManaged;
+    }
+
+    @Override
+    protected Result check() {
+        GraphBundleVerification verification = graphHopperManaged.getGraphHopper().getBundleVerification();
+        if (verification != null && !verification.isValid())
+            return Result.unhealthy(verification.toString());
+        return Result.healthy();
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.http.health;
+
+import com.codahale.metrics.health.HealthCheck;
+import com.graphhopper.http.GraphHopperManaged;
+import com.graphhopper.storage.DataAccessWarmup;
+
+/**
+ * Reports the server as unhealthy until the storages configured with graph.dataaccess.mmap.warmup were read into the
+ * page cache, so a load balancer does not send traffic to a server with a cold cache.
+ */
+public class WarmupHealthCheck extends HealthCheck {
+
+    private final GraphHopperManaged graphHopperManaged;
+
+    public WarmupHealthCheck(GraphHopperManaged graphHopperManaged) {
+        this.graphHopperManaged = graphHopperManaged;
+    }
+
+    @Override
+    protected Result check() {
+        DataAccessWarmup warmup = graphHopperManaged.getGraphHopper().getWarmup();
+        if (warmup != null && !warmup.isReady())
+            return Result.unhealthy("GraphHopper is warming up, " + warmup);
+        return Result.healthy();
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.resources;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.graphhopper.GraphHopper;
+import com.graphhopper.GraphHopperConfig;
+import com.graphhopper.http.GHPointParam;
+import com.graphhopper.http.ProfileResolver;
+import com.graphhopper.jackson.ResponsePathSerializer;
+import com.graphhopper.routing.ch.ManyToManyCH;
+import com.graphhopper.routing.ev.BooleanEncodedValue;
+import com.graphhopper.routing.ev.Subnetwork;
+import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.routing.querygraph.QueryRoutingCHGraph;
+import com.graphhopper.routing.util.DefaultSnapFilter;
+import com.graphhopper.storage.RoutingCHGraph;
+import com.graphhopper.storage.index.LocationIndex;
+import com.graphhopper.storage.index.Snap;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.PMap;
+import com.graphhopper.util.StopWatch;
+import com.graphhopper.util.exceptions.PointNotFoundException;
+import com.graphhopper.util.shapes.GHPoint;
+import io.dropwizard.jersey.params.AbstractParam;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.validation.constraints.NotNull;
+import javax.ws.rs.*;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * This resource calculates the travel times, distances and weights between all pairs of a list of 'from' points and a
+ * list of 'to' points. It uses the many-to-many algorithm for contraction hierarchies and therefore only works for
+ * profiles with CH preparation.
+ */
+@Path("matrix")
+public class MatrixResource {
+
+    private static final Logger logger = LoggerFactory.getLogger(MatrixResource.class);
+
+    private final GraphHopperConfig config;
+    private final GraphHopper graphHopper;
+    private final ProfileResolver profileResolver;
+    private final int maxPoints;
+    private final String osmDate;
+
+    @Inject
+    public MatrixResource(GraphHopperConfig config, GraphHopper graphHopper, ProfileResolver profileResolver) {
+        this.config = config;
+        this.graphHopper = graphHopper;
+        this.profileResolver = profileResolver;
+        this.maxPoints = config.getInt("routing.matrix.max_points", 1000);
+        this.osmDate = graphHopper.getProperties().get("datareader.data.date");
+    }
+
+    public static class MatrixRequest {
+        @JsonProperty("profile")
+        public String profile;
+        @JsonProperty("points")
+        public List<GHPoint> points = new ArrayList<>();
+        @JsonProperty("from_points")
+        public List<GHPoint> fromPoints = new ArrayList<>();
+        @JsonProperty("to_points")
+        public List<GHPoint> toPoints = new ArrayList<>();
+        @JsonProperty("out_arrays")
+        public List<String> outArrays = new ArrayList<>();
+        @JsonProperty("calc_points")
+        public boolean calcPoints;
+    }
+
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response doGet(
+            @QueryParam("profile") String profileName,
+            @QueryParam("point") @NotNull List<GHPointParam> pointParams,
+            @QueryParam("from_point") @NotNull List<GHPointParam> fromPointParams,
+            @QueryParam("to_point") @NotNull List<GHPointParam> toPointParams,
+            @QueryParam("out_array") @NotNull List<String> outArrays,
+            @QueryParam("calc_points") @DefaultValue("false") boolean calcPoints) {
+        MatrixRequest request = new MatrixRequest();
+        request.profile = profileName;
+        request.points = pointParams.stream().map(AbstractParam::get).collect(toList());
+        request.fromPoints = fromPointParams.stream().map(AbstractParam::get).collect(toList());
+        request.toPoints = toPointParams.stream().map(AbstractParam::get).collect(toList());
+        request.outArrays = outArrays;
+        request.calcPoints = calcPoints;
+        return calcMatrix(request);
+    }
+
+    @POST
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response doPost(@NotNull MatrixRequest request) {
+        return calcMatrix(request);
+    }
+
+    private Response calcMatrix(MatrixRequest request) {
+        StopWatch sw = new StopWatch().start();
+        List<GHPoint> fromPoints = request.fromPoints;
+        List<GHPoint> toPoints = request.toPoints;
+        if (!request.points.isEmpty()) {
+            if (!fromPoints.isEmpty() || !toPoints.isEmpty())
+                throw new IllegalArgumentException("Either specify 'point' or 'from_point' and 'to_point', but not both");
+            fromPoints = request.points;
+            toPoints = request.points;
+        }
+        if (fromPoints.isEmpty() || toPoints.isEmpty())
+            throw new IllegalArgumentException("You need to specify at least one 'from_point' and one 'to_point' or at least one 'point'");
+        if (fromPoints.size() > maxPoints || toPoints.size() > maxPoints)
+            throw new IllegalArgumentException("Too many points: " + fromPoints.size() + "x" + toPoints.size() + ", the maximum is " + maxPoints + "x" + maxPoints);
+        List<String> outArrays = request.outArrays.isEmpty() ? List.of("times", "distances") : request.outArrays;
+        for (String outArray : outArrays)
+            if (!List.of("weights", "times", "distances").contains(outArray))
+                throw new IllegalArgumentException("Unknown out_array: '" + outArray + "', use weights, times or distances");
+
+        PMap profileResolverHints = new PMap();
+        profileResolverHints.putObject("profile", request.profile);
+        String profileName = profileResolver.resolveProfile(profileResolverHints);
+        RoutingCHGraph chGraph = graphHopper.getCHGraphs().get(profileName);
+        if (chGraph == null)
+            throw new IllegalArgumentException("The matrix requires a profile with CH preparation, but there is none for '" + profileName + "'");
+
+        LocationIndex locationIndex = graphHopper.getLocationIndex();
+        BooleanEncodedValue inSubnetworkEnc = graphHopper.getEncodingManager().getBooleanEncodedValue(Subnetwork.key(profileName));
+        DefaultSnapFilter snapFilter = new DefaultSnapFilter(chGraph.getWeighting(), inSubnetworkEnc);
+        List<Snap> fromSnaps = snap(locationIndex, snapFilter, fromPoints, "from_point");
+        List<Snap> toSnaps = fromPoints == toPoints ? fromSnaps : snap(locationIndex, snapFilter, toPoints, "to_point");
+        List<Snap> snaps = new ArrayList<>(fromSnaps);
+        if (toSnaps != fromSnaps)
+            snaps.addAll(toSnaps);
+        QueryGraph queryGraph = QueryGraph.create(graphHopper.getBaseGraph(), snaps);
+        // the closest nodes of the snaps are only valid after the query graph was created
+        int[] sources = fromSnaps.stream().mapToInt(Snap::getClosestNode).toArray();
+        int[] targets = toSnaps.stream().mapToInt(Snap::getClosestNode).toArray();
+        ManyToManyCH.Result result = new ManyToManyCH(new QueryRoutingCHGraph(chGraph, queryGraph))
+                .setUnpackPaths(request.calcPoints)
+                .calcMatrix(sources, targets);
+
+        ObjectNode json = JsonNodeFactory.instance.objectNode();
+        for (String outArray : outArrays) {
+            ArrayNode rows = json.putArray(outArray);
+            for (int i = 0; i < sources.length; i++) {
+                ArrayNode row = rows.addArray();
+                for (int j = 0; j < targets.length; j++) {
+                    if (!result.isFound(i, j))
+                        row.addNull();
+                    else if (outArray.equals("weights"))
+                        row.add(Helper.round(result.getWeight(i, j), 3));
+                    else if (outArray.equals("times"))
+                        row.add(Math.round(result.getTime(i, j) / 1000.0));
+                    else
+                        row.add(Math.round(result.getDistance(i, j)));
+                }
+            }
+        }
+        if (request.calcPoints) {
+            ArrayNode rows = json.putArray("points");
+            for (int i = 0; i < sources.length; i++) {
+                ArrayNode row = rows.addArray();
+                for (int j = 0; j < targets.length; j++) {
+                    if (result.isFound(i, j))
+                        row.add(ResponsePathSerializer.encodePolyline(result.getPath(i, j).calcPoints(), false, 1e5));
+                    else
+                        row.addNull();
+                }
+            }
+        }
+        sw.stop();
+        final ObjectNode info = json.putObject("info");
+        info.putPOJO("copyrights", config.getCopyrights());
+        info.put("took", Math.round((float) sw.getMillis()));
+        if (!osmDate.isEmpty()) info.put("road_data_timestamp", osmDate);
+        logger.info("matrix: " + sources.length + "x" + targets.length + ", profile: " + profileName
+                + ", took: " + sw.getSeconds() + ", visited nodes: " + result.getVisitedNodes());
+        return Response.ok(json).header("X-GH-Took", "" + sw.getSeconds() * 1000).build();
+    }
+
+    private static List<Snap> snap(LocationIndex locationIndex, DefaultSnapFilter snapFilter, List<GHPoint> points, String name) {
+        List<Snap> snaps = new ArrayList<>(points.size());
+        for (int i = 0; i < points.size(); i++) {
+            GHPoint point = points.get(i);
+            Snap snap = locationIndex.findClosest(point.lat, point.lon, snapFilter);
+            if (!snap.isValid())
+                throw new PointNotFoundException("Cannot find " + name + " " + i + ": " + point, i);
+            snaps.add(snap);
+        }
+        return snaps;
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.http;
+
+import com.graphhopper.GHRequest;
+import com.graphhopper.GraphHopper;
+import com.graphhopper.GraphHopperConfig;
+import com.graphhopper.routing.TestProfiles;
+import com.graphhopper.util.Helper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GraphHopperManagedTest {
+    private static final String DIR = "./target/graphhopper-managed-test";
+
+    @BeforeEach
+    @AfterEach
+    public void cleanUp() {
+        Helper.removeDir(new File(DIR));
+    }
+
+    private static GraphHopperConfig createConfig(String osmFile, String location) {
+        return new GraphHopperConfig()
+                .putObject("datareader.file", osmFile)
+                .putObject("graph.location", location)
+                .putObject("import.osm.ignored_highways", "")
+                .setProfiles(List.of(TestProfiles.constantSpeed("car")));
+    }
+
+    @Test
+    public void swap() throws InterruptedException {
+        String bayreuth = DIR + "/bayreuth-gh";
+        new GraphHopper().init(createConfig("../core/files/north-bayreuth.osm.gz", bayreuth)).importAndClose();
+
+        GraphHopperManaged managed = new GraphHopperManaged(createConfig("../core/files/monaco.osm.gz", DIR + "/monaco-gh"));
+        managed.start();
+        GraphHopper monaco = managed.acquire();
+        assertSame(monaco, managed.getGraphHopper());
+        assertEquals(0, managed.getGeneration());
+        GHRequest monacoRequest = new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setProfile("car");
+        assertFalse(monaco.route(monacoRequest).hasErrors());
+
+        assertThrows(IllegalArgumentException.class, () -> managed.swap(DIR + "/does-not-exist-gh"));
+        assertSame(monaco, managed.getGraphHopper());
+        managed.swap(bayreuth);
+        assertEquals(1, managed.getGeneration());
+        GraphHopper newHopper = managed.getGraphHopper();
+        assertNotSame(monaco, newHopper);
+        assertTrue(newHopper.getBaseGraph().getBounds().contains(49.985, 11.51));
+
+        // the old graph is still in use, so it must not be closed yet
+        assertFalse(monaco.getBaseGraph().isClosed());
+        assertFalse(monaco.route(monacoRequest).hasErrors());
+        managed.release(monaco);
+        assertTrue(monaco.getBaseGraph().isClosed());
+        assertThrows(IllegalArgumentException.class, () -> managed.release(monaco));
+
+        assertSame(newHopper, managed.acquire());
+        managed.release(newHopper);
+        assertFalse(newHopper.getBaseGraph().isClosed());
+        managed.stop();
+        assertTrue(newHopper.getBaseGraph().isClosed());
+    }
+}
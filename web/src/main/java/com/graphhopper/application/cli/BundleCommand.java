@@ -0,0 +1,58 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.application.cli;
+
+import com.graphhopper.application.GraphHopperServerConfiguration;
+import com.graphhopper.storage.GraphBundle;
+import io.dropwizard.core.cli.ConfiguredCommand;
+import io.dropwizard.core.setup.Bootstrap;
+import net.sourceforge.argparse4j.impl.Arguments;
+import net.sourceforge.argparse4j.inf.Namespace;
+import net.sourceforge.argparse4j.inf.Subparser;
+
+import java.io.File;
+
+public class BundleCommand extends ConfiguredCommand<GraphHopperServerConfiguration> {
+
+    public BundleCommand() {
+        super("bundle", "packs the imported graph folder into a single file <graph.location>.ghb that can be used as graph.location");
+    }
+
+    @Override
+    public void configure(Subparser subparser) {
+        super.configure(subparser);
+        subparser.addArgument("--verify")
+                .action(Arguments.storeTrue())
+                .help("verifies the checksums of all sections of an existing <graph.location>.ghb instead of writing it");
+    }
+
+    @Override
+    protected void run(Bootstrap<GraphHopperServerConfiguration> bootstrap, Namespace namespace, GraphHopperServerConfiguration configuration) {
+        String graphLocation = configuration.getGraphHopperConfiguration().getString("graph.location", "");
+        if (graphLocation.isEmpty())
+            throw new IllegalArgumentException("graph.location is not specified");
+        // remove a trailing slash
+        graphLocation = new File(graphLocation).getPath();
+        if (namespace.getBoolean("verify"))
+            GraphBundle.verify(graphLocation + ".ghb");
+        else
+            GraphBundle.write(graphLocation, graphLocation + ".ghb");
+    }
+
+}
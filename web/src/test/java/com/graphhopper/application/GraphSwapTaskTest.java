@@ -0,0 +1,94 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.application;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.graphhopper.GraphHopper;
+import com.graphhopper.GraphHopperConfig;
+import com.graphhopper.application.util.GraphHopperServerTestConfiguration;
+import com.graphhopper.routing.TestProfiles;
+import com.graphhopper.util.Helper;
+import io.dropwizard.testing.junit5.DropwizardAppExtension;
+import io.dropwizard.testing.junit5.DropwizardExtensionsSupport;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.core.Response;
+import java.io.File;
+import java.util.List;
+
+import static com.graphhopper.application.util.TestUtils.clientTarget;
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(DropwizardExtensionsSupport.class)
+public class GraphSwapTaskTest {
+    private static final String DIR = "./target/graph-swap-task-test/";
+    private static final DropwizardAppExtension<GraphHopperServerConfiguration> app = new DropwizardAppExtension<>(GraphHopperApplication.class, createConfig());
+
+    private static GraphHopperServerConfiguration createConfig() {
+        GraphHopperServerConfiguration config = new GraphHopperServerTestConfiguration();
+        config.getGraphHopperConfiguration().
+                putObject("prepare.min_network_size", 0).
+                putObject("datareader.file", "../core/files/monaco.osm.gz").
+                putObject("import.osm.ignored_highways", "").
+                putObject("graph.location", DIR + "monaco-gh").
+                setProfiles(List.of(TestProfiles.constantSpeed("car")));
+        return config;
+    }
+
+    @AfterAll
+    public static void cleanUp() {
+        Helper.removeDir(new File(DIR));
+    }
+
+    @Test
+    public void swap() {
+        assertEquals(200, route("43.730864,7.420771", "43.727687,7.418737").getStatus());
+        assertEquals(400, route("49.985307,11.50628", "49.985731,11.507465").getStatus());
+
+        GraphHopperConfig bayreuthConfig = new GraphHopperConfig(app.getConfiguration().getGraphHopperConfiguration()).
+                putObject("datareader.file", "../core/files/north-bayreuth.osm.gz").
+                putObject("graph.location", DIR + "bayreuth-gh");
+        new GraphHopper().init(bayreuthConfig).importAndClose();
+
+        Response response = swapTask(DIR + "bayreuth-gh");
+        assertEquals(200, response.getStatus());
+        assertTrue(response.readEntity(String.class).contains("generation: 1"));
+        assertEquals(400, route("43.730864,7.420771", "43.727687,7.418737").getStatus());
+        JsonNode json = route("49.985307,11.50628", "49.985731,11.507465").readEntity(JsonNode.class);
+        assertTrue(json.get("paths").get(0).get("distance").asDouble() > 0, json.toString());
+
+        // the old graph is still there, so we can swap back
+        assertEquals(200, swapTask(DIR + "monaco-gh").getStatus());
+        assertEquals(200, route("43.730864,7.420771", "43.727687,7.418737").getStatus());
+        assertEquals(500, swapTask(DIR + "does-not-exist-gh").getStatus());
+        assertEquals(200, route("43.730864,7.420771", "43.727687,7.418737").getStatus());
+    }
+
+    private static Response route(String from, String to) {
+        return clientTarget(app, "/route?profile=car&point=" + from + "&point=" + to).request().get();
+    }
+
+    private static Response swapTask(String location) {
+        return app.client().target("http://localhost:" + app.getAdminPort() + "/tasks/swap-graph")
+                .queryParam("graph.location", location).request().post(Entity.text(""));
+    }
+}
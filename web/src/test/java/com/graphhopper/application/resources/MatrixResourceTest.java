@@ -0,0 +1,142 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.application.resources;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.graphhopper.application.GraphHopperApplication;
+import com.graphhopper.application.GraphHopperServerConfiguration;
+import com.graphhopper.application.util.GraphHopperServerTestConfiguration;
+import com.graphhopper.config.CHProfile;
+import com.graphhopper.routing.TestProfiles;
+import com.graphhopper.util.BodyAndStatus;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.TurnCostsConfig;
+import io.dropwizard.testing.junit5.DropwizardAppExtension;
+import io.dropwizard.testing.junit5.DropwizardExtensionsSupport;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.File;
+import java.util.List;
+
+import static com.graphhopper.application.resources.Util.getWithStatus;
+import static com.graphhopper.application.resources.Util.postWithStatus;
+import static com.graphhopper.application.util.TestUtils.clientTarget;
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(DropwizardExtensionsSupport.class)
+public class MatrixResourceTest {
+    private static final String DIR = "./target/matrix-gh/";
+    private static final String[] POINTS = {"42.554851,1.536198", "42.510071,1.548128", "42.531073,1.573792"};
+    private static final DropwizardAppExtension<GraphHopperServerConfiguration> app = new DropwizardAppExtension<>(GraphHopperApplication.class, createConfig());
+
+    private static GraphHopperServerConfiguration createConfig() {
+        GraphHopperServerTestConfiguration config = new GraphHopperServerTestConfiguration();
+        config.getGraphHopperConfiguration().
+                putObject("datareader.file", "../core/files/andorra.osm.gz").
+                putObject("import.osm.ignored_highways", "").
+                putObject("graph.location", DIR).
+                putObject("graph.encoded_values", "car_access, car_average_speed").
+                setProfiles(List.of(
+                        TestProfiles.accessAndSpeed("car", "car"),
+                        TestProfiles.accessAndSpeed("car_with_turncosts", "car").setTurnCostsConfig(TurnCostsConfig.car()),
+                        TestProfiles.accessAndSpeed("car_without_ch", "car")
+                )).
+                setCHProfiles(List.of(new CHProfile("car"), new CHProfile("car_with_turncosts")));
+        return config;
+    }
+
+    @BeforeAll
+    @AfterAll
+    public static void cleanUp() {
+        Helper.removeDir(new File(DIR));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"car", "car_with_turncosts"})
+    public void compareWithRoute(String profile) {
+        JsonNode json = clientTarget(app, "/matrix?profile=" + profile + "&point=" + String.join("&point=", POINTS)
+                + "&out_array=weights&out_array=times&out_array=distances").request().get(JsonNode.class);
+        assertTrue(json.get("info").get("took").asLong() >= 0);
+        for (int i = 0; i < POINTS.length; i++) {
+            for (int j = 0; j < POINTS.length; j++) {
+                if (i == j) {
+                    assertEquals(0, json.get("times").get(i).get(j).asLong());
+                    assertEquals(0, json.get("distances").get(i).get(j).asLong());
+                    continue;
+                }
+                JsonNode path = clientTarget(app, "/route?profile=" + profile + "&point=" + POINTS[i] + "&point=" + POINTS[j]
+                        + "&calc_points=false&instructions=false").request().get(JsonNode.class).get("paths").get(0);
+                assertEquals(path.get("distance").asDouble(), json.get("distances").get(i).get(j).asDouble(), 1, i + "->" + j);
+                assertEquals(path.get("time").asLong() / 1000.0, json.get("times").get(i).get(j).asDouble(), 1, i + "->" + j);
+                assertTrue(json.get("weights").get(i).get(j).asDouble() > 0);
+            }
+        }
+    }
+
+    @Test
+    public void fromAndToPointsWithPaths() {
+        JsonNode json = clientTarget(app, "/matrix?profile=car&from_point=" + POINTS[0] + "&to_point=" + POINTS[1]
+                + "&to_point=" + POINTS[2] + "&calc_points=true").request().get(JsonNode.class);
+        // by default we return the times and distances
+        assertFalse(json.has("weights"));
+        assertEquals(1, json.get("times").size());
+        assertEquals(2, json.get("times").get(0).size());
+        assertEquals(2, json.get("distances").get(0).size());
+        assertEquals(2, json.get("points").get(0).size());
+        JsonNode path = clientTarget(app, "/route?profile=car&point=" + POINTS[0] + "&point=" + POINTS[2] + "&way_point_max_distance=0").request().get(JsonNode.class).get("paths").get(0);
+        assertEquals(path.get("points").asText(), json.get("points").get(0).get(1).asText());
+    }
+
+    @Test
+    public void post() {
+        String body = "{\"profile\": \"car\", \"from_points\": [[1.536198,42.554851], [1.548128,42.510071]], \"to_points\": [[1.573792,42.531073]], \"out_arrays\": [\"distances\"]}";
+        BodyAndStatus rsp = postWithStatus(clientTarget(app, "/matrix"), body);
+        assertEquals(200, rsp.getStatus(), rsp.getBody().toString());
+        JsonNode json = rsp.getBody();
+        assertFalse(json.has("times"));
+        assertEquals(2, json.get("distances").size());
+        assertEquals(1, json.get("distances").get(1).size());
+        assertTrue(json.get("distances").get(0).get(0).asDouble() > 1000);
+    }
+
+    @Test
+    public void errors() {
+        BodyAndStatus rsp = getWithStatus(clientTarget(app, "/matrix?profile=car"));
+        assertEquals(400, rsp.getStatus());
+        assertTrue(rsp.getBody().get("message").asText().contains("at least one 'from_point'"), rsp.getBody().toString());
+
+        rsp = getWithStatus(clientTarget(app, "/matrix?profile=car_without_ch&point=" + POINTS[0] + "&point=" + POINTS[1]));
+        assertEquals(400, rsp.getStatus());
+        assertTrue(rsp.getBody().get("message").asText().contains("requires a profile with CH preparation"), rsp.getBody().toString());
+
+        rsp = getWithStatus(clientTarget(app, "/matrix?profile=car&point=" + POINTS[0] + "&point=" + POINTS[1] + "&out_array=speeds"));
+        assertEquals(400, rsp.getStatus());
+        assertTrue(rsp.getBody().get("message").asText().contains("Unknown out_array: 'speeds'"), rsp.getBody().toString());
+
+        rsp = getWithStatus(clientTarget(app, "/matrix?profile=car&from_point=" + POINTS[0] + "&to_point=" + POINTS[1] + "&to_point=-10,-10"));
+        assertEquals(400, rsp.getStatus());
+        assertTrue(rsp.getBody().get("message").asText().contains("Cannot find to_point 1"), rsp.getBody().toString());
+        assertEquals(1, rsp.getBody().get("hints").get(0).get("point_index").asInt(), rsp.getBody().toString());
+    }
+}